@@ -75,6 +75,19 @@ const check = () => Axios.post(
   { withCredentials: true },
 );
 
+// Waits for the status to differ from the last seen status, hint code and qr time.
+const checkWait = (lastSeen) => Axios.post(
+  `${BASE_URL}/check/wait`,
+  lastSeen || {},
+  { withCredentials: true },
+);
+
+// Opens a Server-Sent Events stream with the same data as check, sent when it changes.
+const events = () => new EventSource(
+  `${BASE_URL}/events`,
+  { withCredentials: true },
+);
+
 const cancel = () => Axios.delete(
   `${BASE_URL}/cancel`,
   { withCredentials: true },
@@ -85,6 +98,8 @@ const api = {
   authentication,
   sign,
   check,
+  checkWait,
+  events,
   cancel,
 };
 
@@ -36,19 +36,29 @@ import api from './api';
 import { URLS } from './constants';
 import { getTextOptions } from './utils';
 
-let getResultTimeout;
+let eventSource;
+// Increased when a flow is aborted, so answers to long-polls of the old flow are ignored.
+let activeFlow = 0;
 let inProgress = true;
 
+const closeEvents = () => {
+  if (eventSource) {
+    eventSource.close();
+    eventSource = undefined;
+  }
+};
+
 // If the user cancels the flow in the browser, for example when
 // navigating away, we need to call the API to cancel the flow.
 const abort = () => {
-  clearTimeout(getResultTimeout);
+  activeFlow += 1;
+  closeEvents();
   if (inProgress) {
     api.cancel();
   }
 };
 
-// Function to start polling for a result.
+// Function to follow the transaction until it has a result.
 const pollForResult = ({
   transactionId,
   testingType,
@@ -57,66 +67,116 @@ const pollForResult = ({
   onUpdate,
   onError,
 }) => {
-  const getResult = () => {
-    // We call the API to get the status.
-    api.check()
-      .then((response) => {
-        if (transactionId && response.data.transactionId !== transactionId) {
-          inProgress = false;
-          navigate(URLS.resultFailed, {
-            state: {
-              testingType,
-              flowType,
-              statusHintCode: response.data.hintCode,
-            },
-          });
+  // Handles a status from either the event stream or a check.
+  // Returns true if the transaction is still pending.
+  const handleResult = (data) => {
+    if (transactionId && data.transactionId !== transactionId) {
+      inProgress = false;
+      navigate(URLS.resultFailed, {
+        state: {
+          testingType,
+          flowType,
+          statusHintCode: data.hintCode,
+        },
+      });
+
+      return false;
+    }
+
+    // We report back the data to the components to show helpful text to the user.
+    if (typeof onUpdate === 'function') {
+      onUpdate(data);
+    }
+
+    switch (data.status) {
+      case 'PENDING':
+        return true;
+      // If the status is COMPLETE we navigate away.
+      case 'COMPLETE': {
+        inProgress = false;
+        navigate(URLS.resultSuccess, {
+          state: {
+            testingType,
+            completionResponse: data.completionResponse,
+          },
+        });
+        return false;
+      }
+      // Same if the status is FAILED.
+      case 'FAILED': {
+        inProgress = false;
+        navigate(URLS.resultFailed, {
+          state: {
+            testingType,
+            flowType,
+            statusHintCode: data.hintCode,
+          },
+        });
+        return false;
+      }
+      default:
+        // Unknown status code.
+        // eslint-disable-next-line no-console
+        console.log(`Unknown status ${data.status}`);
+        return false;
+    }
+  };
+
+  const flow = activeFlow;
 
+  // The qr time is the counter in the qr code "bankid.[qrStartToken].[qrTime].[qrAuthCode]".
+  const lastSeenOf = (data) => ({
+    status: data.status,
+    hintCode: data.hintCode,
+    qrTime: data.qrCode ? Number(data.qrCode.split('.')[2]) : undefined,
+  });
+
+  // The server answers when the status differs from what we last saw, or after a timeout.
+  const getResult = (lastSeen) => {
+    if (flow !== activeFlow) {
+      return;
+    }
+    api.checkWait(lastSeen)
+      .then((response) => {
+        if (flow !== activeFlow) {
           return;
         }
-
-        // We report back the data to the components to show helpful text to the user.
-        if (typeof onUpdate === 'function') {
-          onUpdate(response.data);
+        // No content means nothing changed before the timeout, so we ask again.
+        if (response.status === 204) {
+          getResult(lastSeen);
+          return;
         }
-
-        switch (response.data.status) {
-          // If the status is PENDING we wait a second then check again.
-          case 'PENDING': {
-            getResultTimeout = setTimeout(getResult, 1000);
-            break;
-          }
-          // If the status is COMPLETE we navigate away.
-          case 'COMPLETE': {
-            inProgress = false;
-            navigate(URLS.resultSuccess, {
-              state: {
-                testingType,
-                completionResponse: response.data.completionResponse,
-              },
-            });
-            break;
-          }
-          // Same if the status is FAILED.
-          case 'FAILED': {
-            inProgress = false;
-            navigate(URLS.resultFailed, {
-              state: {
-                testingType,
-                flowType,
-                statusHintCode: response.data.hintCode,
-              },
-            });
-            break;
-          }
-          default:
-            // Unknown status code.
-            // eslint-disable-next-line no-console
-            console.log(`Unknown status ${response.data.status}`);
+        // If the status is PENDING we wait for the next change,
+        // but not before the time the server asks us to wait, which grows when it is busy.
+        if (handleResult(response.data)) {
+          setTimeout(
+            () => getResult(lastSeenOf(response.data)),
+            response.data.nextPollMillis || 0,
+          );
         }
       }).catch(onError);
   };
 
-  getResult();
+  // Browsers without Server-Sent Events long-poll for the status instead.
+  if (typeof window.EventSource !== 'function') {
+    getResult();
+    return;
+  }
+
+  // The server pushes the status when it changes, e.g. a new QR code every second.
+  closeEvents();
+  eventSource = api.events();
+  eventSource.addEventListener('check', (event) => {
+    if (!handleResult(JSON.parse(event.data))) {
+      closeEvents();
+    }
+  });
+  // If the stream fails, for example behind a proxy that does not support it,
+  // we fall back to long-polling, which also reports errors from the API.
+  eventSource.onerror = () => {
+    closeEvents();
+    getResult();
+  };
 };
 
 const init = ({
@@ -0,0 +1,227 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.rpstub;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.Signature;
+import java.security.cert.CertificateEncodingException;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Creates the completionData of a completed order, including a signature XML with the same structure as the one
+ * from BankID. The XML is signed with the stub key, so it can be parsed but not verified against the BankID CA.
+ */
+final class CompletionDataFactory {
+    private static final String PERSONAL_NUMBER = "191212121212";
+    private static final String GIVEN_NAME = "Tolvan";
+    private static final String SURNAME = "Tolvansson";
+    private static final String UHI = "giCsUsVYgZEg96P/l/7QIxWjusqW";
+    private static final String BANKID_ISSUE_DATE = "2024-06-10";
+    private static final int OCSP_RESPONSE_LENGTH = 1800;
+
+    private static final String DIGSIG_NS = "http://www.w3.org/2000/09/xmldsig#";
+    private static final String BIDSIG_NS = "http://www.bankid.com/signature/v1.0.0/types";
+    private static final String C14N = "http://www.w3.org/TR/2001/REC-xml-c14n-20010315";
+    private static final String SHA256 = "http://www.w3.org/2001/04/xmlenc#sha256";
+    private static final String RSA_SHA256 = "http://www.w3.org/2001/04/xmldsig-more#rsa-sha256";
+
+    private final StubKeyMaterial keyMaterial;
+    private final String keyInfo;
+    private final String keyInfoDigest;
+
+    /**
+     * Creates the factory.
+     * @param keyMaterial the key material used to sign the signature XML.
+     */
+    CompletionDataFactory(StubKeyMaterial keyMaterial) {
+        this.keyMaterial = keyMaterial;
+        try {
+            this.keyInfo = "<KeyInfo xmlns=\"" + DIGSIG_NS + "\" Id=\"bidKeyInfo\"><X509Data><X509Certificate>"
+                + Base64.getEncoder().encodeToString(keyMaterial.getCertificate().getEncoded())
+                + "</X509Certificate></X509Data></KeyInfo>";
+        } catch (CertificateEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        this.keyInfoDigest = digest(this.keyInfo);
+    }
+
+    /**
+     * Creates the completionData of an order.
+     * @param order the completed order.
+     * @return the completionData as a json tree.
+     */
+    Map<String, Object> create(StubOrder order) {
+        Map<String, Object> user = new LinkedHashMap<>();
+        user.put("personalNumber", PERSONAL_NUMBER);
+        user.put("name", GIVEN_NAME + " " + SURNAME);
+        user.put("givenName", GIVEN_NAME);
+        user.put("surname", SURNAME);
+
+        Map<String, Object> device = new LinkedHashMap<>();
+        device.put("ipAddress", order.getEndUserIp());
+        device.put("uhi", UHI);
+
+        Map<String, Object> stepUp = new LinkedHashMap<>();
+        stepUp.put("mrtd", false);
+
+        byte[] ocspResponse = new byte[OCSP_RESPONSE_LENGTH];
+        ThreadLocalRandom.current().nextBytes(ocspResponse);
+
+        Map<String, Object> completionData = new LinkedHashMap<>();
+        completionData.put("user", user);
+        completionData.put("device", device);
+        completionData.put("stepUp", stepUp);
+        completionData.put("bankIdIssueDate", BANKID_ISSUE_DATE);
+        completionData.put("signature", Base64.getEncoder().encodeToString(
+            signatureXml(order).getBytes(StandardCharsets.UTF_8)));
+        completionData.put("ocspResponse", Base64.getEncoder().encodeToString(ocspResponse));
+        if (order.isReturnRisk()) {
+            completionData.put("risk", "low");
+        }
+        return completionData;
+    }
+
+    /**
+     * Creates the signature XML of an order.
+     * @param order the completed order.
+     * @return the signature XML.
+     */
+    String signatureXml(StubOrder order) {
+        String signedData = signedData(order);
+        String signedInfo = "<SignedInfo xmlns=\"" + DIGSIG_NS + "\">"
+            + "<CanonicalizationMethod Algorithm=\"" + C14N + "\"></CanonicalizationMethod>"
+            + "<SignatureMethod Algorithm=\"" + RSA_SHA256 + "\"></SignatureMethod>"
+            + reference("Type=\"" + BIDSIG_NS + "\" URI=\"#bidSignedData\"", digest(signedData))
+            + reference("URI=\"#bidKeyInfo\"", this.keyInfoDigest)
+            + "</SignedInfo>";
+
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>"
+            + "<Signature xmlns=\"" + DIGSIG_NS + "\">"
+            + signedInfo
+            + "<SignatureValue>" + sign(signedInfo) + "</SignatureValue>"
+            + this.keyInfo
+            + "<Object>" + signedData + "</Object>"
+            + "</Signature>";
+    }
+
+    /**
+     * Creates the bankIdSignedData element.
+     * @param order the completed order.
+     * @return the element as XML.
+     */
+    private static String signedData(StubOrder order) {
+        StringBuilder xml = new StringBuilder(1024)
+            .append("<bankIdSignedData xmlns=\"").append(BIDSIG_NS).append("\" Id=\"bidSignedData\">");
+        if (order.getUserVisibleData() != null) {
+            xml.append("<usrVisibleData charset=\"UTF-8\" visible=\"wysiwys\">")
+                .append(order.getUserVisibleData())
+                .append("</usrVisibleData>");
+        }
+        if (order.getUserNonVisibleData() != null) {
+            xml.append("<usrNonVisibleData>").append(order.getUserNonVisibleData()).append("</usrNonVisibleData>");
+        }
+        return xml
+            .append("<srvInfo><name>").append(base64("cn=Code Front RP stub,o=Code Front,c=SE")).append("</name>")
+            .append("<nonce>").append(base64(order.getOrderRef())).append("</nonce>")
+            .append("<displayName>").append(base64("Code Front RP stub")).append("</displayName></srvInfo>")
+            .append("<clientInfo><funcId>").append(order.getFuncId()).append("</funcId>")
+            .append("<version>").append(base64("Personal=7.12.1.5&BankID_exe=7.12.1.5&platform=stub"))
+            .append("</version>")
+            .append("<env><ai><type>").append(base64("STUB")).append("</type>")
+            .append("<deviceInfo>").append(base64("1.0")).append("</deviceInfo>")
+            .append("<uhi>").append(UHI).append("</uhi><fsib>0</fsib><utb>cs1</utb>")
+            .append("<requirement><condition><type>CertificatePolicies</type><value>1.2.3.4.5</value>")
+            .append("</condition></requirement><uauth>pw</uauth></ai></env></clientInfo>")
+            .append("</bankIdSignedData>")
+            .toString();
+    }
+
+    /**
+     * Creates a Reference element.
+     * @param attributes  the attributes of the element.
+     * @param digestValue the digest of the referenced element.
+     * @return the element as XML.
+     */
+    private static String reference(String attributes, String digestValue) {
+        return "<Reference " + attributes + ">"
+            + "<Transforms><Transform Algorithm=\"" + C14N + "\"></Transform></Transforms>"
+            + "<DigestMethod Algorithm=\"" + SHA256 + "\"></DigestMethod>"
+            + "<DigestValue>" + digestValue + "</DigestValue>"
+            + "</Reference>";
+    }
+
+    /**
+     * Signs an element with the stub key.
+     * @param xml the element.
+     * @return the base64 encoded signature.
+     */
+    private String sign(String xml) {
+        try {
+            Signature signature = Signature.getInstance("SHA256withRSA");
+            signature.initSign(this.keyMaterial.getPrivateKey());
+            signature.update(xml.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(signature.sign());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the base64 encoded SHA-256 digest of an element.
+     * @param xml the element.
+     * @return the digest.
+     */
+    private static String digest(String xml) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return Base64.getEncoder().encodeToString(digest.digest(xml.getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Base64 encodes a string.
+     * @param value the string.
+     * @return the base64 encoded UTF-8 bytes of the string.
+     */
+    private static String base64(String value) {
+        return Base64.getEncoder().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,147 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.rpstub;
+
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A fault that is injected into a share of the responses of an endpoint.
+ * A fault either responds with an error status and BankID error body, or drops the connection without a response.
+ */
+public final class Fault {
+    private final double probability;
+    private final int status;
+    private final String errorCode;
+    private final String details;
+
+    /**
+     * Creates a fault.
+     * @param probability the probability that a request is hit by the fault, 0.0 - 1.0.
+     * @param status      the http status, or 0 to drop the connection.
+     * @param errorCode   the BankID error code.
+     * @param details     the details of the error.
+     */
+    private Fault(double probability, int status, String errorCode, String details) {
+        if (probability < 0.0 || probability > 1.0) {
+            throw new IllegalArgumentException("Probability must be between 0.0 and 1.0");
+        }
+        this.probability = probability;
+        this.status = status;
+        this.errorCode = errorCode;
+        this.details = details;
+    }
+
+    /**
+     * Responds with an error, e.g. 503 maintenance or 500 internalError.
+     * @param probability the probability that a request is hit by the fault, 0.0 - 1.0.
+     * @param status      the http status.
+     * @param errorCode   the BankID error code, e.g. maintenance.
+     * @param details     the details of the error.
+     * @return the fault.
+     */
+    public static Fault error(double probability, int status, String errorCode, String details) {
+        return new Fault(probability, status, errorCode, details);
+    }
+
+    /**
+     * Closes the connection without a response.
+     * @param probability the probability that a request is hit by the fault, 0.0 - 1.0.
+     * @return the fault.
+     */
+    public static Fault drop(double probability) {
+        return new Fault(probability, 0, null, null);
+    }
+
+    /**
+     * Parses a fault from its textual form, either {@code drop:probability} or
+     * {@code status:errorCode:probability}, e.g. {@code drop:0.01} or {@code 503:maintenance:0.05}.
+     * @param value the textual form.
+     * @return the fault.
+     */
+    public static Fault parse(String value) {
+        String[] parts = value.trim().split(":");
+        try {
+            if (parts.length == 2 && "drop".equals(parts[0].toLowerCase(Locale.ROOT))) {
+                return drop(Double.parseDouble(parts[1]));
+            }
+            if (parts.length == 3) {
+                return error(Double.parseDouble(parts[2]), Integer.parseInt(parts[0]), parts[1], "Injected by the stub");
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid fault: " + value, e);
+        }
+        throw new IllegalArgumentException("Invalid fault: " + value);
+    }
+
+    /**
+     * Rolls the dice for a request.
+     * @return true if the request is hit by the fault.
+     */
+    boolean hits() {
+        return this.probability > 0.0 && ThreadLocalRandom.current().nextDouble() < this.probability;
+    }
+
+    /**
+     * Returns true if the connection is dropped instead of responding.
+     * @return true if the connection is dropped.
+     */
+    public boolean isDrop() {
+        return this.status == 0;
+    }
+
+    /**
+     * Returns the http status of the error response.
+     * @return the http status.
+     */
+    public int getStatus() {
+        return this.status;
+    }
+
+    /**
+     * Returns the BankID error code of the error response.
+     * @return the error code.
+     */
+    public String getErrorCode() {
+        return this.errorCode;
+    }
+
+    /**
+     * Returns the details of the error response.
+     * @return the details.
+     */
+    public String getDetails() {
+        return this.details;
+    }
+}
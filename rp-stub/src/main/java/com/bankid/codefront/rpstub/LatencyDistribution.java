@@ -0,0 +1,131 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.rpstub;
+
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The distribution of the response latency of an endpoint in the stub.
+ */
+@FunctionalInterface
+public interface LatencyDistribution {
+    /** Upper bound of a single sampled latency, keeps a long tail from stalling a test. */
+    long MAX_LATENCY_MILLIS = 60_000;
+
+    /**
+     * Samples the latency of the next response.
+     * @return the latency in milliseconds.
+     */
+    long nextMillis();
+
+    /**
+     * Responds without any added latency.
+     * @return the distribution.
+     */
+    static LatencyDistribution none() {
+        return () -> 0;
+    }
+
+    /**
+     * Responds after a fixed latency.
+     * @param millis the latency in milliseconds.
+     * @return the distribution.
+     */
+    static LatencyDistribution fixed(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Latency must not be negative");
+        }
+        return () -> millis;
+    }
+
+    /**
+     * Responds after a latency that is uniformly distributed between min and max.
+     * @param minMillis the minimum latency in milliseconds.
+     * @param maxMillis the maximum latency in milliseconds.
+     * @return the distribution.
+     */
+    static LatencyDistribution uniform(long minMillis, long maxMillis) {
+        if (minMillis < 0 || maxMillis < minMillis) {
+            throw new IllegalArgumentException("Invalid latency range " + minMillis + "-" + maxMillis);
+        }
+        return () -> ThreadLocalRandom.current().nextLong(minMillis, maxMillis + 1);
+    }
+
+    /**
+     * Responds after a log-normally distributed latency, which resembles the long tail of a real service.
+     * @param medianMillis the median latency in milliseconds.
+     * @param sigma        the standard deviation of the underlying normal distribution, e.g. 0.5.
+     * @return the distribution.
+     */
+    static LatencyDistribution logNormal(double medianMillis, double sigma) {
+        if (medianMillis <= 0 || sigma < 0) {
+            throw new IllegalArgumentException("Invalid log-normal latency " + medianMillis + "," + sigma);
+        }
+        double mu = Math.log(medianMillis);
+        return () -> {
+            double sample = Math.exp(mu + sigma * ThreadLocalRandom.current().nextGaussian());
+            return Math.min(MAX_LATENCY_MILLIS, Math.round(sample));
+        };
+    }
+
+    /**
+     * Parses a distribution from its textual form.
+     * Supported forms are {@code none}, {@code fixed:50}, {@code uniform:20-200} and {@code lognormal:80,0.5}.
+     * @param value the textual form.
+     * @return the distribution.
+     */
+    static LatencyDistribution parse(String value) {
+        String[] parts = value.trim().split(":", 2);
+        String kind = parts[0].toLowerCase(Locale.ROOT);
+        try {
+            switch (kind) {
+                case "none":
+                    return none();
+                case "fixed":
+                    return fixed(Long.parseLong(parts[1].trim()));
+                case "uniform":
+                    String[] range = parts[1].split("-", 2);
+                    return uniform(Long.parseLong(range[0].trim()), Long.parseLong(range[1].trim()));
+                case "lognormal":
+                    String[] params = parts[1].split(",", 2);
+                    return logNormal(Double.parseDouble(params[0].trim()), Double.parseDouble(params[1].trim()));
+                default:
+                    throw new IllegalArgumentException("Unknown latency distribution: " + value);
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid latency distribution: " + value, e);
+        }
+    }
+}
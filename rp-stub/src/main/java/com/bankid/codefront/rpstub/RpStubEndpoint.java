@@ -0,0 +1,76 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.rpstub;
+
+/**
+ * The endpoints of the BankID Relying Party API v6.0 that are served by the stub.
+ */
+public enum RpStubEndpoint {
+    AUTH("auth"),
+    SIGN("sign"),
+    COLLECT("collect"),
+    CANCEL("cancel");
+
+    private final String path;
+
+    /**
+     * Creates an endpoint.
+     * @param path the path of the endpoint relative to the api base path.
+     */
+    RpStubEndpoint(String path) {
+        this.path = path;
+    }
+
+    /**
+     * Returns the path of the endpoint relative to the api base path.
+     * @return the path.
+     */
+    public String getPath() {
+        return this.path;
+    }
+
+    /**
+     * Returns the endpoint with the given path.
+     * @param path the path relative to the api base path.
+     * @return the endpoint or null if there is no such endpoint.
+     */
+    public static RpStubEndpoint fromPath(String path) {
+        for (RpStubEndpoint endpoint : values()) {
+            if (endpoint.path.equals(path)) {
+                return endpoint;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,598 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.rpstub;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsParameters;
+import com.sun.net.httpserver.HttpsServer;
+
+import javax.net.ssl.SSLParameters;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A local stand-in for the BankID Relying Party API v6.0.
+ *
+ * <p>The stub serves auth, sign, collect and cancel over TLS and requires a client certificate, like the real API.
+ * The status and hintCode returned by collect follow a {@link Scenario}, every endpoint can be given a
+ * {@link LatencyDistribution} and a {@link Fault}, and completed orders return completionData with a signature XML.
+ * Point {@code app.bankid.relying-party.url} at {@link #getUrl()} and trust the stub with
+ * {@code certificates/stub/truststore.p12}.
+ *
+ * <p>Run it standalone with {@code mvn -pl rp-stub compile exec:java}, optionally with the system properties
+ * {@code rpstub.scenario}, {@code rpstub.latency}, {@code rpstub.latency.<endpoint>} and
+ * {@code rpstub.fault.<endpoint>}, e.g. {@code -Drpstub.latency.collect=lognormal:80,0.5}.
+ */
+public class RpStubServer implements AutoCloseable {
+    /** The base path of the api. */
+    public static final String BASE_PATH = "/rp/v6.0";
+
+    private static final Logger LOGGER = Logger.getLogger(RpStubServer.class.getName());
+    private static final int DEFAULT_PORT = 8444;
+    private static final Duration DEFAULT_ORDER_TTL = Duration.ofMinutes(3);
+    private static final long PURGE_INTERVAL_SECONDS = 30;
+    private static final int STATUS_OK = 200;
+    private static final int STATUS_BAD_REQUEST = 400;
+    private static final int STATUS_NOT_FOUND = 404;
+    private static final int STATUS_METHOD_NOT_ALLOWED = 405;
+    private static final int STATUS_UNSUPPORTED_MEDIA_TYPE = 415;
+
+    private final int requestedPort;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final CompletionDataFactory completionDataFactory;
+    private final StubKeyMaterial keyMaterial;
+    private final Map<String, StubOrder> orders = new ConcurrentHashMap<>();
+    private final Queue<Scenario> scriptedScenarios = new ConcurrentLinkedQueue<>();
+    private final Map<RpStubEndpoint, LatencyDistribution> latencies = new ConcurrentHashMap<>();
+    private final Map<RpStubEndpoint, Fault> faults = new ConcurrentHashMap<>();
+    private final Map<RpStubEndpoint, LongAdder> requestCounts = new EnumMap<>(RpStubEndpoint.class);
+
+    private volatile Scenario scenario = Scenario.COMPLETE;
+    private volatile Duration orderTtl = DEFAULT_ORDER_TTL;
+    private HttpsServer server;
+    private ExecutorService executor;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Creates a stub that listens on a port of localhost when started.
+     * @param port the port, or 0 to pick a free port.
+     */
+    public RpStubServer(int port) {
+        this.requestedPort = port;
+        this.keyMaterial = new StubKeyMaterial();
+        this.completionDataFactory = new CompletionDataFactory(this.keyMaterial);
+        for (RpStubEndpoint endpoint : RpStubEndpoint.values()) {
+            this.requestCounts.put(endpoint, new LongAdder());
+        }
+    }
+
+    /**
+     * Starts the stub from the command line.
+     * @param args the port to listen on, default 8444.
+     */
+    public static void main(String[] args) throws IOException {
+        RpStubServer stub = new RpStubServer(args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT);
+
+        String scenario = System.getProperty("rpstub.scenario");
+        if (scenario != null) {
+            stub.setScenario(Scenario.parse(scenario));
+        }
+        String latency = System.getProperty("rpstub.latency");
+        if (latency != null) {
+            stub.setLatency(LatencyDistribution.parse(latency));
+        }
+        for (RpStubEndpoint endpoint : RpStubEndpoint.values()) {
+            String endpointLatency = System.getProperty("rpstub.latency." + endpoint.getPath());
+            if (endpointLatency != null) {
+                stub.setLatency(endpoint, LatencyDistribution.parse(endpointLatency));
+            }
+            String fault = System.getProperty("rpstub.fault." + endpoint.getPath());
+            if (fault != null) {
+                stub.setFault(endpoint, Fault.parse(fault));
+            }
+        }
+
+        stub.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(stub::close));
+        LOGGER.info("BankID RP stub listening on " + stub.getUrl());
+    }
+
+    /**
+     * Starts listening.
+     */
+    public synchronized void start() throws IOException {
+        if (this.server != null) {
+            throw new IllegalStateException("Already started");
+        }
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        this.executor = Executors.newFixedThreadPool(threads, daemonThreads("rp-stub-http"));
+        this.scheduler = Executors.newScheduledThreadPool(threads, daemonThreads("rp-stub-delay"));
+
+        this.server = HttpsServer.create(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), this.requestedPort), 0);
+        this.server.setHttpsConfigurator(new HttpsConfigurator(this.keyMaterial.getSslContext()) {
+            @Override
+            public void configure(HttpsParameters params) {
+                SSLParameters parameters = getSSLContext().getDefaultSSLParameters();
+                parameters.setNeedClientAuth(true);
+                params.setSSLParameters(parameters);
+            }
+        });
+        this.server.setExecutor(this.executor);
+        this.server.createContext(BASE_PATH + "/", this::handle);
+        this.server.start();
+
+        this.scheduler.scheduleAtFixedRate(
+            this::purgeExpiredOrders, PURGE_INTERVAL_SECONDS, PURGE_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops listening and drops all orders.
+     */
+    @Override
+    public synchronized void close() {
+        if (this.server == null) {
+            return;
+        }
+        this.server.stop(0);
+        this.scheduler.shutdownNow();
+        this.executor.shutdownNow();
+        this.server = null;
+        this.orders.clear();
+    }
+
+    /**
+     * Returns the port the stub listens on.
+     * @return the port.
+     */
+    public int getPort() {
+        if (this.server == null) {
+            throw new IllegalStateException("Not started");
+        }
+        return this.server.getAddress().getPort();
+    }
+
+    /**
+     * Returns the url to configure as {@code app.bankid.relying-party.url}.
+     * @return the url of the api.
+     */
+    public String getUrl() {
+        return "https://localhost:" + getPort() + BASE_PATH;
+    }
+
+    /**
+     * Sets the scenario of orders that are started later and have no scripted scenario.
+     * @param scenario the scenario, default {@link Scenario#COMPLETE}.
+     */
+    public void setScenario(Scenario scenario) {
+        this.scenario = scenario;
+    }
+
+    /**
+     * Queues a scenario for a single order. Orders take queued scenarios in start order before the default.
+     * @param scenario the scenario of the next started order.
+     */
+    public void addScriptedScenario(Scenario scenario) {
+        this.scriptedScenarios.add(scenario);
+    }
+
+    /**
+     * Sets the latency of all endpoints.
+     * @param latency the latency distribution.
+     */
+    public void setLatency(LatencyDistribution latency) {
+        for (RpStubEndpoint endpoint : RpStubEndpoint.values()) {
+            setLatency(endpoint, latency);
+        }
+    }
+
+    /**
+     * Sets the latency of an endpoint.
+     * @param endpoint the endpoint.
+     * @param latency  the latency distribution.
+     */
+    public void setLatency(RpStubEndpoint endpoint, LatencyDistribution latency) {
+        this.latencies.put(endpoint, latency);
+    }
+
+    /**
+     * Injects a fault into an endpoint.
+     * @param endpoint the endpoint.
+     * @param fault    the fault, or null to remove the fault.
+     */
+    public void setFault(RpStubEndpoint endpoint, Fault fault) {
+        if (fault == null) {
+            this.faults.remove(endpoint);
+        } else {
+            this.faults.put(endpoint, fault);
+        }
+    }
+
+    /**
+     * Sets how long orders are kept after they were started.
+     * @param orderTtl the time to live, default 3 minutes.
+     */
+    public void setOrderTtl(Duration orderTtl) {
+        this.orderTtl = orderTtl;
+    }
+
+    /**
+     * Returns the number of requests received by an endpoint.
+     * @param endpoint the endpoint.
+     * @return the number of requests.
+     */
+    public long getRequestCount(RpStubEndpoint endpoint) {
+        return this.requestCounts.get(endpoint).sum();
+    }
+
+    /**
+     * Returns the number of orders kept by the stub.
+     * @return the number of orders.
+     */
+    public int getOrderCount() {
+        return this.orders.size();
+    }
+
+    /**
+     * Handles a request to the api.
+     * @param exchange the request and response.
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath().substring(BASE_PATH.length() + 1);
+        RpStubEndpoint endpoint = RpStubEndpoint.fromPath(path);
+        if (endpoint == null) {
+            send(exchange, STATUS_NOT_FOUND, null);
+            return;
+        }
+        this.requestCounts.get(endpoint).increment();
+
+        byte[] body;
+        try (InputStream in = exchange.getRequestBody()) {
+            body = in.readAllBytes();
+        }
+
+        Fault fault = this.faults.get(endpoint);
+        Response response;
+        if (fault != null && fault.hits()) {
+            response = fault.isDrop() ? null : error(fault.getStatus(), fault.getErrorCode(), fault.getDetails());
+        } else {
+            response = respond(endpoint, exchange, body);
+        }
+
+        long delay = this.latencies.getOrDefault(endpoint, LatencyDistribution.none()).nextMillis();
+        if (delay <= 0) {
+            complete(exchange, response);
+        } else {
+            this.scheduler.schedule(() -> complete(exchange, response), delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Creates the response to a request.
+     * @param endpoint the endpoint.
+     * @param exchange the request.
+     * @param body     the request body.
+     * @return the response.
+     */
+    private Response respond(RpStubEndpoint endpoint, HttpExchange exchange, byte[] body) {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            return new Response(STATUS_METHOD_NOT_ALLOWED, null);
+        }
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        if (contentType == null || !contentType.toLowerCase(Locale.ROOT).startsWith("application/json")) {
+            return new Response(STATUS_UNSUPPORTED_MEDIA_TYPE, null);
+        }
+
+        JsonNode request;
+        try {
+            request = this.mapper.readTree(body);
+        } catch (IOException e) {
+            return invalidParameters("Invalid JSON");
+        }
+        if (request == null || !request.isObject()) {
+            return invalidParameters("Invalid JSON");
+        }
+
+        switch (endpoint) {
+            case AUTH:
+                return start(request, "Identification");
+            case SIGN:
+                if (text(request, "userVisibleData") == null) {
+                    return invalidParameters("Invalid userVisibleData");
+                }
+                return start(request, "Signing");
+            case COLLECT:
+                return collect(request);
+            case CANCEL:
+                return cancel(request);
+            default:
+                throw new IllegalStateException("Unknown endpoint " + endpoint);
+        }
+    }
+
+    /**
+     * Starts an order.
+     * @param request the auth or sign request.
+     * @param funcId  Identification or Signing.
+     * @return the response.
+     */
+    private Response start(JsonNode request, String funcId) {
+        String endUserIp = text(request, "endUserIp");
+        if (endUserIp == null || endUserIp.isBlank()) {
+            return invalidParameters("Invalid endUserIp");
+        }
+        String userVisibleData = text(request, "userVisibleData");
+        if (!isBase64(userVisibleData)) {
+            return invalidParameters("Invalid userVisibleData");
+        }
+        String userNonVisibleData = text(request, "userNonVisibleData");
+        if (!isBase64(userNonVisibleData)) {
+            return invalidParameters("Invalid userNonVisibleData");
+        }
+
+        Scenario orderScenario = this.scriptedScenarios.poll();
+        StubOrder order = new StubOrder(
+            UUID.randomUUID().toString(),
+            funcId,
+            endUserIp,
+            userVisibleData,
+            userNonVisibleData,
+            request.path("returnRisk").asBoolean(false),
+            orderScenario != null ? orderScenario : this.scenario);
+        this.orders.put(order.getOrderRef(), order);
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("orderRef", order.getOrderRef());
+        response.put("autoStartToken", UUID.randomUUID().toString());
+        response.put("qrStartToken", UUID.randomUUID().toString());
+        response.put("qrStartSecret", UUID.randomUUID().toString());
+        return json(STATUS_OK, response);
+    }
+
+    /**
+     * Collects the status of an order and advances it one step in its scenario.
+     * @param request the collect request.
+     * @return the response.
+     */
+    private Response collect(JsonNode request) {
+        StubOrder order = findOrder(request);
+        if (order == null) {
+            return invalidParameters("No such order");
+        }
+
+        Scenario.Step step = order.collect();
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("orderRef", order.getOrderRef());
+        response.put("status", step.getStatus());
+        if (step.getHintCode() != null) {
+            response.put("hintCode", step.getHintCode());
+        }
+        if ("complete".equals(step.getStatus())) {
+            response.put("completionData", this.completionDataFactory.create(order));
+        }
+        return json(STATUS_OK, response);
+    }
+
+    /**
+     * Cancels an order.
+     * @param request the cancel request.
+     * @return the response.
+     */
+    private Response cancel(JsonNode request) {
+        String orderRef = text(request, "orderRef");
+        if (orderRef == null || this.orders.remove(orderRef) == null) {
+            return invalidParameters("No such order");
+        }
+        return json(STATUS_OK, Map.of());
+    }
+
+    /**
+     * Finds the order of a request.
+     * @param request the request.
+     * @return the order or null.
+     */
+    private StubOrder findOrder(JsonNode request) {
+        String orderRef = text(request, "orderRef");
+        return orderRef == null ? null : this.orders.get(orderRef);
+    }
+
+    /**
+     * Drops orders that are older than the order time to live.
+     */
+    private void purgeExpiredOrders() {
+        long oldest = System.nanoTime() - this.orderTtl.toNanos();
+        this.orders.values().removeIf(order -> order.getCreatedNanos() - oldest < 0);
+    }
+
+    /**
+     * Creates an invalidParameters error response.
+     * @param details the details of the error.
+     * @return the response.
+     */
+    private Response invalidParameters(String details) {
+        return error(STATUS_BAD_REQUEST, "invalidParameters", details);
+    }
+
+    /**
+     * Creates an error response.
+     * @param status    the http status.
+     * @param errorCode the BankID error code.
+     * @param details   the details of the error.
+     * @return the response.
+     */
+    private Response error(int status, String errorCode, String details) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("errorCode", errorCode);
+        response.put("details", details);
+        return json(status, response);
+    }
+
+    /**
+     * Creates a json response.
+     * @param status the http status.
+     * @param body   the json tree.
+     * @return the response.
+     */
+    private Response json(int status, Object body) {
+        try {
+            return new Response(status, this.mapper.writeValueAsBytes(body));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Sends a response, or drops the connection if there is no response.
+     * @param exchange the request and response.
+     * @param response the response or null.
+     */
+    private static void complete(HttpExchange exchange, Response response) {
+        try {
+            if (response == null) {
+                // Closing before the response headers are sent closes the connection.
+                exchange.close();
+            } else {
+                send(exchange, response.status, response.body);
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.FINE, "Failed to send the response", e);
+            exchange.close();
+        }
+    }
+
+    /**
+     * Sends a response.
+     * @param exchange the request and response.
+     * @param status   the http status.
+     * @param body     the json body or null.
+     */
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Returns a text field of a request.
+     * @param request the request.
+     * @param field   the name of the field.
+     * @return the text or null if the field is missing.
+     */
+    private static String text(JsonNode request, String field) {
+        JsonNode node = request.get(field);
+        return node == null || node.isNull() ? null : node.asText();
+    }
+
+    /**
+     * Checks that an optional value is base64 encoded.
+     * @param value the value or null.
+     * @return true if the value is null or base64 encoded.
+     */
+    private static boolean isBase64(String value) {
+        if (value == null) {
+            return true;
+        }
+        try {
+            Base64.getDecoder().decode(value);
+            return !value.isEmpty();
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Creates a factory of daemon threads, so a forgotten stub does not keep a test jvm alive.
+     * @param name the name prefix of the threads.
+     * @return the thread factory.
+     */
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * A response to send.
+     */
+    private static final class Response {
+        private final int status;
+        private final byte[] body;
+
+        /**
+         * Creates a response.
+         * @param status the http status.
+         * @param body   the json body or null.
+         */
+        Response(int status, byte[] body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.rpstub;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A scripted progression of the status and hintCode returned by collect for an order.
+ * Each step is returned for a number of collect calls; the last step is returned for all following calls.
+ *
+ * <p>A scenario can be written as text, e.g.
+ * {@code pending:outstandingTransaction*3,pending:userSign*2,complete} or {@code pending:started,failed:userCancel}.
+ */
+public final class Scenario {
+    /** The user opens the app, signs and the order completes. */
+    public static final Scenario COMPLETE = parse("pending:outstandingTransaction*2,pending:userSign*2,complete");
+
+    /** The user cancels in the app. */
+    public static final Scenario USER_CANCEL = parse("pending:outstandingTransaction,pending:userSign,failed:userCancel");
+
+    /** The user never starts the app and the order expires. */
+    public static final Scenario EXPIRED = parse("pending:outstandingTransaction*5,failed:expiredTransaction");
+
+    private final List<Step> steps;
+
+    /**
+     * Creates a scenario.
+     * @param steps the steps, the last one must be complete or failed.
+     */
+    public Scenario(List<Step> steps) {
+        if (steps.isEmpty()) {
+            throw new IllegalArgumentException("A scenario needs at least one step");
+        }
+        if ("pending".equals(steps.get(steps.size() - 1).getStatus())) {
+            throw new IllegalArgumentException("The last step of a scenario must be complete or failed");
+        }
+        this.steps = Collections.unmodifiableList(new ArrayList<>(steps));
+    }
+
+    /**
+     * Parses a scenario from its textual form, a comma separated list of {@code status[:hintCode][*collects]}.
+     * @param value the textual form.
+     * @return the scenario.
+     */
+    public static Scenario parse(String value) {
+        List<Step> steps = new ArrayList<>();
+        for (String part : value.split(",")) {
+            String step = part.trim();
+            int collects = 1;
+            int star = step.indexOf('*');
+            if (star >= 0) {
+                collects = Integer.parseInt(step.substring(star + 1).trim());
+                step = step.substring(0, star).trim();
+            }
+            int colon = step.indexOf(':');
+            String status = colon >= 0 ? step.substring(0, colon) : step;
+            String hintCode = colon >= 0 ? step.substring(colon + 1) : null;
+            steps.add(new Step(status, hintCode, collects));
+        }
+        return new Scenario(steps);
+    }
+
+    /**
+     * Returns the step for a collect call.
+     * @param collectNumber the number of the collect call for the order, starting at 0.
+     * @return the step.
+     */
+    public Step stepAt(int collectNumber) {
+        int remaining = collectNumber;
+        for (Step step : this.steps) {
+            if (remaining < step.getCollects()) {
+                return step;
+            }
+            remaining -= step.getCollects();
+        }
+        return this.steps.get(this.steps.size() - 1);
+    }
+
+    /**
+     * Returns the steps of the scenario.
+     * @return the steps.
+     */
+    public List<Step> getSteps() {
+        return this.steps;
+    }
+
+    /**
+     * One step of a scenario.
+     */
+    public static final class Step {
+        private final String status;
+        private final String hintCode;
+        private final int collects;
+
+        /**
+         * Creates a step.
+         * @param status   the status, pending, complete or failed.
+         * @param hintCode the hintCode, null for complete.
+         * @param collects the number of collect calls the step is returned for.
+         */
+        public Step(String status, String hintCode, int collects) {
+            if (!"pending".equals(status) && !"complete".equals(status) && !"failed".equals(status)) {
+                throw new IllegalArgumentException("Unknown status: " + status);
+            }
+            if (collects < 1) {
+                throw new IllegalArgumentException("A step must be returned for at least one collect");
+            }
+            this.status = status;
+            this.hintCode = hintCode;
+            this.collects = collects;
+        }
+
+        /**
+         * Returns the status.
+         * @return the status.
+         */
+        public String getStatus() {
+            return this.status;
+        }
+
+        /**
+         * Returns the hintCode.
+         * @return the hintCode or null.
+         */
+        public String getHintCode() {
+            return this.hintCode;
+        }
+
+        /**
+         * Returns the number of collect calls the step is returned for.
+         * @return the number of collect calls.
+         */
+        public int getCollects() {
+            return this.collects;
+        }
+    }
+}
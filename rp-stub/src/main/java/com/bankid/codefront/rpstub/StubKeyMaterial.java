@@ -0,0 +1,149 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.rpstub;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+
+/**
+ * The key and certificate of the stub, used both for TLS and for signing the signature XML.
+ * The certificate is self-signed for localhost; clients trust it with {@code certificates/stub/truststore.p12}.
+ */
+final class StubKeyMaterial {
+    private static final String KEY_STORE = "/rp-stub.p12";
+    private static final String ALIAS = "rp-stub";
+    private static final char[] PASSWORD = "qwerty123".toCharArray();
+
+    private final PrivateKey privateKey;
+    private final X509Certificate certificate;
+    private final SSLContext sslContext;
+
+    /**
+     * Loads the key material from the classpath.
+     */
+    StubKeyMaterial() {
+        try (InputStream in = StubKeyMaterial.class.getResourceAsStream(KEY_STORE)) {
+            if (in == null) {
+                throw new IllegalStateException("Missing key store " + KEY_STORE);
+            }
+            KeyStore keyStore = KeyStore.getInstance("PKCS12");
+            keyStore.load(in, PASSWORD);
+
+            this.privateKey = (PrivateKey) keyStore.getKey(ALIAS, PASSWORD);
+            this.certificate = (X509Certificate) keyStore.getCertificate(ALIAS);
+
+            KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(
+                KeyManagerFactory.getDefaultAlgorithm());
+            keyManagerFactory.init(keyStore, PASSWORD);
+
+            this.sslContext = SSLContext.getInstance("TLS");
+            this.sslContext.init(
+                keyManagerFactory.getKeyManagers(),
+                new TrustManager[] {new AnyClientCertificateTrustManager()},
+                null);
+        } catch (IOException | GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to load the stub key material", e);
+        }
+    }
+
+    /**
+     * Returns the private key.
+     * @return the private key.
+     */
+    PrivateKey getPrivateKey() {
+        return this.privateKey;
+    }
+
+    /**
+     * Returns the certificate.
+     * @return the certificate.
+     */
+    X509Certificate getCertificate() {
+        return this.certificate;
+    }
+
+    /**
+     * Returns the ssl context of the server.
+     * @return the ssl context.
+     */
+    SSLContext getSslContext() {
+        return this.sslContext;
+    }
+
+    /**
+     * Requires that the client presents a certificate, like the real RP API, but accepts any certificate.
+     * The stub has no relying party agreements to look the certificate up in.
+     */
+    private static final class AnyClientCertificateTrustManager implements X509TrustManager {
+        /**
+         * Accepts any non-empty client certificate chain.
+         * @param chain    the client certificate chain.
+         * @param authType the authentication type.
+         */
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+            if (chain == null || chain.length == 0) {
+                throw new CertificateException("No client certificate");
+            }
+        }
+
+        /**
+         * Never used, the stub is not a client.
+         * @param chain    the server certificate chain.
+         * @param authType the authentication type.
+         */
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+            throw new CertificateException("The stub does not trust any server");
+        }
+
+        /**
+         * Returns no issuers, which lets the client present a certificate from any issuer.
+         * @return an empty array.
+         */
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return new X509Certificate[0];
+        }
+    }
+}
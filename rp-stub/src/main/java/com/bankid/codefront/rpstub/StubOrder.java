@@ -0,0 +1,143 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.rpstub;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An order started in the stub.
+ */
+final class StubOrder {
+    private final String orderRef;
+    private final String funcId;
+    private final String endUserIp;
+    private final String userVisibleData;
+    private final String userNonVisibleData;
+    private final boolean returnRisk;
+    private final Scenario scenario;
+    private final long createdNanos;
+    private final AtomicInteger collects = new AtomicInteger();
+
+    /**
+     * Creates an order.
+     * @param orderRef           the order reference.
+     * @param funcId             Identification or Signing.
+     * @param endUserIp          the ip address of the end user.
+     * @param userVisibleData    the base64 encoded user visible data, or null.
+     * @param userNonVisibleData the base64 encoded user non-visible data, or null.
+     * @param returnRisk         true if the risk should be returned.
+     * @param scenario           the progression of the order.
+     */
+    StubOrder(
+        String orderRef,
+        String funcId,
+        String endUserIp,
+        String userVisibleData,
+        String userNonVisibleData,
+        boolean returnRisk,
+        Scenario scenario) {
+        this.orderRef = orderRef;
+        this.funcId = funcId;
+        this.endUserIp = endUserIp;
+        this.userVisibleData = userVisibleData;
+        this.userNonVisibleData = userNonVisibleData;
+        this.returnRisk = returnRisk;
+        this.scenario = scenario;
+        this.createdNanos = System.nanoTime();
+    }
+
+    /**
+     * Advances the order one collect call.
+     * @return the step to respond with.
+     */
+    Scenario.Step collect() {
+        return this.scenario.stepAt(this.collects.getAndIncrement());
+    }
+
+    /**
+     * Returns the order reference.
+     * @return the order reference.
+     */
+    String getOrderRef() {
+        return this.orderRef;
+    }
+
+    /**
+     * Returns the signature usage, Identification or Signing.
+     * @return the signature usage.
+     */
+    String getFuncId() {
+        return this.funcId;
+    }
+
+    /**
+     * Returns the ip address of the end user.
+     * @return the ip address.
+     */
+    String getEndUserIp() {
+        return this.endUserIp;
+    }
+
+    /**
+     * Returns the base64 encoded user visible data.
+     * @return the user visible data or null.
+     */
+    String getUserVisibleData() {
+        return this.userVisibleData;
+    }
+
+    /**
+     * Returns the base64 encoded user non-visible data.
+     * @return the user non-visible data or null.
+     */
+    String getUserNonVisibleData() {
+        return this.userNonVisibleData;
+    }
+
+    /**
+     * Returns true if the risk should be returned.
+     * @return true if the risk should be returned.
+     */
+    boolean isReturnRisk() {
+        return this.returnRisk;
+    }
+
+    /**
+     * Returns the time when the order was started.
+     * @return the time in nanoseconds, see {@link System#nanoTime()}.
+     */
+    long getCreatedNanos() {
+        return this.createdNanos;
+    }
+}
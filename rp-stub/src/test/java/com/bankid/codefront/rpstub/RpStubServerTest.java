@@ -0,0 +1,217 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.rpstub;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
+import java.util.Base64;
+
+/**
+ * Test the stub over mTLS.
+ */
+@SuppressWarnings("checkstyle:magicnumber")
+public class RpStubServerTest {
+    private static final char[] PASSWORD = "qwerty123".toCharArray();
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private RpStubServer stub;
+
+    /**
+     * Starts the stub on a free port.
+     */
+    @BeforeEach
+    public void start() throws IOException {
+        this.stub = new RpStubServer(0);
+        this.stub.start();
+    }
+
+    /**
+     * Stops the stub.
+     */
+    @AfterEach
+    public void stop() {
+        this.stub.close();
+    }
+
+    /**
+     * A sign order follows the scenario and completes with a signature of the signed data.
+     */
+    @Test
+    public void signAndCollect() throws Exception {
+        this.stub.addScriptedScenario(Scenario.parse("pending:outstandingTransaction,pending:userSign,complete"));
+        HttpClient client = client(true);
+
+        JsonNode start = json(post(client, "sign",
+            "{\"endUserIp\":\"127.0.0.1\",\"userVisibleData\":\"c2lnbmVyYQ==\",\"userNonVisibleData\":\"aGVq\"}"));
+        String orderRef = start.get("orderRef").asText();
+        Assertions.assertNotNull(start.get("qrStartSecret"));
+
+        String collect = "{\"orderRef\":\"" + orderRef + "\"}";
+        Assertions.assertEquals("outstandingTransaction", json(post(client, "collect", collect)).get("hintCode").asText());
+        Assertions.assertEquals("userSign", json(post(client, "collect", collect)).get("hintCode").asText());
+
+        JsonNode complete = json(post(client, "collect", collect));
+        Assertions.assertEquals("complete", complete.get("status").asText());
+        JsonNode completionData = complete.get("completionData");
+        Assertions.assertEquals("191212121212", completionData.get("user").get("personalNumber").asText());
+        Assertions.assertEquals("127.0.0.1", completionData.get("device").get("ipAddress").asText());
+
+        String signature = new String(
+            Base64.getDecoder().decode(completionData.get("signature").asText()), StandardCharsets.UTF_8);
+        Assertions.assertTrue(signature.contains("<funcId>Signing</funcId>"));
+        Assertions.assertTrue(signature.contains(">c2lnbmVyYQ==</usrVisibleData>"));
+        Assertions.assertTrue(signature.contains("<usrNonVisibleData>aGVq</usrNonVisibleData>"));
+
+        Assertions.assertEquals(200, post(client, "cancel", collect).statusCode());
+        HttpResponse<String> gone = post(client, "collect", collect);
+        Assertions.assertEquals(400, gone.statusCode());
+        Assertions.assertEquals("invalidParameters", json(gone).get("errorCode").asText());
+        Assertions.assertEquals(4, this.stub.getRequestCount(RpStubEndpoint.COLLECT));
+    }
+
+    /**
+     * Invalid requests are answered like the real api.
+     */
+    @Test
+    public void invalidRequests() throws Exception {
+        HttpClient client = client(true);
+
+        Assertions.assertEquals(400, post(client, "auth", "{}").statusCode());
+        Assertions.assertEquals(400, post(client, "sign", "{\"endUserIp\":\"127.0.0.1\"}").statusCode());
+        Assertions.assertEquals(400, post(client, "auth", "not json").statusCode());
+        Assertions.assertEquals(404, post(client, "phone/auth", "{}").statusCode());
+
+        HttpResponse<String> get = client.send(
+            HttpRequest.newBuilder(URI.create(this.stub.getUrl() + "/auth")).GET().build(),
+            HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(405, get.statusCode());
+    }
+
+    /**
+     * Injected faults answer with the error or drop the connection, and latency delays the response.
+     */
+    @Test
+    public void faultsAndLatency() throws Exception {
+        HttpClient client = client(true);
+        String auth = "{\"endUserIp\":\"127.0.0.1\"}";
+
+        this.stub.setFault(RpStubEndpoint.AUTH, Fault.error(1.0, 503, "maintenance", "Down"));
+        HttpResponse<String> maintenance = post(client, "auth", auth);
+        Assertions.assertEquals(503, maintenance.statusCode());
+        Assertions.assertEquals("maintenance", json(maintenance).get("errorCode").asText());
+
+        this.stub.setFault(RpStubEndpoint.AUTH, Fault.drop(1.0));
+        Assertions.assertThrows(IOException.class, () -> post(client, "auth", auth));
+
+        this.stub.setFault(RpStubEndpoint.AUTH, null);
+        this.stub.setLatency(RpStubEndpoint.AUTH, LatencyDistribution.fixed(200));
+        long start = System.nanoTime();
+        Assertions.assertEquals(200, post(client, "auth", auth).statusCode());
+        Assertions.assertTrue(System.nanoTime() - start >= 200_000_000L);
+    }
+
+    /**
+     * Clients without a certificate are rejected in the handshake.
+     */
+    @Test
+    public void requireClientCertificate() throws Exception {
+        HttpClient client = client(false);
+
+        Assertions.assertThrows(IOException.class, () -> post(client, "auth", "{\"endUserIp\":\"127.0.0.1\"}"));
+    }
+
+    /**
+     * Posts a request to the stub.
+     * @param client   the client.
+     * @param endpoint the endpoint path.
+     * @param body     the json body.
+     * @return the response.
+     */
+    private HttpResponse<String> post(HttpClient client, String endpoint, String body) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(this.stub.getUrl() + "/" + endpoint))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(body))
+            .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Parses a json response.
+     * @param response the response.
+     * @return the json tree.
+     */
+    private JsonNode json(HttpResponse<String> response) throws IOException {
+        return this.mapper.readTree(response.body());
+    }
+
+    /**
+     * Creates a client that trusts the stub, using the stub key as client certificate.
+     * @param withClientCertificate true to present a client certificate.
+     * @return the client.
+     */
+    private static HttpClient client(boolean withClientCertificate) throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream in = RpStubServerTest.class.getResourceAsStream("/rp-stub.p12")) {
+            keyStore.load(in, PASSWORD);
+        }
+        TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(
+            TrustManagerFactory.getDefaultAlgorithm());
+        trustManagerFactory.init(keyStore);
+        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(keyStore, PASSWORD);
+
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(
+            withClientCertificate ? keyManagerFactory.getKeyManagers() : null,
+            trustManagerFactory.getTrustManagers(),
+            null);
+        return HttpClient.newBuilder().sslContext(sslContext).build();
+    }
+}
@@ -0,0 +1,93 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.rpstub;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the scripted collect progressions.
+ */
+@SuppressWarnings("checkstyle:magicnumber")
+public class ScenarioTest {
+
+    /**
+     * Each step is returned for its number of collects and the last step is repeated.
+     */
+    @Test
+    public void parseAndProgress() {
+        Scenario scenario = Scenario.parse("pending:outstandingTransaction*2, pending:userSign, failed:userCancel");
+
+        Assertions.assertEquals(3, scenario.getSteps().size());
+        Assertions.assertEquals("outstandingTransaction", scenario.stepAt(0).getHintCode());
+        Assertions.assertEquals("outstandingTransaction", scenario.stepAt(1).getHintCode());
+        Assertions.assertEquals("userSign", scenario.stepAt(2).getHintCode());
+        Assertions.assertEquals("failed", scenario.stepAt(3).getStatus());
+        Assertions.assertEquals("userCancel", scenario.stepAt(10).getHintCode());
+    }
+
+    /**
+     * A complete step has no hintCode.
+     */
+    @Test
+    public void complete() {
+        Scenario scenario = Scenario.parse("complete");
+
+        Assertions.assertEquals("complete", scenario.stepAt(0).getStatus());
+        Assertions.assertNull(scenario.stepAt(0).getHintCode());
+    }
+
+    /**
+     * Scenarios that never end and unknown statuses are rejected.
+     */
+    @Test
+    public void invalid() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Scenario.parse("pending:userSign"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Scenario.parse("done"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Scenario.parse("complete*0"));
+    }
+
+    /**
+     * Latency distributions are parsed from their textual form.
+     */
+    @Test
+    public void parseLatency() {
+        Assertions.assertEquals(0, LatencyDistribution.parse("none").nextMillis());
+        Assertions.assertEquals(50, LatencyDistribution.parse("fixed:50").nextMillis());
+        long uniform = LatencyDistribution.parse("uniform:20-30").nextMillis();
+        Assertions.assertTrue(uniform >= 20 && uniform <= 30);
+        Assertions.assertTrue(LatencyDistribution.parse("lognormal:80,0.5").nextMillis() >= 0);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> LatencyDistribution.parse("uniform:30"));
+    }
+}
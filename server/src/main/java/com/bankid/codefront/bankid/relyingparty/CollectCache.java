@@ -0,0 +1,194 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.bankid.relyingparty;
+
+import com.bankid.codefront.bankid.relyingparty.metrics.RpApiMetrics;
+import com.bankid.codefront.config.BankIDRelyingPartyConfig;
+import com.bankid.codefront.config.RpCollectCacheConfig;
+import com.bankid.codefront.models.bankid.relyingparty.CollectResponse;
+import com.bankid.codefront.service.TimingWheel;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Node local cache of collect responses in front of the calls to RP.
+ * Collects of the same order that arrive together, e.g. from retries, two tabs or SSE and polling, share one call
+ * to RP, and a successful response is reused for a short time. Failed calls are not cached.
+ *
+ * <p>A cached response is dropped by a timer on the timing wheel when it expires, so completed responses with
+ * the personal data of the user are not kept after the ttl. When the cache is full, expired orders are dropped
+ * as well. If it is still full, collects of new orders call RP without being cached.
+ */
+@Component
+public class CollectCache {
+    private final RpCollectCacheConfig config;
+    private final RpApiMetrics metrics;
+    private final TimingWheel timingWheel;
+    private final long ttlNanos;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Creates the cache.
+     * @param settings    the BankID RP settings.
+     * @param metrics     the metrics helper.
+     * @param timingWheel the timers that drop expired responses.
+     */
+    public CollectCache(BankIDRelyingPartyConfig settings, RpApiMetrics metrics, TimingWheel timingWheel) {
+        this.config = settings.getCollectCache() == null ? new RpCollectCacheConfig() : settings.getCollectCache();
+        this.metrics = metrics;
+        this.timingWheel = timingWheel;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(this.config.getTtl());
+        metrics.registerCollectCache(this.entries::size);
+    }
+
+    /**
+     * Returns the cached or pending collect of an order, or starts a new one.
+     * @param orderRef the order reference.
+     * @param collect  calls collect in RP.
+     * @return a future with the collect response.
+     */
+    public CompletableFuture<CollectResponse> get(
+        String orderRef,
+        Supplier<CompletableFuture<CollectResponse>> collect) {
+        if (!this.config.isEnabled()) {
+            return collect.get();
+        }
+
+        long now = System.nanoTime();
+        if (this.entries.size() >= this.config.getMaxSize()) {
+            this.entries.values().removeIf(entry -> entry.isExpired(now));
+        }
+
+        Entry created = new Entry();
+        Entry entry = this.entries.compute(orderRef, (key, current) -> {
+            if (current != null && !current.isExpired(now)) {
+                return current;
+            }
+            return this.entries.size() < this.config.getMaxSize() || current != null ? created : null;
+        });
+
+        if (entry == null) {
+            this.metrics.collectCacheMiss();
+            return collect.get();
+        }
+        if (entry != created) {
+            if (entry.future.isDone()) {
+                this.metrics.collectCacheHit();
+            } else {
+                this.metrics.collectCacheCoalesced();
+            }
+            return entry.future.copy();
+        }
+
+        this.metrics.collectCacheMiss();
+        CompletableFuture<CollectResponse> call;
+        try {
+            call = collect.get();
+        } catch (RuntimeException e) {
+            call = CompletableFuture.failedFuture(e);
+        }
+        call.whenComplete((collectResponse, throwable) -> {
+            if (throwable == null && collectResponse != null) {
+                entry.expires = System.nanoTime() + this.ttlNanos;
+                entry.future.complete(collectResponse);
+                this.scheduleEviction(orderRef, entry);
+                return;
+            }
+            // Let the next collect call RP again
+            this.entries.remove(orderRef, entry);
+            if (throwable != null) {
+                entry.future.completeExceptionally(throwable);
+            } else {
+                entry.future.complete(null);
+            }
+        });
+        return entry.future.copy();
+    }
+
+    /**
+     * Drops a cached response from the cache when it expires, unless it has been replaced.
+     * @param orderRef the order reference.
+     * @param entry    the cached collect.
+     */
+    private void scheduleEviction(String orderRef, Entry entry) {
+        try {
+            this.timingWheel.schedule(
+                () -> this.entries.remove(orderRef, entry),
+                this.config.getTtl(),
+                TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Shutting down, the entry is dropped on the next read or when the cache is full.
+            this.entries.remove(orderRef, entry);
+        }
+    }
+
+    /**
+     * Drops the cached collect response of an order, e.g. when it is cancelled.
+     * @param orderRef the order reference.
+     */
+    public void invalidate(String orderRef) {
+        this.entries.remove(orderRef);
+    }
+
+    /**
+     * Returns the number of orders in the cache.
+     * @return the number of orders.
+     */
+    public int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * A pending or completed collect of an order.
+     */
+    private static final class Entry {
+        private final CompletableFuture<CollectResponse> future = new CompletableFuture<>();
+        private volatile long expires;
+
+        /**
+         * Returns if the collect has completed and its response is too old to reuse.
+         * @param now the current nanoTime.
+         * @return true if expired.
+         */
+        boolean isExpired(long now) {
+            return this.future.isDone() && this.expires - now <= 0;
+        }
+    }
+}
@@ -34,6 +34,13 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 package com.bankid.codefront.bankid.relyingparty;
 
 import com.bankid.codefront.bankid.relyingparty.metrics.RpApiMetrics;
+import com.bankid.codefront.bankid.relyingparty.resilience.Bulkheads;
+import com.bankid.codefront.bankid.relyingparty.resilience.CircuitBreakers;
+import com.bankid.codefront.bankid.relyingparty.resilience.CollectHedging;
+import com.bankid.codefront.bankid.relyingparty.resilience.ConcurrencyLimiter;
+import com.bankid.codefront.bankid.relyingparty.resilience.ConcurrencyLimiters;
+import com.bankid.codefront.bankid.relyingparty.resilience.RetryPolicy;
+import com.bankid.codefront.bankid.relyingparty.resilience.RpApiRejectedException;
 import com.bankid.codefront.config.BankIDRelyingPartyConfig;
 import com.bankid.codefront.models.bankid.relyingparty.CancelRequest;
 import com.bankid.codefront.models.bankid.relyingparty.CollectRequest;
@@ -41,13 +48,10 @@ import com.bankid.codefront.models.bankid.relyingparty.CollectResponse;
 import com.bankid.codefront.models.bankid.relyingparty.StartAuthenticationRequest;
 import com.bankid.codefront.models.bankid.relyingparty.StartSignatureRequest;
 import com.bankid.codefront.models.bankid.relyingparty.StartTransactionResponse;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.MapperFeature;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.json.JsonMapper;
 import org.owasp.encoder.Encode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 
@@ -63,8 +67,13 @@ import java.net.URISyntaxException;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import java.security.KeyStore;
 import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 /**
  * This class represents the BankID Relying Party API endpoint.
@@ -75,6 +84,13 @@ public class RpApi {
 
     private final BankIDRelyingPartyConfig settings;
     private final RpApiMetrics metrics;
+    private final RpJsonCodec codec;
+    private final RetryPolicy retryPolicy;
+    private final CircuitBreakers circuitBreakers;
+    private final Bulkheads bulkheads;
+    private final ConcurrencyLimiters concurrencyLimiters;
+    private final CollectHedging collectHedging;
+    private final CollectCache collectCache;
     private final SSLContext sslContext;
     private final HttpClient httpClient;
 
@@ -82,28 +98,91 @@ public class RpApi {
      * Initialize the Relying Party API class.
      * @param settings the configuration.
      * @param metrics  the metrics helper.
+     * @param codec       the json codec for the RP models.
+     * @param retryPolicy     the retry policy for failed calls.
+     * @param circuitBreakers the circuit breakers of the endpoints.
+     * @param bulkheads          the bulkheads of the endpoints.
+     * @param concurrencyLimiters the adaptive concurrency limits of the endpoints.
+     * @param collectHedging     the hedging of collect calls.
+     * @param collectCache       the cache of collect responses.
      */
-    public RpApi(BankIDRelyingPartyConfig settings, RpApiMetrics metrics) {
+    @Autowired
+    public RpApi(
+        BankIDRelyingPartyConfig settings,
+        RpApiMetrics metrics,
+        RpJsonCodec codec,
+        RetryPolicy retryPolicy,
+        CircuitBreakers circuitBreakers,
+        Bulkheads bulkheads,
+        ConcurrencyLimiters concurrencyLimiters,
+        CollectHedging collectHedging,
+        CollectCache collectCache) {
         this.settings = settings;
         this.metrics = metrics;
+        this.codec = codec;
+        this.retryPolicy = retryPolicy;
+        this.circuitBreakers = circuitBreakers;
+        this.bulkheads = bulkheads;
+        this.concurrencyLimiters = concurrencyLimiters;
+        this.collectHedging = collectHedging;
+        this.collectCache = collectCache;
 
         this.sslContext = newSslContext();
         this.httpClient = getClient();
     }
 
+    /**
+     * Initialize the Relying Party API class with a preconfigured http client.
+     * @param settings   the configuration.
+     * @param metrics    the metrics helper.
+     * @param codec       the json codec for the RP models.
+     * @param retryPolicy     the retry policy for failed calls.
+     * @param circuitBreakers the circuit breakers of the endpoints.
+     * @param bulkheads          the bulkheads of the endpoints.
+     * @param concurrencyLimiters the adaptive concurrency limits of the endpoints.
+     * @param collectHedging     the hedging of collect calls.
+     * @param collectCache       the cache of collect responses.
+     * @param httpClient      the http client used to communicate with BankID RP.
+     */
+    RpApi(
+        BankIDRelyingPartyConfig settings,
+        RpApiMetrics metrics,
+        RpJsonCodec codec,
+        RetryPolicy retryPolicy,
+        CircuitBreakers circuitBreakers,
+        Bulkheads bulkheads,
+        ConcurrencyLimiters concurrencyLimiters,
+        CollectHedging collectHedging,
+        CollectCache collectCache,
+        HttpClient httpClient) {
+        this.settings = settings;
+        this.metrics = metrics;
+        this.codec = codec;
+        this.retryPolicy = retryPolicy;
+        this.circuitBreakers = circuitBreakers;
+        this.bulkheads = bulkheads;
+        this.concurrencyLimiters = concurrencyLimiters;
+        this.collectHedging = collectHedging;
+        this.collectCache = collectCache;
+
+        this.sslContext = null;
+        this.httpClient = httpClient;
+    }
+
     /**
      * Check that communication with BankID RP works.
      * @return true if communication works.
      */
     public boolean checkConnectionWorks() {
+        long startTime = System.nanoTime();
         try {
-            long startTime = System.currentTimeMillis();
 
-            HttpRequest request = this.getRequestBuilder("auth")
+            HttpRequest request = this.getRequestBuilder(RpEndpoint.AUTH.getPath())
                 .GET()
                 .build();
 
             // Send request
+            this.metrics.sentRequest();
             HttpResponse<String> response = this.httpClient.send(request, HttpResponse.BodyHandlers.ofString());
 
             int responseCode = response.statusCode();
@@ -111,25 +190,77 @@ public class RpApi {
             if (responseCode != HttpStatus.METHOD_NOT_ALLOWED.value()) {
                 this.logger.warn("Got HTTP error from BankID RP: {}", responseCode);
 
-                this.metrics.failedConnectionCheck(System.currentTimeMillis() - startTime);
+                this.metrics.failedConnectionCheck(System.nanoTime() - startTime);
 
                 return false;
             }
-            this.metrics.successConnectionCheck(System.currentTimeMillis() - startTime);
+            this.metrics.successConnectionCheck(System.nanoTime() - startTime);
             return true;
         } catch (Exception exc) {
             this.logger.warn(
                     "Got exception while checking connection with BankID RP: {}",
                     exc.getMessage());
+            this.metrics.failedConnectionCheck(System.nanoTime() - startTime);
             return false;
         }
     }
 
+    /**
+     * Opens connections to BankID RP so that the TLS handshakes are done before the first real request.
+     * With HTTP/2 all requests are multiplexed over a single connection, so only one connection is opened.
+     * @param connections the number of connections to open.
+     * @return a future completed with the number of connections that responded.
+     */
+    public CompletableFuture<Integer> warmUpAsync(int connections) {
+        int count = this.getHttpVersion() == HttpClient.Version.HTTP_2 ? Math.min(connections, 1) : connections;
+
+        HttpRequest request;
+        try {
+            request = this.getRequestBuilder(RpEndpoint.AUTH.getPath())
+                .GET()
+                .build();
+        } catch (URISyntaxException e) {
+            this.logger.warn("Could not warm up connections to RP, invalid url: \"{}\"", e.getMessage());
+            return CompletableFuture.completedFuture(0);
+        }
+
+        @SuppressWarnings("unchecked")
+        CompletableFuture<Boolean>[] responses = new CompletableFuture[count];
+        for (int i = 0; i < count; i++) {
+            this.metrics.sentRequest();
+            responses[i] = this.httpClient
+                .sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .handle((response, throwable) -> {
+                    if (throwable != null) {
+                        this.logger.warn("Could not warm up connection to RP: {}", throwable.getMessage());
+                        return false;
+                    }
+                    return true;
+                });
+        }
+
+        return CompletableFuture.allOf(responses)
+            .thenApply(ignored -> {
+                int opened = 0;
+                for (CompletableFuture<Boolean> response : responses) {
+                    if (response.join()) {
+                        opened++;
+                    }
+                }
+                return opened;
+            });
+    }
+
+    private HttpClient.Version getHttpVersion() {
+        return this.settings.getHttpVersion() == null ? HttpClient.Version.HTTP_2 : this.settings.getHttpVersion();
+    }
+
     private HttpClient getClient() {
         return HttpClient
             .newBuilder()
+            .version(this.getHttpVersion())
             .connectTimeout(Duration.ofMillis(this.settings.getConnectTimeout()))
-            .sslContext(this.sslContext)
+            .sslContext(new ConnectionCountingSslContext(this.sslContext, this.metrics::newConnection))
             .build();
     }
 
@@ -215,17 +346,24 @@ public class RpApi {
      * Starts an authentication with BankID RP API.
      * @param request the authentication request information.
      * @return the information about the created transaction.
+     * @throws RpApiRejectedException if the call was rejected without being sent.
      */
     public StartTransactionResponse startAuthentication(StartAuthenticationRequest request) {
+        return await(this.startAuthenticationAsync(request));
+    }
 
+    /**
+     * Starts an authentication with BankID RP API without blocking the calling thread.
+     * @param request the authentication request information.
+     * @return a future with the information about the created transaction, completed with null if the
+     *         transaction failed or exceptionally with RpApiRejectedException if the call was rejected.
+     */
+    public CompletableFuture<StartTransactionResponse> startAuthenticationAsync(StartAuthenticationRequest request) {
         try {
-            ObjectMapper mapper = new ObjectMapper();
-            String jsonRequest = mapper.writeValueAsString(request);
-
-            return this.startTransactionResponse("auth", jsonRequest);
+            return this.startTransactionResponseAsync(RpEndpoint.AUTH, this.codec.write(request));
         } catch (Exception e) {
-            this.logger.warn("IOException while starting authentication: {}", e.getMessage());
-            return null;
+            this.logger.warn("Exception while starting authentication: {}", e.getMessage());
+            return CompletableFuture.completedFuture(null);
         }
     }
 
@@ -233,48 +371,64 @@ public class RpApi {
      * Starts a signature transaction with BankID RP API.
      * @param request the signature request information.
      * @return the information about the created transaction.
+     * @throws RpApiRejectedException if the call was rejected without being sent.
      */
     public StartTransactionResponse startSignature(StartSignatureRequest request) {
+        return await(this.startSignatureAsync(request));
+    }
 
+    /**
+     * Starts a signature transaction with BankID RP API without blocking the calling thread.
+     * @param request the signature request information.
+     * @return a future with the information about the created transaction, completed with null if the
+     *         transaction failed or exceptionally with RpApiRejectedException if the call was rejected.
+     */
+    public CompletableFuture<StartTransactionResponse> startSignatureAsync(StartSignatureRequest request) {
         try {
-            ObjectMapper mapper = new ObjectMapper();
-            String jsonRequest = mapper.writeValueAsString(request);
-
-            return this.startTransactionResponse("sign", jsonRequest);
+            return this.startTransactionResponseAsync(RpEndpoint.SIGN, this.codec.write(request));
         } catch (Exception e) {
-            this.logger.warn("IOException while starting authentication: {}", e.getMessage());
-            return null;
+            this.logger.warn("Exception while starting signature: {}", e.getMessage());
+            return CompletableFuture.completedFuture(null);
         }
     }
 
-    private StartTransactionResponse startTransactionResponse(String endpoint, String jsonRequest)
-        throws JsonProcessingException {
+    private CompletableFuture<StartTransactionResponse> startTransactionResponseAsync(
+        RpEndpoint endpoint,
+        byte[] jsonRequest) {
 
         long startTime = System.currentTimeMillis();
-        String result = this.post(endpoint, jsonRequest);
-        long elapsedTime = System.currentTimeMillis() - startTime;
-        if (result == null) {
-            this.logger.warn(
-                    "Query to start {} transaction failed after {} ms.",
-                    endpoint,
-                    elapsedTime);
-            return null;
-        }
-
-        this.logger.info("Received json string from BankID RP after {} ms.", elapsedTime);
-        this.logger.trace("Try to parse json string: {}", Encode.forJava(result));
-        ObjectMapper mapper = new ObjectMapper();
-        StartTransactionResponse response = mapper.readValue(
-                result, StartTransactionResponse.class);
-        if (response == null || response.getOrderRef() == null || response.getAutoStartToken() == null) {
-            this.logger.warn(
-                    "Response to start auth transaction could not be read after {} ms: {}",
-                    elapsedTime,
-                    Encode.forJava(result));
-            return null;
-        }
-
-        return response;
+        return this.postAsync(endpoint, jsonRequest)
+            .thenApply(result -> {
+                long elapsedTime = System.currentTimeMillis() - startTime;
+                if (result == null) {
+                    this.logger.warn(
+                            "Query to start {} transaction failed after {} ms.",
+                            endpoint.getPath(),
+                            elapsedTime);
+                    return null;
+                }
+
+                this.logger.info("Received json from BankID RP after {} ms.", elapsedTime);
+                this.traceJson(result);
+                try {
+                    StartTransactionResponse response = this.codec.readStartTransactionResponse(result);
+                    if (response == null
+                        || response.getOrderRef() == null
+                        || response.getAutoStartToken() == null) {
+                        this.logger.warn(
+                                "Response to start {} transaction could not be read after {} ms: {}",
+                                endpoint.getPath(),
+                                elapsedTime,
+                                Encode.forJava(new String(result, StandardCharsets.UTF_8)));
+                        return null;
+                    }
+
+                    return response;
+                } catch (IOException e) {
+                    this.logger.warn("Exception while parsing {} response: {}", endpoint.getPath(), e.getMessage());
+                    return null;
+                }
+            });
     }
 
     /**
@@ -283,42 +437,64 @@ public class RpApi {
      * RP must abort if status indicates failed. The user identity is returned when complete.
      * @param orderRef The orderRef returned from auth or sign.
      * @return CollectResponse
+     * @throws RpApiRejectedException if the call was rejected without being sent.
      */
     public CollectResponse collect(String orderRef) {
+        return await(this.collectAsync(orderRef));
+    }
+
+    /**
+     * Collects the result of a sign or auth order without blocking the calling thread.
+     * @param orderRef The orderRef returned from auth or sign.
+     * @return a future with the CollectResponse, completed with null if the collect failed or exceptionally
+     *         with RpApiRejectedException if the call was rejected.
+     */
+    public CompletableFuture<CollectResponse> collectAsync(String orderRef) {
+        return this.collectCache.get(orderRef, () -> this.sendCollectAsync(orderRef));
+    }
 
+    /**
+     * Sends a collect call to BankID RP.
+     * @param orderRef The orderRef returned from auth or sign.
+     * @return a future with the CollectResponse, completed with null if the collect failed or exceptionally
+     *         with RpApiRejectedException if the call was rejected.
+     */
+    private CompletableFuture<CollectResponse> sendCollectAsync(String orderRef) {
         try {
-            CollectRequest request = new CollectRequest(orderRef);
-            ObjectMapper mapper = JsonMapper.builder()
-                .enable(MapperFeature.ACCEPT_CASE_INSENSITIVE_ENUMS)
-                .build();
-            String jsonRequest = mapper.writeValueAsString(request);
+            byte[] jsonRequest = this.codec.write(new CollectRequest(orderRef));
 
             long startTime = System.currentTimeMillis();
-            String result = this.post("collect", jsonRequest);
-            long elapsedTime = System.currentTimeMillis() - startTime;
-            if (result == null) {
-                this.logger.warn(
-                        "Query to collect transaction failed after {} ms.",
-                        elapsedTime);
-                return null;
-            }
-
-            this.logger.info("Received json string from BankID RP after {} ms.", elapsedTime);
-            this.logger.trace("Try to parse json string: {}", Encode.forJava(result));
-            CollectResponse response = mapper.readValue(
-                    result, CollectResponse.class);
-            if (response == null || response.getOrderRef() == null) {
-                this.logger.warn(
-                        "Response to collect transaction could not be read after {} ms: {}",
-                        elapsedTime,
-                        Encode.forJava(result));
-                return null;
-            }
-
-            return response;
+            return this.postAsync(RpEndpoint.COLLECT, jsonRequest)
+                .thenApply(result -> {
+                    long elapsedTime = System.currentTimeMillis() - startTime;
+                    if (result == null) {
+                        this.logger.warn(
+                                "Query to collect transaction failed after {} ms.",
+                                elapsedTime);
+                        return null;
+                    }
+
+                    this.logger.info("Received json from BankID RP after {} ms.", elapsedTime);
+                    this.traceJson(result);
+                    try {
+                        CollectResponse response = this.codec.readCollectResponse(result);
+                        if (response == null || response.getOrderRef() == null) {
+                            this.logger.warn(
+                                    "Response to collect transaction could not be read after {} ms: {}",
+                                    elapsedTime,
+                                    Encode.forJava(new String(result, StandardCharsets.UTF_8)));
+                            return null;
+                        }
+
+                        return response;
+                    } catch (IOException e) {
+                        this.logger.warn("Exception while parsing collect response: {}", e.getMessage());
+                        return null;
+                    }
+                });
         } catch (Exception e) {
-            this.logger.warn("IOException while starting authentication: {}", e.getMessage());
-            return null;
+            this.logger.warn("Exception while collecting transaction: {}", e.getMessage());
+            return CompletableFuture.completedFuture(null);
         }
     }
 
@@ -327,70 +503,182 @@ public class RpApi {
      * This is typically used if the user cancels the order in your service or app.
      * @param orderRef The orderRef from the response from auth or sign. String.
      * @return True if cancelling succeeded.
+     * @throws RpApiRejectedException if the call was rejected without being sent.
      */
     public boolean cancel(String orderRef) {
+        return await(this.cancelAsync(orderRef));
+    }
+
+    /**
+     * Cancels an ongoing sign or auth order without blocking the calling thread.
+     * @param orderRef The orderRef from the response from auth or sign. String.
+     * @return a future completed with true if cancelling succeeded or exceptionally with
+     *         RpApiRejectedException if the call was rejected.
+     */
+    public CompletableFuture<Boolean> cancelAsync(String orderRef) {
+        this.collectCache.invalidate(orderRef);
         try {
-            CancelRequest request = new CancelRequest(orderRef);
-            ObjectMapper mapper = new ObjectMapper();
-            String jsonRequest = mapper.writeValueAsString(request);
+            byte[] jsonRequest = this.codec.write(new CancelRequest(orderRef));
 
             long startTime = System.currentTimeMillis();
-            String result = this.post("cancel", jsonRequest);
-            long elapsedTime = System.currentTimeMillis() - startTime;
-            if (result == null) {
-                this.logger.warn("Query to cancel transaction "
-                                + "failed after {} ms.",
-                        elapsedTime);
-                return false;
+            return this.postAsync(RpEndpoint.CANCEL, jsonRequest)
+                .thenApply(result -> {
+                    long elapsedTime = System.currentTimeMillis() - startTime;
+                    if (result == null) {
+                        this.logger.warn("Query to cancel transaction "
+                                        + "failed after {} ms.",
+                                elapsedTime);
+                        return false;
+                    }
+
+                    this.logger.info("Received json from BankID RP after {} ms.", elapsedTime);
+                    return new String(result, StandardCharsets.UTF_8).trim().equals("{}");
+                });
+        } catch (Exception e) {
+            this.logger.warn("Exception while cancelling transaction: {}", e.getMessage());
+            return CompletableFuture.completedFuture(false);
+        }
+    }
+
+    /**
+     * Waits for the result of an async call.
+     * @param future the future result of the call.
+     * @param <T>    the type of the result.
+     * @return the result.
+     * @throws RpApiRejectedException if the call was rejected without being sent.
+     */
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RpApiRejectedException rejected) {
+                throw rejected;
             }
+            throw e;
+        }
+    }
 
-            this.logger.info("Received json string from BankID RP after {} ms.", elapsedTime);
-            return result.trim().equals("{}");
-        } catch (Exception e) {
-            this.logger.warn("IOException while starting authentication: {}", e.getMessage());
-            return false;
+    private void traceJson(byte[] json) {
+        if (this.logger.isTraceEnabled()) {
+            this.logger.trace("Try to parse json string: {}", Encode.forJava(new String(json, StandardCharsets.UTF_8)));
         }
     }
 
-    private String post(String path, String content) {
+    /**
+     * Posts the content to the RP api.
+     * Failed calls to idempotent endpoints are retried according to the retry policy, and slow collect calls
+     * may be hedged.
+     * @param endpoint the endpoint.
+     * @param content  the UTF-8 encoded json content.
+     * @return a future with the response body, completed with null if the request failed or exceptionally
+     *         with RpApiRejectedException if the request was rejected without being sent.
+     */
+    private CompletableFuture<byte[]> postAsync(RpEndpoint endpoint, byte[] content) {
 
         String verb = "POST";
+        String path = endpoint.getPath();
+        HttpRequest request;
         try {
-            HttpRequest request = getRequestBuilder(path)
-                .POST(HttpRequest.BodyPublishers.ofString(content))
+            request = getRequestBuilder(path)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(content))
                 .build();
+        } catch (URISyntaxException e) {
+            this.logger.warn("Could not {} to RP:/{}, invalid url: \"{}\"", verb, path, e.getMessage());
+            return CompletableFuture.completedFuture(null);
+        }
 
-            this.logger.trace("Starting to send payload to BankID RP.");
-            HttpResponse<String> response = this.httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-            this.logger.trace("Sent request to RP:/{} with content: {}", path, content);
-
-            int expectedResult = HttpStatus.OK.value();
-            int responseCode = response.statusCode();
-            if (responseCode != expectedResult) {
-                this.logger.warn("Failed to {} to BankID RP ({}). Expected {}"
-                        + " but got {} with message \"{}\".",
-                        verb,
-                        path,
-                        expectedResult,
-                        responseCode,
-                    response.body());
-                return null;
-            }
-
-            this.logger.trace("Starting to read response from BankID RP.");
-            return response.body();
-        } catch (IOException | InterruptedException | URISyntaxException e) {
+        Supplier<CompletableFuture<HttpResponse<byte[]>>> call = () -> this.retryPolicy.execute(
+            endpoint,
+            () -> this.sendAsync(endpoint, request),
+            response -> isRetryableStatus(response.statusCode()));
+
+        CompletableFuture<HttpResponse<byte[]>> responseFuture = endpoint == RpEndpoint.COLLECT
+            ? this.collectHedging.execute(call, response -> response.statusCode() == HttpStatus.OK.value())
+            : call.get();
+
+        return responseFuture
+            .handle((response, throwable) -> {
+                if (throwable != null) {
+                    Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                        ? throwable.getCause()
+                        : throwable;
+
+                    if (cause instanceof RpApiRejectedException rejected) {
+                        throw rejected;
+                    }
+
+                    this.logger.warn(
+                            "Could not {} to RP:/{} ({}): \"{}\"",
+                            verb,
+                            path,
+                            cause.getClass().toString(),
+                            cause.getMessage());
+                    return null;
+                }
+
+                this.logger.trace("Sent request to RP:/{}.", path);
+
+                int expectedResult = HttpStatus.OK.value();
+                int responseCode = response.statusCode();
+                if (responseCode != expectedResult) {
+                    this.logger.warn("Failed to {} to BankID RP ({}). Expected {}"
+                            + " but got {} with message \"{}\".",
+                            verb,
+                            path,
+                            expectedResult,
+                            responseCode,
+                            Encode.forJava(new String(response.body(), StandardCharsets.UTF_8)));
+                    return null;
+                }
+
+                this.logger.trace("Starting to read response from BankID RP.");
+                return response.body();
+            });
+    }
 
-            e.printStackTrace();
+    /**
+     * Sends one request to the RP api when the bulkhead of the endpoint has a free slot within the adaptive concurrency
+     * limit of the endpoint, unless the circuit breaker of the endpoint is open.
+     * @param endpoint the endpoint.
+     * @param request  the request.
+     * @return a future with the response.
+     */
+    private CompletableFuture<HttpResponse<byte[]>> sendAsync(RpEndpoint endpoint, HttpRequest request) {
+        return this.bulkheads.execute(endpoint, () -> this.sendIfPermitted(endpoint, request));
+    }
 
-            this.logger.warn(
-                    "Could not {} to RP:/{} ({}): \"{}\"",
-                    verb,
-                    path,
-                    e.getClass().toString(),
-                    e.getMessage());
+    private CompletableFuture<HttpResponse<byte[]>> sendIfPermitted(RpEndpoint endpoint, HttpRequest request) {
+        if (!this.circuitBreakers.tryAcquirePermission(endpoint)) {
+            this.metrics.circuitBreakerRejected(endpoint);
+            return CompletableFuture.failedFuture(
+                new RpApiRejectedException(endpoint, RpApiRejectedException.Reason.CIRCUIT_OPEN));
         }
 
-        return null;
+        this.logger.trace("Starting to send payload to BankID RP.");
+        this.metrics.sentRequest();
+        ConcurrencyLimiter concurrencyLimiter = this.concurrencyLimiters.get(endpoint);
+        long startTime = System.nanoTime();
+        return this.httpClient
+            .sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+            .whenComplete((response, throwable) -> {
+                long elapsed = System.nanoTime() - startTime;
+                this.metrics.recordRequest(endpoint, throwable != null ? 0 : response.statusCode(), elapsed);
+                concurrencyLimiter.onSample(elapsed, throwable != null);
+                this.circuitBreakers.onResult(
+                    endpoint,
+                    TimeUnit.NANOSECONDS.toMillis(elapsed),
+                    throwable != null || isRetryableStatus(response.statusCode()));
+            });
+    }
+
+    /**
+     * Returns if a http status from RP is a temporary error worth retrying.
+     * RP answers 408 on request timeout, 500 on internal error and 503 on maintenance.
+     * @param statusCode the http status.
+     * @return true if the call may succeed if made again.
+     */
+    private static boolean isRetryableStatus(int statusCode) {
+        return statusCode == HttpStatus.REQUEST_TIMEOUT.value()
+            || statusCode >= HttpStatus.INTERNAL_SERVER_ERROR.value();
     }
 }
@@ -0,0 +1,96 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.bankid.relyingparty;
+
+import com.bankid.codefront.config.BankIDRelyingPartyConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Opens the connections to BankID RP at startup.
+ * Application runners are executed before the application reports that it accepts traffic, so the
+ * TLS handshakes are not paid for by the first users after a deploy.
+ */
+@Component
+public class RpConnectionWarmUp implements ApplicationRunner {
+    private final Logger logger = LoggerFactory.getLogger(RpConnectionWarmUp.class);
+
+    private final RpApi rpApi;
+    private final BankIDRelyingPartyConfig settings;
+
+    /**
+     * Creates the warm-up runner.
+     * @param rpApi    the BankID RP api.
+     * @param settings the configuration.
+     */
+    public RpConnectionWarmUp(RpApi rpApi, BankIDRelyingPartyConfig settings) {
+        this.rpApi = rpApi;
+        this.settings = settings;
+    }
+
+    /**
+     * Opens the configured number of connections and waits for them, at most one connect and read timeout.
+     * A failed warm-up is logged but does not prevent the application from starting.
+     * @param args the application arguments.
+     */
+    @Override
+    public void run(ApplicationArguments args) {
+        int connections = this.settings.getWarmUpConnections();
+        if (connections <= 0) {
+            return;
+        }
+
+        long startTime = System.currentTimeMillis();
+        long maxWait = (long) this.settings.getConnectTimeout() + this.settings.getReadTimeout();
+        try {
+            int opened = this.rpApi.warmUpAsync(connections).get(maxWait, TimeUnit.MILLISECONDS);
+            this.logger.info(
+                    "Warmed up {} connection(s) to BankID RP in {} ms.",
+                    opened,
+                    System.currentTimeMillis() - startTime);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (TimeoutException e) {
+            this.logger.warn("Warm up of connections to BankID RP did not finish within {} ms.", maxWait);
+        } catch (Exception e) {
+            this.logger.warn("Warm up of connections to BankID RP failed: {}", e.getMessage());
+        }
+    }
+}
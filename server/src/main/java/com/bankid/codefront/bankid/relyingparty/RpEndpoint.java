@@ -0,0 +1,73 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.bankid.relyingparty;
+
+/**
+ * The BankID RP endpoints used by the application.
+ */
+public enum RpEndpoint {
+    /** Start an authentication order. */
+    AUTH("auth", false),
+    /** Start a signature order. */
+    SIGN("sign", false),
+    /** Collect the status of an order. */
+    COLLECT("collect", true),
+    /** Cancel an order. */
+    CANCEL("cancel", true);
+
+    private final String path;
+    private final boolean idempotent;
+
+    RpEndpoint(String path, boolean idempotent) {
+        this.path = path;
+        this.idempotent = idempotent;
+    }
+
+    /**
+     * Returns the path of the endpoint, relative to the RP url.
+     * @return the path of the endpoint.
+     */
+    public String getPath() {
+        return this.path;
+    }
+
+    /**
+     * Returns if a call to the endpoint can safely be repeated.
+     * Starting an order twice creates two orders, while collect and cancel give the same result when repeated.
+     * @return true if the endpoint is idempotent.
+     */
+    public boolean isIdempotent() {
+        return this.idempotent;
+    }
+}
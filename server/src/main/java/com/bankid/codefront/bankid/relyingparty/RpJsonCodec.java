@@ -0,0 +1,153 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.bankid.relyingparty;
+
+import com.bankid.codefront.models.bankid.relyingparty.CancelRequest;
+import com.bankid.codefront.models.bankid.relyingparty.CollectRequest;
+import com.bankid.codefront.models.bankid.relyingparty.CollectResponse;
+import com.bankid.codefront.models.bankid.relyingparty.StartAuthenticationRequest;
+import com.bankid.codefront.models.bankid.relyingparty.StartSignatureRequest;
+import com.bankid.codefront.models.bankid.relyingparty.StartTransactionResponse;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Serializes and parses the BankID RP API models.
+ * The readers and writers are immutable and thread safe, so they are created once and shared
+ * instead of building a new mapper for every call.
+ */
+@Component
+public class RpJsonCodec {
+    private final ObjectWriter startAuthenticationRequestWriter;
+    private final ObjectWriter startSignatureRequestWriter;
+    private final ObjectWriter collectRequestWriter;
+    private final ObjectWriter cancelRequestWriter;
+    private final ObjectReader collectResponseReader;
+    private final ObjectWriter collectResponseWriter;
+    private final ObjectReader startTransactionResponseReader;
+
+    /**
+     * Initialize the codec.
+     */
+    public RpJsonCodec() {
+        ObjectMapper mapper = JsonMapper.builder()
+            .enable(MapperFeature.ACCEPT_CASE_INSENSITIVE_ENUMS)
+            .build();
+
+        this.startAuthenticationRequestWriter = mapper.writerFor(StartAuthenticationRequest.class);
+        this.startSignatureRequestWriter = mapper.writerFor(StartSignatureRequest.class);
+        this.collectRequestWriter = mapper.writerFor(CollectRequest.class);
+        this.cancelRequestWriter = mapper.writerFor(CancelRequest.class);
+        this.collectResponseReader = mapper.readerFor(CollectResponse.class);
+        this.collectResponseWriter = mapper.writerFor(CollectResponse.class);
+        this.startTransactionResponseReader = mapper.readerFor(StartTransactionResponse.class);
+    }
+
+    /**
+     * Serializes an authentication request.
+     * @param request the request.
+     * @return the UTF-8 encoded json.
+     * @throws JsonProcessingException if the request could not be serialized.
+     */
+    public byte[] write(StartAuthenticationRequest request) throws JsonProcessingException {
+        return this.startAuthenticationRequestWriter.writeValueAsBytes(request);
+    }
+
+    /**
+     * Serializes a signature request.
+     * @param request the request.
+     * @return the UTF-8 encoded json.
+     * @throws JsonProcessingException if the request could not be serialized.
+     */
+    public byte[] write(StartSignatureRequest request) throws JsonProcessingException {
+        return this.startSignatureRequestWriter.writeValueAsBytes(request);
+    }
+
+    /**
+     * Serializes a collect request.
+     * @param request the request.
+     * @return the UTF-8 encoded json.
+     * @throws JsonProcessingException if the request could not be serialized.
+     */
+    public byte[] write(CollectRequest request) throws JsonProcessingException {
+        return this.collectRequestWriter.writeValueAsBytes(request);
+    }
+
+    /**
+     * Serializes a cancel request.
+     * @param request the request.
+     * @return the UTF-8 encoded json.
+     * @throws JsonProcessingException if the request could not be serialized.
+     */
+    public byte[] write(CancelRequest request) throws JsonProcessingException {
+        return this.cancelRequestWriter.writeValueAsBytes(request);
+    }
+
+    /**
+     * Parses a collect response.
+     * @param json the UTF-8 encoded json.
+     * @return the collect response.
+     * @throws IOException if the json could not be parsed.
+     */
+    public CollectResponse readCollectResponse(byte[] json) throws IOException {
+        return this.collectResponseReader.readValue(json);
+    }
+
+    /**
+     * Serializes a collect response, e.g. to share it with other nodes.
+     * @param response the collect response.
+     * @return the UTF-8 encoded json.
+     * @throws JsonProcessingException if the response could not be serialized.
+     */
+    public byte[] write(CollectResponse response) throws JsonProcessingException {
+        return this.collectResponseWriter.writeValueAsBytes(response);
+    }
+
+    /**
+     * Parses a start transaction response.
+     * @param json the UTF-8 encoded json.
+     * @return the start transaction response.
+     * @throws IOException if the json could not be parsed.
+     */
+    public StartTransactionResponse readStartTransactionResponse(byte[] json) throws IOException {
+        return this.startTransactionResponseReader.readValue(json);
+    }
+}
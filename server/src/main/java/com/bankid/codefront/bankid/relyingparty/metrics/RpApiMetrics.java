@@ -33,12 +33,22 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.bankid.codefront.bankid.relyingparty.metrics;
 
+import com.bankid.codefront.bankid.relyingparty.RpEndpoint;
+import com.bankid.codefront.bankid.relyingparty.resilience.Bulkhead;
+import com.bankid.codefront.bankid.relyingparty.resilience.CircuitBreaker;
+import com.bankid.codefront.bankid.relyingparty.resilience.ConcurrencyLimiter;
 import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.Metrics;
 import io.micrometer.core.instrument.Timer;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+import java.util.Locale;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 /**
  * Metrics helper for RpApi class.
@@ -49,35 +59,337 @@ public class RpApiMetrics {
             com.bankid.codefront.config.Metrics.BASE_METRICS_PREFIX
                     + "bankid.rp.";
 
+    /** Latencies alerted on, published as histogram buckets in addition to the percentile histogram. */
+    private static final Duration[] REQUEST_SLOS = {
+        Duration.ofMillis(50),
+        Duration.ofMillis(100),
+        Duration.ofMillis(250),
+        Duration.ofMillis(500),
+        Duration.ofSeconds(1),
+        Duration.ofSeconds(2),
+        Duration.ofSeconds(5),
+    };
+    private static final Duration REQUEST_MIN_EXPECTED = Duration.ofMillis(1);
+    private static final Duration REQUEST_MAX_EXPECTED = Duration.ofSeconds(30);
+
+    /** Status classes by the first digit of the http status, with "none" for calls that got no response. */
+    private static final String[] STATUS_CLASSES = {"none", "1xx", "2xx", "3xx", "4xx", "5xx"};
+    private static final int STATUS_CLASS_DIVISOR = 100;
+    private static final int STATUS_CLASS_SUCCESS = 2;
+
+    private final AtomicLong connections = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private final Timer[][] requestTimers = new Timer[RpEndpoint.values().length][STATUS_CLASSES.length];
+    private final Timer connCheckSuccessTimer;
+    private final Counter connCheckSuccessCounter;
+    private final Timer connCheckFailedTimer;
+    private final Counter connCheckFailedCounter;
+    private final Counter collectCacheHitCounter;
+    private final Counter collectCacheMissCounter;
+    private final Counter collectCacheCoalescedCounter;
+
     /**
-     * Records a failed connection check.
-     * @param timeTakenMillis the time in milliseconds for the connection check.
+     * Registers the connection reuse metric and the request timers of all endpoints, outcomes and status classes,
+     * so recording a request does not look the meter up.
      */
-    public void failedConnectionCheck(long timeTakenMillis) {
-        Timer.builder(METRICS_PREFIX + "connCheck.timer.failed")
+    public RpApiMetrics() {
+        for (RpEndpoint endpoint : RpEndpoint.values()) {
+            for (int statusClass = 0; statusClass < STATUS_CLASSES.length; statusClass++) {
+                this.requestTimers[endpoint.ordinal()][statusClass] = Timer.builder(METRICS_PREFIX + "request")
+                        .description("Latency of requests to BankID RP.")
+                        .tag("endpoint", endpoint.getPath())
+                        .tag("outcome", outcome(statusClass))
+                        .tag("status", STATUS_CLASSES[statusClass])
+                        .publishPercentileHistogram()
+                        .serviceLevelObjectives(REQUEST_SLOS)
+                        .minimumExpectedValue(REQUEST_MIN_EXPECTED)
+                        .maximumExpectedValue(REQUEST_MAX_EXPECTED)
+                        .register(Metrics.globalRegistry);
+            }
+        }
+
+        this.connCheckSuccessTimer = Timer.builder(METRICS_PREFIX + "connCheck.timer.success")
+                .description("Timing of doing a successful connection check with BankID RP.")
+                .register(Metrics.globalRegistry);
+        this.connCheckSuccessCounter = Counter.builder(METRICS_PREFIX + "connCheck.success")
+                .description("Number of successful connection checks with BankID RP.")
+                .register(Metrics.globalRegistry);
+        this.connCheckFailedTimer = Timer.builder(METRICS_PREFIX + "connCheck.timer.failed")
                 .description("Timing of doing a failed connection check with BankID RP.")
+                .register(Metrics.globalRegistry);
+        this.connCheckFailedCounter = Counter.builder(METRICS_PREFIX + "connCheck.failed")
+                .description("Number of failed connection check with BankID RP")
+                .register(Metrics.globalRegistry);
+
+        this.collectCacheHitCounter = collectCacheCounter("hit");
+        this.collectCacheMissCounter = collectCacheCounter("miss");
+        this.collectCacheCoalescedCounter = collectCacheCounter("coalesced");
+
+        FunctionCounter.builder(
+                    METRICS_PREFIX + "connection.reused",
+                    this,
+                    metrics -> Math.max(0, metrics.requests.get() - metrics.connections.get()))
+                .description("Number of requests to BankID RP sent on an already open connection.")
+                .register(Metrics.globalRegistry);
+    }
+
+    /**
+     * Records that a new TLS connection to BankID RP was opened.
+     */
+    public void newConnection() {
+        this.connections.incrementAndGet();
+
+        Counter.builder(METRICS_PREFIX + "connection.handshakes")
+                .description("Number of TLS handshakes made with BankID RP.")
                 .register(Metrics.globalRegistry)
-                .record(timeTakenMillis, TimeUnit.MILLISECONDS);
+                .increment();
+    }
 
-        Counter.builder(METRICS_PREFIX + "connCheck.failed")
-                .description("Number of failed connection check with BankID RP")
+    /**
+     * Records that a request was sent to BankID RP.
+     */
+    public void sentRequest() {
+        this.requests.incrementAndGet();
+
+        Counter.builder(METRICS_PREFIX + "requests")
+                .description("Number of requests sent to BankID RP.")
                 .register(Metrics.globalRegistry)
                 .increment();
     }
 
+    /**
+     * Records a request to BankID RP.
+     * @param endpoint     the endpoint that was called.
+     * @param statusCode   the http status of the response, or 0 if there was no response.
+     * @param elapsedNanos the time in nanoseconds from sending the request to receiving the response.
+     */
+    public void recordRequest(RpEndpoint endpoint, int statusCode, long elapsedNanos) {
+        int statusClass = statusCode / STATUS_CLASS_DIVISOR;
+        if (statusClass < 1 || statusClass >= STATUS_CLASSES.length) {
+            statusClass = 0;
+        }
+        this.requestTimers[endpoint.ordinal()][statusClass].record(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records a failed connection check.
+     * @param timeTakenNanos the time in nanoseconds for the connection check.
+     */
+    public void failedConnectionCheck(long timeTakenNanos) {
+        this.connCheckFailedTimer.record(timeTakenNanos, TimeUnit.NANOSECONDS);
+        this.connCheckFailedCounter.increment();
+    }
+
     /**
      * Records a successful connection check.
-     * @param timeTakenMillis the time in milliseconds for the connection check.
+     * @param timeTakenNanos the time in nanoseconds for the connection check.
      */
-    public void successConnectionCheck(long timeTakenMillis) {
-        Timer.builder(METRICS_PREFIX + "connCheck.timer.failed")
-                .description("Timing of doing a failed connection check with BankID RP.")
+    public void successConnectionCheck(long timeTakenNanos) {
+        this.connCheckSuccessTimer.record(timeTakenNanos, TimeUnit.NANOSECONDS);
+        this.connCheckSuccessCounter.increment();
+    }
+
+    /**
+     * Records a retry of a call to BankID RP.
+     * @param endpoint the endpoint that is called again.
+     */
+    public void retryAttempt(RpEndpoint endpoint) {
+        Counter.builder(METRICS_PREFIX + "retry.attempts")
+                .description("Number of retried calls to BankID RP.")
+                .tag("endpoint", endpoint.getPath())
                 .register(Metrics.globalRegistry)
-                .record(timeTakenMillis, TimeUnit.MILLISECONDS);
+                .increment();
+    }
 
-        Counter.builder(METRICS_PREFIX + "connCheck.failed")
-                .description("Number of failed connection checks.")
+    /**
+     * Records a failed call to BankID RP that was not retried because the retry budget was exhausted.
+     * @param endpoint the endpoint that was called.
+     */
+    public void retryBudgetExhausted(RpEndpoint endpoint) {
+        Counter.builder(METRICS_PREFIX + "retry.budget.exhausted")
+                .description("Number of failed calls to BankID RP not retried because the retry budget was exhausted.")
+                .tag("endpoint", endpoint.getPath())
                 .register(Metrics.globalRegistry)
                 .increment();
     }
+
+    /**
+     * Registers the state of a circuit breaker as one gauge per state, set to 1 for the current state.
+     * @param endpoint the endpoint of the breaker.
+     * @param state    supplies the current state of the breaker.
+     */
+    public void registerCircuitBreaker(RpEndpoint endpoint, Supplier<CircuitBreaker.State> state) {
+        for (CircuitBreaker.State gaugeState : CircuitBreaker.State.values()) {
+            Gauge.builder(METRICS_PREFIX + "circuitbreaker.state", () -> state.get() == gaugeState ? 1 : 0)
+                    .description("State of the circuit breaker of a BankID RP endpoint.")
+                    .tag("endpoint", endpoint.getPath())
+                    .tag("state", gaugeState.name().toLowerCase(Locale.ROOT))
+                    .register(Metrics.globalRegistry);
+        }
+    }
+
+    /**
+     * Records a call to BankID RP rejected by an open circuit breaker.
+     * @param endpoint the endpoint that was called.
+     */
+    public void circuitBreakerRejected(RpEndpoint endpoint) {
+        Counter.builder(METRICS_PREFIX + "circuitbreaker.rejected")
+                .description("Number of calls to BankID RP rejected by an open circuit breaker.")
+                .tag("endpoint", endpoint.getPath())
+                .register(Metrics.globalRegistry)
+                .increment();
+    }
+
+    /**
+     * Registers gauges for the running and waiting calls of a bulkhead.
+     * @param name     the name of the bulkhead.
+     * @param bulkhead the bulkhead.
+     */
+    public void registerBulkhead(String name, Bulkhead bulkhead) {
+        Gauge.builder(METRICS_PREFIX + "bulkhead.inflight", bulkhead, Bulkhead::getInFlight)
+                .description("Number of running calls to BankID RP in a bulkhead.")
+                .tag("bulkhead", name)
+                .register(Metrics.globalRegistry);
+
+        Gauge.builder(METRICS_PREFIX + "bulkhead.queued", bulkhead, Bulkhead::getQueued)
+                .description("Number of calls to BankID RP waiting in a bulkhead.")
+                .tag("bulkhead", name)
+                .register(Metrics.globalRegistry);
+    }
+
+    /**
+     * Records a call to BankID RP rejected by a full bulkhead.
+     * @param endpoint the endpoint that was called.
+     */
+    public void bulkheadRejected(RpEndpoint endpoint) {
+        Counter.builder(METRICS_PREFIX + "bulkhead.rejected")
+                .description("Number of calls to BankID RP rejected by a full bulkhead.")
+                .tag("endpoint", endpoint.getPath())
+                .register(Metrics.globalRegistry)
+                .increment();
+    }
+
+    /**
+     * Records a call to BankID RP that waited too long in a bulkhead.
+     * @param endpoint the endpoint that was called.
+     */
+    public void bulkheadTimedOut(RpEndpoint endpoint) {
+        Counter.builder(METRICS_PREFIX + "bulkhead.timeout")
+                .description("Number of calls to BankID RP that waited longer than the max wait in a bulkhead.")
+                .tag("endpoint", endpoint.getPath())
+                .register(Metrics.globalRegistry)
+                .increment();
+    }
+
+    /**
+     * Registers gauges for the limit and the running calls of an adaptive concurrency limiter.
+     * @param name    the name of the limiter.
+     * @param limiter the concurrency limiter.
+     */
+    public void registerConcurrencyLimiter(String name, ConcurrencyLimiter limiter) {
+        Gauge.builder(METRICS_PREFIX + "concurrency.limit", limiter, ConcurrencyLimiter::getLimit)
+                .description("Current adaptive limit of concurrent calls to BankID RP.")
+                .tag("limiter", name)
+                .register(Metrics.globalRegistry);
+
+        Gauge.builder(METRICS_PREFIX + "concurrency.inflight", limiter, ConcurrencyLimiter::getInFlight)
+                .description("Number of running calls to BankID RP.")
+                .tag("limiter", name)
+                .register(Metrics.globalRegistry);
+    }
+
+    /**
+     * Records a second collect sent because the first one was slow.
+     */
+    public void collectHedgeFired() {
+        Counter.builder(METRICS_PREFIX + "collect.hedge.fired")
+                .description("Number of hedged collect calls sent to BankID RP.")
+                .register(Metrics.globalRegistry)
+                .increment();
+    }
+
+    /**
+     * Records a hedged collect that answered before the first one.
+     */
+    public void collectHedgeWon() {
+        Counter.builder(METRICS_PREFIX + "collect.hedge.won")
+                .description("Number of hedged collect calls that answered before the first call.")
+                .register(Metrics.globalRegistry)
+                .increment();
+    }
+
+    /**
+     * Registers a gauge for the number of orders in the collect cache.
+     * @param size supplies the number of orders.
+     */
+    public void registerCollectCache(Supplier<Number> size) {
+        Gauge.builder(METRICS_PREFIX + "collect.cache.size", size)
+                .description("Number of orders in the collect cache.")
+                .register(Metrics.globalRegistry);
+    }
+
+    /**
+     * Records a collect answered by a cached response.
+     */
+    public void collectCacheHit() {
+        this.collectCacheHitCounter.increment();
+    }
+
+    /**
+     * Records a collect that called BankID RP.
+     */
+    public void collectCacheMiss() {
+        this.collectCacheMissCounter.increment();
+    }
+
+    /**
+     * Records a collect that waited for the result of a call already sent by another collect of the same order.
+     */
+    public void collectCacheCoalesced() {
+        this.collectCacheCoalescedCounter.increment();
+    }
+
+    /**
+     * Records an orphaned order cancelled after its session expired.
+     */
+    public void orphanedOrderCancelled() {
+        Counter.builder(METRICS_PREFIX + "orphaned.cancelled")
+                .description("Number of pending orders cancelled because their session expired.")
+                .register(Metrics.globalRegistry)
+                .increment();
+    }
+
+    /**
+     * Records an orphaned order left to expire at BankID RP because the cancel queue was full.
+     */
+    public void orphanedOrderDropped() {
+        Counter.builder(METRICS_PREFIX + "orphaned.dropped")
+                .description("Number of orphaned orders not cancelled because the cancel queue was full.")
+                .register(Metrics.globalRegistry)
+                .increment();
+    }
+
+    /**
+     * Registers a collect cache counter.
+     * @param result the result tag, hit, miss or coalesced.
+     * @return the counter.
+     */
+    private static Counter collectCacheCounter(String result) {
+        return Counter.builder(METRICS_PREFIX + "collect.cache")
+                .description("Number of collects by how the collect cache answered them.")
+                .tag("result", result)
+                .register(Metrics.globalRegistry);
+    }
+
+    /**
+     * Returns the outcome tag of a status class.
+     * @param statusClass the index of the status class.
+     * @return success for 2xx, error when there was no response and failure otherwise.
+     */
+    private static String outcome(int statusClass) {
+        if (statusClass == 0) {
+            return "error";
+        }
+        return statusClass == STATUS_CLASS_SUCCESS ? "success" : "failure";
+    }
 }
@@ -0,0 +1,236 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.bankid.relyingparty.resilience;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Limits the number of concurrent async calls.
+ * Calls over the limit, or over the adaptive limit of the optional {@link ConcurrencyLimiter}, wait in a bounded
+ * queue and are started when a running call completes.
+ * Calls are rejected when the queue is full, and fail when they have waited longer than the max wait.
+ *
+ * <p>Waiting calls are started in a loop by the thread that frees a slot, so calls that complete at once do not
+ * start the next call recursively.
+ */
+public class Bulkhead {
+    private final int maxConcurrent;
+    private final int maxQueue;
+    private final long maxWaitMillis;
+    private final ConcurrencyLimiter limiter;
+    private final Queue<Waiting<?>> queue = new ArrayDeque<>();
+    private int inFlight;
+    private boolean draining;
+
+    /**
+     * Creates the bulkhead without a max wait.
+     * @param maxConcurrent the max number of concurrent calls.
+     * @param maxQueue      the max number of waiting calls.
+     */
+    public Bulkhead(int maxConcurrent, int maxQueue) {
+        this(maxConcurrent, maxQueue, 0);
+    }
+
+    /**
+     * Creates the bulkhead.
+     * @param maxConcurrent the max number of concurrent calls.
+     * @param maxQueue      the max number of waiting calls.
+     * @param maxWaitMillis the max time in milliseconds a call waits for a free slot, 0 to wait until one is free.
+     */
+    public Bulkhead(int maxConcurrent, int maxQueue, long maxWaitMillis) {
+        this(maxConcurrent, maxQueue, maxWaitMillis, null);
+    }
+
+    /**
+     * Creates the bulkhead that also keeps the calls within an adaptive limit.
+     * @param maxConcurrent the max number of concurrent calls.
+     * @param maxQueue      the max number of waiting calls.
+     * @param maxWaitMillis the max time in milliseconds a call waits for a free slot, 0 to wait until one is free.
+     * @param limiter       the adaptive limit, or null for none.
+     */
+    public Bulkhead(int maxConcurrent, int maxQueue, long maxWaitMillis, ConcurrencyLimiter limiter) {
+        this.limiter = limiter;
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.maxQueue = Math.max(0, maxQueue);
+        this.maxWaitMillis = Math.max(0, maxWaitMillis);
+    }
+
+    /**
+     * Makes a call when there is a free slot.
+     * @param call      starts the call.
+     * @param rejection creates the exception the result fails with if the queue is full.
+     * @param timeout   creates the exception the result fails with if the call waited longer than the max wait.
+     * @param <T>       the type of the result.
+     * @return a future with the result of the call.
+     */
+    public <T> CompletableFuture<T> submit(
+        Supplier<CompletableFuture<T>> call,
+        Supplier<? extends RuntimeException> rejection,
+        Supplier<? extends RuntimeException> timeout) {
+
+        Waiting<T> waiting = new Waiting<>(call);
+        synchronized (this) {
+            if (!this.queue.isEmpty() || !this.tryAdmit()) {
+                if (this.queue.size() >= this.maxQueue) {
+                    return CompletableFuture.failedFuture(rejection.get());
+                }
+                this.queue.add(waiting);
+                if (this.maxWaitMillis > 0) {
+                    CompletableFuture.delayedExecutor(this.maxWaitMillis, TimeUnit.MILLISECONDS)
+                        .execute(() -> this.expire(waiting, timeout));
+                }
+                return waiting.result;
+            }
+        }
+
+        this.run(waiting);
+        return waiting.result;
+    }
+
+    /**
+     * Returns the number of running calls.
+     * @return the number of running calls.
+     */
+    public synchronized int getInFlight() {
+        return this.inFlight;
+    }
+
+    /**
+     * Returns the number of calls waiting for a free slot.
+     * @return the number of waiting calls.
+     */
+    public synchronized int getQueued() {
+        return this.queue.size();
+    }
+
+    /**
+     * Takes a slot if both the bulkhead and the adaptive limit have one free. Called with the lock held.
+     * @return true if a slot was taken.
+     */
+    private boolean tryAdmit() {
+        if (this.inFlight >= this.maxConcurrent || (this.limiter != null && !this.limiter.tryAcquire())) {
+            return false;
+        }
+        this.inFlight++;
+        return true;
+    }
+
+    private <T> void run(Waiting<T> waiting) {
+        CompletableFuture<T> future;
+        try {
+            future = waiting.call.get();
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+
+        future.whenComplete((value, throwable) -> {
+            this.release();
+            if (throwable != null) {
+                waiting.result.completeExceptionally(throwable);
+            } else {
+                waiting.result.complete(value);
+            }
+        });
+    }
+
+    /**
+     * Frees the slot of a completed call, and starts the waiting calls unless another thread already does.
+     */
+    private void release() {
+        synchronized (this) {
+            this.inFlight--;
+            if (this.limiter != null) {
+                this.limiter.release();
+            }
+            if (this.draining) {
+                return;
+            }
+            this.draining = true;
+        }
+        this.drain();
+    }
+
+    /**
+     * Starts waiting calls while the bulkhead and the adaptive limit have free slots. A call that completes at once
+     * frees its slot for the next round of the loop.
+     */
+    private void drain() {
+        while (true) {
+            Waiting<?> next;
+            synchronized (this) {
+                next = !this.queue.isEmpty() && this.tryAdmit() ? this.queue.poll() : null;
+                if (next == null) {
+                    this.draining = false;
+                    return;
+                }
+            }
+            this.run(next);
+        }
+    }
+
+    /**
+     * Fails a call that is still waiting after the max wait.
+     * @param waiting the waiting call.
+     * @param timeout creates the exception the result fails with.
+     */
+    private void expire(Waiting<?> waiting, Supplier<? extends RuntimeException> timeout) {
+        synchronized (this) {
+            if (!this.queue.remove(waiting)) {
+                return;
+            }
+        }
+        waiting.result.completeExceptionally(timeout.get());
+    }
+
+    /**
+     * A call and the future of its result.
+     * @param <T> the type of the result.
+     */
+    private static final class Waiting<T> {
+        private final Supplier<CompletableFuture<T>> call;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+
+        /**
+         * Creates the call.
+         * @param call starts the call.
+         */
+        private Waiting(Supplier<CompletableFuture<T>> call) {
+            this.call = call;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.bankid.relyingparty.resilience;
+
+import com.bankid.codefront.bankid.relyingparty.RpEndpoint;
+import com.bankid.codefront.bankid.relyingparty.metrics.RpApiMetrics;
+import com.bankid.codefront.config.BankIDRelyingPartyConfig;
+import com.bankid.codefront.config.RpBulkheadConfig;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * The bulkheads of the BankID RP endpoints.
+ * Starting orders, collecting and cancelling have separate limits, so a storm of collect calls cannot
+ * starve new authentications and signatures. Each bulkhead also admits calls within the adaptive concurrency
+ * limit of its endpoints, calls over that limit wait in the queue like calls over max-concurrent.
+ */
+@Component
+public class Bulkheads {
+    private final RpApiMetrics metrics;
+    private final ConcurrencyLimiters concurrencyLimiters;
+    private final Map<RpEndpoint, Bulkhead> bulkheads = new EnumMap<>(RpEndpoint.class);
+
+    /**
+     * Creates the bulkheads.
+     * @param settings            the configuration.
+     * @param metrics             the metrics helper.
+     * @param concurrencyLimiters the adaptive concurrency limits of the endpoints.
+     */
+    public Bulkheads(
+        BankIDRelyingPartyConfig settings,
+        RpApiMetrics metrics,
+        ConcurrencyLimiters concurrencyLimiters) {
+
+        this.metrics = metrics;
+        this.concurrencyLimiters = concurrencyLimiters;
+
+        Bulkhead start = this.create("start", settings.getStartBulkhead(), RpEndpoint.AUTH);
+        this.bulkheads.put(RpEndpoint.AUTH, start);
+        this.bulkheads.put(RpEndpoint.SIGN, start);
+        this.bulkheads.put(
+            RpEndpoint.COLLECT,
+            this.create("collect", settings.getCollectBulkhead(), RpEndpoint.COLLECT));
+        this.bulkheads.put(RpEndpoint.CANCEL, this.create("cancel", settings.getCancelBulkhead(), RpEndpoint.CANCEL));
+    }
+
+    /**
+     * Makes a call when the bulkhead of the endpoint has a free slot.
+     * @param endpoint the endpoint to call.
+     * @param call     starts the call.
+     * @param <T>      the type of the result.
+     * @return a future with the result of the call, failed with RpApiRejectedException if the bulkhead is full
+     *     or the call waited too long for a free slot.
+     */
+    public <T> CompletableFuture<T> execute(RpEndpoint endpoint, Supplier<CompletableFuture<T>> call) {
+        return this.bulkheads.get(endpoint).submit(
+            call,
+            () -> {
+                this.metrics.bulkheadRejected(endpoint);
+                return new RpApiRejectedException(endpoint, RpApiRejectedException.Reason.BULKHEAD_FULL);
+            },
+            () -> {
+                this.metrics.bulkheadTimedOut(endpoint);
+                return new RpApiRejectedException(endpoint, RpApiRejectedException.Reason.QUEUE_TIMEOUT);
+            });
+    }
+
+    private Bulkhead create(String name, RpBulkheadConfig bulkheadSettings, RpEndpoint endpoint) {
+        ConcurrencyLimiter limiter = this.concurrencyLimiters.get(endpoint);
+        Bulkhead bulkhead = bulkheadSettings == null
+            ? new Bulkhead(Integer.MAX_VALUE, 0, 0, limiter)
+            : new Bulkhead(
+                bulkheadSettings.getMaxConcurrent(),
+                bulkheadSettings.getMaxQueue(),
+                bulkheadSettings.getMaxWait(),
+                limiter);
+        this.metrics.registerBulkhead(name, bulkhead);
+        return bulkhead;
+    }
+}
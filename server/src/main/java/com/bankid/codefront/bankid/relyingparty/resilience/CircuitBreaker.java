@@ -0,0 +1,184 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.bankid.relyingparty.resilience;
+
+import com.bankid.codefront.config.RpCircuitBreakerConfig;
+
+import java.time.Clock;
+
+/**
+ * Circuit breaker for one BankID RP endpoint.
+ *
+ * <p>While closed, the outcome of the latest calls is kept in a sliding window. When the failure rate or the
+ * slow call rate of the window reaches its threshold the breaker opens and calls are rejected without being
+ * sent. After the wait duration the breaker is half-open and lets a few trial calls through, which either
+ * close the breaker again or open it for another wait duration.
+ */
+public class CircuitBreaker {
+    private static final int PERCENT = 100;
+
+    /**
+     * The state of a circuit breaker.
+     */
+    public enum State {
+        /** Calls are let through and their outcome recorded. */
+        CLOSED,
+        /** Calls are rejected. */
+        OPEN,
+        /** A limited number of trial calls are let through. */
+        HALF_OPEN
+    }
+
+    private final RpCircuitBreakerConfig settings;
+    private final Clock clock;
+
+    // Sliding window of the latest outcomes
+    private final boolean[] failedCalls;
+    private final boolean[] slowCalls;
+    private int windowPosition;
+    private int windowCount;
+    private int failedCount;
+    private int slowCount;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int halfOpenPermitted;
+
+    /**
+     * Creates a closed circuit breaker.
+     * @param settings the circuit breaker settings.
+     * @param clock    the clock.
+     */
+    public CircuitBreaker(RpCircuitBreakerConfig settings, Clock clock) {
+        this.settings = settings;
+        this.clock = clock;
+
+        int windowSize = Math.max(1, settings.getWindowSize());
+        this.failedCalls = new boolean[windowSize];
+        this.slowCalls = new boolean[windowSize];
+    }
+
+    /**
+     * Returns the current state.
+     * @return the state of the breaker.
+     */
+    public synchronized State getState() {
+        if (this.state == State.OPEN && this.waitIsOver()) {
+            return State.HALF_OPEN;
+        }
+        return this.state;
+    }
+
+    /**
+     * Asks for permission to make a call. A permitted call must be followed by a call to {@link #onResult}.
+     * @return true if the call may be made, false if it should be rejected.
+     */
+    public synchronized boolean tryAcquirePermission() {
+        if (this.state == State.OPEN) {
+            if (!this.waitIsOver()) {
+                return false;
+            }
+            this.transitionTo(State.HALF_OPEN);
+        }
+
+        if (this.state == State.HALF_OPEN) {
+            if (this.halfOpenPermitted >= this.settings.getPermittedCallsInHalfOpenState()) {
+                return false;
+            }
+            this.halfOpenPermitted++;
+        }
+        return true;
+    }
+
+    /**
+     * Records the outcome of a permitted call.
+     * @param durationMillis the duration of the call in milliseconds.
+     * @param failed         true if the call failed.
+     */
+    public synchronized void onResult(long durationMillis, boolean failed) {
+        if (this.state == State.OPEN) {
+            // Late result of a call made before the breaker opened
+            return;
+        }
+
+        this.record(failed, durationMillis >= this.settings.getSlowCallDuration());
+
+        int minimumCalls = this.state == State.HALF_OPEN
+            ? this.settings.getPermittedCallsInHalfOpenState()
+            : Math.min(this.settings.getMinimumCalls(), this.failedCalls.length);
+        if (this.windowCount < minimumCalls) {
+            return;
+        }
+
+        boolean overThreshold =
+            this.failedCount * PERCENT >= this.settings.getFailureRateThreshold() * this.windowCount
+            || this.slowCount * PERCENT >= this.settings.getSlowCallRateThreshold() * this.windowCount;
+
+        if (overThreshold) {
+            this.transitionTo(State.OPEN);
+        } else if (this.state == State.HALF_OPEN) {
+            this.transitionTo(State.CLOSED);
+        }
+    }
+
+    private void record(boolean failed, boolean slow) {
+        if (this.windowCount == this.failedCalls.length) {
+            // Window full, drop the oldest outcome
+            this.failedCount -= this.failedCalls[this.windowPosition] ? 1 : 0;
+            this.slowCount -= this.slowCalls[this.windowPosition] ? 1 : 0;
+        } else {
+            this.windowCount++;
+        }
+
+        this.failedCalls[this.windowPosition] = failed;
+        this.slowCalls[this.windowPosition] = slow;
+        this.failedCount += failed ? 1 : 0;
+        this.slowCount += slow ? 1 : 0;
+        this.windowPosition = (this.windowPosition + 1) % this.failedCalls.length;
+    }
+
+    private void transitionTo(State newState) {
+        this.state = newState;
+        this.openedAt = this.clock.millis();
+        this.halfOpenPermitted = 0;
+        this.windowPosition = 0;
+        this.windowCount = 0;
+        this.failedCount = 0;
+        this.slowCount = 0;
+    }
+
+    private boolean waitIsOver() {
+        return this.clock.millis() - this.openedAt >= this.settings.getWaitDurationInOpenState();
+    }
+}
@@ -0,0 +1,76 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.bankid.relyingparty.resilience;
+
+import com.bankid.codefront.bankid.relyingparty.RpEndpoint;
+import org.springframework.boot.actuate.autoconfigure.health.ConditionalOnEnabledHealthIndicator;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reports the BankID RP circuit breakers as health.
+ * The indicator is down while any breaker is open. Add "rpCircuitBreaker" to the readiness group to stop
+ * routing traffic to a node that cannot reach RP.
+ */
+@Component("rpCircuitBreaker")
+@ConditionalOnEnabledHealthIndicator("rpcircuitbreaker")
+public class CircuitBreakerHealthIndicator implements HealthIndicator {
+    private final CircuitBreakers circuitBreakers;
+
+    /**
+     * Creates the health indicator.
+     * @param circuitBreakers the circuit breakers.
+     */
+    public CircuitBreakerHealthIndicator(CircuitBreakers circuitBreakers) {
+        this.circuitBreakers = circuitBreakers;
+    }
+
+    /**
+     * Returns the health, with the state of each breaker as details.
+     * @return down if any breaker is open.
+     */
+    @Override
+    public Health health() {
+        Health.Builder builder = Health.up();
+        for (RpEndpoint endpoint : RpEndpoint.values()) {
+            CircuitBreaker.State state = this.circuitBreakers.getState(endpoint);
+            if (state == CircuitBreaker.State.OPEN) {
+                builder.down();
+            }
+            builder.withDetail(endpoint.getPath(), state);
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,102 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.bankid.relyingparty.resilience;
+
+import com.bankid.codefront.bankid.relyingparty.RpEndpoint;
+import com.bankid.codefront.bankid.relyingparty.metrics.RpApiMetrics;
+import com.bankid.codefront.config.BankIDRelyingPartyConfig;
+import com.bankid.codefront.config.RpCircuitBreakerConfig;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * The circuit breakers of the BankID RP endpoints.
+ */
+@Component
+public class CircuitBreakers {
+    private final boolean enabled;
+    private final Map<RpEndpoint, CircuitBreaker> breakers = new EnumMap<>(RpEndpoint.class);
+
+    /**
+     * Creates a closed circuit breaker for each endpoint.
+     * @param settings the configuration.
+     * @param metrics  the metrics helper.
+     * @param clock    the clock.
+     */
+    public CircuitBreakers(BankIDRelyingPartyConfig settings, RpApiMetrics metrics, Clock clock) {
+        RpCircuitBreakerConfig breakerSettings = settings.getCircuitBreaker() == null
+            ? new RpCircuitBreakerConfig()
+            : settings.getCircuitBreaker();
+
+        this.enabled = breakerSettings.isEnabled();
+        for (RpEndpoint endpoint : RpEndpoint.values()) {
+            CircuitBreaker breaker = new CircuitBreaker(breakerSettings, clock);
+            this.breakers.put(endpoint, breaker);
+            metrics.registerCircuitBreaker(endpoint, breaker::getState);
+        }
+    }
+
+    /**
+     * Asks the breaker of an endpoint for permission to make a call.
+     * @param endpoint the endpoint to call.
+     * @return true if the call may be made.
+     */
+    public boolean tryAcquirePermission(RpEndpoint endpoint) {
+        return !this.enabled || this.breakers.get(endpoint).tryAcquirePermission();
+    }
+
+    /**
+     * Records the outcome of a permitted call.
+     * @param endpoint       the endpoint that was called.
+     * @param durationMillis the duration of the call in milliseconds.
+     * @param failed         true if the call failed.
+     */
+    public void onResult(RpEndpoint endpoint, long durationMillis, boolean failed) {
+        if (this.enabled) {
+            this.breakers.get(endpoint).onResult(durationMillis, failed);
+        }
+    }
+
+    /**
+     * Returns the state of the breaker of an endpoint.
+     * @param endpoint the endpoint.
+     * @return the state of the breaker.
+     */
+    public CircuitBreaker.State getState(RpEndpoint endpoint) {
+        return this.enabled ? this.breakers.get(endpoint).getState() : CircuitBreaker.State.CLOSED;
+    }
+}
@@ -0,0 +1,188 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.bankid.relyingparty.resilience;
+
+import com.bankid.codefront.bankid.relyingparty.metrics.RpApiMetrics;
+import com.bankid.codefront.config.BankIDRelyingPartyConfig;
+import com.bankid.codefront.config.RpHedgingConfig;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Hedges collect calls to cut tail latency.
+ * When a collect has not answered within a percentile of the recent collect latency, a second identical
+ * collect is sent and the first successful answer is used. Collect is read-only, so the duplicate is safe.
+ * The share of hedged calls is capped by a budget, so hedging cannot double the load on a slow RP.
+ */
+@Component
+public class CollectHedging {
+    private static final int WINDOW_SIZE = 1000;
+    private static final int MIN_SAMPLES = 20;
+    private static final int RECALCULATE_INTERVAL = 16;
+    private static final int MAX_SAVED_HEDGES = 10;
+    private static final int PERCENT = 100;
+
+    private final RpHedgingConfig settings;
+    private final RpApiMetrics metrics;
+    private final RetryBudget budget;
+
+    // Latest successful latencies in milliseconds
+    private final long[] latencies = new long[WINDOW_SIZE];
+    private int latencyCount;
+    private int latencyPosition;
+    private long hedgeDelay = -1;
+
+    /**
+     * Creates the hedging.
+     * @param settings the configuration.
+     * @param metrics  the metrics helper.
+     */
+    public CollectHedging(BankIDRelyingPartyConfig settings, RpApiMetrics metrics) {
+        this.settings = settings.getCollectHedging() == null
+            ? new RpHedgingConfig()
+            : settings.getCollectHedging();
+        this.metrics = metrics;
+        this.budget = new RetryBudget(this.settings.getMaxHedgeRate(), MAX_SAVED_HEDGES);
+    }
+
+    /**
+     * Makes a call, and a second one if the first is slow and hedging is enabled.
+     * @param call    makes one call.
+     * @param success tells if a result is successful.
+     * @param <T>     the type of the result.
+     * @return a future with the first successful result, or the outcome of the last call if both failed.
+     */
+    public <T> CompletableFuture<T> execute(Supplier<CompletableFuture<T>> call, Predicate<T> success) {
+        if (!this.settings.isEnabled()) {
+            return call.get();
+        }
+
+        this.budget.onCall();
+        long delay = this.getHedgeDelay();
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(1);
+
+        this.start(call, success, result, pending, false);
+
+        if (delay >= 0) {
+            CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS).execute(() -> {
+                // Only hedge while the outcome is open
+                if (result.isDone()
+                    || !this.budget.tryAcquire()
+                    || pending.getAndUpdate(count -> count == 0 ? 0 : count + 1) == 0) {
+                    return;
+                }
+
+                this.metrics.collectHedgeFired();
+                this.start(call, success, result, pending, true);
+            });
+        }
+        return result;
+    }
+
+    /**
+     * Returns the time to wait before hedging.
+     * @return the delay in milliseconds, or -1 if there are not enough latency samples yet.
+     */
+    synchronized long getHedgeDelay() {
+        return this.hedgeDelay;
+    }
+
+    private <T> void start(
+        Supplier<CompletableFuture<T>> call,
+        Predicate<T> success,
+        CompletableFuture<T> result,
+        AtomicInteger pending,
+        boolean hedge) {
+
+        long startTime = System.nanoTime();
+        CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+
+        future.whenComplete((value, throwable) -> {
+            if (throwable == null && success.test(value)) {
+                this.recordLatency(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+                if (result.complete(value) && hedge) {
+                    this.metrics.collectHedgeWon();
+                }
+                return;
+            }
+            this.onFailure(result, pending, value, throwable);
+        });
+    }
+
+    /**
+     * Completes the result with a failed outcome when no other call is pending.
+     * @param result    the result of the hedged call.
+     * @param pending   the number of pending calls.
+     * @param value     the failed result, if any.
+     * @param throwable the failure, if any.
+     * @param <T>       the type of the result.
+     */
+    private <T> void onFailure(CompletableFuture<T> result, AtomicInteger pending, T value, Throwable throwable) {
+        if (pending.decrementAndGet() != 0) {
+            return;
+        }
+
+        if (throwable != null) {
+            result.completeExceptionally(throwable);
+        } else {
+            result.complete(value);
+        }
+    }
+
+    private synchronized void recordLatency(long latencyMillis) {
+        this.latencies[this.latencyPosition] = latencyMillis;
+        this.latencyPosition = (this.latencyPosition + 1) % WINDOW_SIZE;
+        this.latencyCount = Math.min(WINDOW_SIZE, this.latencyCount + 1);
+
+        if (this.latencyCount >= MIN_SAMPLES
+            && (this.hedgeDelay < 0 || this.latencyPosition % RECALCULATE_INTERVAL == 0)) {
+            long[] sorted = Arrays.copyOf(this.latencies, this.latencyCount);
+            Arrays.sort(sorted);
+            int index = Math.min(this.latencyCount - 1, this.latencyCount * this.settings.getPercentile() / PERCENT);
+            this.hedgeDelay = Math.max(this.settings.getMinDelay(), sorted[index]);
+        }
+    }
+}
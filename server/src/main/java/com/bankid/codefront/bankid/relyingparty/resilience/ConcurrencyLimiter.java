@@ -0,0 +1,144 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.bankid.relyingparty.resilience;
+
+import com.bankid.codefront.config.RpConcurrencyLimitConfig;
+
+/**
+ * Adaptive limit of the number of concurrent calls to BankID RP.
+ *
+ * <p>The limit follows the gradient between the long term and the latest round-trip time. While RP answers
+ * as fast as usual the limit grows by about its square root, which allows for some queueing. When calls take
+ * longer than the long term latency (with some tolerance) RP is queueing requests and the limit shrinks in
+ * proportion, at most by half per sample.
+ *
+ * <p>Each endpoint has its own limiter, see {@link ConcurrencyLimiters}. The limiter is checked by the
+ * {@link Bulkhead} of the endpoint when it admits a call, so calls over the limit wait in the bulkhead queue.
+ * Only the bulkhead takes and gives back slots, {@link #onSample} only adjusts the limit.
+ */
+public class ConcurrencyLimiter {
+    private static final double MIN_GRADIENT = 0.5;
+    private static final double DROP_BACKOFF = 0.9;
+    private static final double LONG_RTT_DECAY = 0.95;
+    private static final int LONG_RTT_DRIFT = 2;
+
+    private final RpConcurrencyLimitConfig settings;
+    private final double longRttAlpha;
+
+    private double limit;
+    private double longRtt;
+    private int inFlight;
+
+    /**
+     * Creates the limiter with the initial limit.
+     * @param settings the configuration.
+     */
+    public ConcurrencyLimiter(RpConcurrencyLimitConfig settings) {
+        this.settings = settings;
+        this.longRttAlpha = 2.0 / (Math.max(1, this.settings.getLongWindow()) + 1);
+        this.limit = this.settings.getInitialLimit();
+    }
+
+    /**
+     * Takes a slot for a call. A taken slot must be given back with {@link #release}.
+     * @return true if the call may be made, false if the limit is reached.
+     */
+    public synchronized boolean tryAcquire() {
+        if (this.settings.isEnabled() && this.inFlight >= (int) this.limit) {
+            return false;
+        }
+        this.inFlight++;
+        return true;
+    }
+
+    /**
+     * Gives back a slot of a completed call.
+     */
+    public synchronized void release() {
+        this.inFlight--;
+    }
+
+    /**
+     * Adjusts the limit from the round-trip time of a call that still holds its slot.
+     * @param rttNanos the round-trip time in nanoseconds.
+     * @param dropped  true if the call failed with a timeout or an IO error.
+     */
+    public synchronized void onSample(long rttNanos, boolean dropped) {
+        int inFlightAtSample = this.inFlight;
+
+        if (dropped) {
+            this.setLimit(this.limit * DROP_BACKOFF);
+            return;
+        }
+
+        double shortRtt = Math.max(1, rttNanos);
+        this.longRtt = this.longRtt == 0 ? shortRtt : this.longRtt + (shortRtt - this.longRtt) * this.longRttAlpha;
+
+        // Let the long term latency recover quickly after a period of high latency
+        if (this.longRtt > shortRtt * LONG_RTT_DRIFT) {
+            this.longRtt *= LONG_RTT_DECAY;
+        }
+
+        // The limit is not tested when most of it is unused, don't let it grow
+        if (inFlightAtSample < this.limit / 2) {
+            return;
+        }
+
+        double gradient = Math.max(
+            MIN_GRADIENT,
+            Math.min(1.0, this.settings.getRttTolerance() * this.longRtt / shortRtt));
+        double newLimit = this.limit * gradient + Math.sqrt(this.limit);
+        this.setLimit(this.limit * (1 - this.settings.getSmoothing()) + newLimit * this.settings.getSmoothing());
+    }
+
+    /**
+     * Returns the current limit.
+     * @return the max number of concurrent calls.
+     */
+    public synchronized int getLimit() {
+        return (int) this.limit;
+    }
+
+    /**
+     * Returns the number of running calls.
+     * @return the number of running calls.
+     */
+    public synchronized int getInFlight() {
+        return this.inFlight;
+    }
+
+    private void setLimit(double newLimit) {
+        this.limit = Math.max(this.settings.getMinLimit(), Math.min(this.settings.getMaxLimit(), newLimit));
+    }
+}
@@ -0,0 +1,86 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.bankid.relyingparty.resilience;
+
+import com.bankid.codefront.bankid.relyingparty.RpEndpoint;
+import com.bankid.codefront.bankid.relyingparty.metrics.RpApiMetrics;
+import com.bankid.codefront.config.BankIDRelyingPartyConfig;
+import com.bankid.codefront.config.RpConcurrencyLimitConfig;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * The adaptive concurrency limits of the BankID RP endpoints.
+ * Like the bulkheads, starting orders, collecting and cancelling have separate limits, so slow or many
+ * collect calls shrink the limit of collect only and cannot reject new authentications and signatures.
+ */
+@Component
+public class ConcurrencyLimiters {
+    private final Map<RpEndpoint, ConcurrencyLimiter> limiters = new EnumMap<>(RpEndpoint.class);
+
+    /**
+     * Creates the limiters.
+     * @param settings the configuration.
+     * @param metrics  the metrics helper.
+     */
+    public ConcurrencyLimiters(BankIDRelyingPartyConfig settings, RpApiMetrics metrics) {
+        RpConcurrencyLimitConfig limitSettings = settings.getConcurrencyLimit() == null
+            ? new RpConcurrencyLimitConfig()
+            : settings.getConcurrencyLimit();
+
+        ConcurrencyLimiter start = new ConcurrencyLimiter(limitSettings);
+        metrics.registerConcurrencyLimiter("start", start);
+        this.limiters.put(RpEndpoint.AUTH, start);
+        this.limiters.put(RpEndpoint.SIGN, start);
+
+        ConcurrencyLimiter collect = new ConcurrencyLimiter(limitSettings);
+        metrics.registerConcurrencyLimiter("collect", collect);
+        this.limiters.put(RpEndpoint.COLLECT, collect);
+
+        ConcurrencyLimiter cancel = new ConcurrencyLimiter(limitSettings);
+        metrics.registerConcurrencyLimiter("cancel", cancel);
+        this.limiters.put(RpEndpoint.CANCEL, cancel);
+    }
+
+    /**
+     * Returns the limiter of an endpoint.
+     * @param endpoint the endpoint.
+     * @return the limiter, shared by auth and sign.
+     */
+    public ConcurrencyLimiter get(RpEndpoint endpoint) {
+        return this.limiters.get(endpoint);
+    }
+}
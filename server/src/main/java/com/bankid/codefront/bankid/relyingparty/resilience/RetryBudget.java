@@ -0,0 +1,85 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.bankid.relyingparty.resilience;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket limiting retries to a ratio of the calls.
+ * Every call deposits a fraction of a token and every retry withdraws a whole token, so retries can never
+ * add more than the ratio in extra load, also when the RP is down and every call fails. As each node
+ * has its own budget, the extra load on RP from the whole cluster is limited by the same ratio.
+ */
+public class RetryBudget {
+    private static final long TOKEN = 1000;
+
+    private final long deposit;
+    private final long maxBalance;
+    private final AtomicLong balance;
+
+    /**
+     * Creates a full retry budget.
+     * @param ratio     the number of retries earned by each call.
+     * @param maxTokens the max number of retries that can be saved up.
+     */
+    public RetryBudget(double ratio, int maxTokens) {
+        this.deposit = Math.round(ratio * TOKEN);
+        this.maxBalance = maxTokens * TOKEN;
+        this.balance = new AtomicLong(this.maxBalance);
+    }
+
+    /**
+     * Records a call, earning a part of a retry.
+     */
+    public void onCall() {
+        this.balance.accumulateAndGet(
+            this.deposit,
+            (current, deposit) -> Math.min(this.maxBalance, current + deposit));
+    }
+
+    /**
+     * Withdraws one retry from the budget.
+     * @return true if a retry may be made, false if the budget is exhausted.
+     */
+    public boolean tryAcquire() {
+        long current;
+        do {
+            current = this.balance.get();
+            if (current < TOKEN) {
+                return false;
+            }
+        } while (!this.balance.compareAndSet(current, current - TOKEN));
+        return true;
+    }
+}
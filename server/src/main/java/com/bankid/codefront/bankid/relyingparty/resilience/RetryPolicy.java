@@ -0,0 +1,161 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.bankid.relyingparty.resilience;
+
+import com.bankid.codefront.bankid.relyingparty.RpEndpoint;
+import com.bankid.codefront.bankid.relyingparty.metrics.RpApiMetrics;
+import com.bankid.codefront.config.BankIDRelyingPartyConfig;
+import com.bankid.codefront.config.RpRetryConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Retries failed calls to the idempotent BankID RP endpoints.
+ * Retries use exponential backoff with full jitter and are limited by a retry budget shared by all endpoints.
+ * Calls to endpoints that are not idempotent are never retried.
+ */
+@Component
+public class RetryPolicy {
+    private final Logger logger = LoggerFactory.getLogger(RetryPolicy.class);
+
+    private final RpRetryConfig settings;
+    private final RpApiMetrics metrics;
+    private final RetryBudget budget;
+
+    /**
+     * Creates the retry policy.
+     * @param settings the configuration.
+     * @param metrics  the metrics helper.
+     */
+    public RetryPolicy(BankIDRelyingPartyConfig settings, RpApiMetrics metrics) {
+        this.settings = settings.getRetry() == null ? new RpRetryConfig() : settings.getRetry();
+        this.metrics = metrics;
+        this.budget = new RetryBudget(this.settings.getBudgetRatio(), this.settings.getBudgetMaxTokens());
+    }
+
+    /**
+     * Makes a call, retrying it if it fails with an IO error or a retryable result.
+     * @param endpoint        the endpoint that is called.
+     * @param call            makes one attempt of the call.
+     * @param retryableResult tells if a result is a failure that is worth retrying.
+     * @param <T>             the type of the result.
+     * @return a future with the result of the last attempt.
+     */
+    public <T> CompletableFuture<T> execute(
+        RpEndpoint endpoint,
+        Supplier<CompletableFuture<T>> call,
+        Predicate<T> retryableResult) {
+
+        this.budget.onCall();
+        return this.attempt(endpoint, call, retryableResult, 1);
+    }
+
+    private <T> CompletableFuture<T> attempt(
+        RpEndpoint endpoint,
+        Supplier<CompletableFuture<T>> call,
+        Predicate<T> retryableResult,
+        int attempt) {
+
+        return call.get()
+            .handle((result, throwable) -> {
+                boolean failed = throwable == null
+                    ? retryableResult.test(result)
+                    : isRetryable(throwable);
+
+                CompletableFuture<T> outcome = throwable == null
+                    ? CompletableFuture.completedFuture(result)
+                    : CompletableFuture.failedFuture(throwable);
+                if (!failed || !this.mayRetry(endpoint, attempt)) {
+                    return outcome;
+                }
+
+                long backoff = this.backoff(attempt);
+                this.logger.info(
+                        "Retrying call to RP:/{} in {} ms, attempt {}.",
+                        endpoint.getPath(),
+                        backoff,
+                        attempt + 1);
+                this.metrics.retryAttempt(endpoint);
+                return CompletableFuture
+                    .supplyAsync(
+                        () -> this.attempt(endpoint, call, retryableResult, attempt + 1),
+                        CompletableFuture.delayedExecutor(backoff, TimeUnit.MILLISECONDS))
+                    .thenCompose(next -> next)
+                    // A retry rejected by a resilience guard keeps the outcome of this attempt
+                    .exceptionallyCompose(retryFailure -> unwrap(retryFailure) instanceof RpApiRejectedException
+                        ? outcome
+                        : CompletableFuture.failedFuture(retryFailure));
+            })
+            .thenCompose(next -> next);
+    }
+
+    private boolean mayRetry(RpEndpoint endpoint, int attempt) {
+        if (!endpoint.isIdempotent() || attempt >= this.settings.getMaxAttempts()) {
+            return false;
+        }
+
+        if (!this.budget.tryAcquire()) {
+            this.logger.warn("Retry budget exhausted, not retrying call to RP:/{}.", endpoint.getPath());
+            this.metrics.retryBudgetExhausted(endpoint);
+            return false;
+        }
+        return true;
+    }
+
+    private long backoff(int attempt) {
+        long cap = Math.min(
+            this.settings.getMaxBackoff(),
+            (long) this.settings.getInitialBackoff() << Math.min(attempt - 1, Integer.SIZE - 2));
+        return cap <= 0 ? 0 : ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+    private static boolean isRetryable(Throwable throwable) {
+        return unwrap(throwable) instanceof IOException;
+    }
+
+    private static Throwable unwrap(Throwable throwable) {
+        return throwable instanceof CompletionException && throwable.getCause() != null
+            ? throwable.getCause()
+            : throwable;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.bankid.relyingparty.resilience;
+
+import com.bankid.codefront.bankid.relyingparty.RpEndpoint;
+
+/**
+ * Thrown when a call to BankID RP is rejected without being sent.
+ */
+public class RpApiRejectedException extends RuntimeException {
+    @SuppressWarnings("unused")
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The reason a call was rejected.
+     */
+    public enum Reason {
+        /** The circuit breaker of the endpoint is open. */
+        CIRCUIT_OPEN,
+        /** The bulkhead of the endpoint is full. */
+        BULKHEAD_FULL,
+        /** The call waited longer than the max wait for a free slot in the bulkhead. */
+        QUEUE_TIMEOUT
+    }
+
+    private final RpEndpoint endpoint;
+    private final Reason reason;
+
+    /**
+     * Creates the exception.
+     * @param endpoint the endpoint that was called.
+     * @param reason   the reason the call was rejected.
+     */
+    public RpApiRejectedException(RpEndpoint endpoint, Reason reason) {
+        super("Call to RP:/" + endpoint.getPath() + " rejected: " + reason, null, false, false);
+        this.endpoint = endpoint;
+        this.reason = reason;
+    }
+
+    /**
+     * Returns the endpoint that was called.
+     * @return the endpoint.
+     */
+    public RpEndpoint getEndpoint() {
+        return this.endpoint;
+    }
+
+    /**
+     * Returns the reason the call was rejected.
+     * @return the reason.
+     */
+    public Reason getReason() {
+        return this.reason;
+    }
+}
@@ -34,30 +34,38 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 package com.bankid.codefront.bankid.relyingparty.signature;
 
 import com.bankid.codefront.models.Base64String;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
 
 import javax.xml.XMLConstants;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
-import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import java.io.StringReader;
 import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 
 /**
  * Parses and optionally validates signature.
+ *
+ * <p>The signature is read as a stream, which stops as soon as the values of bankIdSignedData have been read. The
+ * signature XML carries the certificate chain before the signed data, so no tree of it is built. Markup after the
+ * values is not read, so a signature that is not well-formed after the values is not rejected.
  */
 public class DigitalSignature {
+    private static final String DIGSIG_NS = "http://www.w3.org/2000/09/xmldsig#";
+    private static final String BIDSIG_NS = "http://www.bankid.com/signature/v1.0.0/types";
+
+    private static final int SIGNATURE_USAGE = 0;
+    private static final int USER_NON_VISIBLE_DATA = 1;
+    private static final int USER_VISIBLE_DATA = 2;
+    private static final int VALUE_COUNT = 3;
+
+    // Depth of each element on the path /Signature/Object/bankIdSignedData/clientInfo
+    private static final int SIGNATURE_DEPTH = 1;
+    private static final int OBJECT_DEPTH = 2;
+    private static final int SIGNED_DATA_DEPTH = 3;
+    private static final int CLIENT_INFO_DEPTH = 4;
+
     private final String signatureUsage;
     private final String userNonVisibleData;
     private final String userVisibleData;
@@ -78,38 +86,10 @@ public class DigitalSignature {
                     xmlSignatureB64.getValue()),
                     StandardCharsets.UTF_8);
 
-        try {
-            // Parse
-            Document doc = parseAsDocument(xmlSignature);
-            XPath xPath = XPathFactory.newInstance().newXPath();
-            xPath.setNamespaceContext(new BidSignatureNamespaceContext());
-
-            Element docElement = doc.getDocumentElement();
-
-            String bidSignedData = "/digsig:Signature/digsig:Object/bidsig:bankIdSignedData";
-
-            this.signatureUsage =
-                    getXpathString(
-                        xPath,
-                        bidSignedData + "/bidsig:clientInfo/bidsig:funcId",
-                        docElement);
-
-            this.userNonVisibleData =
-                    getXpathString(
-                        xPath,
-                        bidSignedData + "/bidsig:usrNonVisibleData",
-                        docElement);
-
-            this.userVisibleData =
-                    getXpathString(
-                            xPath,
-                            bidSignedData + "/bidsig:usrVisibleData",
-                            docElement);
-        } catch (IOException | ParserConfigurationException | XPathExpressionException e) {
-            throw new RuntimeException(e);
-        } catch (SAXException e) {
-            throw new SignatureParseException(e);
-        }
+        String[] values = readSignedData(xmlSignature);
+        this.signatureUsage = values[SIGNATURE_USAGE];
+        this.userNonVisibleData = values[USER_NON_VISIBLE_DATA];
+        this.userVisibleData = values[USER_VISIBLE_DATA];
     }
 
     /**
@@ -137,67 +117,131 @@ public class DigitalSignature {
     }
 
     /**
-     * Parses a string as an XML document.
+     * Reads the values of bankIdSignedData from the signature as a stream.
+     * The first value at each path is read, as by XPath, and reading stops when all values have been read.
      * @param xml the xml string.
-     * @return a Document.
+     * @return the signature usage, user non-visible data and user visible data, null if not found.
+     * @throws SignatureParseException if the signature is not well-formed or has a document type declaration.
      */
-    private Document parseAsDocument(String xml) throws ParserConfigurationException, IOException, SAXException {
-        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-
-        dbf.setNamespaceAware(true);
-        dbf.setValidating(false);
-        dbf.setFeature("http://apache.org/xml/features/nonvalidating/load-dtd-grammar", false);
-        dbf.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
-        dbf.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
-        dbf.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
-
-        DocumentBuilder db = dbf.newDocumentBuilder();
-        try (OutputStreamWriter errorWriter = new OutputStreamWriter(System.err, StandardCharsets.UTF_8)) {
-            db.setErrorHandler(new XmlParseErrorHandler(new PrintWriter(errorWriter, true)));
-            InputSource is = new InputSource(new StringReader(xml));
-            return db.parse(is);
+    private static String[] readSignedData(String xml) throws SignatureParseException {
+        XMLInputFactory xif = XMLInputFactory.newDefaultFactory();
+
+        xif.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        xif.setProperty(XMLInputFactory.IS_VALIDATING, false);
+        xif.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xif.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        xif.setProperty(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+
+        String[] values = new String[VALUE_COUNT];
+        int found = 0;
+        int depth = 0;
+        // Depth of the deepest element that is on the path to a value
+        int matched = 0;
+        // Value being read, its text and the depth of its element
+        int current = -1;
+        StringBuilder text = null;
+        int currentDepth = 0;
+
+        XMLStreamReader reader = null;
+        try {
+            reader = xif.createXMLStreamReader(new StringReader(xml));
+            while (reader.hasNext() && found < VALUE_COUNT) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.DTD:
+                        // Same as disallow-doctype-decl of the document parser
+                        throw new SignatureParseException("DOCTYPE is not allowed");
+                    case XMLStreamConstants.START_ELEMENT:
+                        depth++;
+                        if (current < 0 && matched == depth - 1) {
+                            int value = valueAt(depth, reader.getNamespaceURI(), reader.getLocalName());
+                            if (value >= 0 && values[value] == null) {
+                                current = value;
+                                text = new StringBuilder();
+                                currentDepth = depth;
+                            } else if (value < 0 && isOnPath(depth, reader.getNamespaceURI(), reader.getLocalName())) {
+                                matched = depth;
+                            }
+                        }
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                    case XMLStreamConstants.SPACE:
+                        if (current >= 0) {
+                            text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                        }
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        if (current >= 0 && depth == currentDepth) {
+                            values[current] = text.toString();
+                            found++;
+                            current = -1;
+                            text = null;
+                        } else if (matched == depth) {
+                            matched--;
+                        }
+                        depth--;
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw new SignatureParseException(e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    // Nothing more to read
+                }
+            }
         }
-    }
 
+        return values;
+    }
 
     /**
-     * Returns the value for a xpath in a document.
-     * @param xPath           the base xpath object.
-     * @param path            the xpath to the value.
-     * @param documentElement the document.
-     * @throws XPathExpressionException If <code>path</code> cannot be evaluated.
-     *
-     * @return the value for the xpath or null.
-     *
+     * Check if an element is on the path to the values of bankIdSignedData.
+     * @param depth     the depth of the element.
+     * @param namespace the namespace of the element.
+     * @param name      the local name of the element.
+     * @return true if the element is on the path.
      */
-    private static String getXpathString(XPath xPath, String path, Element documentElement)
-            throws XPathExpressionException {
-
-        Element element = getXpath(xPath, path, documentElement);
-
-        if (element == null) {
-            return null;
+    private static boolean isOnPath(int depth, String namespace, String name) {
+        switch (depth) {
+            case SIGNATURE_DEPTH:
+                return DIGSIG_NS.equals(namespace) && "Signature".equals(name);
+            case OBJECT_DEPTH:
+                return DIGSIG_NS.equals(namespace) && "Object".equals(name);
+            case SIGNED_DATA_DEPTH:
+                return BIDSIG_NS.equals(namespace) && "bankIdSignedData".equals(name);
+            case CLIENT_INFO_DEPTH:
+                return BIDSIG_NS.equals(namespace) && "clientInfo".equals(name);
+            default:
+                return false;
         }
-
-        return element.getTextContent();
     }
 
     /**
-     * Returns the Element for a xpath in a document.
-     * @param xPath           the base xpath object.
-     * @param path            the xpath to the value.
-     * @param documentElement the document.
-     * @throws XPathExpressionException If <code>path</code> cannot be evaluated.
-     *
-     * @return the Element for the xpath.
-     *
+     * Returns the value an element holds, for an element whose parent is on the path to the values.
+     * @param depth     the depth of the element.
+     * @param namespace the namespace of the element.
+     * @param name      the local name of the element.
+     * @return the index of the value, or -1 if the element does not hold a value.
      */
-    private static Element getXpath(XPath xPath, String path, Element documentElement)
-            throws XPathExpressionException {
-
-        return (Element) xPath.evaluate(
-                path,
-                documentElement,
-                XPathConstants.NODE);
+    private static int valueAt(int depth, String namespace, String name) {
+        if (!BIDSIG_NS.equals(namespace)) {
+            return -1;
+        }
+        if (depth == SIGNED_DATA_DEPTH + 1 && "usrNonVisibleData".equals(name)) {
+            return USER_NON_VISIBLE_DATA;
+        }
+        if (depth == SIGNED_DATA_DEPTH + 1 && "usrVisibleData".equals(name)) {
+            return USER_VISIBLE_DATA;
+        }
+        if (depth == CLIENT_INFO_DEPTH + 1 && "funcId".equals(name)) {
+            return SIGNATURE_USAGE;
+        }
+        return -1;
     }
 }
@@ -35,6 +35,8 @@ package com.bankid.codefront.bankid.relyingparty.signature;
 
 import org.xml.sax.SAXException;
 
+import javax.xml.stream.XMLStreamException;
+
 /**
  * A BankID signature could not be parsed.
  */
@@ -47,6 +49,14 @@ public class SignatureParseException extends Exception {
         super(e);
     }
 
+    /**
+     * Create instance from StAX exception.
+     * @param e the exception to create this exception from.
+     */
+    SignatureParseException(XMLStreamException e) {
+        super(e);
+    }
+
     /**
      * Create instance from message.
      * @param message the message to create this exception from.
@@ -36,6 +36,8 @@ package com.bankid.codefront.config;
 import com.bankid.codefront.models.bankid.relyingparty.BankIDRequirements;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.net.http.HttpClient;
+
 /**
  * Represents the configuration settings for the BankID Relying Party API.
  */
@@ -43,6 +45,12 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 public class BankIDRelyingPartyConfig {
     private static final int DEFAULT_CONNECT_TIMEOUT = 5000;
     private static final int DEFAULT_READ_TIMEOUT = 5000;
+    private static final int DEFAULT_START_MAX_CONCURRENT = 20;
+    private static final int DEFAULT_START_MAX_QUEUE = 50;
+    private static final int DEFAULT_COLLECT_MAX_CONCURRENT = 100;
+    private static final int DEFAULT_COLLECT_MAX_QUEUE = 200;
+    private static final int DEFAULT_CANCEL_MAX_CONCURRENT = 10;
+    private static final int DEFAULT_CANCEL_MAX_QUEUE = 20;
 
     private BankIDRequirements authenticationRequirements;
     private BankIDRequirements signingRequirements;
@@ -64,6 +72,35 @@ public class BankIDRelyingPartyConfig {
      * Timeout for reading responses in milliseconds.
      */
     private int readTimeout = DEFAULT_READ_TIMEOUT;
+    /**
+     * The preferred HTTP version towards BankID RP.
+     */
+    private HttpClient.Version httpVersion = HttpClient.Version.HTTP_2;
+    /**
+     * Number of connections to open before the application reports ready. Zero disables warm-up.
+     */
+    private int warmUpConnections;
+    /**
+     * Fire the first collect of an order as soon as it is started, without waiting for it.
+     */
+    private boolean prefetchFirstCollect;
+    private RpRetryConfig retry = new RpRetryConfig();
+    private RpCircuitBreakerConfig circuitBreaker = new RpCircuitBreakerConfig();
+    private RpConcurrencyLimitConfig concurrencyLimit = new RpConcurrencyLimitConfig();
+    private RpHedgingConfig collectHedging = new RpHedgingConfig();
+    private RpCollectSchedulerConfig collectScheduler = new RpCollectSchedulerConfig();
+    private RpCollectLeaseConfig collectLease = new RpCollectLeaseConfig();
+    private RpCollectCacheConfig collectCache = new RpCollectCacheConfig();
+    private RpPollCadenceConfig pollCadence = new RpPollCadenceConfig();
+    private RpTimingWheelConfig timingWheel = new RpTimingWheelConfig();
+    private RpOrderReaperConfig orderReaper = new RpOrderReaperConfig();
+    private RpQrCodeConfig qrCode = new RpQrCodeConfig();
+    private RpBulkheadConfig startBulkhead =
+        new RpBulkheadConfig(DEFAULT_START_MAX_CONCURRENT, DEFAULT_START_MAX_QUEUE);
+    private RpBulkheadConfig collectBulkhead =
+        new RpBulkheadConfig(DEFAULT_COLLECT_MAX_CONCURRENT, DEFAULT_COLLECT_MAX_QUEUE);
+    private RpBulkheadConfig cancelBulkhead =
+        new RpBulkheadConfig(DEFAULT_CANCEL_MAX_CONCURRENT, DEFAULT_CANCEL_MAX_QUEUE);
     private String url;
 
     /**
@@ -242,4 +279,276 @@ public class BankIDRelyingPartyConfig {
     public void setReadTimeout(int timeout) {
         this.readTimeout = timeout;
     }
+
+    /**
+     * Returns the preferred HTTP version towards BankID RP.
+     * @return the preferred HTTP version.
+     */
+    public HttpClient.Version getHttpVersion() {
+        return this.httpVersion;
+    }
+
+    /**
+     * Sets the preferred HTTP version towards BankID RP.
+     * @param httpVersion the preferred HTTP version.
+     */
+    public void setHttpVersion(HttpClient.Version httpVersion) {
+        this.httpVersion = httpVersion;
+    }
+
+    /**
+     * Returns the number of connections to open before the application reports ready.
+     * @return the number of warm-up connections, zero when disabled.
+     */
+    public int getWarmUpConnections() {
+        return this.warmUpConnections;
+    }
+
+    /**
+     * Sets the number of connections to open before the application reports ready.
+     * @param warmUpConnections the number of warm-up connections, zero to disable.
+     */
+    public void setWarmUpConnections(int warmUpConnections) {
+        this.warmUpConnections = warmUpConnections;
+    }
+
+    /**
+     * Returns true if the first collect of an order is fired as soon as it is started.
+     * @return true if the first collect is prefetched.
+     */
+    public boolean isPrefetchFirstCollect() {
+        return this.prefetchFirstCollect;
+    }
+
+    /**
+     * Sets if the first collect of an order is fired as soon as it is started.
+     * @param prefetchFirstCollect true to prefetch the first collect.
+     */
+    public void setPrefetchFirstCollect(boolean prefetchFirstCollect) {
+        this.prefetchFirstCollect = prefetchFirstCollect;
+    }
+
+    /**
+     * Returns the retry settings.
+     * @return the retry settings.
+     */
+    public RpRetryConfig getRetry() {
+        return this.retry;
+    }
+
+    /**
+     * Sets the retry settings.
+     * @param retry the retry settings.
+     */
+    public void setRetry(RpRetryConfig retry) {
+        this.retry = retry;
+    }
+
+    /**
+     * Returns the circuit breaker settings.
+     * @return the circuit breaker settings.
+     */
+    public RpCircuitBreakerConfig getCircuitBreaker() {
+        return this.circuitBreaker;
+    }
+
+    /**
+     * Sets the circuit breaker settings.
+     * @param circuitBreaker the circuit breaker settings.
+     */
+    public void setCircuitBreaker(RpCircuitBreakerConfig circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * Returns the bulkhead settings for auth and sign calls.
+     * @return the bulkhead settings.
+     */
+    public RpBulkheadConfig getStartBulkhead() {
+        return this.startBulkhead;
+    }
+
+    /**
+     * Sets the bulkhead settings for auth and sign calls.
+     * @param startBulkhead the bulkhead settings.
+     */
+    public void setStartBulkhead(RpBulkheadConfig startBulkhead) {
+        this.startBulkhead = startBulkhead;
+    }
+
+    /**
+     * Returns the bulkhead settings for collect calls.
+     * @return the bulkhead settings.
+     */
+    public RpBulkheadConfig getCollectBulkhead() {
+        return this.collectBulkhead;
+    }
+
+    /**
+     * Sets the bulkhead settings for collect calls.
+     * @param collectBulkhead the bulkhead settings.
+     */
+    public void setCollectBulkhead(RpBulkheadConfig collectBulkhead) {
+        this.collectBulkhead = collectBulkhead;
+    }
+
+    /**
+     * Returns the bulkhead settings for cancel calls.
+     * @return the bulkhead settings.
+     */
+    public RpBulkheadConfig getCancelBulkhead() {
+        return this.cancelBulkhead;
+    }
+
+    /**
+     * Sets the bulkhead settings for cancel calls.
+     * @param cancelBulkhead the bulkhead settings.
+     */
+    public void setCancelBulkhead(RpBulkheadConfig cancelBulkhead) {
+        this.cancelBulkhead = cancelBulkhead;
+    }
+
+    /**
+     * Returns the adaptive concurrency limit settings.
+     * @return the concurrency limit settings.
+     */
+    public RpConcurrencyLimitConfig getConcurrencyLimit() {
+        return this.concurrencyLimit;
+    }
+
+    /**
+     * Sets the adaptive concurrency limit settings.
+     * @param concurrencyLimit the concurrency limit settings.
+     */
+    public void setConcurrencyLimit(RpConcurrencyLimitConfig concurrencyLimit) {
+        this.concurrencyLimit = concurrencyLimit;
+    }
+
+    /**
+     * Returns the settings for hedged collect calls.
+     * @return the hedging settings.
+     */
+    public RpHedgingConfig getCollectHedging() {
+        return this.collectHedging;
+    }
+
+    /**
+     * Sets the settings for hedged collect calls.
+     * @param collectHedging the hedging settings.
+     */
+    public void setCollectHedging(RpHedgingConfig collectHedging) {
+        this.collectHedging = collectHedging;
+    }
+
+    /**
+     * Returns the settings for the background collect of pending orders.
+     * @return the collect scheduler settings.
+     */
+    public RpCollectSchedulerConfig getCollectScheduler() {
+        return this.collectScheduler;
+    }
+
+    /**
+     * Sets the settings for the background collect of pending orders.
+     * @param collectScheduler the collect scheduler settings.
+     */
+    public void setCollectScheduler(RpCollectSchedulerConfig collectScheduler) {
+        this.collectScheduler = collectScheduler;
+    }
+
+    /**
+     * Returns the settings for the cluster wide collect lease.
+     * @return the collect lease settings.
+     */
+    public RpCollectLeaseConfig getCollectLease() {
+        return this.collectLease;
+    }
+
+    /**
+     * Sets the settings for the cluster wide collect lease.
+     * @param collectLease the collect lease settings.
+     */
+    public void setCollectLease(RpCollectLeaseConfig collectLease) {
+        this.collectLease = collectLease;
+    }
+
+    /**
+     * Returns the settings for the node local cache of collect responses.
+     * @return the collect cache settings.
+     */
+    public RpCollectCacheConfig getCollectCache() {
+        return this.collectCache;
+    }
+
+    /**
+     * Sets the settings for the node local cache of collect responses.
+     * @param collectCache the collect cache settings.
+     */
+    public void setCollectCache(RpCollectCacheConfig collectCache) {
+        this.collectCache = collectCache;
+    }
+
+    /**
+     * Returns the settings for how often the client checks a pending transaction.
+     * @return the poll cadence settings.
+     */
+    public RpPollCadenceConfig getPollCadence() {
+        return this.pollCadence;
+    }
+
+    /**
+     * Sets the settings for how often the client checks a pending transaction.
+     * @param pollCadence the poll cadence settings.
+     */
+    public void setPollCadence(RpPollCadenceConfig pollCadence) {
+        this.pollCadence = pollCadence;
+    }
+
+    /**
+     * Returns the settings for the timing wheel of scheduled work.
+     * @return the timing wheel settings.
+     */
+    public RpTimingWheelConfig getTimingWheel() {
+        return this.timingWheel;
+    }
+
+    /**
+     * Sets the settings for the timing wheel of scheduled work.
+     * @param timingWheel the timing wheel settings.
+     */
+    public void setTimingWheel(RpTimingWheelConfig timingWheel) {
+        this.timingWheel = timingWheel;
+    }
+
+    /**
+     * Returns the settings for cancelling the pending orders of expired sessions.
+     * @return the order reaper settings.
+     */
+    public RpOrderReaperConfig getOrderReaper() {
+        return this.orderReaper;
+    }
+
+    /**
+     * Sets the settings for cancelling the pending orders of expired sessions.
+     * @param orderReaper the order reaper settings.
+     */
+    public void setOrderReaper(RpOrderReaperConfig orderReaper) {
+        this.orderReaper = orderReaper;
+    }
+
+    /**
+     * Returns the settings for generating QR code data.
+     * @return the QR code settings.
+     */
+    public RpQrCodeConfig getQrCode() {
+        return this.qrCode;
+    }
+
+    /**
+     * Sets the settings for generating QR code data.
+     * @param qrCode the QR code settings.
+     */
+    public void setQrCode(RpQrCodeConfig qrCode) {
+        this.qrCode = qrCode;
+    }
 }
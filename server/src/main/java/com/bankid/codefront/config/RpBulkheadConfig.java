@@ -0,0 +1,121 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.config;
+
+/**
+ * Bulkhead settings for a group of BankID RP endpoints.
+ */
+public class RpBulkheadConfig {
+    /**
+     * Default max time in milliseconds a call waits for a free slot.
+     */
+    private static final int DEFAULT_MAX_WAIT = 2000;
+
+    /**
+     * Max number of concurrent calls.
+     */
+    private int maxConcurrent;
+    /**
+     * Max number of calls waiting for a free slot, calls are rejected when the queue is full.
+     */
+    private int maxQueue;
+    /**
+     * Max time in milliseconds a call waits for a free slot, 0 to wait until one is free.
+     */
+    private int maxWait = DEFAULT_MAX_WAIT;
+
+    /**
+     * Creates bulkhead settings with no limits set.
+     */
+    public RpBulkheadConfig() {
+    }
+
+    /**
+     * Creates bulkhead settings.
+     * @param maxConcurrent the max number of concurrent calls.
+     * @param maxQueue      the max number of waiting calls.
+     */
+    public RpBulkheadConfig(int maxConcurrent, int maxQueue) {
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueue = maxQueue;
+    }
+
+    /**
+     * Returns the max number of concurrent calls.
+     * @return the max number of concurrent calls.
+     */
+    public int getMaxConcurrent() {
+        return this.maxConcurrent;
+    }
+
+    /**
+     * Sets the max number of concurrent calls.
+     * @param maxConcurrent the max number of concurrent calls.
+     */
+    public void setMaxConcurrent(int maxConcurrent) {
+        this.maxConcurrent = maxConcurrent;
+    }
+
+    /**
+     * Returns the max number of calls waiting for a free slot.
+     * @return the max number of waiting calls.
+     */
+    public int getMaxQueue() {
+        return this.maxQueue;
+    }
+
+    /**
+     * Sets the max number of calls waiting for a free slot.
+     * @param maxQueue the max number of waiting calls.
+     */
+    public void setMaxQueue(int maxQueue) {
+        this.maxQueue = maxQueue;
+    }
+
+    /**
+     * Returns the max time a call waits for a free slot.
+     * @return the time in milliseconds, 0 to wait until a slot is free.
+     */
+    public int getMaxWait() {
+        return this.maxWait;
+    }
+
+    /**
+     * Sets the max time a call waits for a free slot.
+     * @param maxWait the time in milliseconds, 0 to wait until a slot is free.
+     */
+    public void setMaxWait(int maxWait) {
+        this.maxWait = maxWait;
+    }
+}
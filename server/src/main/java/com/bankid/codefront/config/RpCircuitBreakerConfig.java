@@ -0,0 +1,208 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.config;
+
+/**
+ * Circuit breaker settings, used for each BankID RP endpoint.
+ */
+public class RpCircuitBreakerConfig {
+    private static final int DEFAULT_WINDOW_SIZE = 50;
+    private static final int DEFAULT_MINIMUM_CALLS = 20;
+    private static final int DEFAULT_FAILURE_RATE_THRESHOLD = 50;
+    private static final int DEFAULT_SLOW_CALL_DURATION = 3000;
+    private static final int DEFAULT_SLOW_CALL_RATE_THRESHOLD = 80;
+    private static final int DEFAULT_WAIT_DURATION_IN_OPEN_STATE = 10000;
+    private static final int DEFAULT_PERMITTED_CALLS_IN_HALF_OPEN_STATE = 5;
+
+    /**
+     * Enables the circuit breakers.
+     */
+    private boolean enabled = true;
+    /**
+     * Number of recent calls the failure and slow call rates are calculated from.
+     */
+    private int windowSize = DEFAULT_WINDOW_SIZE;
+    /**
+     * Number of calls needed in the window before the breaker may open.
+     */
+    private int minimumCalls = DEFAULT_MINIMUM_CALLS;
+    /**
+     * Failure rate in percent that opens the breaker.
+     */
+    private int failureRateThreshold = DEFAULT_FAILURE_RATE_THRESHOLD;
+    /**
+     * Duration in milliseconds above which a call is slow.
+     */
+    private int slowCallDuration = DEFAULT_SLOW_CALL_DURATION;
+    /**
+     * Slow call rate in percent that opens the breaker.
+     */
+    private int slowCallRateThreshold = DEFAULT_SLOW_CALL_RATE_THRESHOLD;
+    /**
+     * Time in milliseconds the breaker stays open before letting trial calls through.
+     */
+    private int waitDurationInOpenState = DEFAULT_WAIT_DURATION_IN_OPEN_STATE;
+    /**
+     * Number of trial calls in half-open state.
+     */
+    private int permittedCallsInHalfOpenState = DEFAULT_PERMITTED_CALLS_IN_HALF_OPEN_STATE;
+
+    /**
+     * Returns if the circuit breakers are enabled.
+     * @return true if enabled.
+     */
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * Sets if the circuit breakers are enabled.
+     * @param enabled true to enable.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Returns the number of recent calls the rates are calculated from.
+     * @return the window size.
+     */
+    public int getWindowSize() {
+        return this.windowSize;
+    }
+
+    /**
+     * Sets the number of recent calls the rates are calculated from.
+     * @param windowSize the window size.
+     */
+    public void setWindowSize(int windowSize) {
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * Returns the number of calls needed before the breaker may open.
+     * @return the minimum number of calls.
+     */
+    public int getMinimumCalls() {
+        return this.minimumCalls;
+    }
+
+    /**
+     * Sets the number of calls needed before the breaker may open.
+     * @param minimumCalls the minimum number of calls.
+     */
+    public void setMinimumCalls(int minimumCalls) {
+        this.minimumCalls = minimumCalls;
+    }
+
+    /**
+     * Returns the failure rate that opens the breaker.
+     * @return the failure rate in percent.
+     */
+    public int getFailureRateThreshold() {
+        return this.failureRateThreshold;
+    }
+
+    /**
+     * Sets the failure rate that opens the breaker.
+     * @param failureRateThreshold the failure rate in percent.
+     */
+    public void setFailureRateThreshold(int failureRateThreshold) {
+        this.failureRateThreshold = failureRateThreshold;
+    }
+
+    /**
+     * Returns the duration above which a call is slow.
+     * @return the duration in milliseconds.
+     */
+    public int getSlowCallDuration() {
+        return this.slowCallDuration;
+    }
+
+    /**
+     * Sets the duration above which a call is slow.
+     * @param slowCallDuration the duration in milliseconds.
+     */
+    public void setSlowCallDuration(int slowCallDuration) {
+        this.slowCallDuration = slowCallDuration;
+    }
+
+    /**
+     * Returns the slow call rate that opens the breaker.
+     * @return the slow call rate in percent.
+     */
+    public int getSlowCallRateThreshold() {
+        return this.slowCallRateThreshold;
+    }
+
+    /**
+     * Sets the slow call rate that opens the breaker.
+     * @param slowCallRateThreshold the slow call rate in percent.
+     */
+    public void setSlowCallRateThreshold(int slowCallRateThreshold) {
+        this.slowCallRateThreshold = slowCallRateThreshold;
+    }
+
+    /**
+     * Returns the time the breaker stays open before letting trial calls through.
+     * @return the time in milliseconds.
+     */
+    public int getWaitDurationInOpenState() {
+        return this.waitDurationInOpenState;
+    }
+
+    /**
+     * Sets the time the breaker stays open before letting trial calls through.
+     * @param waitDurationInOpenState the time in milliseconds.
+     */
+    public void setWaitDurationInOpenState(int waitDurationInOpenState) {
+        this.waitDurationInOpenState = waitDurationInOpenState;
+    }
+
+    /**
+     * Returns the number of trial calls in half-open state.
+     * @return the number of trial calls.
+     */
+    public int getPermittedCallsInHalfOpenState() {
+        return this.permittedCallsInHalfOpenState;
+    }
+
+    /**
+     * Sets the number of trial calls in half-open state.
+     * @param permittedCallsInHalfOpenState the number of trial calls.
+     */
+    public void setPermittedCallsInHalfOpenState(int permittedCallsInHalfOpenState) {
+        this.permittedCallsInHalfOpenState = permittedCallsInHalfOpenState;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.config;
+
+/**
+ * Settings for the cluster wide lease that lets one node at a time collect a BankID order.
+ */
+public class RpCollectLeaseConfig {
+    private static final int DEFAULT_WINDOW = 2000;
+    private static final int DEFAULT_RESULT_TTL = 60000;
+
+    /**
+     * Enables the lease. When disabled, every node collects the orders it is asked about.
+     */
+    private boolean enabled = true;
+    /**
+     * The time in milliseconds a node holds the lease, at most one collect of an order is sent per window.
+     */
+    private int window = DEFAULT_WINDOW;
+    /**
+     * The time in milliseconds the latest collect response of an order is kept for the other nodes.
+     */
+    private int resultTtl = DEFAULT_RESULT_TTL;
+
+    /**
+     * Returns if the lease is enabled.
+     * @return true if enabled.
+     */
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * Sets if the lease is enabled.
+     * @param enabled true to enable.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Returns the time a node holds the lease.
+     * @return the time in milliseconds.
+     */
+    public int getWindow() {
+        return this.window;
+    }
+
+    /**
+     * Sets the time a node holds the lease.
+     * @param window the time in milliseconds.
+     */
+    public void setWindow(int window) {
+        this.window = window;
+    }
+
+    /**
+     * Returns how long the latest collect response is kept.
+     * @return the time in milliseconds.
+     */
+    public int getResultTtl() {
+        return this.resultTtl;
+    }
+
+    /**
+     * Sets how long the latest collect response is kept.
+     * @param resultTtl the time in milliseconds.
+     */
+    public void setResultTtl(int resultTtl) {
+        this.resultTtl = resultTtl;
+    }
+}
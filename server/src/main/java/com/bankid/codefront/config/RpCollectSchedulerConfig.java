@@ -0,0 +1,124 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.config;
+
+/**
+ * Settings for the background collect of pending BankID orders.
+ */
+public class RpCollectSchedulerConfig {
+    private static final int DEFAULT_INTERVAL = 2000;
+    private static final int DEFAULT_RETENTION = 60000;
+    private static final int DEFAULT_MAX_LIFETIME = 600000;
+
+    /**
+     * Enables the background collect. When disabled, collect is called from the check requests of the client.
+     */
+    private boolean enabled = true;
+    /**
+     * The time in milliseconds between collect calls of an order.
+     */
+    private int interval = DEFAULT_INTERVAL;
+    /**
+     * The time in milliseconds the final state of an order is kept after it completed or failed.
+     */
+    private int retention = DEFAULT_RETENTION;
+    /**
+     * The longest time in milliseconds an order is collected, even if RP still reports it as pending.
+     */
+    private int maxLifetime = DEFAULT_MAX_LIFETIME;
+
+    /**
+     * Returns if the background collect is enabled.
+     * @return true if enabled.
+     */
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * Sets if the background collect is enabled.
+     * @param enabled true to enable.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Returns the time between collect calls of an order.
+     * @return the time in milliseconds.
+     */
+    public int getInterval() {
+        return this.interval;
+    }
+
+    /**
+     * Sets the time between collect calls of an order.
+     * @param interval the time in milliseconds.
+     */
+    public void setInterval(int interval) {
+        this.interval = interval;
+    }
+
+    /**
+     * Returns how long the final state of an order is kept.
+     * @return the time in milliseconds.
+     */
+    public int getRetention() {
+        return this.retention;
+    }
+
+    /**
+     * Sets how long the final state of an order is kept.
+     * @param retention the time in milliseconds.
+     */
+    public void setRetention(int retention) {
+        this.retention = retention;
+    }
+
+    /**
+     * Returns the longest time an order is collected.
+     * @return the time in milliseconds.
+     */
+    public int getMaxLifetime() {
+        return this.maxLifetime;
+    }
+
+    /**
+     * Sets the longest time an order is collected.
+     * @param maxLifetime the time in milliseconds.
+     */
+    public void setMaxLifetime(int maxLifetime) {
+        this.maxLifetime = maxLifetime;
+    }
+}
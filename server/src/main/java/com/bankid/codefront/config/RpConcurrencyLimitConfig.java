@@ -0,0 +1,187 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.config;
+
+/**
+ * Settings for the adaptive concurrency limit of calls to BankID RP.
+ */
+public class RpConcurrencyLimitConfig {
+    private static final int DEFAULT_INITIAL_LIMIT = 20;
+    private static final int DEFAULT_MIN_LIMIT = 5;
+    private static final int DEFAULT_MAX_LIMIT = 200;
+    private static final double DEFAULT_SMOOTHING = 0.2;
+    private static final double DEFAULT_RTT_TOLERANCE = 1.5;
+    private static final int DEFAULT_LONG_WINDOW = 600;
+
+    /**
+     * Enables the limit.
+     */
+    private boolean enabled = true;
+    /**
+     * The limit used until enough latency has been measured.
+     */
+    private int initialLimit = DEFAULT_INITIAL_LIMIT;
+    /**
+     * The limit never goes below this.
+     */
+    private int minLimit = DEFAULT_MIN_LIMIT;
+    /**
+     * The limit never goes above this.
+     */
+    private int maxLimit = DEFAULT_MAX_LIMIT;
+    /**
+     * How much of a new limit estimate is used for each sample, between 0 and 1.
+     */
+    private double smoothing = DEFAULT_SMOOTHING;
+    /**
+     * How much longer than the long term latency a call may take before the limit is lowered.
+     */
+    private double rttTolerance = DEFAULT_RTT_TOLERANCE;
+    /**
+     * Number of samples in the long term latency average.
+     */
+    private int longWindow = DEFAULT_LONG_WINDOW;
+
+    /**
+     * Returns if the limit is enabled.
+     * @return true if enabled.
+     */
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * Sets if the limit is enabled.
+     * @param enabled true to enable.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Returns the limit used until enough latency has been measured.
+     * @return the initial limit.
+     */
+    public int getInitialLimit() {
+        return this.initialLimit;
+    }
+
+    /**
+     * Sets the limit used until enough latency has been measured.
+     * @param initialLimit the initial limit.
+     */
+    public void setInitialLimit(int initialLimit) {
+        this.initialLimit = initialLimit;
+    }
+
+    /**
+     * Returns the lowest limit.
+     * @return the lowest limit.
+     */
+    public int getMinLimit() {
+        return this.minLimit;
+    }
+
+    /**
+     * Sets the lowest limit.
+     * @param minLimit the lowest limit.
+     */
+    public void setMinLimit(int minLimit) {
+        this.minLimit = minLimit;
+    }
+
+    /**
+     * Returns the highest limit.
+     * @return the highest limit.
+     */
+    public int getMaxLimit() {
+        return this.maxLimit;
+    }
+
+    /**
+     * Sets the highest limit.
+     * @param maxLimit the highest limit.
+     */
+    public void setMaxLimit(int maxLimit) {
+        this.maxLimit = maxLimit;
+    }
+
+    /**
+     * Returns how much of a new limit estimate is used for each sample.
+     * @return the smoothing, between 0 and 1.
+     */
+    public double getSmoothing() {
+        return this.smoothing;
+    }
+
+    /**
+     * Sets how much of a new limit estimate is used for each sample.
+     * @param smoothing the smoothing, between 0 and 1.
+     */
+    public void setSmoothing(double smoothing) {
+        this.smoothing = smoothing;
+    }
+
+    /**
+     * Returns how much longer than the long term latency a call may take before the limit is lowered.
+     * @return the latency tolerance ratio.
+     */
+    public double getRttTolerance() {
+        return this.rttTolerance;
+    }
+
+    /**
+     * Sets how much longer than the long term latency a call may take before the limit is lowered.
+     * @param rttTolerance the latency tolerance ratio.
+     */
+    public void setRttTolerance(double rttTolerance) {
+        this.rttTolerance = rttTolerance;
+    }
+
+    /**
+     * Returns the number of samples in the long term latency average.
+     * @return the number of samples.
+     */
+    public int getLongWindow() {
+        return this.longWindow;
+    }
+
+    /**
+     * Sets the number of samples in the long term latency average.
+     * @param longWindow the number of samples.
+     */
+    public void setLongWindow(int longWindow) {
+        this.longWindow = longWindow;
+    }
+}
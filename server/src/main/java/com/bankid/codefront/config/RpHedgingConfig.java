@@ -0,0 +1,124 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.config;
+
+/**
+ * Settings for hedged collect calls to BankID RP.
+ */
+public class RpHedgingConfig {
+    private static final int DEFAULT_PERCENTILE = 95;
+    private static final int DEFAULT_MIN_DELAY = 100;
+    private static final double DEFAULT_MAX_HEDGE_RATE = 0.05;
+
+    /**
+     * Enables hedged collect calls.
+     */
+    private boolean enabled;
+    /**
+     * The percentile of recent collect latency after which a second collect is sent.
+     */
+    private int percentile = DEFAULT_PERCENTILE;
+    /**
+     * The shortest time in milliseconds to wait before sending a second collect.
+     */
+    private int minDelay = DEFAULT_MIN_DELAY;
+    /**
+     * Max share of collect calls that may be hedged.
+     */
+    private double maxHedgeRate = DEFAULT_MAX_HEDGE_RATE;
+
+    /**
+     * Returns if hedged collect calls are enabled.
+     * @return true if enabled.
+     */
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * Sets if hedged collect calls are enabled.
+     * @param enabled true to enable.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Returns the latency percentile after which a second collect is sent.
+     * @return the percentile, between 1 and 99.
+     */
+    public int getPercentile() {
+        return this.percentile;
+    }
+
+    /**
+     * Sets the latency percentile after which a second collect is sent.
+     * @param percentile the percentile, between 1 and 99.
+     */
+    public void setPercentile(int percentile) {
+        this.percentile = percentile;
+    }
+
+    /**
+     * Returns the shortest time to wait before sending a second collect.
+     * @return the time in milliseconds.
+     */
+    public int getMinDelay() {
+        return this.minDelay;
+    }
+
+    /**
+     * Sets the shortest time to wait before sending a second collect.
+     * @param minDelay the time in milliseconds.
+     */
+    public void setMinDelay(int minDelay) {
+        this.minDelay = minDelay;
+    }
+
+    /**
+     * Returns the max share of collect calls that may be hedged.
+     * @return the max hedge rate, 0.05 is 5%.
+     */
+    public double getMaxHedgeRate() {
+        return this.maxHedgeRate;
+    }
+
+    /**
+     * Sets the max share of collect calls that may be hedged.
+     * @param maxHedgeRate the max hedge rate, 0.05 is 5%.
+     */
+    public void setMaxHedgeRate(double maxHedgeRate) {
+        this.maxHedgeRate = maxHedgeRate;
+    }
+}
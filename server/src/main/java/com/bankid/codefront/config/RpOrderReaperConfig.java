@@ -0,0 +1,144 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.config;
+
+/**
+ * Settings for cancelling the pending orders of expired sessions.
+ */
+public class RpOrderReaperConfig {
+    private static final int DEFAULT_BATCH_SIZE = 20;
+    private static final int DEFAULT_INTERVAL = 1000;
+    private static final int DEFAULT_MAX_QUEUE = 10000;
+
+    /**
+     * Enables cancelling the pending orders of expired sessions, off by default.
+     */
+    private boolean enabled;
+    /**
+     * Max number of orders cancelled per interval.
+     */
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    /**
+     * Time in milliseconds between batches of cancels.
+     */
+    private int interval = DEFAULT_INTERVAL;
+    /**
+     * Max number of orders waiting to be cancelled.
+     */
+    private int maxQueue = DEFAULT_MAX_QUEUE;
+    /**
+     * Enables keyspace notifications with CONFIG SET at startup, when sessions are kept in redis. Off by default.
+     */
+    private boolean configureRedis;
+
+    /**
+     * Returns if the pending orders of expired sessions are cancelled.
+     * @return true if enabled.
+     */
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * Sets if the pending orders of expired sessions are cancelled.
+     * @param enabled true to enable.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Returns the max number of orders cancelled per interval.
+     * @return the batch size.
+     */
+    public int getBatchSize() {
+        return this.batchSize;
+    }
+
+    /**
+     * Sets the max number of orders cancelled per interval.
+     * @param batchSize the batch size.
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Returns the time between batches of cancels.
+     * @return the time in milliseconds.
+     */
+    public int getInterval() {
+        return this.interval;
+    }
+
+    /**
+     * Sets the time between batches of cancels.
+     * @param interval the time in milliseconds.
+     */
+    public void setInterval(int interval) {
+        this.interval = interval;
+    }
+
+    /**
+     * Returns the max number of orders waiting to be cancelled.
+     * @return the max queue size.
+     */
+    public int getMaxQueue() {
+        return this.maxQueue;
+    }
+
+    /**
+     * Sets the max number of orders waiting to be cancelled.
+     * @param maxQueue the max queue size.
+     */
+    public void setMaxQueue(int maxQueue) {
+        this.maxQueue = maxQueue;
+    }
+
+    /**
+     * Returns if keyspace notifications are enabled in redis at startup.
+     * @return true if every node issues CONFIG SET notify-keyspace-events at startup.
+     */
+    public boolean isConfigureRedis() {
+        return this.configureRedis;
+    }
+
+    /**
+     * Sets if keyspace notifications are enabled in redis at startup.
+     * @param configureRedis false if they are enabled in the redis config instead.
+     */
+    public void setConfigureRedis(boolean configureRedis) {
+        this.configureRedis = configureRedis;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.config;
+
+/**
+ * Settings for how often the client is asked to check a pending transaction.
+ */
+public class RpPollCadenceConfig {
+    private static final int DEFAULT_QR_INTERVAL = 1000;
+    private static final int DEFAULT_PENDING_INTERVAL = 2000;
+    private static final int DEFAULT_MAX_INTERVAL = 10000;
+    private static final double DEFAULT_LOAD_THRESHOLD = 0.8;
+
+    /**
+     * Time in milliseconds to the next check while a QR code is shown. The QR code changes every second.
+     */
+    private int qrInterval = DEFAULT_QR_INTERVAL;
+    /**
+     * Time in milliseconds to the next check of other pending transactions, e.g. when the user signs.
+     */
+    private int pendingInterval = DEFAULT_PENDING_INTERVAL;
+    /**
+     * Longest time in milliseconds to the next check when the server is under load.
+     */
+    private int maxInterval = DEFAULT_MAX_INTERVAL;
+    /**
+     * Share of the concurrency limit of calls to RP in use above which checks are spaced out.
+     */
+    private double loadThreshold = DEFAULT_LOAD_THRESHOLD;
+
+    /**
+     * Returns the time to the next check while a QR code is shown.
+     * @return the time in milliseconds.
+     */
+    public int getQrInterval() {
+        return this.qrInterval;
+    }
+
+    /**
+     * Sets the time to the next check while a QR code is shown.
+     * @param qrInterval the time in milliseconds.
+     */
+    public void setQrInterval(int qrInterval) {
+        this.qrInterval = qrInterval;
+    }
+
+    /**
+     * Returns the time to the next check of other pending transactions.
+     * @return the time in milliseconds.
+     */
+    public int getPendingInterval() {
+        return this.pendingInterval;
+    }
+
+    /**
+     * Sets the time to the next check of other pending transactions.
+     * @param pendingInterval the time in milliseconds.
+     */
+    public void setPendingInterval(int pendingInterval) {
+        this.pendingInterval = pendingInterval;
+    }
+
+    /**
+     * Returns the longest time to the next check when the server is under load.
+     * @return the time in milliseconds.
+     */
+    public int getMaxInterval() {
+        return this.maxInterval;
+    }
+
+    /**
+     * Sets the longest time to the next check when the server is under load.
+     * @param maxInterval the time in milliseconds.
+     */
+    public void setMaxInterval(int maxInterval) {
+        this.maxInterval = maxInterval;
+    }
+
+    /**
+     * Returns the share of the concurrency limit in use above which checks are spaced out.
+     * @return the load threshold, 0.8 is 80%.
+     */
+    public double getLoadThreshold() {
+        return this.loadThreshold;
+    }
+
+    /**
+     * Sets the share of the concurrency limit in use above which checks are spaced out.
+     * @param loadThreshold the load threshold, 0.8 is 80%.
+     */
+    public void setLoadThreshold(double loadThreshold) {
+        this.loadThreshold = loadThreshold;
+    }
+}
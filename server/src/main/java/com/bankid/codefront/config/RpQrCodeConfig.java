@@ -0,0 +1,209 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.config;
+
+/**
+ * Settings for generating the animated QR code data of pending orders.
+ */
+public class RpQrCodeConfig {
+    private static final int DEFAULT_PRECOMPUTE = 5;
+    private static final int DEFAULT_IDLE_TTL = 30000;
+    private static final int DEFAULT_MAX_SIZE = 10000;
+    private static final int DEFAULT_IMAGE_TTL = 2000;
+    private static final int DEFAULT_IMAGE_CACHE_SIZE = 1000;
+    private static final int DEFAULT_IMAGE_MODULE_SIZE = 4;
+    private static final int DEFAULT_TRANSACTION_TTL = 180000;
+    private static final int DEFAULT_TRANSACTION_MAX_SIZE = 10000;
+
+    /**
+     * Number of upcoming seconds of QR data computed ahead of the current one.
+     */
+    private int precompute = DEFAULT_PRECOMPUTE;
+    /**
+     * How long in milliseconds the QR state of an order is kept after it was last used.
+     */
+    private int idleTtl = DEFAULT_IDLE_TTL;
+    /**
+     * Max number of orders with kept QR state.
+     */
+    private int maxSize = DEFAULT_MAX_SIZE;
+    /**
+     * How long in milliseconds a rendered QR image is kept.
+     */
+    private int imageTtl = DEFAULT_IMAGE_TTL;
+    /**
+     * Max number of rendered QR images kept.
+     */
+    private int imageCacheSize = DEFAULT_IMAGE_CACHE_SIZE;
+    /**
+     * Size in pixels of each module (square) of a PNG QR image.
+     */
+    private int imageModuleSize = DEFAULT_IMAGE_MODULE_SIZE;
+    /**
+     * How long in milliseconds a transaction showing a QR code is recorded on the node that serves it.
+     */
+    private int transactionTtl = DEFAULT_TRANSACTION_TTL;
+    /**
+     * Max number of recorded transactions showing a QR code.
+     */
+    private int transactionMaxSize = DEFAULT_TRANSACTION_MAX_SIZE;
+
+    /**
+     * Returns the number of upcoming seconds of QR data computed ahead.
+     * @return the number of seconds.
+     */
+    public int getPrecompute() {
+        return this.precompute;
+    }
+
+    /**
+     * Sets the number of upcoming seconds of QR data computed ahead.
+     * @param precompute the number of seconds, zero to only compute the current one.
+     */
+    public void setPrecompute(int precompute) {
+        this.precompute = precompute;
+    }
+
+    /**
+     * Returns how long the QR state of an order is kept after it was last used.
+     * @return the time in milliseconds.
+     */
+    public int getIdleTtl() {
+        return this.idleTtl;
+    }
+
+    /**
+     * Sets how long the QR state of an order is kept after it was last used.
+     * @param idleTtl the time in milliseconds.
+     */
+    public void setIdleTtl(int idleTtl) {
+        this.idleTtl = idleTtl;
+    }
+
+    /**
+     * Returns the max number of orders with kept QR state.
+     * @return the max number of orders.
+     */
+    public int getMaxSize() {
+        return this.maxSize;
+    }
+
+    /**
+     * Sets the max number of orders with kept QR state.
+     * @param maxSize the max number of orders.
+     */
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns how long a rendered QR image is kept.
+     * @return the time in milliseconds.
+     */
+    public int getImageTtl() {
+        return this.imageTtl;
+    }
+
+    /**
+     * Sets how long a rendered QR image is kept.
+     * @param imageTtl the time in milliseconds.
+     */
+    public void setImageTtl(int imageTtl) {
+        this.imageTtl = imageTtl;
+    }
+
+    /**
+     * Returns the max number of rendered QR images kept.
+     * @return the max number of images.
+     */
+    public int getImageCacheSize() {
+        return this.imageCacheSize;
+    }
+
+    /**
+     * Sets the max number of rendered QR images kept.
+     * @param imageCacheSize the max number of images.
+     */
+    public void setImageCacheSize(int imageCacheSize) {
+        this.imageCacheSize = imageCacheSize;
+    }
+
+    /**
+     * Returns the size in pixels of each module of a PNG QR image.
+     * @return the size in pixels.
+     */
+    public int getImageModuleSize() {
+        return this.imageModuleSize;
+    }
+
+    /**
+     * Sets the size in pixels of each module of a PNG QR image.
+     * @param imageModuleSize the size in pixels.
+     */
+    public void setImageModuleSize(int imageModuleSize) {
+        this.imageModuleSize = imageModuleSize;
+    }
+
+    /**
+     * Returns how long a transaction showing a QR code is recorded.
+     * @return the time in milliseconds.
+     */
+    public int getTransactionTtl() {
+        return this.transactionTtl;
+    }
+
+    /**
+     * Sets how long a transaction showing a QR code is recorded.
+     * @param transactionTtl the time in milliseconds.
+     */
+    public void setTransactionTtl(int transactionTtl) {
+        this.transactionTtl = transactionTtl;
+    }
+
+    /**
+     * Returns the max number of recorded transactions showing a QR code.
+     * @return the max number of transactions.
+     */
+    public int getTransactionMaxSize() {
+        return this.transactionMaxSize;
+    }
+
+    /**
+     * Sets the max number of recorded transactions showing a QR code.
+     * @param transactionMaxSize the max number of transactions.
+     */
+    public void setTransactionMaxSize(int transactionMaxSize) {
+        this.transactionMaxSize = transactionMaxSize;
+    }
+}
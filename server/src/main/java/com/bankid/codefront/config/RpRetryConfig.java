@@ -0,0 +1,146 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.config;
+
+/**
+ * Retry settings for the idempotent BankID RP endpoints.
+ */
+public class RpRetryConfig {
+    private static final int DEFAULT_MAX_ATTEMPTS = 3;
+    private static final int DEFAULT_INITIAL_BACKOFF = 100;
+    private static final int DEFAULT_MAX_BACKOFF = 1000;
+    private static final double DEFAULT_BUDGET_RATIO = 0.1;
+    private static final int DEFAULT_BUDGET_MAX_TOKENS = 10;
+
+    /**
+     * Max number of attempts for one call, including the first one.
+     */
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+    /**
+     * Upper bound of the backoff before the first retry, in milliseconds.
+     */
+    private int initialBackoff = DEFAULT_INITIAL_BACKOFF;
+    /**
+     * Upper bound of the backoff before any retry, in milliseconds.
+     */
+    private int maxBackoff = DEFAULT_MAX_BACKOFF;
+    /**
+     * Number of retries earned by each call, 0.1 allows at most 10% extra load.
+     */
+    private double budgetRatio = DEFAULT_BUDGET_RATIO;
+    /**
+     * Max number of retries that can be saved up.
+     */
+    private int budgetMaxTokens = DEFAULT_BUDGET_MAX_TOKENS;
+
+    /**
+     * Returns the max number of attempts for one call.
+     * @return the max number of attempts, including the first one.
+     */
+    public int getMaxAttempts() {
+        return this.maxAttempts;
+    }
+
+    /**
+     * Sets the max number of attempts for one call.
+     * @param maxAttempts the max number of attempts, including the first one. 1 disables retries.
+     */
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Returns the upper bound of the backoff before the first retry.
+     * @return the backoff in milliseconds.
+     */
+    public int getInitialBackoff() {
+        return this.initialBackoff;
+    }
+
+    /**
+     * Sets the upper bound of the backoff before the first retry.
+     * @param initialBackoff the backoff in milliseconds.
+     */
+    public void setInitialBackoff(int initialBackoff) {
+        this.initialBackoff = initialBackoff;
+    }
+
+    /**
+     * Returns the upper bound of the backoff before any retry.
+     * @return the backoff in milliseconds.
+     */
+    public int getMaxBackoff() {
+        return this.maxBackoff;
+    }
+
+    /**
+     * Sets the upper bound of the backoff before any retry.
+     * @param maxBackoff the backoff in milliseconds.
+     */
+    public void setMaxBackoff(int maxBackoff) {
+        this.maxBackoff = maxBackoff;
+    }
+
+    /**
+     * Returns the number of retries earned by each call.
+     * @return the retry budget ratio.
+     */
+    public double getBudgetRatio() {
+        return this.budgetRatio;
+    }
+
+    /**
+     * Sets the number of retries earned by each call.
+     * @param budgetRatio the retry budget ratio.
+     */
+    public void setBudgetRatio(double budgetRatio) {
+        this.budgetRatio = budgetRatio;
+    }
+
+    /**
+     * Returns the max number of retries that can be saved up.
+     * @return the max number of retries.
+     */
+    public int getBudgetMaxTokens() {
+        return this.budgetMaxTokens;
+    }
+
+    /**
+     * Sets the max number of retries that can be saved up.
+     * @param budgetMaxTokens the max number of retries.
+     */
+    public void setBudgetMaxTokens(int budgetMaxTokens) {
+        this.budgetMaxTokens = budgetMaxTokens;
+    }
+}
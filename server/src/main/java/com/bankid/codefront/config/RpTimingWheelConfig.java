@@ -0,0 +1,125 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.config;
+
+/**
+ * Settings for the timing wheel that runs scheduled work such as background collects.
+ */
+public class RpTimingWheelConfig {
+    private static final int DEFAULT_TICK_DURATION = 100;
+    private static final int DEFAULT_TICKS_PER_WHEEL = 512;
+    private static final int DEFAULT_WORKER_THREADS = 4;
+    private static final int DEFAULT_MAX_QUEUE = 10000;
+
+    /**
+     * Time in milliseconds between ticks, the precision of the timers.
+     */
+    private int tickDuration = DEFAULT_TICK_DURATION;
+    /**
+     * Number of buckets in the wheel, rounded up to a power of two.
+     */
+    private int ticksPerWheel = DEFAULT_TICKS_PER_WHEEL;
+    /**
+     * Number of threads that run the expired timers.
+     */
+    private int workerThreads = DEFAULT_WORKER_THREADS;
+    /**
+     * Max number of expired timers waiting for a worker thread.
+     */
+    private int maxQueue = DEFAULT_MAX_QUEUE;
+
+    /**
+     * Returns the time between ticks.
+     * @return the time in milliseconds.
+     */
+    public int getTickDuration() {
+        return this.tickDuration;
+    }
+
+    /**
+     * Sets the time between ticks.
+     * @param tickDuration the time in milliseconds.
+     */
+    public void setTickDuration(int tickDuration) {
+        this.tickDuration = tickDuration;
+    }
+
+    /**
+     * Returns the number of buckets in the wheel.
+     * @return the number of buckets.
+     */
+    public int getTicksPerWheel() {
+        return this.ticksPerWheel;
+    }
+
+    /**
+     * Sets the number of buckets in the wheel.
+     * @param ticksPerWheel the number of buckets.
+     */
+    public void setTicksPerWheel(int ticksPerWheel) {
+        this.ticksPerWheel = ticksPerWheel;
+    }
+
+    /**
+     * Returns the number of threads that run the expired timers.
+     * @return the number of threads.
+     */
+    public int getWorkerThreads() {
+        return this.workerThreads;
+    }
+
+    /**
+     * Sets the number of threads that run the expired timers.
+     * @param workerThreads the number of threads.
+     */
+    public void setWorkerThreads(int workerThreads) {
+        this.workerThreads = workerThreads;
+    }
+
+    /**
+     * Returns the max number of expired timers waiting for a worker thread.
+     * @return the max queue size.
+     */
+    public int getMaxQueue() {
+        return this.maxQueue;
+    }
+
+    /**
+     * Sets the max number of expired timers waiting for a worker thread.
+     * @param maxQueue the max queue size.
+     */
+    public void setMaxQueue(int maxQueue) {
+        this.maxQueue = maxQueue;
+    }
+}
@@ -33,17 +33,58 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.bankid.codefront.config;
 
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
+import org.springframework.session.data.redis.config.ConfigureRedisAction;
 import org.springframework.session.data.redis.config.annotation.web.http.EnableRedisHttpSession;
+import org.springframework.session.data.redis.config.annotation.web.http.EnableRedisIndexedHttpSession;
 import org.springframework.session.web.context.AbstractHttpSessionApplicationInitializer;
 
 /**
  * Setup in redis session repository.
+ *
+ * <p>By default the plain repository is used, which only writes the session. The order reaper is opt-in: with it
+ * enabled the indexed repository is used, which publishes events when sessions expire or are deleted. That needs
+ * keyspace notifications in redis, and every save of a session also writes an index and an expiration key.
+ *
+ * <p>Keyspace notifications must be enabled in the redis config, unless order-reaper.configure-redis is true.
+ * Then every node enables them at startup with CONFIG SET.
  */
 @Profile("!dev | redis")
 @Configuration
-@EnableRedisHttpSession
 public class SessionConfig extends AbstractHttpSessionApplicationInitializer {
+    private static final String ORDER_REAPER = "app.bankid.relying-party.order-reaper.";
 
+    /**
+     * Indexed session repository, publishes the session events of the order reaper.
+     */
+    @Profile("!dev | redis")
+    @Configuration
+    @ConditionalOnProperty(name = ORDER_REAPER + "enabled", havingValue = "true")
+    @EnableRedisIndexedHttpSession
+    public static class IndexedSessionConfig {
+
+        /**
+         * Leaves the keyspace notifications to the redis config.
+         * @return the action that does not configure redis.
+         */
+        @Bean
+        @ConditionalOnProperty(name = ORDER_REAPER + "configure-redis", havingValue = "false", matchIfMissing = true)
+        public ConfigureRedisAction configureRedisAction() {
+            return ConfigureRedisAction.NO_OP;
+        }
+    }
+
+    /**
+     * Plain session repository, used when no session events are needed.
+     */
+    @Profile("!dev | redis")
+    @Configuration
+    @ConditionalOnProperty(name = ORDER_REAPER + "enabled", havingValue = "false", matchIfMissing = true)
+    @EnableRedisHttpSession
+    public static class PlainSessionConfig {
+
+    }
 }
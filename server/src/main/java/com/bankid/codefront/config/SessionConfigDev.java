@@ -33,10 +33,11 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.bankid.codefront.config;
 
+import com.bankid.codefront.service.TimingWheel;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
-import org.springframework.session.MapSessionRepository;
 import org.springframework.session.config.annotation.web.http.EnableSpringHttpSession;
 
 import java.util.concurrent.ConcurrentHashMap;
@@ -51,11 +52,13 @@ public class SessionConfigDev {
 
     /**
      * Create session repository.
+     * @param eventPublisher the publisher of the session events.
+     * @param timingWheel    the timer of the purge of expired sessions.
      * @return returns session repository.
      */
     @Bean
-    public MapSessionRepository sessionRepository() {
-        return new MapSessionRepository(new ConcurrentHashMap<>());
+    public SessionRepositoryDev sessionRepository(ApplicationEventPublisher eventPublisher, TimingWheel timingWheel) {
+        return new SessionRepositoryDev(new ConcurrentHashMap<>(), eventPublisher, timingWheel);
     }
 }
 
@@ -0,0 +1,114 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.config;
+
+import com.bankid.codefront.service.TimingWheel;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.session.MapSessionRepository;
+import org.springframework.session.Session;
+import org.springframework.session.events.SessionDeletedEvent;
+import org.springframework.session.events.SessionExpiredEvent;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In memory session repository for development that, like the redis repository, publishes events when
+ * sessions expire or are deleted. Expired sessions are purged every minute.
+ */
+public class SessionRepositoryDev extends MapSessionRepository {
+    private static final long PURGE_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
+    private final Map<String, Session> sessions;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TimingWheel timingWheel;
+
+    /**
+     * Creates the repository and starts purging expired sessions.
+     * @param sessions       the map of sessions.
+     * @param eventPublisher the publisher of the session events.
+     * @param timingWheel    the timer of the purge.
+     */
+    public SessionRepositoryDev(
+        Map<String, Session> sessions,
+        ApplicationEventPublisher eventPublisher,
+        TimingWheel timingWheel
+    ) {
+        super(sessions);
+        this.sessions = sessions;
+        this.eventPublisher = eventPublisher;
+        this.timingWheel = timingWheel;
+        this.schedulePurge();
+    }
+
+    /**
+     * Deletes a session and publishes that it expired or was deleted.
+     * @param id the session id.
+     */
+    @Override
+    public void deleteById(String id) {
+        Session session = this.sessions.get(id);
+        super.deleteById(id);
+        if (session == null) {
+            return;
+        }
+        this.eventPublisher.publishEvent(session.isExpired()
+            ? new SessionExpiredEvent(this, session)
+            : new SessionDeletedEvent(this, session));
+    }
+
+    /**
+     * Deletes the expired sessions.
+     */
+    void purgeExpired() {
+        this.sessions.values().stream()
+            .filter(Session::isExpired)
+            .map(Session::getId)
+            .toList()
+            .forEach(this::deleteById);
+    }
+
+    /**
+     * Schedules the next purge.
+     */
+    private void schedulePurge() {
+        if (this.timingWheel.isStopped()) {
+            return;
+        }
+        this.timingWheel.schedule(() -> {
+            this.purgeExpired();
+            this.schedulePurge();
+        }, PURGE_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,99 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.config;
+
+import com.bankid.codefront.rest.websocket.ClientHandshakeInterceptor;
+import com.bankid.codefront.rest.websocket.TransactionWebSocketHandler;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistration;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+import org.springframework.web.socket.server.standard.ServletServerContainerFactoryBean;
+
+/**
+ * Setup the WebSocket for starting, observing and cancelling transactions.
+ */
+@Configuration
+@EnableWebSocket
+public class WebSocketConfig implements WebSocketConfigurer {
+    /** The path of the transaction WebSocket. */
+    public static final String TRANSACTION_PATH = "/api/ws";
+
+    // Sign requests may carry up to 240 kB of base64 encoded data.
+    private static final int MAX_MESSAGE_SIZE = 512 * 1024;
+    private static final long MAX_IDLE_MILLIS = 10 * 60 * 1000;
+
+    private final TransactionWebSocketHandler transactionWebSocketHandler;
+    private final AppConfig appConfig;
+
+    /**
+     * Creates the WebSocket configuration.
+     * @param transactionWebSocketHandler the transaction handler.
+     * @param appConfig                   the app configuration.
+     */
+    public WebSocketConfig(TransactionWebSocketHandler transactionWebSocketHandler, AppConfig appConfig) {
+        this.transactionWebSocketHandler = transactionWebSocketHandler;
+        this.appConfig = appConfig;
+    }
+
+    /**
+     * Register the transaction WebSocket. Same origin is always allowed, and the public domain of the site.
+     * @param registry the handler registry.
+     */
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        WebSocketHandlerRegistration registration = registry
+            .addHandler(this.transactionWebSocketHandler, TRANSACTION_PATH)
+            .addInterceptors(new ClientHandshakeInterceptor());
+
+        String domain = this.appConfig.getDomain();
+        if (domain != null && !domain.isEmpty()) {
+            registration.setAllowedOriginPatterns("https://" + domain + ":[*]");
+        }
+    }
+
+    /**
+     * Create the WebSocket container settings.
+     * @return the container settings.
+     */
+    @Bean
+    public ServletServerContainerFactoryBean createWebSocketContainer() {
+        ServletServerContainerFactoryBean container = new ServletServerContainerFactoryBean();
+        container.setMaxTextMessageBufferSize(MAX_MESSAGE_SIZE);
+        container.setMaxSessionIdleTimeout(MAX_IDLE_MILLIS);
+        return container;
+    }
+}
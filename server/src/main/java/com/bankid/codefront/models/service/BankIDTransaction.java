@@ -54,6 +54,7 @@ public class BankIDTransaction implements Serializable {
     private Status status;
     private Instant lastCollect;
     private CollectResponse lastCollectResponse;
+    private CompletionResult completionResult;
 
     /**
      * Create a bankID transaction object.
@@ -78,6 +79,23 @@ public class BankIDTransaction implements Serializable {
         this.status = Status.PENDING;
     }
 
+    /**
+     * Create a copy of a bankID transaction, e.g. to follow it outside of the request that owns the session.
+     * @param transaction the transaction to copy.
+     */
+    public BankIDTransaction(BankIDTransaction transaction) {
+        this.transactionId = transaction.transactionId;
+        this.orderRef = transaction.orderRef;
+        this.qrStartToken = transaction.qrStartToken;
+        this.qrStartSecret = transaction.qrStartSecret;
+        this.startTime = transaction.startTime;
+        this.autoStartToken = transaction.autoStartToken;
+        this.status = transaction.status;
+        this.lastCollect = transaction.lastCollect;
+        this.lastCollectResponse = transaction.lastCollectResponse;
+        this.completionResult = transaction.completionResult;
+    }
+
     /**
      * Returns the transaction id.
      * @return the transaction id.
@@ -173,4 +191,20 @@ public class BankIDTransaction implements Serializable {
     public void setLastCollectResponse(CollectResponse lastCollectResponse) {
         this.lastCollectResponse = lastCollectResponse;
     }
+
+    /**
+     * Returns the completion result, parsed once when the transaction completed.
+     * @return the completion result or null if not completed.
+     */
+    public CompletionResult getCompletionResult() {
+        return this.completionResult;
+    }
+
+    /**
+     * Sets the completion result.
+     * @param completionResult the completion result.
+     */
+    public void setCompletionResult(CompletionResult completionResult) {
+        this.completionResult = completionResult;
+    }
 }
@@ -33,10 +33,12 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.bankid.codefront.models.service;
 
+import java.io.Serializable;
+
 /**
  * The completion data returned from BankIDService.
  */
-public class CompletionResult {
+public class CompletionResult implements Serializable {
 
     private final String name;
     private final String personalNumber;
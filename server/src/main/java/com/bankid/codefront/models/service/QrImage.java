@@ -0,0 +1,79 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.models.service;
+
+/**
+ * A rendered QR code image.
+ */
+public class QrImage {
+    private final QrImageFormat format;
+    private final byte[] content;
+    private final String etag;
+
+    /**
+     * Creates the image.
+     * @param format  the image format.
+     * @param content the encoded image.
+     * @param etag    the entity tag of the image, quoted.
+     */
+    public QrImage(QrImageFormat format, byte[] content, String etag) {
+        this.format = format;
+        this.content = content;
+        this.etag = etag;
+    }
+
+    /**
+     * Returns the image format.
+     * @return the format.
+     */
+    public QrImageFormat getFormat() {
+        return this.format;
+    }
+
+    /**
+     * Returns the encoded image. The array is shared and must not be modified.
+     * @return the encoded image.
+     */
+    public byte[] getContent() {
+        return this.content;
+    }
+
+    /**
+     * Returns the entity tag of the image.
+     * @return the quoted entity tag.
+     */
+    public String getEtag() {
+        return this.etag;
+    }
+}
@@ -0,0 +1,111 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.models.service;
+
+import java.time.Instant;
+
+/**
+ * The part of a BankID transaction needed to generate its QR code, kept on the node that serves it,
+ * and the session it is served to.
+ */
+public class QrTransaction {
+    private final String transactionId;
+    private final String orderRef;
+    private final String qrStartToken;
+    private final String qrStartSecret;
+    private final Instant startTime;
+    private final String owner;
+
+    /**
+     * Create the QR part of a BankID transaction.
+     * @param transaction the transaction.
+     * @param owner       the id of the session that holds the transaction.
+     */
+    public QrTransaction(BankIDTransaction transaction, String owner) {
+        this.transactionId = transaction.getTransactionId();
+        this.orderRef = transaction.getOrderRef();
+        this.qrStartToken = transaction.getQrStartToken();
+        this.qrStartSecret = transaction.getQrStartSecret();
+        this.startTime = transaction.getStartTime();
+        this.owner = owner;
+    }
+
+    /**
+     * Returns the transaction id.
+     * @return the transaction id.
+     */
+    public String getTransactionId() {
+        return this.transactionId;
+    }
+
+    /**
+     * Returns the order ref.
+     * @return the order ref.
+     */
+    public String getOrderRef() {
+        return this.orderRef;
+    }
+
+    /**
+     * Returns the QR start token.
+     * @return the QR start token.
+     */
+    public String getQrStartToken() {
+        return this.qrStartToken;
+    }
+
+    /**
+     * Returns the QR start secret.
+     * @return the QR start secret.
+     */
+    public String getQrStartSecret() {
+        return this.qrStartSecret;
+    }
+
+    /**
+     * Returns the start time of the transaction.
+     * @return the start time of the transaction.
+     */
+    public Instant getStartTime() {
+        return this.startTime;
+    }
+
+    /**
+     * Returns the id of the session that holds the transaction.
+     * @return the session id.
+     */
+    public String getOwner() {
+        return this.owner;
+    }
+}
@@ -0,0 +1,258 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.rest.controller;
+
+import com.bankid.codefront.models.service.BankIDTransaction;
+import com.bankid.codefront.models.service.QrImage;
+import com.bankid.codefront.models.service.QrImageFormat;
+import com.bankid.codefront.models.service.QrTransaction;
+import com.bankid.codefront.rest.model.QrResponse;
+import com.bankid.codefront.rest.model.SessionValue;
+import com.bankid.codefront.service.BankIDService;
+import com.bankid.codefront.service.QrImageRenderer;
+import com.bankid.codefront.service.QrTransactionRegistry;
+import com.bankid.codefront.service.metrics.QrImageMetrics;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.session.web.http.CookieSerializer;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Serves the QR code of the ongoing transaction, as data or as an image rendered by the server,
+ * for clients that should not render it themselves every second.
+ *
+ * <p>A client that passes the transaction id is answered from the transactions recorded on this node, when its
+ * session cookie names the session the transaction is recorded with. The session is not loaded. Otherwise, or if
+ * the transaction is not recorded here, the session value is used.
+ */
+@RestController
+@RequestMapping("api/")
+public class QrController {
+    private final Logger logger = LoggerFactory.getLogger(QrController.class);
+
+    private final BankIDService bankIDService;
+    private final QrImageRenderer qrImageRenderer;
+    private final QrTransactionRegistry qrTransactionRegistry;
+    private final QrImageMetrics metrics;
+    private final CookieSerializer cookieSerializer;
+    private final SessionValue sessionValue;
+
+    /**
+     * Initialize the QR Controller class.
+     * @param bankIDService   the BankId Service.
+     * @param qrImageRenderer       the renderer of QR images.
+     * @param qrTransactionRegistry the transactions showing a QR code on this node.
+     * @param metrics               the metrics helper.
+     * @param cookieSerializer      reads the session ids of a request from its session cookie.
+     * @param sessionValue          the session value.
+     */
+    public QrController(
+        BankIDService bankIDService,
+        QrImageRenderer qrImageRenderer,
+        QrTransactionRegistry qrTransactionRegistry,
+        QrImageMetrics metrics,
+        CookieSerializer cookieSerializer,
+        SessionValue sessionValue) {
+        this.bankIDService = bankIDService;
+        this.qrImageRenderer = qrImageRenderer;
+        this.qrTransactionRegistry = qrTransactionRegistry;
+        this.metrics = metrics;
+        this.cookieSerializer = cookieSerializer;
+        this.sessionValue = sessionValue;
+    }
+
+    /**
+     * Returns the current QR data of the transaction.
+     * @param request       the http request.
+     * @param transactionId the transaction id, or null to use the transaction in the session.
+     * @return the QR data, or no content if no QR code should be shown.
+     */
+    @GetMapping("/qr")
+    public ResponseEntity<QrResponse> qr(
+        HttpServletRequest request,
+        @RequestParam(required = false) String transactionId) {
+        QrLookup lookup = this.lookup(request, transactionId);
+        if (lookup == null) {
+            this.logger.trace("Failed to get QR code: Transaction not found");
+
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+
+        if (lookup.qrData == null) {
+            return ResponseEntity.status(HttpStatus.NO_CONTENT).cacheControl(CacheControl.noStore()).build();
+        }
+        return ResponseEntity.status(HttpStatus.OK)
+            .cacheControl(CacheControl.noStore())
+            .body(new QrResponse(lookup.qrData));
+    }
+
+    /**
+     * Returns the current QR code of the transaction as SVG.
+     * @param request       the http request.
+     * @param transactionId the transaction id, or null to use the transaction in the session.
+     * @param ifNoneMatch   the entity tag of the image the client already has.
+     * @return the image, not modified, or no content if no QR code should be shown.
+     */
+    @GetMapping("/qr.svg")
+    public ResponseEntity<byte[]> qrSvg(
+        HttpServletRequest request,
+        @RequestParam(required = false) String transactionId,
+        @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return this.qrImage(QrImageFormat.SVG, request, transactionId, ifNoneMatch);
+    }
+
+    /**
+     * Returns the current QR code of the transaction as PNG.
+     * @param request       the http request.
+     * @param transactionId the transaction id, or null to use the transaction in the session.
+     * @param ifNoneMatch   the entity tag of the image the client already has.
+     * @return the image, not modified, or no content if no QR code should be shown.
+     */
+    @GetMapping("/qr.png")
+    public ResponseEntity<byte[]> qrPng(
+        HttpServletRequest request,
+        @RequestParam(required = false) String transactionId,
+        @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return this.qrImage(QrImageFormat.PNG, request, transactionId, ifNoneMatch);
+    }
+
+    /**
+     * Returns the current QR code of the transaction as an image.
+     * The image changes every second, so the client must revalidate it and gets not modified within the same second.
+     * @param format        the image format.
+     * @param request       the http request.
+     * @param transactionId the transaction id, or null to use the transaction in the session.
+     * @param ifNoneMatch   the entity tag of the image the client already has.
+     * @return the image, not modified, or no content if no QR code should be shown.
+     */
+    private ResponseEntity<byte[]> qrImage(
+        QrImageFormat format,
+        HttpServletRequest request,
+        String transactionId,
+        String ifNoneMatch) {
+        QrLookup lookup = this.lookup(request, transactionId);
+        if (lookup == null) {
+            this.logger.trace("Failed to get QR image: Transaction not found");
+
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+
+        String qrData = lookup.qrData;
+        if (qrData == null) {
+            return ResponseEntity.status(HttpStatus.NO_CONTENT).cacheControl(CacheControl.noStore()).build();
+        }
+
+        // The entity tag is known from the QR data, nothing is rendered for a client that has the image
+        String etag = QrImageRenderer.etag(qrData, format);
+        CacheControl cacheControl = CacheControl.noCache().cachePrivate();
+        if (ifNoneMatch != null && ifNoneMatch.contains(etag)) {
+            this.metrics.notModified();
+
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                .eTag(etag)
+                .cacheControl(cacheControl)
+                .build();
+        }
+
+        QrImage image = this.qrImageRenderer.render(qrData, format);
+        this.metrics.served(format, image.getContent().length);
+        return ResponseEntity.status(HttpStatus.OK)
+            .contentType(MediaType.parseMediaType(format.getMediaType()))
+            .eTag(image.getEtag())
+            .cacheControl(cacheControl)
+            .body(image.getContent());
+    }
+
+    /**
+     * Finds the current QR data of a transaction, first among the transactions recorded on this node
+     * and then in the session. A transaction found in the session is recorded with the session id, so the next
+     * refresh does not load the session.
+     *
+     * <p>A recorded transaction is only answered to a request whose session cookie names the session it is recorded
+     * with, so the transaction id cannot be used to read the QR code of another user. Any other request is answered
+     * from its own session.
+     * @param request       the http request.
+     * @param transactionId the transaction id, or null to use the transaction in the session.
+     * @return the lookup, or null if the transaction is not found.
+     */
+    private QrLookup lookup(HttpServletRequest request, String transactionId) {
+        if (transactionId != null) {
+            QrTransaction local = this.qrTransactionRegistry.get(transactionId);
+            if (local != null && this.cookieSerializer.readCookieValues(request).contains(local.getOwner())) {
+                this.metrics.localLookup();
+                return new QrLookup(this.bankIDService.currentQrCode(local));
+            }
+        }
+
+        BankIDTransaction transaction = this.sessionValue == null ? null : this.sessionValue.getBankIDTransaction();
+        if (transaction == null
+            || transactionId != null && !transactionId.equals(transaction.getTransactionId())) {
+            return null;
+        }
+
+        this.metrics.sessionLookup();
+        String qrData = this.bankIDService.currentQrCode(transaction);
+        HttpSession session = request.getSession(false);
+        if (qrData != null && transactionId != null && session != null) {
+            this.qrTransactionRegistry.register(transaction, session.getId());
+        }
+        return new QrLookup(qrData);
+    }
+
+    /**
+     * The result of finding the QR data of a transaction.
+     */
+    private static final class QrLookup {
+        private final String qrData;
+
+        /**
+         * Creates the lookup.
+         * @param qrData the QR data, or null if no QR code should be shown.
+         */
+        QrLookup(String qrData) {
+            this.qrData = qrData;
+        }
+    }
+}
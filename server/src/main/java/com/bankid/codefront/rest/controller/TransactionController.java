@@ -33,38 +33,50 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.bankid.codefront.rest.controller;
 
+import com.bankid.codefront.bankid.relyingparty.resilience.RpApiRejectedException;
 import com.bankid.codefront.config.AppConfig;
 import com.bankid.codefront.models.service.BankIDTransaction;
 import com.bankid.codefront.models.service.CollectResult;
 import com.bankid.codefront.models.service.Status;
 import com.bankid.codefront.rest.controller.metrics.TransactionControllerMetrics;
 import com.bankid.codefront.rest.model.AuthenticationRequest;
+import com.bankid.codefront.rest.model.CheckRequest;
 import com.bankid.codefront.rest.model.CheckResponse;
+import com.bankid.codefront.rest.model.ErrorCode;
 import com.bankid.codefront.rest.model.SessionValue;
 import com.bankid.codefront.rest.model.SignRequest;
 import com.bankid.codefront.rest.model.TransactionResponse;
 import com.bankid.codefront.service.BankIDService;
+import com.bankid.codefront.service.PollCadence;
+import com.bankid.codefront.service.QrTransactionRegistry;
+import com.bankid.codefront.service.SessionTransactionStore;
+import com.bankid.codefront.service.TransactionEventService;
 import com.bankid.codefront.utils.CodeFrontWebApplicationException;
+import com.bankid.codefront.utils.DeviceCookie;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.ResponseCookie;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CookieValue;
 import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.net.URI;
 import java.time.Clock;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
-import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Handle BankID transaction.
@@ -72,12 +84,16 @@ import java.util.UUID;
 @RestController
 @RequestMapping("api/")
 public class TransactionController {
-    private static final String DEVICE_COOKIE_NAME = "__Secure-Device";
-    private static final int DEVICE_COOKIE_TTL = 399 * 24 * 60 * 60;
+    private static final long LONG_POLL_TIMEOUT_MILLIS = 25_000;
+    private static final long LONG_POLL_GRACE_MILLIS = 5_000;
 
     private final Logger logger = LoggerFactory.getLogger(TransactionController.class);
 
     private final BankIDService bankIDService;
+    private final TransactionEventService transactionEventService;
+    private final SessionTransactionStore sessionTransactionStore;
+    private final QrTransactionRegistry qrTransactionRegistry;
+    private final PollCadence pollCadence;
     private final TransactionControllerMetrics metrics;
     private final SessionValue sessionValue;
     private final AppConfig appConfig;
@@ -85,19 +101,31 @@ public class TransactionController {
 
     /**
      * Initialize the Transaction Controller class.
-     * @param bankIDService         the BankId Service.
-     * @param metrics               the metrics helper.
-     * @param sessionValue          the session value.
-     * @param appConfig             the app configuration.
-     * @param clock                 the clock.
+     * @param bankIDService           the BankId Service.
+     * @param transactionEventService the transaction event streams.
+     * @param sessionTransactionStore writes the final transaction followed by a stream to the session.
+     * @param qrTransactionRegistry   the transactions showing a QR code on this node.
+     * @param pollCadence             decides when the client checks a transaction next.
+     * @param metrics                 the metrics helper.
+     * @param sessionValue            the session value.
+     * @param appConfig               the app configuration.
+     * @param clock                   the clock.
      */
     public TransactionController(
         BankIDService bankIDService,
+        TransactionEventService transactionEventService,
+        SessionTransactionStore sessionTransactionStore,
+        QrTransactionRegistry qrTransactionRegistry,
+        PollCadence pollCadence,
         TransactionControllerMetrics metrics,
         SessionValue sessionValue,
         AppConfig appConfig,
         Clock clock) {
         this.bankIDService = bankIDService;
+        this.transactionEventService = transactionEventService;
+        this.sessionTransactionStore = sessionTransactionStore;
+        this.qrTransactionRegistry = qrTransactionRegistry;
+        this.pollCadence = pollCadence;
         this.metrics = metrics;
         this.sessionValue = sessionValue;
         this.appConfig = appConfig;
@@ -119,7 +147,7 @@ public class TransactionController {
         HttpServletRequest request,
         HttpServletResponse response,
         @RequestBody AuthenticationRequest body,
-        @CookieValue(value = DEVICE_COOKIE_NAME, defaultValue = "", required = false) String deviceIdentifier
+        @CookieValue(value = DeviceCookie.NAME, defaultValue = "", required = false) String deviceIdentifier
     ) {
         long startTime = System.currentTimeMillis();
 
@@ -185,6 +213,11 @@ public class TransactionController {
             this.metrics.failedStartAuthentication((System.currentTimeMillis() - startTime));
 
             throw exc;
+        } catch (RpApiRejectedException exc) {
+            this.logger.info("BankID RP call rejected while authenticating the user: {}", exc.getMessage());
+            this.metrics.failedStartAuthentication((System.currentTimeMillis() - startTime));
+
+            throw rejected(exc);
         } catch (Exception exc) {
             this.logger.error("Failed to start authentication ({}): {}", exc.getClass(), exc.toString());
             this.metrics.failedStartAuthentication((System.currentTimeMillis() - startTime));
@@ -208,7 +241,7 @@ public class TransactionController {
         HttpServletRequest request,
         HttpServletResponse response,
         @RequestBody SignRequest body,
-        @CookieValue(value = DEVICE_COOKIE_NAME, defaultValue = "", required = false) String deviceIdentifier
+        @CookieValue(value = DeviceCookie.NAME, defaultValue = "", required = false) String deviceIdentifier
     ) {
         long startTime = System.currentTimeMillis();
         String clientIp = request.getRemoteAddr();
@@ -273,6 +306,11 @@ public class TransactionController {
             this.metrics.failedStartSign((System.currentTimeMillis() - startTime));
 
             throw exc;
+        } catch (RpApiRejectedException exc) {
+            this.logger.info("BankID RP call rejected while signing: {}", exc.getMessage());
+            this.metrics.failedStartSign((System.currentTimeMillis() - startTime));
+
+            throw rejected(exc);
         } catch (Exception exc) {
             this.logger.error("Failed to start sign ({}): {}", exc.getClass(), exc.toString());
             this.metrics.failedStartSign((System.currentTimeMillis() - startTime));
@@ -318,14 +356,15 @@ public class TransactionController {
                         .until(Instant.now(this.clock), ChronoUnit.SECONDS));
             }
 
-            return ResponseEntity.status(HttpStatus.OK).body(new CheckResponse(
-                collectResult.getTransaction().getTransactionId(),
-                collectResult
-            ));
+            return this.checkResponse(collectResult.getTransaction().getTransactionId(), collectResult);
         } catch (CodeFrontWebApplicationException exc) {
             this.logger.info("CodeFrontWebApplicationException while checking transaction: {}", exc.toString());
 
             throw exc;
+        } catch (RpApiRejectedException exc) {
+            this.logger.info("BankID RP call rejected while checking transaction: {}", exc.getMessage());
+
+            throw rejected(exc);
         } catch (Exception exc) {
             this.logger.error("Failed to check transaction ({}): {}", exc.getClass(), exc.toString());
 
@@ -333,6 +372,138 @@ public class TransactionController {
         }
     }
 
+    /**
+     * Wait for the transaction status to change (long-poll).
+     * The request is answered when the status, hint code or qr code differs from the state last seen by the client,
+     * or with the current state after a timeout. No thread is held while waiting.
+     * A complete or failed state is written to the session when the request has completed.
+     * @param request  httpRequest
+     * @param lastSeen the state last seen by the client, or empty to get the current state.
+     * @return Return status of the transaction.
+     */
+    @PostMapping("/check/wait")
+    public DeferredResult<ResponseEntity<CheckResponse>> waitForTransactionChange(
+        HttpServletRequest request,
+        @RequestBody(required = false) CheckRequest lastSeen
+    ) {
+        long startTime = System.currentTimeMillis();
+
+        // The wait answers within its timeout, this only guards against a stuck wait.
+        DeferredResult<ResponseEntity<CheckResponse>> deferredResult = new DeferredResult<>(
+            LONG_POLL_TIMEOUT_MILLIS + LONG_POLL_GRACE_MILLIS,
+            () -> ResponseEntity.status(HttpStatus.NO_CONTENT).build()
+        );
+
+        // Validate input
+        if (this.sessionValue == null || this.sessionValue.getBankIDTransaction() == null) {
+            this.logger.trace("Failed to wait for transaction: Session not found");
+            deferredResult.setResult(ResponseEntity.status(HttpStatus.BAD_REQUEST).build());
+
+            return deferredResult;
+        }
+
+        BankIDTransaction sessionTransaction = this.sessionValue.getBankIDTransaction();
+        String sessionId = request.getSession().getId();
+
+        CompletableFuture<CollectResult> change = this.transactionEventService.awaitChange(
+            sessionTransaction, lastSeen, LONG_POLL_TIMEOUT_MILLIS);
+        deferredResult.onCompletion(() -> {
+            change.cancel(false);
+
+            // The wait followed a copy, write the final state once the request has committed the session
+            if (change.isDone() && !change.isCompletedExceptionally()) {
+                CollectResult collectResult = change.join();
+                if (collectResult != null) {
+                    this.sessionTransactionStore.saveFinal(sessionId, collectResult.getTransaction());
+                }
+            }
+        });
+        change.whenComplete((collectResult, exc) -> {
+            if (exc != null) {
+                this.logger.error("Failed to wait for transaction ({}): {}", exc.getClass(), exc.toString());
+                deferredResult.setErrorResult(
+                    new CodeFrontWebApplicationException(HttpStatus.INTERNAL_SERVER_ERROR, "GENERAL_ERROR"));
+
+                return;
+            }
+            if (collectResult == null) {
+                deferredResult.setResult(ResponseEntity.status(HttpStatus.NO_CONTENT).build());
+
+                return;
+            }
+
+            // Add metrics
+            this.metrics.successCollect(System.currentTimeMillis() - startTime);
+            if (collectResult.getStatus() == Status.COMPLETE) {
+                this.metrics.finalizedTransaction(sessionTransaction.getStartTime()
+                        .until(Instant.now(this.clock), ChronoUnit.SECONDS));
+            }
+            if (collectResult.getStatus() == Status.FAILED) {
+                this.metrics.failedTransaction(sessionTransaction.getStartTime()
+                        .until(Instant.now(this.clock), ChronoUnit.SECONDS));
+            }
+
+            deferredResult.setResult(this.checkResponse(sessionTransaction.getTransactionId(), collectResult));
+        });
+
+        return deferredResult;
+    }
+
+    /**
+     * Creates the response to a check, with the time until the client should check again in the body and,
+     * for pending transactions, rounded up to whole seconds in the Retry-After header.
+     * @param transactionId the transaction id.
+     * @param collectResult the latest state of the transaction.
+     * @return the response.
+     */
+    private ResponseEntity<CheckResponse> checkResponse(String transactionId, CollectResult collectResult) {
+        CheckResponse checkResponse = new CheckResponse(transactionId, collectResult);
+        long nextPollMillis = this.pollCadence.nextPollMillis(collectResult);
+        checkResponse.setNextPollMillis(nextPollMillis);
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(HttpStatus.OK);
+        if (nextPollMillis > 0) {
+            long seconds = (nextPollMillis + TimeUnit.SECONDS.toMillis(1) - 1) / TimeUnit.SECONDS.toMillis(1);
+            response.header(HttpHeaders.RETRY_AFTER, Long.toString(seconds));
+        }
+        return response.body(checkResponse);
+    }
+
+    /**
+     * Stream transaction status as Server-Sent Events.
+     * An event with the same content as the check response is sent when the status, hint code or qr code changes.
+     * The stream ends after the complete or failed event, and the final state is then written to the session.
+     * @param request httpRequest
+     * @return Return the event stream.
+     */
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> transactionEvents(HttpServletRequest request) {
+        // Validate input
+        if (this.sessionValue == null || this.sessionValue.getBankIDTransaction() == null) {
+            this.logger.trace("Failed to stream transaction: Session not found");
+
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+
+        BankIDTransaction sessionTransaction = this.sessionValue.getBankIDTransaction();
+        String sessionId = request.getSession().getId();
+
+        SseEmitter emitter = this.transactionEventService.subscribe(sessionTransaction, collectResult -> {
+            long timeTakenSeconds = sessionTransaction.getStartTime()
+                .until(Instant.now(this.clock), ChronoUnit.SECONDS);
+            if (collectResult.getStatus() == Status.COMPLETE) {
+                this.metrics.finalizedTransaction(timeTakenSeconds);
+            } else {
+                this.metrics.failedTransaction(timeTakenSeconds);
+            }
+
+            // The stream followed a copy, so a later start does not cancel the finished order
+            this.sessionTransactionStore.saveFinal(sessionId, collectResult.getTransaction());
+        });
+
+        return ResponseEntity.status(HttpStatus.OK).body(emitter);
+    }
+
     /**
      * Cancel ongoing BankID transaction.
      * @return Return status
@@ -356,9 +527,11 @@ public class TransactionController {
 
         try {
             // Always return OK to user.
-            this.bankIDService.cancelTransaction(this.sessionValue.getBankIDTransaction().getOrderRef());
+            BankIDTransaction transaction = this.sessionValue.getBankIDTransaction();
+            this.bankIDService.cancelTransaction(transaction.getOrderRef());
 
             // Remove transaction
+            this.qrTransactionRegistry.remove(transaction.getTransactionId());
             this.sessionValue.setBankIDTransaction(null);
 
             return true;
@@ -373,6 +546,15 @@ public class TransactionController {
         }
     }
 
+    /**
+     * Creates the error sent to the client when a call to BankID RP was rejected without being sent.
+     * @param exc the rejection.
+     * @return the error to throw.
+     */
+    private static CodeFrontWebApplicationException rejected(RpApiRejectedException exc) {
+        return new CodeFrontWebApplicationException(HttpStatus.SERVICE_UNAVAILABLE, ErrorCode.rejected(exc).name());
+    }
+
     /**
      * Check that the user is accessing the site with same domain as the configuration.
      * @param hostHeader host header in request.
@@ -398,23 +580,9 @@ public class TransactionController {
      * @return the device identifier.
      */
     private String getOrCreateDeviceIdentifier(HttpServletResponse response, String deviceIdentifier) {
-        // Check if valid uuid or create a new.
-        try {
-            deviceIdentifier = UUID.fromString(deviceIdentifier).toString();
-        } catch (IllegalArgumentException e) {
-            deviceIdentifier = UUID.randomUUID().toString();
-        }
-
-        ResponseCookie responseCookie = ResponseCookie
-            .from(DEVICE_COOKIE_NAME, deviceIdentifier)
-            .secure(true)
-            .httpOnly(true)
-            .path("/")
-            .maxAge(DEVICE_COOKIE_TTL)
-            .sameSite("Strict")
-            .build();
+        deviceIdentifier = DeviceCookie.getOrCreateIdentifier(deviceIdentifier);
 
-        response.addHeader(HttpHeaders.SET_COOKIE, responseCookie.toString());
+        response.addHeader(HttpHeaders.SET_COOKIE, DeviceCookie.create(deviceIdentifier).toString());
 
         return deviceIdentifier;
     }
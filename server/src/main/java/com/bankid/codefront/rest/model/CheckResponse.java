@@ -47,6 +47,7 @@ public class CheckResponse {
     private Status status;
     private String qrCode;
     private CompletionResponse completionResponse;
+    private Long nextPollMillis;
 
     /**
      * Initialize collect response.
@@ -134,4 +135,20 @@ public class CheckResponse {
     public void setCompletionResponse(CompletionResponse completionResponse) {
         this.completionResponse = completionResponse;
     }
+
+    /**
+     * Returns the time until the client should check the transaction again.
+     * @return the time in milliseconds, 0 if the transaction is final, or null if not given.
+     */
+    public Long getNextPollMillis() {
+        return this.nextPollMillis;
+    }
+
+    /**
+     * Sets the time until the client should check the transaction again.
+     * @param nextPollMillis the time in milliseconds.
+     */
+    public void setNextPollMillis(Long nextPollMillis) {
+        this.nextPollMillis = nextPollMillis;
+    }
 }
@@ -33,6 +33,8 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.bankid.codefront.rest.model;
 
+import com.bankid.codefront.bankid.relyingparty.resilience.RpApiRejectedException;
+
 /**
  * Error Codes sent to client.
  */
@@ -41,8 +43,28 @@ public enum ErrorCode {
      * BankID transaction already in progress.
      */
     ALREADY_IN_PROGRESS,
+    /**
+     * BankID RP is unavailable, calls are rejected until it recovers.
+     */
+    RP_UNAVAILABLE,
+    /**
+     * Too many ongoing calls to BankID RP, try again later.
+     */
+    RP_BUSY,
     /**
      * Unknown error.
      */
-    UNKNOWN,
+    UNKNOWN;
+
+    /**
+     * Returns the error sent to the client when a call to BankID RP was rejected without being sent.
+     * @param exc the rejection.
+     * @return the error code.
+     */
+    public static ErrorCode rejected(RpApiRejectedException exc) {
+        return switch (exc.getReason()) {
+            case CIRCUIT_OPEN -> RP_UNAVAILABLE;
+            case BULKHEAD_FULL, QUEUE_TIMEOUT -> RP_BUSY;
+        };
+    }
 }
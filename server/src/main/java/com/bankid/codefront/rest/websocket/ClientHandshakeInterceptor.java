@@ -0,0 +1,113 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.rest.websocket;
+
+import com.bankid.codefront.utils.DeviceCookie;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import java.util.Map;
+
+/**
+ * Stores the client ip, user agent and device identifier of the handshake in the WebSocket session,
+ * the values the REST api reads from each request.
+ */
+public class ClientHandshakeInterceptor implements HandshakeInterceptor {
+    /** Attribute with the client ip. */
+    public static final String CLIENT_IP = "clientIp";
+    /** Attribute with the user agent. */
+    public static final String USER_AGENT = "userAgent";
+    /** Attribute with the device identifier. */
+    public static final String DEVICE_ID = "deviceId";
+
+    /**
+     * Stores the client information and creates or updates the device cookie.
+     * @param request    the handshake request.
+     * @param response   the handshake response.
+     * @param wsHandler  the handler.
+     * @param attributes the attributes of the WebSocket session.
+     * @return true to proceed with the handshake.
+     */
+    @Override
+    public boolean beforeHandshake(
+        ServerHttpRequest request,
+        ServerHttpResponse response,
+        WebSocketHandler wsHandler,
+        Map<String, Object> attributes) {
+        if (!(request instanceof ServletServerHttpRequest servletRequest)) {
+            return false;
+        }
+        HttpServletRequest httpRequest = servletRequest.getServletRequest();
+
+        String deviceId = null;
+        if (httpRequest.getCookies() != null) {
+            for (Cookie cookie : httpRequest.getCookies()) {
+                if (DeviceCookie.NAME.equals(cookie.getName())) {
+                    deviceId = cookie.getValue();
+                }
+            }
+        }
+        deviceId = DeviceCookie.getOrCreateIdentifier(deviceId);
+        response.getHeaders().add(HttpHeaders.SET_COOKIE, DeviceCookie.create(deviceId).toString());
+
+        attributes.put(CLIENT_IP, httpRequest.getRemoteAddr());
+        attributes.put(DEVICE_ID, deviceId);
+        String userAgent = httpRequest.getHeader(HttpHeaders.USER_AGENT);
+        if (userAgent != null) {
+            attributes.put(USER_AGENT, userAgent);
+        }
+        return true;
+    }
+
+    /**
+     * Nothing to do after the handshake.
+     * @param request   the handshake request.
+     * @param response  the handshake response.
+     * @param wsHandler the handler.
+     * @param exception the handshake failure, if any.
+     */
+    @Override
+    public void afterHandshake(
+        ServerHttpRequest request,
+        ServerHttpResponse response,
+        WebSocketHandler wsHandler,
+        Exception exception) {
+    }
+}
@@ -0,0 +1,133 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.rest.websocket;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * A message from the client on the transaction WebSocket.
+ */
+public class TransactionMessage {
+
+    /**
+     * The operation requested by the client.
+     */
+    public enum Type {
+        /**
+         * Start an authentication, the request is an authentication request.
+         */
+        AUTHENTICATION,
+        /**
+         * Start a sign, the request is a sign request.
+         */
+        SIGN,
+        /**
+         * Follow a started transaction until it is complete or failed.
+         */
+        OBSERVE,
+        /**
+         * Cancel a started transaction.
+         */
+        CANCEL
+    }
+
+    private String id;
+    private Type type;
+    private String transactionId;
+    private JsonNode request;
+
+    /**
+     * Returns the id chosen by the client, sent back in the replies to this message.
+     * @return the message id.
+     */
+    public String getId() {
+        return this.id;
+    }
+
+    /**
+     * Set the message id.
+     * @param id the message id.
+     */
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    /**
+     * Returns the requested operation.
+     * @return the type.
+     */
+    public Type getType() {
+        return this.type;
+    }
+
+    /**
+     * Set the requested operation.
+     * @param type the type.
+     */
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    /**
+     * Returns the transaction to observe or cancel.
+     * @return the transaction id.
+     */
+    public String getTransactionId() {
+        return this.transactionId;
+    }
+
+    /**
+     * Set the transaction to observe or cancel.
+     * @param transactionId the transaction id.
+     */
+    public void setTransactionId(String transactionId) {
+        this.transactionId = transactionId;
+    }
+
+    /**
+     * Returns the authentication or sign request.
+     * @return the request.
+     */
+    public JsonNode getRequest() {
+        return this.request;
+    }
+
+    /**
+     * Set the authentication or sign request.
+     * @param request the request.
+     */
+    public void setRequest(JsonNode request) {
+        this.request = request;
+    }
+}
@@ -0,0 +1,157 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.rest.websocket;
+
+import com.bankid.codefront.rest.model.CheckResponse;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * A message to the client on the transaction WebSocket.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class TransactionReply {
+
+    /**
+     * The kind of reply.
+     */
+    public enum Type {
+        /**
+         * A transaction was started.
+         */
+        STARTED,
+        /**
+         * The status of an observed transaction changed.
+         */
+        CHECK,
+        /**
+         * A transaction was cancelled.
+         */
+        CANCELLED,
+        /**
+         * The message could not be handled.
+         */
+        ERROR
+    }
+
+    private final String id;
+    private final Type type;
+    private final String transactionId;
+    private String autoStartToken;
+    private CheckResponse check;
+    private String error;
+
+    /**
+     * Creates a reply.
+     * @param id            the id of the message replied to.
+     * @param type          the kind of reply.
+     * @param transactionId the transaction id.
+     */
+    public TransactionReply(String id, Type type, String transactionId) {
+        this.id = id;
+        this.type = type;
+        this.transactionId = transactionId;
+    }
+
+    /**
+     * Returns the id of the message replied to.
+     * @return the message id.
+     */
+    public String getId() {
+        return this.id;
+    }
+
+    /**
+     * Returns the kind of reply.
+     * @return the type.
+     */
+    public Type getType() {
+        return this.type;
+    }
+
+    /**
+     * Returns the transaction id.
+     * @return the transaction id.
+     */
+    public String getTransactionId() {
+        return this.transactionId;
+    }
+
+    /**
+     * Returns the auto start token of a started transaction.
+     * @return the auto start token.
+     */
+    public String getAutoStartToken() {
+        return this.autoStartToken;
+    }
+
+    /**
+     * Set the auto start token.
+     * @param autoStartToken the auto start token.
+     */
+    public void setAutoStartToken(String autoStartToken) {
+        this.autoStartToken = autoStartToken;
+    }
+
+    /**
+     * Returns the status of an observed transaction.
+     * @return the status.
+     */
+    public CheckResponse getCheck() {
+        return this.check;
+    }
+
+    /**
+     * Set the status of an observed transaction.
+     * @param check the status.
+     */
+    public void setCheck(CheckResponse check) {
+        this.check = check;
+    }
+
+    /**
+     * Returns the error.
+     * @return the error.
+     */
+    public String getError() {
+        return this.error;
+    }
+
+    /**
+     * Set the error.
+     * @param error the error.
+     */
+    public void setError(String error) {
+        this.error = error;
+    }
+}
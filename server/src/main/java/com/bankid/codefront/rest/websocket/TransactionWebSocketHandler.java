@@ -0,0 +1,483 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.rest.websocket;
+
+import com.bankid.codefront.bankid.relyingparty.resilience.RpApiRejectedException;
+import com.bankid.codefront.models.service.BankIDTransaction;
+import com.bankid.codefront.models.service.CollectResult;
+import com.bankid.codefront.models.service.Status;
+import com.bankid.codefront.rest.controller.metrics.TransactionControllerMetrics;
+import com.bankid.codefront.rest.model.AuthenticationRequest;
+import com.bankid.codefront.rest.model.CheckResponse;
+import com.bankid.codefront.rest.model.ErrorCode;
+import com.bankid.codefront.rest.model.SignRequest;
+import com.bankid.codefront.service.BankIDService;
+import com.bankid.codefront.service.TransactionEventService;
+import com.bankid.codefront.service.TransactionObserver;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Starts, observes and cancels BankID transactions over one WebSocket per browser.
+ * Transactions started on a socket belong to the socket instead of the http session,
+ * so the operations do not load or store the session. Pending transactions are cancelled when the socket closes.
+ *
+ * <p>The client sends {@link TransactionMessage} and receives {@link TransactionReply} as json text messages.
+ */
+@Component
+public class TransactionWebSocketHandler extends TextWebSocketHandler {
+    private static final int MAX_TRANSACTIONS_PER_SOCKET = 10;
+    private static final int SEND_TIME_LIMIT_MILLIS = 10_000;
+    private static final int SEND_BUFFER_SIZE = 512 * 1024;
+    private static final String INVALID_INPUT = "Invalid input";
+    private static final String GENERAL_ERROR = "GENERAL_ERROR";
+
+    private final Logger logger = LoggerFactory.getLogger(TransactionWebSocketHandler.class);
+
+    private final BankIDService bankIDService;
+    private final TransactionEventService transactionEventService;
+    private final TransactionControllerMetrics metrics;
+    private final ObjectMapper objectMapper;
+    private final Clock clock;
+    private final Map<String, Connection> connections = new ConcurrentHashMap<>();
+
+    /**
+     * Creates the handler.
+     * @param bankIDService           the BankID service.
+     * @param transactionEventService the transaction event service.
+     * @param metrics                 the metrics helper.
+     * @param objectMapper            the json mapper.
+     * @param clock                   the clock.
+     */
+    public TransactionWebSocketHandler(
+        BankIDService bankIDService,
+        TransactionEventService transactionEventService,
+        TransactionControllerMetrics metrics,
+        ObjectMapper objectMapper,
+        Clock clock) {
+        this.bankIDService = bankIDService;
+        this.transactionEventService = transactionEventService;
+        this.metrics = metrics;
+        this.objectMapper = objectMapper;
+        this.clock = clock;
+    }
+
+    /**
+     * Registers the socket.
+     * @param session the WebSocket session.
+     */
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) {
+        // Replies are sent both from this handler and from the threads following transactions.
+        WebSocketSession concurrentSession = new ConcurrentWebSocketSessionDecorator(
+            session, SEND_TIME_LIMIT_MILLIS, SEND_BUFFER_SIZE);
+        this.connections.put(session.getId(), new Connection(concurrentSession));
+    }
+
+    /**
+     * Handles a message from the client.
+     * @param session the WebSocket session.
+     * @param message the message.
+     * @throws IOException if the reply could not be sent.
+     */
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) throws IOException {
+        Connection connection = this.connections.get(session.getId());
+        if (connection == null) {
+            return;
+        }
+
+        TransactionMessage request;
+        try {
+            request = this.objectMapper.readValue(message.getPayload(), TransactionMessage.class);
+        } catch (JsonProcessingException exc) {
+            this.logger.info("Invalid WebSocket message: {}", exc.getOriginalMessage());
+            this.sendError(connection, null, null, INVALID_INPUT);
+            return;
+        }
+
+        if (request.getType() == null) {
+            this.sendError(connection, request.getId(), null, INVALID_INPUT);
+            return;
+        }
+        switch (request.getType()) {
+            case AUTHENTICATION -> this.start(connection, request, true);
+            case SIGN -> this.start(connection, request, false);
+            case OBSERVE -> this.observe(connection, request);
+            case CANCEL -> this.cancel(connection, request);
+            default -> this.sendError(connection, request.getId(), null, INVALID_INPUT);
+        }
+    }
+
+    /**
+     * Cancels the pending transactions of a closed socket.
+     * @param session the WebSocket session.
+     * @param status  the close status.
+     */
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        Connection connection = this.connections.remove(session.getId());
+        if (connection == null) {
+            return;
+        }
+
+        for (SocketTransaction transaction : connection.transactions.values()) {
+            transaction.stopObserving();
+            try {
+                this.bankIDService.cancelTransaction(transaction.transaction.getOrderRef());
+            } catch (Exception exc) {
+                this.logger.error("Failed to cancel transaction ({}): {}", exc.getClass(), exc.toString());
+            }
+        }
+        connection.transactions.clear();
+    }
+
+    /**
+     * Returns the number of open sockets.
+     * @return the number of sockets.
+     */
+    public int getConnectionCount() {
+        return this.connections.size();
+    }
+
+    /**
+     * Starts an authentication or sign transaction.
+     * @param connection the socket.
+     * @param message    the message.
+     * @param auth       true for authentication, false for sign.
+     * @throws IOException if the reply could not be sent.
+     */
+    private void start(Connection connection, TransactionMessage message, boolean auth) throws IOException {
+        long startTime = System.currentTimeMillis();
+
+        try {
+            if (connection.transactions.size() >= MAX_TRANSACTIONS_PER_SOCKET) {
+                this.logger.info("Too many transactions on WebSocket");
+                this.sendError(connection, message.getId(), null, ErrorCode.ALREADY_IN_PROGRESS.name());
+                this.failedStart(auth, startTime);
+                return;
+            }
+
+            AuthenticationRequest body = this.readRequest(message, auth);
+            if (body == null || !body.validate()) {
+                this.sendError(connection, message.getId(), null, INVALID_INPUT);
+                this.failedStart(auth, startTime);
+                return;
+            }
+
+            Map<String, Object> attributes = connection.session.getAttributes();
+            String clientIp = (String) attributes.get(ClientHandshakeInterceptor.CLIENT_IP);
+            String userAgent = (String) attributes.get(ClientHandshakeInterceptor.USER_AGENT);
+            String deviceId = (String) attributes.get(ClientHandshakeInterceptor.DEVICE_ID);
+
+            // Call service
+            BankIDTransaction bankIDTransaction;
+            if (auth) {
+                bankIDTransaction = this.bankIDService.authentication(
+                    clientIp,
+                    body.getUserVisibleData(),
+                    body.getUserVisibleDataFormat(),
+                    body.getUserNonVisibleData(),
+                    body.getAllowFingerprint(),
+                    userAgent,
+                    deviceId
+                );
+            } else {
+                bankIDTransaction = this.bankIDService.signing(
+                    clientIp,
+                    body.getUserVisibleData(),
+                    body.getUserVisibleDataFormat(),
+                    body.getUserNonVisibleData(),
+                    body.getAllowFingerprint(),
+                    userAgent,
+                    deviceId
+                );
+            }
+
+            if (bankIDTransaction == null) {
+                this.sendError(connection, message.getId(), null, GENERAL_ERROR);
+                this.failedStart(auth, startTime);
+                return;
+            }
+
+            connection.transactions.put(bankIDTransaction.getTransactionId(), new SocketTransaction(bankIDTransaction));
+
+            // Add metrics
+            if (auth) {
+                this.metrics.successStartAuthentication(System.currentTimeMillis() - startTime);
+            } else {
+                this.metrics.successStartSign(System.currentTimeMillis() - startTime);
+            }
+
+            TransactionReply reply = new TransactionReply(
+                message.getId(), TransactionReply.Type.STARTED, bankIDTransaction.getTransactionId());
+            reply.setAutoStartToken(bankIDTransaction.getAutoStartToken());
+            this.send(connection, reply);
+        } catch (RpApiRejectedException exc) {
+            this.logger.info("BankID RP call rejected while starting transaction: {}", exc.getMessage());
+            this.failedStart(auth, startTime);
+            this.sendError(connection, message.getId(), null, ErrorCode.rejected(exc).name());
+        } catch (IOException exc) {
+            throw exc;
+        } catch (Exception exc) {
+            this.logger.error("Failed to start transaction ({}): {}", exc.getClass(), exc.toString());
+            this.failedStart(auth, startTime);
+            this.sendError(connection, message.getId(), null, GENERAL_ERROR);
+        }
+    }
+
+    /**
+     * Follows a transaction started on the socket, and sends a reply each time its status changes.
+     * @param connection the socket.
+     * @param message    the message.
+     * @throws IOException if the reply could not be sent.
+     */
+    private void observe(Connection connection, TransactionMessage message) throws IOException {
+        SocketTransaction transaction = message.getTransactionId() == null
+            ? null
+            : connection.transactions.get(message.getTransactionId());
+        if (transaction == null) {
+            this.sendError(connection, message.getId(), message.getTransactionId(), INVALID_INPUT);
+            return;
+        }
+
+        transaction.stopObserving();
+        transaction.stopObserving = this.transactionEventService.observe(
+            transaction.transaction,
+            new SocketObserver(connection, message.getId(), transaction));
+    }
+
+    /**
+     * Cancels a transaction started on the socket.
+     * @param connection the socket.
+     * @param message    the message.
+     * @throws IOException if the reply could not be sent.
+     */
+    private void cancel(Connection connection, TransactionMessage message) throws IOException {
+        SocketTransaction transaction = message.getTransactionId() == null
+            ? null
+            : connection.transactions.remove(message.getTransactionId());
+        if (transaction == null) {
+            this.sendError(connection, message.getId(), message.getTransactionId(), INVALID_INPUT);
+            return;
+        }
+
+        transaction.stopObserving();
+        try {
+            this.bankIDService.cancelTransaction(transaction.transaction.getOrderRef());
+        } catch (Exception exc) {
+            this.logger.error("Failed to cancel transaction ({}): {}", exc.getClass(), exc.toString());
+            this.sendError(connection, message.getId(), message.getTransactionId(), GENERAL_ERROR);
+            return;
+        }
+
+        this.send(connection, new TransactionReply(
+            message.getId(), TransactionReply.Type.CANCELLED, message.getTransactionId()));
+    }
+
+    /**
+     * Reads the authentication or sign request of a start message.
+     * @param message the message.
+     * @param auth    true for authentication, false for sign.
+     * @return the request, or null if it is not valid json for the request.
+     */
+    private AuthenticationRequest readRequest(TransactionMessage message, boolean auth) {
+        Class<? extends AuthenticationRequest> type = auth ? AuthenticationRequest.class : SignRequest.class;
+        if (message.getRequest() == null || message.getRequest().isNull()) {
+            return auth ? new AuthenticationRequest() : null;
+        }
+        try {
+            return this.objectMapper.treeToValue(message.getRequest(), type);
+        } catch (JsonProcessingException exc) {
+            this.logger.info("Invalid WebSocket start request: {}", exc.getOriginalMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Records a failed start.
+     * @param auth      true for authentication, false for sign.
+     * @param startTime when the start began.
+     */
+    private void failedStart(boolean auth, long startTime) {
+        if (auth) {
+            this.metrics.failedStartAuthentication(System.currentTimeMillis() - startTime);
+        } else {
+            this.metrics.failedStartSign(System.currentTimeMillis() - startTime);
+        }
+    }
+
+    /**
+     * Sends an error reply.
+     * @param connection    the socket.
+     * @param id            the id of the message replied to.
+     * @param transactionId the transaction id.
+     * @param error         the error.
+     * @throws IOException if the reply could not be sent.
+     */
+    private void sendError(Connection connection, String id, String transactionId, String error) throws IOException {
+        TransactionReply reply = new TransactionReply(id, TransactionReply.Type.ERROR, transactionId);
+        reply.setError(error);
+        this.send(connection, reply);
+    }
+
+    /**
+     * Sends a reply.
+     * @param connection the socket.
+     * @param reply      the reply.
+     * @throws IOException if the reply could not be sent.
+     */
+    private void send(Connection connection, TransactionReply reply) throws IOException {
+        connection.session.sendMessage(new TextMessage(this.objectMapper.writeValueAsString(reply)));
+    }
+
+    /**
+     * An open socket.
+     */
+    private static final class Connection {
+        private final WebSocketSession session;
+        private final Map<String, SocketTransaction> transactions = new ConcurrentHashMap<>();
+
+        /**
+         * Creates the connection.
+         * @param session the WebSocket session, safe for concurrent sends.
+         */
+        private Connection(WebSocketSession session) {
+            this.session = session;
+        }
+    }
+
+    /**
+     * A transaction started on a socket.
+     */
+    private static final class SocketTransaction {
+        private final BankIDTransaction transaction;
+        private volatile Runnable stopObserving;
+
+        /**
+         * Creates the socket transaction.
+         * @param transaction the transaction.
+         */
+        private SocketTransaction(BankIDTransaction transaction) {
+            this.transaction = transaction;
+        }
+
+        /**
+         * Stops following the transaction if it is observed.
+         */
+        private void stopObserving() {
+            Runnable stop = this.stopObserving;
+            if (stop != null) {
+                stop.run();
+            }
+        }
+    }
+
+    /**
+     * Sends the progress of an observed transaction to the socket.
+     */
+    private final class SocketObserver implements TransactionObserver {
+        private final Connection connection;
+        private final String messageId;
+        private final SocketTransaction transaction;
+
+        /**
+         * Creates the observer.
+         * @param connection  the socket.
+         * @param messageId   the id of the observe message.
+         * @param transaction the observed transaction.
+         */
+        private SocketObserver(Connection connection, String messageId, SocketTransaction transaction) {
+            this.connection = connection;
+            this.messageId = messageId;
+            this.transaction = transaction;
+        }
+
+        /**
+         * Sends the new status. A complete or failed transaction is removed from the socket.
+         * @param collectResult the new state.
+         * @throws IOException if the socket is closed.
+         */
+        @Override
+        public void onChange(CollectResult collectResult) throws IOException {
+            String transactionId = this.transaction.transaction.getTransactionId();
+
+            if (collectResult.getStatus() == Status.COMPLETE || collectResult.getStatus() == Status.FAILED) {
+                this.connection.transactions.remove(transactionId, this.transaction);
+
+                // Add metrics
+                long timeTakenSeconds = this.transaction.transaction.getStartTime()
+                    .until(Instant.now(TransactionWebSocketHandler.this.clock), ChronoUnit.SECONDS);
+                if (collectResult.getStatus() == Status.COMPLETE) {
+                    TransactionWebSocketHandler.this.metrics.finalizedTransaction(timeTakenSeconds);
+                } else {
+                    TransactionWebSocketHandler.this.metrics.failedTransaction(timeTakenSeconds);
+                }
+            }
+
+            TransactionReply reply = new TransactionReply(this.messageId, TransactionReply.Type.CHECK, transactionId);
+            reply.setCheck(new CheckResponse(transactionId, collectResult));
+            TransactionWebSocketHandler.this.send(this.connection, reply);
+        }
+
+        /**
+         * Reports the error to the client.
+         * @param exc the error.
+         */
+        @Override
+        public void onError(Exception exc) {
+            try {
+                TransactionWebSocketHandler.this.sendError(
+                    this.connection, this.messageId, this.transaction.transaction.getTransactionId(), GENERAL_ERROR);
+            } catch (IOException sendExc) {
+                TransactionWebSocketHandler.this.logger.trace("Failed to send error: {}", sendExc.toString());
+            }
+        }
+    }
+}
@@ -34,6 +34,7 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 package com.bankid.codefront.service;
 
 import com.bankid.codefront.bankid.relyingparty.RpApi;
+import com.bankid.codefront.bankid.relyingparty.resilience.RpApiRejectedException;
 import com.bankid.codefront.bankid.relyingparty.signature.DigitalSignature;
 import com.bankid.codefront.bankid.relyingparty.signature.SignatureParseException;
 import com.bankid.codefront.config.AppConfig;
@@ -49,18 +50,14 @@ import com.bankid.codefront.models.bankid.relyingparty.StartTransactionResponse;
 import com.bankid.codefront.models.service.BankIDTransaction;
 import com.bankid.codefront.models.service.CollectResult;
 import com.bankid.codefront.models.service.CompletionResult;
+import com.bankid.codefront.models.service.QrTransaction;
 import com.bankid.codefront.models.service.Status;
 import com.bankid.codefront.rest.model.UserVisibleDataFormat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
-import java.math.BigInteger;
 import java.nio.charset.StandardCharsets;
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
 import java.time.Clock;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
@@ -72,13 +69,15 @@ import java.util.Base64;
 @Service
 public class BankIDService {
 
-    private static final String ALGORITHM = "HmacSHA256";
-
     private final Logger logger = LoggerFactory.getLogger(BankIDService.class);
     private final RpApi rpApi;
     private final BankIDRelyingPartyConfig bankIDRelyingPartyConfig;
     private final AppConfig appConfig;
     private final AuditService auditService;
+    private final CollectScheduler collectScheduler;
+    private final CollectLease collectLease;
+    private final QrCodeGenerator qrCodeGenerator;
+    private final QrTransactionRegistry qrTransactionRegistry;
     private final Clock clock;
 
     /**
@@ -87,6 +86,10 @@ public class BankIDService {
      * @param bankIDRelyingPartyConfig the bankId config.
      * @param appConfig     the app config.
      * @param auditService  the auditService.
+     * @param collectScheduler the background collect of pending orders.
+     * @param collectLease  the lease that lets one node at a time collect an order.
+     * @param qrCodeGenerator the generator of QR code data.
+     * @param qrTransactionRegistry the node local record of transactions showing a QR code.
      * @param clock         the clock used for easier testing.
      */
     public BankIDService(
@@ -94,22 +97,21 @@ public class BankIDService {
         BankIDRelyingPartyConfig bankIDRelyingPartyConfig,
         AppConfig appConfig,
         AuditService auditService,
+        CollectScheduler collectScheduler,
+        CollectLease collectLease,
+        QrCodeGenerator qrCodeGenerator,
+        QrTransactionRegistry qrTransactionRegistry,
         Clock clock
     ) {
         this.rpApi = rpApi;
         this.bankIDRelyingPartyConfig = bankIDRelyingPartyConfig;
         this.appConfig = appConfig;
         this.auditService = auditService;
+        this.collectScheduler = collectScheduler;
+        this.collectLease = collectLease;
+        this.qrCodeGenerator = qrCodeGenerator;
+        this.qrTransactionRegistry = qrTransactionRegistry;
         this.clock = clock;
-
-        // Check that HmacSHA256 exists
-        try {
-            Mac.getInstance(ALGORITHM);
-        } catch (NoSuchAlgorithmException e) {
-            this.logger.error("{} algorithm missing.", ALGORITHM);
-
-            throw new RuntimeException(ALGORITHM + " algorithm missing.", e);
-        }
     }
 
     /**
@@ -174,13 +176,16 @@ public class BankIDService {
             return null;
         }
 
-        return new BankIDTransaction(
+        this.prefetchCollect(startTransaction.getOrderRef());
+
+        BankIDTransaction transaction = new BankIDTransaction(
             startTransaction.getOrderRef(),
             startTransaction.getQrStartToken(),
             startTransaction.getQrStartSecret(),
             startTransaction.getAutoStartToken(),
             Instant.now(this.clock)
         );
+        return transaction;
     }
 
     /**
@@ -237,13 +242,16 @@ public class BankIDService {
             return null;
         }
 
-        return new BankIDTransaction(
+        this.prefetchCollect(startTransaction.getOrderRef());
+
+        BankIDTransaction transaction = new BankIDTransaction(
             startTransaction.getOrderRef(),
             startTransaction.getQrStartToken(),
             startTransaction.getQrStartSecret(),
             startTransaction.getAutoStartToken(),
             Instant.now(this.clock)
         );
+        return transaction;
     }
 
     /**
@@ -252,25 +260,36 @@ public class BankIDService {
      * @return the status
      */
     public CollectResult collect(BankIDTransaction transaction) throws SignatureParseException {
+        // A final state never changes, answer from the transaction without collecting or parsing again.
+        if (isFinal(transaction)) {
+            CollectResult collectModel = new CollectResult(
+                transaction,
+                transaction.getLastCollectResponse().getStatus(),
+                transaction.getLastCollectResponse().getHintCode()
+            );
+            collectModel.setCompletionResult(transaction.getCompletionResult());
+            return collectModel;
+        }
+
         CollectResponse collectResponse;
 
-        if (shouldCallBankIDCollect(transaction)) {
-             collectResponse = this.rpApi.collect(transaction.getOrderRef());
+        if (this.collectScheduler.isEnabled()) {
+            collectResponse = this.readScheduledCollect(transaction);
+            if (collectResponse == null) {
+                return null;
+            }
+        } else if (shouldCallBankIDCollect(transaction)) {
+            collectResponse = this.leasedCollect(transaction);
             // Failed to collect
             if (collectResponse == null) {
                 return null;
             }
 
-            Status status = Status.fromString(collectResponse.getStatus());
-
-            // Store collectResponse if status is complete future references/compliance/audit.
-            if (status == Status.COMPLETE) {
-                this.auditService.logCollectResponse(collectResponse);
+            if (collectResponse != transaction.getLastCollectResponse()) {
+                transaction.setLastCollectResponse(collectResponse);
+                transaction.setLastCollect(Instant.now(this.clock));
+                transaction.setStatus(Status.fromString(collectResponse.getStatus()));
             }
-
-             transaction.setLastCollectResponse(collectResponse);
-             transaction.setLastCollect(Instant.now(this.clock));
-             transaction.setStatus(status);
         } else {
             collectResponse = transaction.getLastCollectResponse();
         }
@@ -282,35 +301,117 @@ public class BankIDService {
         );
 
         // Only generate qr-code for pending transaction with hintCode outstandingTransaction
-        if (collectModel.getStatus() == Status.PENDING
-            && "outstandingTransaction".equals(collectModel.getHintCode())) {
-            collectModel.setQrCode(createQRData(transaction));
+        if (isOutstanding(collectResponse)) {
+            collectModel.setQrCode(createQRData(
+                transaction.getQrStartToken(), transaction.getQrStartSecret(), transaction.getStartTime()));
+        } else {
+            this.qrTransactionRegistry.remove(transaction.getTransactionId());
+        }
+
+        if (collectModel.getStatus() != Status.PENDING) {
+            this.qrCodeGenerator.remove(transaction.getQrStartToken());
         }
 
         if (collectModel.getStatus() == Status.COMPLETE) {
-            String name = collectResponse.getCompletionData().getUser().getName();
-            String personalNumber = collectResponse.getCompletionData().getUser().getPersonalNumber();
+            CompletionResult completionResult = parseCompletionResult(collectResponse);
+            transaction.setCompletionResult(completionResult);
+            collectModel.setCompletionResult(completionResult);
+        }
+
+        return collectModel;
+    }
+
+    /**
+     * Returns the QR data to show for a transaction now, without collecting.
+     * The latest state is read from the collect scheduler, or from the transaction itself.
+     * A transaction that has not been collected yet is outstanding.
+     * @param transaction BankIDTransaction.
+     * @return the QR data, or null if the transaction is not waiting for a QR code to be scanned.
+     */
+    public String currentQrCode(BankIDTransaction transaction) {
+        CollectResponse latest = this.latestScheduledCollect(transaction.getOrderRef());
+        if (latest == null) {
+            latest = transaction.getLastCollectResponse();
+        }
+
+        if (latest == null ? transaction.getStatus() != Status.PENDING : !isOutstanding(latest)) {
+            return null;
+        }
+        return createQRData(transaction.getQrStartToken(), transaction.getQrStartSecret(), transaction.getStartTime());
+    }
+
+    /**
+     * Returns the QR data to show for a transaction recorded on this node, without collecting. The caller has checked
+     * that the request comes from the session the transaction is recorded with. The latest state is read from
+     * the collect scheduler. A recorded transaction is outstanding until a collect on this node has seen otherwise.
+     * @param transaction the recorded transaction.
+     * @return the QR data, or null if the transaction is not waiting for a QR code to be scanned.
+     */
+    public String currentQrCode(QrTransaction transaction) {
+        CollectResponse latest = this.latestScheduledCollect(transaction.getOrderRef());
+        if (latest != null && !isOutstanding(latest)) {
+            this.qrTransactionRegistry.remove(transaction.getTransactionId());
+            return null;
+        }
+        return createQRData(transaction.getQrStartToken(), transaction.getQrStartSecret(), transaction.getStartTime());
+    }
+
+    /**
+     * Returns the latest state of an order collected in the background on this node.
+     * @param orderRef BankID orderRef.
+     * @return the latest collect response, or null if the order is not collected in the background.
+     */
+    private CollectResponse latestScheduledCollect(String orderRef) {
+        return this.collectScheduler.isEnabled() ? this.collectScheduler.getLatest(orderRef) : null;
+    }
 
-            Base64String xmlSigB64 = new Base64String(collectResponse.getCompletionData().getSignature());
+    /**
+     * Check if an order is pending and waiting for a QR code to be scanned.
+     * @param collectResponse the latest collect response of the order.
+     * @return true if the order shows a QR code.
+     */
+    private static boolean isOutstanding(CollectResponse collectResponse) {
+        return Status.fromString(collectResponse.getStatus()) == Status.PENDING
+            && "outstandingTransaction".equals(collectResponse.getHintCode());
+    }
 
-            // Parse the digital signature to retrieve more information.
-            DigitalSignature digSig = new DigitalSignature(xmlSigB64);
+    /**
+     * Parse the completion data of a completed order, done once per transaction.
+     * @param collectResponse the complete collect response.
+     * @return the completion result.
+     * @throws SignatureParseException if the signature could not be parsed.
+     */
+    private CompletionResult parseCompletionResult(CollectResponse collectResponse) throws SignatureParseException {
+        String name = collectResponse.getCompletionData().getUser().getName();
+        String personalNumber = collectResponse.getCompletionData().getUser().getPersonalNumber();
 
-            String visibleData = null;
+        Base64String xmlSigB64 = new Base64String(collectResponse.getCompletionData().getSignature());
 
-            // Visible data may be empty
-            if (digSig.getUserVisibleData() != null && !digSig.getUserVisibleData().isEmpty()) {
-                visibleData = new String(Base64.getDecoder().decode(digSig.getUserVisibleData()),
-                    StandardCharsets.UTF_8);
-            }
+        // Parse the digital signature to retrieve more information.
+        DigitalSignature digSig = new DigitalSignature(xmlSigB64);
 
-            // Return a completion result
-            collectModel.setCompletionResult(
-                new CompletionResult(name, personalNumber, visibleData)
-            );
+        String visibleData = null;
+
+        // Visible data may be empty
+        if (digSig.getUserVisibleData() != null && !digSig.getUserVisibleData().isEmpty()) {
+            visibleData = new String(Base64.getDecoder().decode(digSig.getUserVisibleData()),
+                StandardCharsets.UTF_8);
         }
 
-        return collectModel;
+        return new CompletionResult(name, personalNumber, visibleData);
+    }
+
+    /**
+     * Check if the transaction has reached a final state that later checks can answer from memory.
+     * @param transaction BankIDTransaction.
+     * @return true if the transaction is failed, or complete with a parsed completion result.
+     */
+    private static boolean isFinal(BankIDTransaction transaction) {
+        if (transaction.getLastCollectResponse() == null) {
+            return false;
+        }
+        return transaction.getStatus() == Status.FAILED
+            || transaction.getStatus() == Status.COMPLETE && transaction.getCompletionResult() != null;
     }
 
     /**
@@ -319,7 +420,106 @@ public class BankIDService {
      * @return true if cancel was successful.
      */
     public boolean cancelTransaction(String orderRef) {
-        return this.rpApi.cancel(orderRef);
+        this.collectScheduler.stop(orderRef);
+        try {
+            return this.rpApi.cancel(orderRef);
+        } catch (RpApiRejectedException exc) {
+            this.logger.info("Cancel of transaction rejected: {}", exc.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Fires the first collect of a started order without waiting for it, if enabled.
+     * The response is published through the collect lease and handed to the collect scheduler so the
+     * first check can answer from memory. A check arriving before it completes joins the same RP call
+     * through the collect cache.
+     * @param orderRef BankID orderRef.
+     */
+    private void prefetchCollect(String orderRef) {
+        if (!this.bankIDRelyingPartyConfig.isPrefetchFirstCollect() || !this.collectLease.tryAcquire(orderRef)) {
+            return;
+        }
+
+        this.rpApi.collectAsync(orderRef).whenComplete((collectResponse, exc) -> {
+            if (exc != null || collectResponse == null) {
+                this.logger.debug("Prefetch of first collect failed, the first check collects instead.");
+                return;
+            }
+            this.collectLease.publish(orderRef, collectResponse);
+            this.auditComplete(orderRef, collectResponse);
+            if (this.collectScheduler.isEnabled()) {
+                this.collectScheduler.track(orderRef, collectResponse);
+            }
+        });
+    }
+
+    /**
+     * Read the latest state of an order from the collect scheduler.
+     * An order that is not collected by this node yet is collected now and handed to the scheduler.
+     * @param transaction BankIDTransaction.
+     * @return the latest collect response or null if collect failed.
+     */
+    private CollectResponse readScheduledCollect(BankIDTransaction transaction) {
+        CollectResponse collectResponse = this.collectScheduler.getLatest(transaction.getOrderRef());
+
+        if (collectResponse == null) {
+            collectResponse = this.leasedCollect(transaction);
+            // Failed to collect
+            if (collectResponse == null) {
+                return null;
+            }
+            this.collectScheduler.track(transaction.getOrderRef(), collectResponse);
+        }
+
+        if (collectResponse != transaction.getLastCollectResponse()) {
+            transaction.setLastCollectResponse(collectResponse);
+            transaction.setLastCollect(Instant.now(this.clock));
+            transaction.setStatus(Status.fromString(collectResponse.getStatus()));
+        }
+        return collectResponse;
+    }
+
+    /**
+     * Collect an order from the RP api if this node holds the collect lease of the order, otherwise
+     * reuse the response published by the node that does. Only the first collect of an order calls
+     * RP without the lease, when there is nothing to reuse yet.
+     * @param transaction BankIDTransaction.
+     * @return the collect response or null if collect failed.
+     */
+    private CollectResponse leasedCollect(BankIDTransaction transaction) {
+        String orderRef = transaction.getOrderRef();
+
+        if (!this.collectLease.tryAcquire(orderRef)) {
+            CollectResponse published = this.collectLease.getPublished(orderRef);
+            if (published != null) {
+                return published;
+            }
+            if (transaction.getLastCollectResponse() != null) {
+                return transaction.getLastCollectResponse();
+            }
+        }
+
+        CollectResponse collectResponse = this.rpApi.collect(orderRef);
+        if (collectResponse == null) {
+            return null;
+        }
+        this.collectLease.publish(orderRef, collectResponse);
+        this.auditComplete(orderRef, collectResponse);
+        return collectResponse;
+    }
+
+    /**
+     * Store collectResponse if status is complete for future references/compliance/audit.
+     * Each node collecting the order from RP sees the complete state, only the node claiming the audit stores it.
+     * @param orderRef        BankID orderRef.
+     * @param collectResponse the collect response from RP.
+     */
+    private void auditComplete(String orderRef, CollectResponse collectResponse) {
+        if (Status.fromString(collectResponse.getStatus()) == Status.COMPLETE
+            && this.collectLease.tryAcquireAudit(orderRef)) {
+            this.auditService.logCollectResponse(collectResponse);
+        }
     }
 
     /**
@@ -343,40 +543,22 @@ public class BankIDService {
 
     /**
      * Create the QR data.
-     * @param transaction BankIDTransaction.
+     * @param qrStartToken  the QR start token.
+     * @param qrStartSecret the QR start secret.
+     * @param startTime     the start time of the transaction.
      * @return the generated qr data.
      */
-    private String createQRData(BankIDTransaction transaction) {
-        try {
-            String qrTime = Long.toString(
-                transaction.getStartTime().until(Instant.now(this.clock), ChronoUnit.SECONDS)
-            );
-
-            Mac mac = Mac.getInstance(ALGORITHM);
-            mac.init(new SecretKeySpec(transaction.getQrStartSecret().getBytes(StandardCharsets.US_ASCII), ALGORITHM));
-            mac.update(qrTime.getBytes(StandardCharsets.US_ASCII));
-
-            // Example of generated auth code from the RP guideline
-            // "dc69358e712458a66a7525beef148ae8526b1c71610eff2c16cdffb4cdac9bf8" (qr_time="0")
-            // "949d559bf23403952a94d103e67743126381eda00f0b3cbddbf7c96b1adcbce2" (qr_time="1")
-            // "a9e5ec59cb4eee4ef4117150abc58fad7a85439a6a96ccbecc3668b41795b3f3" (qr_time="2")
-            String qrAuthCode = String.format("%064x", new BigInteger(1, mac.doFinal()));
-
-            // Example of generated qr-data from the RP guideline
-            // "bankid.67df3917-fa0d-44e5-b327-edcc928297f8.0.
-            // dc69358e712458a66a7525beef148ae8526b1c71610eff2c16cdffb4cdac9bf8" (qr_time="0")
-            // "bankid.67df3917-fa0d-44e5-b327-edcc928297f8.1.
-            // 949d559bf23403952a94d103e67743126381eda00f0b3cbddbf7c96b1adcbce2" (qr_time="1")
-            // "bankid.67df3917-fa0d-44e5-b327-edcc928297f8.2.
-            // a9e5ec59cb4eee4ef4117150abc58fad7a85439a6a96ccbecc3668b41795b3f3" (qr_time="2")
-            return String.join(".", "bankid", transaction.getQrStartToken(), qrTime, qrAuthCode);
-        } catch (NoSuchAlgorithmException e) {
-            this.logger.error("{} algorithm is missing.", ALGORITHM);
-        } catch (InvalidKeyException e) {
-            this.logger.error("Invalid qr start secret.");
-        }
-
-        return null;
+    private String createQRData(String qrStartToken, String qrStartSecret, Instant startTime) {
+        long qrTime = startTime.until(Instant.now(this.clock), ChronoUnit.SECONDS);
+
+        // Example of generated qr-data from the RP guideline
+        // "bankid.67df3917-fa0d-44e5-b327-edcc928297f8.0.
+        // dc69358e712458a66a7525beef148ae8526b1c71610eff2c16cdffb4cdac9bf8" (qr_time="0")
+        // "bankid.67df3917-fa0d-44e5-b327-edcc928297f8.1.
+        // 949d559bf23403952a94d103e67743126381eda00f0b3cbddbf7c96b1adcbce2" (qr_time="1")
+        // "bankid.67df3917-fa0d-44e5-b327-edcc928297f8.2.
+        // a9e5ec59cb4eee4ef4117150abc58fad7a85439a6a96ccbecc3668b41795b3f3" (qr_time="2")
+        return this.qrCodeGenerator.generate(qrStartToken, qrStartSecret, qrTime);
     }
 
     private String base64Encode(String data) {
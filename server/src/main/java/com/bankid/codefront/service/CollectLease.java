@@ -0,0 +1,85 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.service;
+
+import com.bankid.codefront.models.bankid.relyingparty.CollectResponse;
+
+/**
+ * A lease per order that lets one node at a time collect it. The node holding the lease publishes
+ * the pending state, and the other nodes reuse it instead of calling RP.
+ *
+ * <p>Only the status and hint code of pending orders are shared. A final result, which may hold the personal
+ * data of the user, reaches the other nodes through the session of the order, or from RP when a node
+ * collects the order in the next window.
+ */
+public interface CollectLease {
+
+    /**
+     * Tries to take the lease of an order for one collect window.
+     * @param orderRef the order reference.
+     * @return true if this node may collect the order now.
+     */
+    boolean tryAcquire(String orderRef);
+
+    /**
+     * Publishes the status and hint code of a pending order, or withdraws the published state when the
+     * order is final.
+     * @param orderRef        the order reference.
+     * @param collectResponse the collect response.
+     */
+    void publish(String orderRef, CollectResponse collectResponse);
+
+    /**
+     * Returns the latest pending state published by any node.
+     * @param orderRef the order reference.
+     * @return the collect response without completion data, or null if none is published.
+     */
+    CollectResponse getPublished(String orderRef);
+
+    /**
+     * Tries to claim the cancel of an orphaned order, so only one node cancels it when every node
+     * sees the session expire.
+     * @param orderRef the order reference.
+     * @return true if this node should cancel the order.
+     */
+    boolean tryAcquireCancel(String orderRef);
+
+    /**
+     * Tries to claim the audit of the complete state of an order. Every node that collects the order from RP
+     * after it completed sees the complete state, the claim lets only one of them audit it.
+     * @param orderRef the order reference.
+     * @return true if this node should audit the complete state.
+     */
+    boolean tryAcquireAudit(String orderRef);
+}
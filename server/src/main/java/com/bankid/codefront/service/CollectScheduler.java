@@ -0,0 +1,247 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.service;
+
+import com.bankid.codefront.bankid.relyingparty.RpApi;
+import com.bankid.codefront.config.BankIDRelyingPartyConfig;
+import com.bankid.codefront.config.RpCollectSchedulerConfig;
+import com.bankid.codefront.models.bankid.relyingparty.CollectResponse;
+import com.bankid.codefront.models.service.Status;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects pending BankID orders in the background at the interval recommended by RP.
+ * Check requests read the latest collected state, so calls to RP follow the number of pending orders
+ * instead of how often clients poll, and an order is still collected while the browser tab sleeps.
+ *
+ * <p>The scheduler is node local. Every node that serves an order keeps it up to date, but only the node
+ * holding the {@link CollectLease} of the order calls RP in a collect window, the others reuse its response.
+ */
+@Component
+public class CollectScheduler {
+    private final Logger logger = LoggerFactory.getLogger(CollectScheduler.class);
+
+    private final RpApi rpApi;
+    private final AuditService auditService;
+    private final CollectLease collectLease;
+    private final RpCollectSchedulerConfig config;
+    private final Map<String, ScheduledOrder> orders = new ConcurrentHashMap<>();
+    private final TimingWheel timingWheel;
+
+    /**
+     * Creates the collect scheduler.
+     * @param rpApi        the BankID RP api.
+     * @param settings     the BankID RP settings.
+     * @param auditService the audit log of completed orders.
+     * @param collectLease the lease that lets one node at a time collect an order.
+     * @param timingWheel  the timers of the collects.
+     */
+    public CollectScheduler(
+        RpApi rpApi,
+        BankIDRelyingPartyConfig settings,
+        AuditService auditService,
+        CollectLease collectLease,
+        TimingWheel timingWheel
+    ) {
+        this.rpApi = rpApi;
+        this.auditService = auditService;
+        this.collectLease = collectLease;
+        this.config = settings.getCollectScheduler() == null
+            ? new RpCollectSchedulerConfig()
+            : settings.getCollectScheduler();
+        this.timingWheel = timingWheel;
+    }
+
+    /**
+     * Stops collecting.
+     */
+    @PreDestroy
+    public void shutdown() {
+        this.orders.values().forEach(order -> {
+            if (order.next != null) {
+                order.next.cancel();
+            }
+        });
+        this.orders.clear();
+    }
+
+    /**
+     * Returns if pending orders are collected in the background.
+     * @return true if enabled.
+     */
+    public boolean isEnabled() {
+        return this.config.isEnabled();
+    }
+
+    /**
+     * Takes ownership of an order and collects it in the background until it is complete or failed.
+     * The first response is not audited, that is done by the caller that collected it.
+     * @param orderRef        the order reference.
+     * @param collectResponse the response of the first collect.
+     */
+    public void track(String orderRef, CollectResponse collectResponse) {
+        ScheduledOrder order = new ScheduledOrder(orderRef);
+        if (this.orders.putIfAbsent(orderRef, order) != null) {
+            // Already owned, the running collect loop keeps the latest state.
+            return;
+        }
+        this.onCollected(order, collectResponse, false);
+    }
+
+    /**
+     * Returns the latest collected state of an order.
+     * @param orderRef the order reference.
+     * @return the latest collect response, or null if the order is not collected by this node.
+     */
+    public CollectResponse getLatest(String orderRef) {
+        ScheduledOrder order = this.orders.get(orderRef);
+        return order == null ? null : order.latest;
+    }
+
+    /**
+     * Stops collecting an order, e.g. when it is cancelled.
+     * @param orderRef the order reference.
+     */
+    public void stop(String orderRef) {
+        ScheduledOrder order = this.orders.remove(orderRef);
+        if (order != null && order.next != null) {
+            order.next.cancel();
+        }
+    }
+
+    /**
+     * Returns the number of orders owned by the scheduler.
+     * @return the number of orders.
+     */
+    public int getOrderCount() {
+        return this.orders.size();
+    }
+
+    /**
+     * Collects an order and schedules the next collect.
+     * @param order the order.
+     */
+    private void collect(ScheduledOrder order) {
+        if (this.orders.get(order.orderRef) != order) {
+            return;
+        }
+        if (System.nanoTime() - order.createdNanos > TimeUnit.MILLISECONDS.toNanos(this.config.getMaxLifetime())) {
+            this.logger.info("Stopped collecting order that is still pending after max lifetime.");
+            this.orders.remove(order.orderRef, order);
+            return;
+        }
+
+        if (!this.collectLease.tryAcquire(order.orderRef)) {
+            // Another node collects the order in this window.
+            CollectResponse published = this.collectLease.getPublished(order.orderRef);
+            if (published == null) {
+                this.schedule(order, () -> this.collect(order), this.config.getInterval());
+            } else {
+                this.onCollected(order, published, false);
+            }
+            return;
+        }
+
+        this.rpApi.collectAsync(order.orderRef).whenComplete((collectResponse, throwable) -> {
+            if (throwable != null || collectResponse == null) {
+                // Keep the previous state and try again at the next interval.
+                this.logger.debug("Background collect failed: {}", throwable == null ? null : throwable.getMessage());
+                this.schedule(order, () -> this.collect(order), this.config.getInterval());
+                return;
+            }
+            this.collectLease.publish(order.orderRef, collectResponse);
+            this.onCollected(order, collectResponse, true);
+        });
+    }
+
+    /**
+     * Stores a collected state and schedules what comes next, another collect or eviction of the final state.
+     * @param order           the order.
+     * @param collectResponse the collect response.
+     * @param fetched         true if this node collected the response from RP.
+     */
+    private void onCollected(ScheduledOrder order, CollectResponse collectResponse, boolean fetched) {
+        Status status = Status.fromString(collectResponse.getStatus());
+        order.latest = collectResponse;
+
+        if (status == Status.PENDING) {
+            this.schedule(order, () -> this.collect(order), this.config.getInterval());
+            return;
+        }
+
+        if (status == Status.COMPLETE && fetched && this.collectLease.tryAcquireAudit(order.orderRef)) {
+            // Store collectResponse for future references/compliance/audit, once for all nodes.
+            this.auditService.logCollectResponse(collectResponse);
+        }
+        this.schedule(order, () -> this.orders.remove(order.orderRef, order), this.config.getRetention());
+    }
+
+    /**
+     * Schedules the next step of an order that is still owned by the scheduler.
+     * @param order the order.
+     * @param task  the next collect or the eviction of the order.
+     * @param delay the delay in milliseconds.
+     */
+    private void schedule(ScheduledOrder order, Runnable task, long delay) {
+        if (this.orders.get(order.orderRef) != order || this.timingWheel.isStopped()) {
+            return;
+        }
+        order.next = this.timingWheel.schedule(task, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * An order owned by the scheduler.
+     */
+    private static final class ScheduledOrder {
+        private final String orderRef;
+        private final long createdNanos = System.nanoTime();
+        private volatile CollectResponse latest;
+        private volatile TimingWheel.Timeout next;
+
+        /**
+         * Creates an order.
+         * @param orderRef the order reference.
+         */
+        ScheduledOrder(String orderRef) {
+            this.orderRef = orderRef;
+        }
+    }
+}
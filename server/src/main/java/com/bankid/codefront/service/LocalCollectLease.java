@@ -0,0 +1,201 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.service;
+
+import com.bankid.codefront.config.BankIDRelyingPartyConfig;
+import com.bankid.codefront.config.RpCollectLeaseConfig;
+import com.bankid.codefront.models.bankid.relyingparty.CollectResponse;
+import com.bankid.codefront.models.service.Status;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collect lease of a single node, used during development when sessions are kept in memory.
+ */
+@Component
+@Profile("dev & !redis")
+public class LocalCollectLease implements CollectLease {
+    private static final int PURGE_THRESHOLD = 1000;
+    private static final String CANCEL_PREFIX = "cancel:";
+    private static final String AUDIT_PREFIX = "audit:";
+
+    private final RpCollectLeaseConfig config;
+    private final Map<String, Long> leases = new ConcurrentHashMap<>();
+    private final Map<String, Published> results = new ConcurrentHashMap<>();
+    private volatile int purgeAt = PURGE_THRESHOLD;
+
+    /**
+     * Creates the lease.
+     * @param settings the BankID RP settings.
+     */
+    public LocalCollectLease(BankIDRelyingPartyConfig settings) {
+        this.config = settings.getCollectLease() == null ? new RpCollectLeaseConfig() : settings.getCollectLease();
+    }
+
+    /**
+     * Tries to take the lease of an order for one collect window.
+     * @param orderRef the order reference.
+     * @return true if this node may collect the order now.
+     */
+    @Override
+    public boolean tryAcquire(String orderRef) {
+        if (!this.config.isEnabled()) {
+            return true;
+        }
+        long now = System.nanoTime();
+        long expires = now + TimeUnit.MILLISECONDS.toNanos(this.config.getWindow());
+
+        // Drop expired entries of finished orders, only when there are many so a lease stays O(1).
+        if (this.size() >= this.purgeAt) {
+            this.purge(now);
+        }
+
+        Long current = this.leases.get(orderRef);
+        if (current != null && current - now <= 0) {
+            this.leases.remove(orderRef, current);
+        }
+        return this.leases.putIfAbsent(orderRef, expires) == null;
+    }
+
+    /**
+     * Publishes the status and hint code of a pending order, or withdraws the published state when the
+     * order is final.
+     * @param orderRef        the order reference.
+     * @param collectResponse the collect response.
+     */
+    @Override
+    public void publish(String orderRef, CollectResponse collectResponse) {
+        if (!this.config.isEnabled()) {
+            return;
+        }
+        if (Status.fromString(collectResponse.getStatus()) != Status.PENDING) {
+            this.results.remove(orderRef);
+            return;
+        }
+        long expires = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.config.getResultTtl());
+        this.results.put(orderRef, new Published(collectResponse, expires));
+    }
+
+    /**
+     * Returns the latest pending state published on this node.
+     * @param orderRef the order reference.
+     * @return the collect response, or null if none is published.
+     */
+    @Override
+    public CollectResponse getPublished(String orderRef) {
+        Published published = this.results.get(orderRef);
+        return published == null || published.expires - System.nanoTime() <= 0 ? null : published.collectResponse;
+    }
+
+    /**
+     * Tries to claim the cancel of an orphaned order, kept with the leases for the result ttl.
+     * @param orderRef the order reference.
+     * @return true if this node should cancel the order.
+     */
+    @Override
+    public boolean tryAcquireCancel(String orderRef) {
+        return this.tryClaim(CANCEL_PREFIX + orderRef);
+    }
+
+    /**
+     * Tries to claim the audit of the complete state of an order, kept with the leases for the result ttl.
+     * @param orderRef the order reference.
+     * @return true if this node should audit the complete state.
+     */
+    @Override
+    public boolean tryAcquireAudit(String orderRef) {
+        return this.tryClaim(AUDIT_PREFIX + orderRef);
+    }
+
+    /**
+     * Claims a key for the result ttl unless it is already claimed.
+     * @param key the key.
+     * @return true if the key was claimed.
+     */
+    private boolean tryClaim(String key) {
+        if (!this.config.isEnabled()) {
+            return true;
+        }
+        long now = System.nanoTime();
+        Long claimed = this.leases.get(key);
+        if (claimed != null && claimed - now > 0) {
+            return false;
+        }
+        long expires = now + TimeUnit.MILLISECONDS.toNanos(this.config.getResultTtl());
+        return claimed == null
+            ? this.leases.putIfAbsent(key, expires) == null
+            : this.leases.replace(key, claimed, expires);
+    }
+
+    /**
+     * Returns the number of leases and published responses kept, including expired ones not purged yet.
+     * @return the number of entries.
+     */
+    int size() {
+        return this.leases.size() + this.results.size();
+    }
+
+    /**
+     * Removes expired leases and published responses. The next purge runs when the maps have grown to twice
+     * their size after this one, at least to the threshold.
+     * @param now the current nanoTime.
+     */
+    private void purge(long now) {
+        this.leases.values().removeIf(leaseExpires -> leaseExpires - now <= 0);
+        this.results.values().removeIf(published -> published.expires - now <= 0);
+        this.purgeAt = Math.max(PURGE_THRESHOLD, 2 * this.size());
+    }
+
+    /**
+     * A published collect response.
+     */
+    private static final class Published {
+        private final CollectResponse collectResponse;
+        private final long expires;
+
+        /**
+         * Creates a published collect response.
+         * @param collectResponse the collect response.
+         * @param expires         when it expires, in nanoTime.
+         */
+        private Published(CollectResponse collectResponse, long expires) {
+            this.collectResponse = collectResponse;
+            this.expires = expires;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.service;
+
+import com.bankid.codefront.bankid.relyingparty.RpApi;
+import com.bankid.codefront.bankid.relyingparty.metrics.RpApiMetrics;
+import com.bankid.codefront.config.BankIDRelyingPartyConfig;
+import com.bankid.codefront.config.RpOrderReaperConfig;
+import com.bankid.codefront.models.service.BankIDTransaction;
+import com.bankid.codefront.models.service.Status;
+import com.bankid.codefront.rest.model.SessionValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.session.events.SessionDestroyedEvent;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Cancels the pending order of a session that expires or is deleted, e.g. when the tab was closed before the
+ * client could cancel it. The order is released at RP and no longer collected in the background.
+ *
+ * <p>The order is pending if the session says so. The final state of a transaction is written to the session
+ * when the client sees it, so an order that finished without the client seeing it is cancelled as well, which RP
+ * rejects without harm.
+ *
+ * <p>With redis every node sees the session expire, and the node that claims the cancel in the {@link CollectLease}
+ * sends it. Cancels are queued and sent in batches at a limited rate, so a wave of expiring sessions does not
+ * compete with the calls of active users. If the queue is full the order is left to expire at RP.
+ */
+@Component
+public class OrphanedOrderReaper {
+    private final Logger logger = LoggerFactory.getLogger(OrphanedOrderReaper.class);
+
+    private final RpApi rpApi;
+    private final RpApiMetrics metrics;
+    private final CollectScheduler collectScheduler;
+    private final CollectLease collectLease;
+    private final TimingWheel timingWheel;
+    private final RpOrderReaperConfig config;
+    private final BlockingQueue<String> queue;
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    /**
+     * Creates the reaper.
+     * @param rpApi            the BankID RP api.
+     * @param metrics          the metrics helper.
+     * @param collectScheduler the background collect of pending orders.
+     * @param collectLease     the lease that lets one node cancel an order.
+     * @param timingWheel      the timer of the batches.
+     * @param settings         the BankID RP settings.
+     */
+    public OrphanedOrderReaper(
+        RpApi rpApi,
+        RpApiMetrics metrics,
+        CollectScheduler collectScheduler,
+        CollectLease collectLease,
+        TimingWheel timingWheel,
+        BankIDRelyingPartyConfig settings
+    ) {
+        this.rpApi = rpApi;
+        this.metrics = metrics;
+        this.collectScheduler = collectScheduler;
+        this.collectLease = collectLease;
+        this.timingWheel = timingWheel;
+        this.config = settings.getOrderReaper() == null ? new RpOrderReaperConfig() : settings.getOrderReaper();
+        this.queue = new LinkedBlockingQueue<>(Math.max(1, this.config.getMaxQueue()));
+    }
+
+    /**
+     * Queues the pending order of an expired or deleted session to be cancelled.
+     * @param event the session expired or deleted event.
+     */
+    @EventListener
+    public void onSessionDestroyed(SessionDestroyedEvent event) {
+        if (!this.config.isEnabled() || event.getSession() == null) {
+            return;
+        }
+        Object attribute = event.getSession().getAttribute(SessionTransactionStore.SESSION_VALUE_ATTRIBUTE);
+        if (!(attribute instanceof SessionValue sessionValue) || sessionValue.getBankIDTransaction() == null) {
+            return;
+        }
+
+        BankIDTransaction transaction = sessionValue.getBankIDTransaction();
+        if (transaction.getStatus() != Status.PENDING) {
+            return;
+        }
+        // Another node cancels the order
+        if (!this.collectLease.tryAcquireCancel(transaction.getOrderRef())) {
+            this.collectScheduler.stop(transaction.getOrderRef());
+            return;
+        }
+
+        if (!this.queue.offer(transaction.getOrderRef())) {
+            this.logger.warn("Cancel queue of orphaned orders is full, order is left to expire.");
+            this.metrics.orphanedOrderDropped();
+            return;
+        }
+        if (this.draining.compareAndSet(false, true)) {
+            this.timingWheel.schedule(this::drain, 0, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Returns the number of orders waiting to be cancelled.
+     * @return the number of orders.
+     */
+    public int getQueued() {
+        return this.queue.size();
+    }
+
+    /**
+     * Cancels a batch of orders and schedules the next batch while there are orders left.
+     */
+    private void drain() {
+        for (int i = 0; i < this.config.getBatchSize(); i++) {
+            String orderRef = this.queue.poll();
+            if (orderRef == null) {
+                break;
+            }
+            this.cancel(orderRef);
+        }
+
+        if (this.queue.isEmpty()) {
+            this.draining.set(false);
+            // An order queued after the poll above must not be left waiting
+            if (this.queue.isEmpty() || !this.draining.compareAndSet(false, true)) {
+                return;
+            }
+        }
+        if (!this.timingWheel.isStopped()) {
+            this.timingWheel.schedule(this::drain, this.config.getInterval(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Cancels an orphaned order.
+     * @param orderRef the order reference.
+     */
+    private void cancel(String orderRef) {
+        this.collectScheduler.stop(orderRef);
+        this.rpApi.cancelAsync(orderRef).whenComplete((cancelled, throwable) -> {
+            if (throwable != null) {
+                this.logger.info("Cancel of orphaned order failed: {}", throwable.getMessage());
+                return;
+            }
+            if (Boolean.TRUE.equals(cancelled)) {
+                this.metrics.orphanedOrderCancelled();
+            }
+        });
+    }
+}
@@ -0,0 +1,100 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.service;
+
+import com.bankid.codefront.bankid.relyingparty.RpEndpoint;
+import com.bankid.codefront.bankid.relyingparty.resilience.ConcurrencyLimiter;
+import com.bankid.codefront.bankid.relyingparty.resilience.ConcurrencyLimiters;
+import com.bankid.codefront.config.BankIDRelyingPartyConfig;
+import com.bankid.codefront.config.RpPollCadenceConfig;
+import com.bankid.codefront.models.service.CollectResult;
+import com.bankid.codefront.models.service.Status;
+import org.springframework.stereotype.Component;
+
+/**
+ * Decides when the client should check a transaction next.
+ * A shown QR code changes every second, other pending states only change when the order is collected, and
+ * final states are not checked again. When the collects use most of their concurrency limit, checks of pending
+ * transactions without a QR code are spaced out up to the max interval, so the client sheds poll traffic.
+ */
+@Component
+public class PollCadence {
+    private static final String OUTSTANDING_TRANSACTION = "outstandingTransaction";
+
+    private final RpPollCadenceConfig config;
+    private final ConcurrencyLimiter concurrencyLimiter;
+
+    /**
+     * Creates the poll cadence.
+     * @param settings            the BankID RP settings.
+     * @param concurrencyLimiters the adaptive concurrency limits of calls to RP, collect is used as the server load.
+     */
+    public PollCadence(BankIDRelyingPartyConfig settings, ConcurrencyLimiters concurrencyLimiters) {
+        this.config = settings.getPollCadence() == null ? new RpPollCadenceConfig() : settings.getPollCadence();
+        this.concurrencyLimiter = concurrencyLimiters.get(RpEndpoint.COLLECT);
+    }
+
+    /**
+     * Returns the time until the client should check the transaction again.
+     * @param collectResult the latest state of the transaction.
+     * @return the time in milliseconds, or 0 if the transaction is final.
+     */
+    public long nextPollMillis(CollectResult collectResult) {
+        if (collectResult.getStatus() != Status.PENDING) {
+            return 0;
+        }
+        if (OUTSTANDING_TRANSACTION.equals(collectResult.getHintCode())) {
+            return this.config.getQrInterval();
+        }
+
+        double load = this.getLoad();
+        long interval = this.config.getPendingInterval();
+        if (load <= this.config.getLoadThreshold() || this.config.getLoadThreshold() >= 1) {
+            return interval;
+        }
+
+        // Grows linearly from the pending interval at the threshold to the max interval at full load.
+        double overload = Math.min(1, (load - this.config.getLoadThreshold()) / (1 - this.config.getLoadThreshold()));
+        return Math.max(interval, interval + Math.round((this.config.getMaxInterval() - interval) * overload));
+    }
+
+    /**
+     * Returns the share of the concurrency limit of collect calls to RP in use.
+     * @return the load, 1 when the limit is reached.
+     */
+    private double getLoad() {
+        int limit = this.concurrencyLimiter.getLimit();
+        return limit <= 0 ? 0 : (double) this.concurrencyLimiter.getInFlight() / limit;
+    }
+}
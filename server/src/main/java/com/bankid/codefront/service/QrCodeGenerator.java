@@ -0,0 +1,289 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.service;
+
+import com.bankid.codefront.config.BankIDRelyingPartyConfig;
+import com.bankid.codefront.config.RpQrCodeConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generates the animated QR code data of pending orders.
+ * The HMAC of the QR start secret is initialized once per order, and the QR data of the current second and the
+ * next few seconds is computed at once, so repeated checks within a second only look up the data.
+ *
+ * <p>The state of an order is dropped by a timer when it has not been used for the idle ttl, so orders that are
+ * abandoned while pending do not keep their secret and HMAC. When the generator is full, idle orders are also dropped
+ * at once. If it is still full, the QR data of new orders is computed without keeping any state.
+ */
+@Component
+public class QrCodeGenerator {
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final int NIBBLE_BITS = 4;
+    private static final int NIBBLE_MASK = 0x0f;
+
+    private final Logger logger = LoggerFactory.getLogger(QrCodeGenerator.class);
+    private final RpQrCodeConfig config;
+    private final TimingWheel timingWheel;
+    private final long idleTtlNanos;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Creates the generator.
+     * @param settings    the BankID RP settings.
+     * @param timingWheel the timers that drop idle orders.
+     */
+    @Autowired
+    public QrCodeGenerator(BankIDRelyingPartyConfig settings, TimingWheel timingWheel) {
+        this(settings.getQrCode() == null ? new RpQrCodeConfig() : settings.getQrCode(), timingWheel);
+    }
+
+    /**
+     * Creates the generator.
+     * @param config      the QR code settings.
+     * @param timingWheel the timers that drop idle orders.
+     */
+    public QrCodeGenerator(RpQrCodeConfig config, TimingWheel timingWheel) {
+        this.config = config;
+        this.timingWheel = timingWheel;
+        this.idleTtlNanos = TimeUnit.MILLISECONDS.toNanos(config.getIdleTtl());
+
+        // Check that HmacSHA256 exists
+        try {
+            Mac.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            this.logger.error("{} algorithm missing.", ALGORITHM);
+
+            throw new RuntimeException(ALGORITHM + " algorithm missing.", e);
+        }
+    }
+
+    /**
+     * Returns the QR data of an order at a given time.
+     * @param qrStartToken  the QR start token of the order.
+     * @param qrStartSecret the QR start secret of the order.
+     * @param qrTime        the number of seconds since the order was started.
+     * @return the QR data, or null if the secret could not be used.
+     */
+    public String generate(String qrStartToken, String qrStartSecret, long qrTime) {
+        long now = System.nanoTime();
+        Entry entry = this.entries.get(qrStartToken);
+
+        if (entry == null || !entry.qrStartSecret.equals(qrStartSecret)) {
+            try {
+                entry = new Entry(qrStartToken, qrStartSecret);
+            } catch (InvalidKeyException e) {
+                this.logger.error("Invalid qr start secret.");
+                return null;
+            }
+            if (this.entries.size() >= this.config.getMaxSize()) {
+                this.entries.values().removeIf(idle -> now - idle.lastUsed > this.idleTtlNanos);
+            }
+            entry.lastUsed = now;
+            if (this.entries.size() < this.config.getMaxSize()) {
+                Entry current = this.entries.putIfAbsent(qrStartToken, entry);
+                if (current == null) {
+                    this.scheduleEviction(qrStartToken, entry, this.config.getIdleTtl());
+                } else if (current.qrStartSecret.equals(qrStartSecret)) {
+                    entry = current;
+                }
+            }
+        }
+
+        entry.lastUsed = now;
+        return entry.get(qrTime, Math.max(0, this.config.getPrecompute()));
+    }
+
+    /**
+     * Drops the state of an order when it has been idle for the idle ttl, otherwise checks again when the idle ttl
+     * has passed since its last use. There is one timer per kept order.
+     * @param qrStartToken the QR start token of the order.
+     * @param entry        the state of the order.
+     * @param delayMillis  the time until the order may have been idle for the idle ttl.
+     */
+    private void scheduleEviction(String qrStartToken, Entry entry, long delayMillis) {
+        try {
+            this.timingWheel.schedule(() -> {
+                long idleNanos = System.nanoTime() - entry.lastUsed;
+                if (idleNanos >= this.idleTtlNanos) {
+                    this.entries.remove(qrStartToken, entry);
+                } else if (this.entries.get(qrStartToken) == entry) {
+                    long remaining = TimeUnit.NANOSECONDS.toMillis(this.idleTtlNanos - idleNanos);
+                    this.scheduleEviction(qrStartToken, entry, Math.max(1, remaining));
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Shutting down, the entry is dropped when the generator is full.
+            this.logger.trace("Idle QR state is not evicted: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Drops the QR state of an order, e.g. when it is no longer pending.
+     * @param qrStartToken the QR start token of the order.
+     */
+    public void remove(String qrStartToken) {
+        this.entries.remove(qrStartToken);
+    }
+
+    /**
+     * Returns the number of orders with kept QR state.
+     * @return the number of orders.
+     */
+    public int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * Encodes bytes as lower case hex.
+     * @param bytes the bytes.
+     * @return the hex string.
+     */
+    static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> NIBBLE_BITS) & NIBBLE_MASK];
+            chars[i * 2 + 1] = HEX[bytes[i] & NIBBLE_MASK];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * The initialized HMAC and the latest computed QR data of an order.
+     */
+    private static final class Entry {
+        private final String prefix;
+        private final String qrStartSecret;
+        private final Mac mac;
+        private volatile Window window;
+        private volatile long lastUsed;
+
+        /**
+         * Creates the entry and initializes the HMAC with the QR start secret.
+         * @param qrStartToken  the QR start token.
+         * @param qrStartSecret the QR start secret.
+         * @throws InvalidKeyException if the secret could not be used as a key.
+         */
+        Entry(String qrStartToken, String qrStartSecret) throws InvalidKeyException {
+            this.prefix = "bankid." + qrStartToken + ".";
+            this.qrStartSecret = qrStartSecret;
+            try {
+                this.mac = Mac.getInstance(ALGORITHM);
+            } catch (NoSuchAlgorithmException e) {
+                // Checked when the generator was created
+                throw new IllegalStateException(e);
+            }
+            this.mac.init(new SecretKeySpec(qrStartSecret.getBytes(StandardCharsets.US_ASCII), ALGORITHM));
+        }
+
+        /**
+         * Returns the QR data at a given time, computing it and the upcoming seconds if needed.
+         * @param qrTime     the number of seconds since the order was started.
+         * @param precompute the number of upcoming seconds to compute ahead.
+         * @return the QR data.
+         */
+        String get(long qrTime, int precompute) {
+            Window current = this.window;
+            if (current != null && current.contains(qrTime)) {
+                return current.get(qrTime);
+            }
+
+            // The mac is not thread safe
+            synchronized (this) {
+                current = this.window;
+                if (current != null && current.contains(qrTime)) {
+                    return current.get(qrTime);
+                }
+
+                String[] qrData = new String[precompute + 1];
+                for (int i = 0; i < qrData.length; i++) {
+                    String time = Long.toString(qrTime + i);
+                    byte[] authCode = this.mac.doFinal(time.getBytes(StandardCharsets.US_ASCII));
+                    qrData[i] = this.prefix + time + "." + toHex(authCode);
+                }
+                this.window = new Window(qrTime, qrData);
+                return qrData[0];
+            }
+        }
+    }
+
+    /**
+     * The QR data of consecutive seconds.
+     */
+    private static final class Window {
+        private final long from;
+        private final String[] qrData;
+
+        /**
+         * Creates the window.
+         * @param from   the first second.
+         * @param qrData the QR data of each second.
+         */
+        Window(long from, String[] qrData) {
+            this.from = from;
+            this.qrData = qrData;
+        }
+
+        /**
+         * Returns if the window has the QR data of a second.
+         * @param qrTime the second.
+         * @return true if the QR data is computed.
+         */
+        boolean contains(long qrTime) {
+            return qrTime >= this.from && qrTime - this.from < this.qrData.length;
+        }
+
+        /**
+         * Returns the QR data of a second in the window.
+         * @param qrTime the second.
+         * @return the QR data.
+         */
+        String get(long qrTime) {
+            return this.qrData[(int) (qrTime - this.from)];
+        }
+    }
+}
@@ -0,0 +1,251 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.service;
+
+import com.bankid.codefront.config.BankIDRelyingPartyConfig;
+import com.bankid.codefront.config.RpQrCodeConfig;
+import com.bankid.codefront.models.service.QrImage;
+import com.bankid.codefront.models.service.QrImageFormat;
+import com.bankid.codefront.service.metrics.QrImageMetrics;
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renders QR data as SVG or PNG images, with the same error correction level and margin as the client.
+ * Rendered images are kept for a short time, so every tab and device showing the same QR code in the same second
+ * shares one rendering.
+ *
+ * <p>When the cache is full, expired images are dropped. If it is still full, images are rendered without being
+ * cached.
+ */
+@Component
+public class QrImageRenderer {
+    private static final int MARGIN = 3;
+    private static final int ETAG_AUTH_CODE_LENGTH = 16;
+    private static final Map<EncodeHintType, Object> HINTS = Map.of(
+        EncodeHintType.ERROR_CORRECTION, ErrorCorrectionLevel.L,
+        EncodeHintType.MARGIN, MARGIN,
+        EncodeHintType.CHARACTER_SET, StandardCharsets.US_ASCII.name());
+
+    private final RpQrCodeConfig config;
+    private final QrImageMetrics metrics;
+    private final long ttlNanos;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Creates the renderer.
+     * @param settings the BankID RP settings.
+     * @param metrics  the metrics helper.
+     */
+    public QrImageRenderer(BankIDRelyingPartyConfig settings, QrImageMetrics metrics) {
+        this.config = settings.getQrCode() == null ? new RpQrCodeConfig() : settings.getQrCode();
+        this.metrics = metrics;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(this.config.getImageTtl());
+        metrics.registerCache(this.entries::size);
+    }
+
+    /**
+     * Returns the image of QR data, rendered now or taken from the cache.
+     * @param qrData the QR data, e.g. "bankid.[qrStartToken].[qrTime].[qrAuthCode]".
+     * @param format the image format.
+     * @return the image.
+     */
+    public QrImage render(String qrData, QrImageFormat format) {
+        String key = format.name() + qrData;
+        long now = System.nanoTime();
+
+        Entry entry = this.entries.get(key);
+        if (entry != null && entry.expires - now > 0) {
+            this.metrics.cacheHit();
+            return entry.image;
+        }
+        this.metrics.cacheMiss();
+
+        QrImage image = new QrImage(format, this.encode(qrData, format), etag(qrData, format));
+
+        if (this.entries.size() >= this.config.getImageCacheSize()) {
+            this.entries.values().removeIf(expired -> expired.expires - now <= 0);
+        }
+        if (this.entries.size() < this.config.getImageCacheSize()) {
+            this.entries.put(key, new Entry(image, now + this.ttlNanos));
+        }
+        return image;
+    }
+
+    /**
+     * Returns the number of images in the cache.
+     * @return the number of images.
+     */
+    public int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * Encodes QR data as an image.
+     * @param qrData the QR data.
+     * @param format the image format.
+     * @return the encoded image.
+     */
+    private byte[] encode(String qrData, QrImageFormat format) {
+        long start = System.nanoTime();
+
+        BitMatrix matrix;
+        try {
+            // Zero size gives one pixel per module
+            matrix = new QRCodeWriter().encode(qrData, BarcodeFormat.QR_CODE, 0, 0, HINTS);
+        } catch (WriterException e) {
+            throw new IllegalArgumentException("QR data could not be encoded.", e);
+        }
+
+        byte[] content = format == QrImageFormat.SVG ? svg(matrix) : this.png(matrix);
+        this.metrics.rendered(format, System.nanoTime() - start);
+        return content;
+    }
+
+    /**
+     * Encodes the modules as an SVG with one path of horizontal runs, scaled by the viewBox.
+     * @param matrix the modules, one pixel per module.
+     * @return the SVG.
+     */
+    private static byte[] svg(BitMatrix matrix) {
+        int size = matrix.getWidth();
+        StringBuilder svg = new StringBuilder(size * size)
+            .append("<svg xmlns=\"http://www.w3.org/2000/svg\" viewBox=\"0 0 ")
+            .append(size).append(' ').append(size)
+            .append("\" shape-rendering=\"crispEdges\"><path fill=\"#fff\" d=\"M0 0h")
+            .append(size).append('v').append(size).append("H0z\"/><path d=\"");
+
+        for (int y = 0; y < size; y++) {
+            int x = 0;
+            while (x < size) {
+                if (!matrix.get(x, y)) {
+                    x++;
+                    continue;
+                }
+                int run = x;
+                while (run < size && matrix.get(run, y)) {
+                    run++;
+                }
+                svg.append('M').append(x).append(' ').append(y)
+                    .append('h').append(run - x).append("v1h-").append(run - x).append('z');
+                x = run;
+            }
+        }
+        return svg.append("\"/></svg>").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Encodes the modules as a black and white PNG.
+     * @param matrix the modules, one pixel per module.
+     * @return the PNG.
+     */
+    private byte[] png(BitMatrix matrix) {
+        int moduleSize = Math.max(1, this.config.getImageModuleSize());
+        int size = matrix.getWidth() * moduleSize;
+
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_BYTE_BINARY);
+        Graphics2D graphics = image.createGraphics();
+        try {
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, size, size);
+            graphics.setColor(Color.BLACK);
+            for (int y = 0; y < matrix.getHeight(); y++) {
+                for (int x = 0; x < matrix.getWidth(); x++) {
+                    if (matrix.get(x, y)) {
+                        graphics.fillRect(x * moduleSize, y * moduleSize, moduleSize, moduleSize);
+                    }
+                }
+            }
+        } finally {
+            graphics.dispose();
+        }
+
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        try {
+            ImageIO.write(image, "png", png);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return png.toByteArray();
+    }
+
+    /**
+     * Creates the entity tag of an image from the time and the start of the auth code in the QR data.
+     * @param qrData the QR data.
+     * @param format the image format.
+     * @return the quoted entity tag.
+     */
+    public static String etag(String qrData, QrImageFormat format) {
+        int authCode = qrData.lastIndexOf('.') + 1;
+        int qrTime = qrData.lastIndexOf('.', authCode - 2) + 1;
+        return "\"" + format.name().toLowerCase(Locale.ROOT) + "-"
+            + qrData.substring(qrTime, Math.min(qrData.length(), authCode + ETAG_AUTH_CODE_LENGTH)) + "\"";
+    }
+
+    /**
+     * A rendered image and when it expires.
+     */
+    private static final class Entry {
+        private final QrImage image;
+        private final long expires;
+
+        /**
+         * Creates the entry.
+         * @param image   the image.
+         * @param expires the nanoTime when the image expires.
+         */
+        Entry(QrImage image, long expires) {
+            this.image = image;
+            this.expires = expires;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.service;
+
+import com.bankid.codefront.config.BankIDRelyingPartyConfig;
+import com.bankid.codefront.config.RpQrCodeConfig;
+import com.bankid.codefront.models.service.BankIDTransaction;
+import com.bankid.codefront.models.service.QrTransaction;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Node local record of the transactions showing a QR code, by transaction id.
+ * Lets the QR code be refreshed without the session scoped value, which with redis is written back as a whole
+ * on every refresh. A transaction is recorded with the id of its session when its QR code is first read from
+ * the session on this node, and dropped when it no longer shows a QR code, is final, is cancelled or expires.
+ * A recorded transaction is only served to the session it is recorded with.
+ *
+ * <p>When the registry is full, expired transactions are dropped. If it is still full, new transactions are not
+ * recorded and their QR codes are read from the session.
+ */
+@Component
+public class QrTransactionRegistry {
+    private final RpQrCodeConfig config;
+    private final long ttlNanos;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Creates the registry.
+     * @param settings the BankID RP settings.
+     */
+    @Autowired
+    public QrTransactionRegistry(BankIDRelyingPartyConfig settings) {
+        this(settings.getQrCode() == null ? new RpQrCodeConfig() : settings.getQrCode());
+    }
+
+    /**
+     * Creates the registry.
+     * @param config the QR code settings.
+     */
+    public QrTransactionRegistry(RpQrCodeConfig config) {
+        this.config = config;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(config.getTransactionTtl());
+    }
+
+    /**
+     * Records a transaction showing a QR code.
+     * @param transaction the transaction.
+     * @param owner       the id of the session that holds the transaction.
+     */
+    public void register(BankIDTransaction transaction, String owner) {
+        long now = System.nanoTime();
+        if (this.entries.size() >= this.config.getTransactionMaxSize()) {
+            this.entries.values().removeIf(entry -> entry.expires - now <= 0);
+        }
+        if (this.entries.size() < this.config.getTransactionMaxSize()) {
+            Entry entry = new Entry(new QrTransaction(transaction, owner), now + this.ttlNanos);
+            this.entries.put(transaction.getTransactionId(), entry);
+        }
+    }
+
+    /**
+     * Returns a recorded transaction.
+     * @param transactionId the transaction id.
+     * @return the transaction, or null if it is not recorded on this node.
+     */
+    public QrTransaction get(String transactionId) {
+        Entry entry = this.entries.get(transactionId);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expires - System.nanoTime() <= 0) {
+            this.entries.remove(transactionId, entry);
+            return null;
+        }
+        return entry.transaction;
+    }
+
+    /**
+     * Drops a transaction that no longer shows a QR code.
+     * @param transactionId the transaction id.
+     */
+    public void remove(String transactionId) {
+        this.entries.remove(transactionId);
+    }
+
+    /**
+     * Returns the number of recorded transactions.
+     * @return the number of transactions.
+     */
+    public int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * A recorded transaction and when it expires.
+     */
+    private static final class Entry {
+        private final QrTransaction transaction;
+        private final long expires;
+
+        /**
+         * Creates the entry.
+         * @param transaction the transaction.
+         * @param expires     the nanoTime when the record expires.
+         */
+        Entry(QrTransaction transaction, long expires) {
+            this.transaction = transaction;
+            this.expires = expires;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.service;
+
+import com.bankid.codefront.bankid.relyingparty.RpJsonCodec;
+import com.bankid.codefront.config.BankIDRelyingPartyConfig;
+import com.bankid.codefront.config.RpCollectLeaseConfig;
+import com.bankid.codefront.models.bankid.relyingparty.CollectResponse;
+import com.bankid.codefront.models.service.Status;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * Collect lease shared by all nodes through redis. The lease is a key set if absent with the window as TTL,
+ * so it is never released and the next window starts when it expires. Only the status and hint code of
+ * pending orders are written to redis.
+ *
+ * <p>If redis cannot be reached the node collects as if it held the lease.
+ */
+@Component
+@Profile("!dev | redis")
+public class RedisCollectLease implements CollectLease {
+    private static final String LEASE_KEY = "codefront:collect:lease:";
+    private static final String RESULT_KEY = "codefront:collect:result:";
+    private static final String CANCEL_KEY = "codefront:collect:cancel:";
+    private static final String AUDIT_KEY = "codefront:collect:audit:";
+
+    private final Logger logger = LoggerFactory.getLogger(RedisCollectLease.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final RpJsonCodec codec;
+    private final RpCollectLeaseConfig config;
+    private final String nodeId = UUID.randomUUID().toString();
+
+    /**
+     * Creates the lease.
+     * @param redisTemplate the redis template.
+     * @param codec         the json codec of the RP models.
+     * @param settings      the BankID RP settings.
+     */
+    public RedisCollectLease(StringRedisTemplate redisTemplate, RpJsonCodec codec, BankIDRelyingPartyConfig settings) {
+        this.redisTemplate = redisTemplate;
+        this.codec = codec;
+        this.config = settings.getCollectLease() == null ? new RpCollectLeaseConfig() : settings.getCollectLease();
+    }
+
+    /**
+     * Tries to take the lease of an order for one collect window.
+     * @param orderRef the order reference.
+     * @return true if this node may collect the order now.
+     */
+    @Override
+    public boolean tryAcquire(String orderRef) {
+        if (!this.config.isEnabled()) {
+            return true;
+        }
+        try {
+            Boolean acquired = this.redisTemplate.opsForValue().setIfAbsent(
+                LEASE_KEY + orderRef, this.nodeId, Duration.ofMillis(this.config.getWindow()));
+            return !Boolean.FALSE.equals(acquired);
+        } catch (DataAccessException exc) {
+            this.logger.warn("Could not take collect lease, collecting anyway: {}", exc.getMessage());
+            return true;
+        }
+    }
+
+    /**
+     * Publishes the status and hint code of a pending order, or withdraws the published state when the
+     * order is final.
+     * @param orderRef        the order reference.
+     * @param collectResponse the collect response.
+     */
+    @Override
+    public void publish(String orderRef, CollectResponse collectResponse) {
+        if (!this.config.isEnabled()) {
+            return;
+        }
+        try {
+            if (Status.fromString(collectResponse.getStatus()) != Status.PENDING) {
+                this.redisTemplate.delete(RESULT_KEY + orderRef);
+                return;
+            }
+
+            // Never share completion data, only the state the other nodes need to keep polling.
+            CollectResponse pending = new CollectResponse();
+            pending.setOrderRef(collectResponse.getOrderRef());
+            pending.setStatus(collectResponse.getStatus());
+            pending.setHintCode(collectResponse.getHintCode());
+            this.redisTemplate.opsForValue().set(
+                RESULT_KEY + orderRef,
+                new String(this.codec.write(pending), StandardCharsets.UTF_8),
+                Duration.ofMillis(this.config.getResultTtl()));
+        } catch (DataAccessException | IOException exc) {
+            this.logger.warn("Could not publish collect response: {}", exc.getMessage());
+        }
+    }
+
+    /**
+     * Returns the latest pending state published by any node.
+     * @param orderRef the order reference.
+     * @return the collect response without completion data, or null if none is published.
+     */
+    @Override
+    public CollectResponse getPublished(String orderRef) {
+        if (!this.config.isEnabled()) {
+            return null;
+        }
+        try {
+            String json = this.redisTemplate.opsForValue().get(RESULT_KEY + orderRef);
+            return json == null ? null : this.codec.readCollectResponse(json.getBytes(StandardCharsets.UTF_8));
+        } catch (DataAccessException | IOException exc) {
+            this.logger.warn("Could not read published collect response: {}", exc.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Tries to claim the cancel of an orphaned order. The claim is a key set if absent that is kept for the
+     * result ttl, so the expiry events of the session on the other nodes do not cancel the order again.
+     * @param orderRef the order reference.
+     * @return true if this node should cancel the order.
+     */
+    @Override
+    public boolean tryAcquireCancel(String orderRef) {
+        return this.tryClaim(CANCEL_KEY + orderRef, "cancel of orphaned order");
+    }
+
+    /**
+     * Tries to claim the audit of the complete state of an order, with a key set if absent that is kept for the
+     * result ttl like the cancel claim.
+     * @param orderRef the order reference.
+     * @return true if this node should audit the complete state.
+     */
+    @Override
+    public boolean tryAcquireAudit(String orderRef) {
+        return this.tryClaim(AUDIT_KEY + orderRef, "audit of complete order");
+    }
+
+    /**
+     * Sets a claim key if absent, kept for the result ttl.
+     * @param key  the key.
+     * @param what what is claimed, for the log.
+     * @return true if this node holds the claim, also when redis cannot be reached.
+     */
+    private boolean tryClaim(String key, String what) {
+        if (!this.config.isEnabled()) {
+            return true;
+        }
+        try {
+            Boolean acquired = this.redisTemplate.opsForValue().setIfAbsent(
+                key, this.nodeId, Duration.ofMillis(this.config.getResultTtl()));
+            return !Boolean.FALSE.equals(acquired);
+        } catch (DataAccessException exc) {
+            this.logger.warn("Could not claim {}, going ahead anyway: {}", what, exc.getMessage());
+            return true;
+        }
+    }
+}
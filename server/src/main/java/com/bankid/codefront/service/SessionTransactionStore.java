@@ -0,0 +1,134 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.service;
+
+import com.bankid.codefront.models.service.BankIDTransaction;
+import com.bankid.codefront.models.service.Status;
+import com.bankid.codefront.rest.model.SessionValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.session.Session;
+import org.springframework.session.SessionRepository;
+import org.springframework.stereotype.Component;
+
+/**
+ * Writes the final state of a transaction, followed outside the request that owns the session, back to the session.
+ * Streams and long-polls follow a copy of the session transaction, and without the final state in the session
+ * the next start would cancel an order that already completed.
+ *
+ * <p>The session is written when the request that followed the transaction has completed, after the session was
+ * committed by that request. The transaction is also dropped from the {@link QrTransactionRegistry} of this node,
+ * so its QR code is no longer served.
+ */
+@Component
+public class SessionTransactionStore {
+    /** The session attribute of the session scoped {@link SessionValue}. */
+    public static final String SESSION_VALUE_ATTRIBUTE = "scopedTarget.sessionValue";
+
+    private final Logger logger = LoggerFactory.getLogger(SessionTransactionStore.class);
+
+    private final SessionRepository<? extends Session> sessionRepository;
+    private final QrTransactionRegistry qrTransactionRegistry;
+
+    /**
+     * Creates the store.
+     * @param sessionRepository     the session repository.
+     * @param qrTransactionRegistry the node local record of transactions showing a QR code.
+     */
+    public SessionTransactionStore(
+        SessionRepository<? extends Session> sessionRepository,
+        QrTransactionRegistry qrTransactionRegistry) {
+        this.sessionRepository = sessionRepository;
+        this.qrTransactionRegistry = qrTransactionRegistry;
+    }
+
+    /**
+     * Writes the final state of a transaction to a session, if the session still holds the transaction,
+     * and stops serving its QR code on this node.
+     * @param sessionId   the session id.
+     * @param transaction the transaction in its complete or failed state.
+     * @return true if the session was written.
+     */
+    public boolean saveFinal(String sessionId, BankIDTransaction transaction) {
+        if (transaction == null
+            || transaction.getStatus() != Status.COMPLETE && transaction.getStatus() != Status.FAILED) {
+            return false;
+        }
+        this.qrTransactionRegistry.remove(transaction.getTransactionId());
+        if (sessionId == null) {
+            return false;
+        }
+
+        try {
+            return this.saveFinal(this.sessionRepository, sessionId, transaction);
+        } catch (RuntimeException exc) {
+            this.logger.warn("Failed to write the final transaction to the session: {}", exc.toString());
+            return false;
+        }
+    }
+
+    /**
+     * Writes the final state of a transaction to a session of a repository.
+     * @param repository  the session repository.
+     * @param sessionId   the session id.
+     * @param transaction the transaction in its final state.
+     * @param <S>         the session type of the repository.
+     * @return true if the session was written.
+     */
+    private <S extends Session> boolean saveFinal(
+        SessionRepository<S> repository,
+        String sessionId,
+        BankIDTransaction transaction
+    ) {
+        S session = repository.findById(sessionId);
+        if (session == null) {
+            return false;
+        }
+
+        // The session may have moved on to another transaction, or seen the final state itself
+        Object attribute = session.getAttribute(SESSION_VALUE_ATTRIBUTE);
+        if (!(attribute instanceof SessionValue sessionValue)
+            || sessionValue.getBankIDTransaction() == null
+            || !transaction.getTransactionId().equals(sessionValue.getBankIDTransaction().getTransactionId())
+            || sessionValue.getBankIDTransaction().getStatus() != Status.PENDING) {
+            return false;
+        }
+
+        sessionValue.setBankIDTransaction(transaction);
+        // Set again so the repository writes the changed value
+        session.setAttribute(SESSION_VALUE_ATTRIBUTE, sessionValue);
+        repository.save(session);
+        return true;
+    }
+}
@@ -0,0 +1,409 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.service;
+
+import com.bankid.codefront.config.BankIDRelyingPartyConfig;
+import com.bankid.codefront.config.RpTimingWheelConfig;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Hashed timing wheel for many timers with a coarse precision, such as background collects and expiry of
+ * transactions. Scheduling and cancelling only append to a queue, and one ticker thread moves new timers into
+ * the bucket of their deadline and expires the bucket of the current tick. Timers fire on the first tick after
+ * their deadline.
+ *
+ * <p>Expired timers run on a bounded pool of worker threads. When its queue is full the timer is moved to the
+ * next tick, so a burst of expiring timers delays them instead of dropping them. A timer can be cancelled until
+ * its task starts.
+ */
+@Component
+public class TimingWheel {
+    /** Max number of new timers moved into the wheel per tick, so the ticker keeps up with its ticks. */
+    private static final int MAX_TRANSFER_PER_TICK = 100_000;
+    private static final int MAX_TICKS_PER_WHEEL = 1_048_576;
+
+    private final Logger logger = LoggerFactory.getLogger(TimingWheel.class);
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Queue<Timeout> added = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final ThreadPoolExecutor executor;
+    private final Thread ticker;
+    private final long startNanos = System.nanoTime();
+    private volatile boolean stopped;
+
+    // Only used by the ticker thread
+    private long tick;
+
+    /**
+     * Creates and starts the timing wheel.
+     * @param settings the BankID RP settings.
+     */
+    @Autowired
+    public TimingWheel(BankIDRelyingPartyConfig settings) {
+        this(settings.getTimingWheel() == null ? new RpTimingWheelConfig() : settings.getTimingWheel());
+    }
+
+    /**
+     * Creates and starts the timing wheel.
+     * @param config the timing wheel settings.
+     */
+    public TimingWheel(RpTimingWheelConfig config) {
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, config.getTickDuration()));
+
+        int requestedTicks = Math.min(MAX_TICKS_PER_WHEEL, Math.max(2, config.getTicksPerWheel()));
+        int ticksPerWheel = Integer.highestOneBit(requestedTicks);
+        if (ticksPerWheel < requestedTicks) {
+            ticksPerWheel <<= 1;
+        }
+        this.wheel = new Bucket[ticksPerWheel];
+        for (int i = 0; i < ticksPerWheel; i++) {
+            this.wheel[i] = new Bucket();
+        }
+        this.mask = ticksPerWheel - 1;
+
+        AtomicInteger workerNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+            config.getWorkerThreads(),
+            config.getWorkerThreads(),
+            0,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(Math.max(1, config.getMaxQueue())),
+            runnable -> {
+                Thread thread = new Thread(runnable, "timing-wheel-worker-" + workerNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+
+        this.ticker = new Thread(this::run, "timing-wheel");
+        this.ticker.setDaemon(true);
+        this.ticker.start();
+    }
+
+    /**
+     * Schedules a task to run once after a delay.
+     * @param task  the task.
+     * @param delay the delay.
+     * @param unit  the unit of the delay.
+     * @return the timer, which can be cancelled.
+     * @throws RejectedExecutionException if the timing wheel is stopped.
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        if (this.stopped) {
+            throw new RejectedExecutionException("Timing wheel is stopped.");
+        }
+        long deadline = System.nanoTime() - this.startNanos + Math.max(0, unit.toNanos(delay));
+        Timeout timeout = new Timeout(this, task, deadline);
+        this.pending.incrementAndGet();
+        this.added.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Returns the number of timers that are neither run nor cancelled.
+     * @return the number of timers.
+     */
+    public int getPendingCount() {
+        return this.pending.get();
+    }
+
+    /**
+     * Returns if the timing wheel is stopped.
+     * @return true if stopped.
+     */
+    public boolean isStopped() {
+        return this.stopped;
+    }
+
+    /**
+     * Stops the ticker and the worker threads. Timers that have not run are dropped.
+     */
+    @PreDestroy
+    public void stop() {
+        this.stopped = true;
+        this.ticker.interrupt();
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * The ticker loop.
+     */
+    private void run() {
+        while (!this.stopped) {
+            if (!this.waitForNextTick()) {
+                break;
+            }
+
+            this.removeCancelled();
+            this.transferAdded();
+            this.wheel[(int) (this.tick & this.mask)].expire();
+            this.tick++;
+        }
+    }
+
+    /**
+     * Waits until the end of the current tick.
+     * @return false if stopped while waiting.
+     */
+    private boolean waitForNextTick() {
+        long deadline = this.tickNanos * (this.tick + 1);
+        while (true) {
+            long current = System.nanoTime() - this.startNanos;
+            long remaining = deadline - current;
+            long sleepMillis = TimeUnit.NANOSECONDS.toMillis(remaining + TimeUnit.MILLISECONDS.toNanos(1) - 1);
+            if (sleepMillis <= 0) {
+                return true;
+            }
+            try {
+                Thread.sleep(sleepMillis);
+            } catch (InterruptedException e) {
+                if (this.stopped) {
+                    return false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves new timers into the bucket of their deadline.
+     */
+    private void transferAdded() {
+        for (int i = 0; i < MAX_TRANSFER_PER_TICK; i++) {
+            Timeout timeout = this.added.poll();
+            if (timeout == null) {
+                return;
+            }
+            if (timeout.state != Timeout.ST_INIT) {
+                continue;
+            }
+
+            long deadlineTick = timeout.deadline / this.tickNanos;
+            timeout.remainingRounds = (deadlineTick - this.tick) / this.wheel.length;
+
+            // Timers that are already due go in the current bucket
+            long bucketTick = Math.max(deadlineTick, this.tick);
+            this.wheel[(int) (bucketTick & this.mask)].add(timeout);
+        }
+    }
+
+    /**
+     * Removes cancelled timers from their bucket.
+     */
+    private void removeCancelled() {
+        Timeout timeout;
+        while ((timeout = this.cancelled.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    /**
+     * Hands an expired timer to the worker threads, or moves it to the next tick if they are all busy.
+     * @param timeout the timer.
+     */
+    private void dispatch(Timeout timeout) {
+        try {
+            this.executor.execute(timeout::run);
+        } catch (RejectedExecutionException e) {
+            if (this.stopped) {
+                return;
+            }
+            timeout.remainingRounds = 0;
+            this.wheel[(int) ((this.tick + 1) & this.mask)].add(timeout);
+        }
+    }
+
+    /**
+     * A scheduled task.
+     */
+    public static final class Timeout {
+        private static final int ST_INIT = 0;
+        private static final int ST_CANCELLED = 1;
+        private static final int ST_EXPIRED = 2;
+        private static final AtomicIntegerFieldUpdater<Timeout> STATE =
+            AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+        private final TimingWheel timingWheel;
+        private final Runnable task;
+        private final long deadline;
+        private volatile int state = ST_INIT;
+
+        // Only used by the ticker thread
+        private long remainingRounds;
+        private Timeout next;
+        private Timeout prev;
+        private Bucket bucket;
+
+        /**
+         * Creates a timer.
+         * @param timingWheel the timing wheel.
+         * @param task        the task.
+         * @param deadline    the deadline relative to the start of the timing wheel, in nanoseconds.
+         */
+        private Timeout(TimingWheel timingWheel, Runnable task, long deadline) {
+            this.timingWheel = timingWheel;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Cancels the timer, unless its task has started.
+         * @return true if cancelled by this call.
+         */
+        public boolean cancel() {
+            if (!STATE.compareAndSet(this, ST_INIT, ST_CANCELLED)) {
+                return false;
+            }
+            this.timingWheel.pending.decrementAndGet();
+            this.timingWheel.cancelled.add(this);
+            return true;
+        }
+
+        /**
+         * Returns if the timer is cancelled.
+         * @return true if cancelled.
+         */
+        public boolean isCancelled() {
+            return this.state == ST_CANCELLED;
+        }
+
+        /**
+         * Returns if the task of the timer has started.
+         * @return true if started.
+         */
+        public boolean isExpired() {
+            return this.state == ST_EXPIRED;
+        }
+
+        /**
+         * Runs the task unless the timer is cancelled.
+         */
+        private void run() {
+            if (!STATE.compareAndSet(this, ST_INIT, ST_EXPIRED)) {
+                return;
+            }
+            this.timingWheel.pending.decrementAndGet();
+            try {
+                this.task.run();
+            } catch (RuntimeException e) {
+                this.timingWheel.logger.warn("Scheduled task failed: {}", e.toString());
+            }
+        }
+    }
+
+    /**
+     * The timers of one slot of the wheel, as a doubly linked list.
+     */
+    private final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        /**
+         * Adds a timer.
+         * @param timeout the timer.
+         */
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (this.head == null) {
+                this.head = timeout;
+                this.tail = timeout;
+            } else {
+                this.tail.next = timeout;
+                timeout.prev = this.tail;
+                this.tail = timeout;
+            }
+        }
+
+        /**
+         * Removes a timer.
+         * @param timeout the timer.
+         * @return the next timer in the bucket.
+         */
+        Timeout remove(Timeout timeout) {
+            Timeout next = timeout.next;
+            if (timeout.prev != null) {
+                timeout.prev.next = next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            }
+            if (timeout == this.head) {
+                this.head = next;
+            }
+            if (timeout == this.tail) {
+                this.tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+            return next;
+        }
+
+        /**
+         * Dispatches the timers that are due in this round and counts down the others.
+         */
+        void expire() {
+            Timeout timeout = this.head;
+            while (timeout != null) {
+                if (timeout.remainingRounds <= 0 || timeout.state != Timeout.ST_INIT) {
+                    Timeout next = this.remove(timeout);
+                    if (timeout.state == Timeout.ST_INIT) {
+                        TimingWheel.this.dispatch(timeout);
+                    }
+                    timeout = next;
+                } else {
+                    timeout.remainingRounds--;
+                    timeout = timeout.next;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,379 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.service;
+
+import com.bankid.codefront.bankid.relyingparty.resilience.RpApiRejectedException;
+import com.bankid.codefront.models.service.BankIDTransaction;
+import com.bankid.codefront.models.service.CollectResult;
+import com.bankid.codefront.models.service.Status;
+import com.bankid.codefront.rest.model.CheckRequest;
+import com.bankid.codefront.rest.model.CheckResponse;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Pushes the progress of BankID transactions to the browser as Server-Sent Events, or to any other observer
+ * such as the transaction WebSocket. Each transaction is checked once a second, the same rate the client used
+ * to poll, and a change is sent only when the status, hint code or QR data changed.
+ * The stream ends with the complete or failed state.
+ *
+ * <p>Clients that cannot use a stream wait for the next change with a long-poll instead.
+ *
+ * <p>Streams and long-polls follow a copy of the session transaction. Progress is read from the collect scheduler,
+ * so they do not load the session or call RP on every tick.
+ */
+@Component
+public class TransactionEventService {
+    /** The name of the events sent to the client. */
+    public static final String EVENT_NAME = "check";
+
+    private static final long TICK_MILLIS = 1000;
+    private static final long LONG_POLL_TICK_MILLIS = 250;
+    private static final int QR_CODE_PARTS = 4;
+    private static final long HEARTBEAT_MILLIS = 15_000;
+    private static final long STREAM_TIMEOUT_MILLIS = 5 * 60 * 1000;
+
+    private final Logger logger = LoggerFactory.getLogger(TransactionEventService.class);
+
+    private final BankIDService bankIDService;
+    private final ScheduledThreadPoolExecutor executor;
+
+    /**
+     * Creates the transaction event service.
+     * @param bankIDService the BankID service.
+     */
+    public TransactionEventService(BankIDService bankIDService) {
+        this.bankIDService = bankIDService;
+
+        // Collect may call RP when the collect scheduler is disabled, so streams are spread over a few threads.
+        this.executor = new ScheduledThreadPoolExecutor(Math.max(2, Runtime.getRuntime().availableProcessors()),
+            runnable -> {
+                Thread thread = new Thread(runnable, "transaction-events");
+                thread.setDaemon(true);
+                return thread;
+            });
+        this.executor.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Stops all streams.
+     */
+    @PreDestroy
+    public void shutdown() {
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * Opens a stream of the progress of a transaction.
+     * @param transaction the session transaction, the stream follows a copy of it.
+     * @param onFinal     called once with the complete or failed result, when the stream has ended.
+     * @return the emitter to return from the controller.
+     */
+    public SseEmitter subscribe(BankIDTransaction transaction, Consumer<CollectResult> onFinal) {
+        SseEmitter emitter = new SseEmitter(STREAM_TIMEOUT_MILLIS);
+        this.stream(emitter, transaction, onFinal);
+        return emitter;
+    }
+
+    /**
+     * Starts pushing the progress of a transaction to an emitter.
+     * The final result is handed over when the stream has ended, which is after the request that opened it
+     * has committed the session.
+     * @param emitter     the emitter.
+     * @param transaction the session transaction, the stream follows a copy of it.
+     * @param onFinal     called once with the complete or failed result, when the stream has ended.
+     */
+    void stream(SseEmitter emitter, BankIDTransaction transaction, Consumer<CollectResult> onFinal) {
+        AtomicReference<CollectResult> finalResult = new AtomicReference<>();
+        Runnable stop = this.observe(
+            transaction, new EmitterObserver(emitter, transaction.getTransactionId(), finalResult));
+        Runnable close = () -> {
+            stop.run();
+            CollectResult collectResult = finalResult.getAndSet(null);
+            if (collectResult != null) {
+                onFinal.accept(collectResult);
+            }
+        };
+
+        emitter.onCompletion(close);
+        emitter.onTimeout(close);
+        emitter.onError(error -> close.run());
+    }
+
+    /**
+     * Follows a transaction until it is complete or failed, and reports each change to an observer.
+     * The transaction is checked once a second.
+     * @param transaction the transaction, a copy of it is followed.
+     * @param observer    the observer.
+     * @return stops following the transaction.
+     */
+    public Runnable observe(BankIDTransaction transaction, TransactionObserver observer) {
+        Observation observation = new Observation(new BankIDTransaction(transaction), observer);
+
+        observation.future = this.executor.scheduleAtFixedRate(
+            () -> this.tick(observation), 0, TICK_MILLIS, TimeUnit.MILLISECONDS);
+        return observation::stop;
+    }
+
+    /**
+     * Waits until the state of a transaction differs from the state last seen by the client.
+     * The state is checked without holding a thread while waiting.
+     * @param transaction   the session transaction, the wait follows a copy of it.
+     * @param lastSeen      the state last seen by the client.
+     * @param timeoutMillis the longest time to wait.
+     * @return completes with the changed state, or with the latest state when the timeout passes.
+     *         The latest state is null if the transaction could not be collected.
+     */
+    public CompletableFuture<CollectResult> awaitChange(
+        BankIDTransaction transaction,
+        CheckRequest lastSeen,
+        long timeoutMillis) {
+        BankIDTransaction copy = new BankIDTransaction(transaction);
+        CompletableFuture<CollectResult> result = new CompletableFuture<>();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        AtomicReference<CollectResult> latest = new AtomicReference<>();
+
+        ScheduledFuture<?> scheduled = this.executor.scheduleAtFixedRate(() -> {
+            if (result.isDone()) {
+                return;
+            }
+            try {
+                CollectResult collectResult = this.bankIDService.collect(copy);
+                if (collectResult != null) {
+                    latest.set(collectResult);
+                    if (isChanged(collectResult, lastSeen)) {
+                        result.complete(collectResult);
+                        return;
+                    }
+                }
+            } catch (RpApiRejectedException exc) {
+                this.logger.info("BankID RP call rejected while waiting for transaction: {}", exc.getMessage());
+            } catch (Exception exc) {
+                result.completeExceptionally(exc);
+                return;
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                result.complete(latest.get());
+            }
+        }, 0, LONG_POLL_TICK_MILLIS, TimeUnit.MILLISECONDS);
+
+        // Stop checking when done, also when the caller gives up.
+        result.whenComplete((collectResult, error) -> scheduled.cancel(false));
+        return result;
+    }
+
+    /**
+     * Reports the state of a transaction if it changed since the last check.
+     * @param observation the observation.
+     */
+    private void tick(Observation observation) {
+        if (observation.stopped) {
+            // Stopped before it was scheduled.
+            observation.stop();
+            return;
+        }
+
+        try {
+            CollectResult collectResult = this.bankIDService.collect(observation.transaction);
+            if (collectResult == null) {
+                // Failed to collect, the next tick tries again.
+                observation.observer.onIdle();
+                return;
+            }
+
+            String state = String.join(":",
+                String.valueOf(collectResult.getStatus()), collectResult.getHintCode(), collectResult.getQrCode());
+            if (collectResult.getStatus() == Status.COMPLETE || collectResult.getStatus() == Status.FAILED) {
+                observation.stop();
+            }
+            if (!state.equals(observation.lastState)) {
+                observation.lastState = state;
+                observation.observer.onChange(collectResult);
+            } else {
+                observation.observer.onIdle();
+            }
+        } catch (RpApiRejectedException exc) {
+            this.logger.info("BankID RP call rejected while following transaction: {}", exc.getMessage());
+        } catch (IOException | IllegalStateException exc) {
+            // The client is gone.
+            this.logger.trace("Transaction observer closed: {}", exc.toString());
+            observation.stop();
+        } catch (Exception exc) {
+            this.logger.error("Failed to follow transaction ({}): {}", exc.getClass(), exc.toString());
+            observation.stop();
+            observation.observer.onError(exc);
+        }
+    }
+
+    /**
+     * Check if the state of a transaction differs from the state last seen by the client.
+     * @param collectResult the current state.
+     * @param lastSeen      the state last seen by the client.
+     * @return true if changed.
+     */
+    private static boolean isChanged(CollectResult collectResult, CheckRequest lastSeen) {
+        return lastSeen == null
+            || collectResult.getStatus() != lastSeen.getStatus()
+            || !Objects.equals(collectResult.getHintCode(), lastSeen.getHintCode())
+            || !Objects.equals(qrTime(collectResult.getQrCode()), lastSeen.getQrTime());
+    }
+
+    /**
+     * Returns the qr time of a qr code, "bankid.[qrStartToken].[qrTime].[qrAuthCode]".
+     * @param qrCode the qr code.
+     * @return the qr time, or null if there is no qr code.
+     */
+    private static Long qrTime(String qrCode) {
+        if (qrCode == null) {
+            return null;
+        }
+        String[] parts = qrCode.split("\\.");
+        return parts.length == QR_CODE_PARTS ? Long.valueOf(parts[2]) : null;
+    }
+
+    /**
+     * A transaction followed for an observer.
+     */
+    private static final class Observation {
+        private final BankIDTransaction transaction;
+        private final TransactionObserver observer;
+        private volatile ScheduledFuture<?> future;
+        private volatile boolean stopped;
+        private String lastState;
+
+        /**
+         * Creates an observation.
+         * @param transaction the copy of the transaction to follow.
+         * @param observer    the observer.
+         */
+        private Observation(BankIDTransaction transaction, TransactionObserver observer) {
+            this.transaction = transaction;
+            this.observer = observer;
+        }
+
+        /**
+         * Stops checking the transaction.
+         */
+        private void stop() {
+            this.stopped = true;
+            ScheduledFuture<?> scheduled = this.future;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Sends the progress of a transaction as Server-Sent Events.
+     */
+    private static final class EmitterObserver implements TransactionObserver {
+        private final SseEmitter emitter;
+        private final String transactionId;
+        private final AtomicReference<CollectResult> finalResult;
+        private long lastSentNanos = System.nanoTime();
+
+        /**
+         * Creates the observer.
+         * @param emitter       the emitter.
+         * @param transactionId the transaction id.
+         * @param finalResult   receives the complete or failed result.
+         */
+        private EmitterObserver(
+            SseEmitter emitter,
+            String transactionId,
+            AtomicReference<CollectResult> finalResult) {
+            this.emitter = emitter;
+            this.transactionId = transactionId;
+            this.finalResult = finalResult;
+        }
+
+        /**
+         * Sends the new state, and ends the stream with the complete or failed state.
+         * @param collectResult the new state.
+         * @throws IOException if the client is gone.
+         */
+        @Override
+        public void onChange(CollectResult collectResult) throws IOException {
+            boolean isFinal =
+                collectResult.getStatus() == Status.COMPLETE || collectResult.getStatus() == Status.FAILED;
+            if (isFinal) {
+                // Kept also if the client is gone before it gets the event
+                this.finalResult.set(collectResult);
+            }
+
+            CheckResponse event = new CheckResponse(this.transactionId, collectResult);
+            this.emitter.send(SseEmitter.event().name(EVENT_NAME).data(event, MediaType.APPLICATION_JSON));
+            this.lastSentNanos = System.nanoTime();
+
+            if (isFinal) {
+                this.emitter.complete();
+            }
+        }
+
+        /**
+         * Sends a comment if the stream has been silent for a while, keeping proxies from closing it
+         * and finding clients that are gone.
+         * @throws IOException if the client is gone.
+         */
+        @Override
+        public void onIdle() throws IOException {
+            if (System.nanoTime() - this.lastSentNanos >= TimeUnit.MILLISECONDS.toNanos(HEARTBEAT_MILLIS)) {
+                this.emitter.send(SseEmitter.event().comment("heartbeat"));
+                this.lastSentNanos = System.nanoTime();
+            }
+        }
+
+        /**
+         * Ends the stream.
+         * @param exc the error.
+         */
+        @Override
+        public void onError(Exception exc) {
+            this.emitter.complete();
+        }
+    }
+}
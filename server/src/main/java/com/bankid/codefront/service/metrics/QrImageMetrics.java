@@ -0,0 +1,177 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.service.metrics;
+
+import com.bankid.codefront.models.service.QrImageFormat;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Metrics helper for the server rendered QR images.
+ */
+@Component
+public class QrImageMetrics {
+    private static final String METRICS_PREFIX =
+            com.bankid.codefront.config.Metrics.BASE_METRICS_PREFIX
+                    + "qr.image.";
+
+    private final Timer[] renderTimers = new Timer[QrImageFormat.values().length];
+    private final DistributionSummary[] servedSummaries = new DistributionSummary[QrImageFormat.values().length];
+    private final Counter cacheHitCounter;
+    private final Counter cacheMissCounter;
+    private final Counter notModifiedCounter;
+    private final Counter localLookupCounter;
+    private final Counter sessionLookupCounter;
+
+    /**
+     * Registers the meters of all formats, so recording does not look the meter up.
+     */
+    public QrImageMetrics() {
+        for (QrImageFormat format : QrImageFormat.values()) {
+            String tag = format.name().toLowerCase(Locale.ROOT);
+            this.renderTimers[format.ordinal()] = Timer.builder(METRICS_PREFIX + "render")
+                    .description("Time taken to render a QR image.")
+                    .tag("format", tag)
+                    .register(Metrics.globalRegistry);
+            this.servedSummaries[format.ordinal()] = DistributionSummary.builder(METRICS_PREFIX + "served")
+                    .description("Size of the QR images served.")
+                    .baseUnit("bytes")
+                    .tag("format", tag)
+                    .register(Metrics.globalRegistry);
+        }
+
+        this.cacheHitCounter = cacheCounter("hit");
+        this.cacheMissCounter = cacheCounter("miss");
+        this.notModifiedCounter = Counter.builder(METRICS_PREFIX + "not_modified")
+                .description("Number of QR image requests answered with not modified.")
+                .register(Metrics.globalRegistry);
+        this.localLookupCounter = lookupCounter("local");
+        this.sessionLookupCounter = lookupCounter("session");
+    }
+
+    /**
+     * Creates a counter of QR transaction lookups.
+     * @param source where the transaction was found, local or session.
+     * @return the counter.
+     */
+    private static Counter lookupCounter(String source) {
+        return Counter.builder(METRICS_PREFIX + "lookup")
+                .description("Number of QR requests by where the transaction was found.")
+                .tag("source", source)
+                .register(Metrics.globalRegistry);
+    }
+
+    /**
+     * Creates a counter of QR image cache lookups.
+     * @param result hit or miss.
+     * @return the counter.
+     */
+    private static Counter cacheCounter(String result) {
+        return Counter.builder(METRICS_PREFIX + "cache")
+                .description("Number of QR image cache lookups.")
+                .tag("result", result)
+                .register(Metrics.globalRegistry);
+    }
+
+    /**
+     * Registers the number of images in the cache.
+     * @param size the number of images.
+     */
+    public void registerCache(Supplier<Number> size) {
+        Gauge.builder(METRICS_PREFIX + "cache.size", size)
+                .description("Number of QR images in the cache.")
+                .register(Metrics.globalRegistry);
+    }
+
+    /**
+     * Records a rendered QR image.
+     * @param format    the image format.
+     * @param timeNanos the time taken to render.
+     */
+    public void rendered(QrImageFormat format, long timeNanos) {
+        this.renderTimers[format.ordinal()].record(timeNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records a QR image found in the cache.
+     */
+    public void cacheHit() {
+        this.cacheHitCounter.increment();
+    }
+
+    /**
+     * Records a QR image not found in the cache.
+     */
+    public void cacheMiss() {
+        this.cacheMissCounter.increment();
+    }
+
+    /**
+     * Records a QR image sent to the client.
+     * @param format the image format.
+     * @param bytes  the size of the image.
+     */
+    public void served(QrImageFormat format, int bytes) {
+        this.servedSummaries[format.ordinal()].record(bytes);
+    }
+
+    /**
+     * Records a QR image request answered with not modified.
+     */
+    public void notModified() {
+        this.notModifiedCounter.increment();
+    }
+
+    /**
+     * Records a QR request answered from the transactions recorded on this node.
+     */
+    public void localLookup() {
+        this.localLookupCounter.increment();
+    }
+
+    /**
+     * Records a QR request answered from the session.
+     */
+    public void sessionLookup() {
+        this.sessionLookupCounter.increment();
+    }
+}
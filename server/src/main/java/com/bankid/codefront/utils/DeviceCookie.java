@@ -0,0 +1,84 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.utils;
+
+import org.springframework.http.ResponseCookie;
+
+import java.util.UUID;
+
+/**
+ * The cookie identifying the device used for a transaction.
+ */
+public final class DeviceCookie {
+    /** The name of the cookie. */
+    public static final String NAME = "__Secure-Device";
+
+    private static final int TTL = 399 * 24 * 60 * 60;
+
+    private DeviceCookie() {
+    }
+
+    /**
+     * Returns the device identifier if it is a valid uuid, or a new identifier.
+     * @param deviceIdentifier the identifier from the cookie, may be null or empty.
+     * @return the device identifier.
+     */
+    public static String getOrCreateIdentifier(String deviceIdentifier) {
+        // Check if valid uuid or create a new.
+        if (deviceIdentifier != null) {
+            try {
+                return UUID.fromString(deviceIdentifier).toString();
+            } catch (IllegalArgumentException e) {
+                // Not a uuid, create a new.
+            }
+        }
+        return UUID.randomUUID().toString();
+    }
+
+    /**
+     * Creates the cookie storing the device identifier.
+     * @param deviceIdentifier the device identifier.
+     * @return the cookie.
+     */
+    public static ResponseCookie create(String deviceIdentifier) {
+        return ResponseCookie
+            .from(NAME, deviceIdentifier)
+            .secure(true)
+            .httpOnly(true)
+            .path("/")
+            .maxAge(TTL)
+            .sameSite("Strict")
+            .build();
+    }
+}
@@ -0,0 +1,197 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.bankid.relyingparty;
+
+import com.bankid.codefront.bankid.relyingparty.metrics.RpApiMetrics;
+import com.bankid.codefront.config.BankIDRelyingPartyConfig;
+import com.bankid.codefront.config.RpTimingWheelConfig;
+import com.bankid.codefront.models.bankid.relyingparty.CollectResponse;
+import com.bankid.codefront.service.TimingWheel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test the node local cache of collect responses.
+ */
+@SuppressWarnings("checkstyle:magicnumber")
+public class CollectCacheTest {
+    private BankIDRelyingPartyConfig settings;
+    private RpApiMetrics metrics;
+    private TimingWheel timingWheel;
+
+    /**
+     * Creates the settings with a short ttl.
+     */
+    @BeforeEach
+    public void setup() {
+        this.settings = new BankIDRelyingPartyConfig();
+        this.settings.getCollectCache().setTtl(100);
+        this.metrics = Mockito.mock(RpApiMetrics.class);
+        RpTimingWheelConfig timingWheelConfig = new RpTimingWheelConfig();
+        timingWheelConfig.setTickDuration(5);
+        this.timingWheel = new TimingWheel(timingWheelConfig);
+    }
+
+    /**
+     * Stops the timing wheel.
+     */
+    @AfterEach
+    public void shutdown() {
+        this.timingWheel.stop();
+    }
+
+    /**
+     * Concurrent collects of an order share one call, and the response is reused until it expires.
+     */
+    @Test
+    public void coalesceAndReuse() throws InterruptedException {
+        CollectCache cache = new CollectCache(this.settings, this.metrics, this.timingWheel);
+        CompletableFuture<CollectResponse> call = new CompletableFuture<>();
+        AtomicInteger calls = new AtomicInteger();
+
+        CompletableFuture<CollectResponse> first = cache.get("orderRef", () -> {
+            calls.incrementAndGet();
+            return call;
+        });
+        CompletableFuture<CollectResponse> second = cache.get("orderRef", () -> {
+            calls.incrementAndGet();
+            return call;
+        });
+        Assertions.assertFalse(second.isDone());
+
+        CollectResponse response = new CollectResponse();
+        call.complete(response);
+        Assertions.assertSame(response, first.join());
+        Assertions.assertSame(response, second.join());
+
+        // Reused while fresh
+        Assertions.assertSame(response, cache.get("orderRef", () -> {
+            calls.incrementAndGet();
+            return CompletableFuture.completedFuture(new CollectResponse());
+        }).join());
+        Assertions.assertEquals(1, calls.get());
+
+        // Called again once expired
+        Thread.sleep(150);
+        Assertions.assertNotSame(response, cache.get("orderRef", () -> {
+            calls.incrementAndGet();
+            return CompletableFuture.completedFuture(new CollectResponse());
+        }).join());
+        Assertions.assertEquals(2, calls.get());
+
+        Mockito.verify(this.metrics, Mockito.times(2)).collectCacheMiss();
+        Mockito.verify(this.metrics).collectCacheCoalesced();
+        Mockito.verify(this.metrics).collectCacheHit();
+    }
+
+    /**
+     * An expired response is dropped by its timer, without the cache getting full or the order being read again.
+     */
+    @Test
+    public void expiredEntryReleased() throws InterruptedException {
+        CollectCache cache = new CollectCache(this.settings, this.metrics, this.timingWheel);
+
+        cache.get("orderRef", () -> CompletableFuture.completedFuture(new CollectResponse())).join();
+        Assertions.assertEquals(1, cache.size());
+
+        long deadline = System.currentTimeMillis() + 2000;
+        while (cache.size() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assertions.assertEquals(0, cache.size());
+    }
+
+    /**
+     * A failed collect is shared by the waiting collects but not reused.
+     */
+    @Test
+    public void failureNotCached() {
+        CollectCache cache = new CollectCache(this.settings, this.metrics, this.timingWheel);
+        CompletableFuture<CollectResponse> call = new CompletableFuture<>();
+
+        CompletableFuture<CollectResponse> first = cache.get("orderRef", () -> call);
+        CompletableFuture<CollectResponse> second = cache.get("orderRef", () -> call);
+        call.complete(null);
+
+        Assertions.assertNull(first.join());
+        Assertions.assertNull(second.join());
+        Assertions.assertEquals(0, cache.size());
+
+        CollectResponse response = new CollectResponse();
+        Assertions.assertSame(
+            response, cache.get("orderRef", () -> CompletableFuture.completedFuture(response)).join());
+    }
+
+    /**
+     * A full cache still answers collects of new orders, without caching them.
+     */
+    @Test
+    public void full() {
+        this.settings.getCollectCache().setMaxSize(1);
+        CollectCache cache = new CollectCache(this.settings, this.metrics, this.timingWheel);
+
+        cache.get("orderRef", () -> CompletableFuture.completedFuture(new CollectResponse())).join();
+        CollectResponse response = new CollectResponse();
+        Assertions.assertSame(response, cache.get("other", () -> CompletableFuture.completedFuture(response)).join());
+        Assertions.assertEquals(1, cache.size());
+
+        cache.invalidate("orderRef");
+        Assertions.assertEquals(0, cache.size());
+    }
+
+    /**
+     * A disabled cache calls RP for every collect.
+     */
+    @Test
+    public void disabled() {
+        this.settings.getCollectCache().setEnabled(false);
+        CollectCache cache = new CollectCache(this.settings, this.metrics, this.timingWheel);
+        AtomicInteger calls = new AtomicInteger();
+
+        for (int i = 0; i < 3; i++) {
+            cache.get("orderRef", () -> {
+                calls.incrementAndGet();
+                return CompletableFuture.completedFuture(new CollectResponse());
+            }).join();
+        }
+        Assertions.assertEquals(3, calls.get());
+        Assertions.assertEquals(0, cache.size());
+    }
+}
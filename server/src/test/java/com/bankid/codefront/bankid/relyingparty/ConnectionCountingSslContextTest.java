@@ -0,0 +1,70 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.bankid.relyingparty;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.SSLContext;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test the connection counting SSL context.
+ */
+@SuppressWarnings("checkstyle:magicnumber")
+public class ConnectionCountingSslContextTest {
+
+    /**
+     * Every created engine is reported as a new connection and the parameters come from the wrapped context.
+     * @throws Exception on failure to create the SSL context.
+     */
+    @Test
+    public void countsCreatedEngines() throws Exception {
+        SSLContext delegate = SSLContext.getInstance("TLSv1.2");
+        delegate.init(null, null, null);
+
+        AtomicInteger connections = new AtomicInteger();
+        SSLContext context = new ConnectionCountingSslContext(delegate, connections::incrementAndGet);
+
+        Assertions.assertEquals("TLSv1.2", context.getProtocol());
+        Assertions.assertArrayEquals(
+            delegate.getDefaultSSLParameters().getProtocols(),
+            context.getDefaultSSLParameters().getProtocols());
+        Assertions.assertEquals(0, connections.get());
+
+        Assertions.assertNotNull(context.createSSLEngine("appapi2.bankid.com", 443));
+        Assertions.assertNotNull(context.createSSLEngine());
+        Assertions.assertEquals(2, connections.get());
+    }
+}
@@ -0,0 +1,185 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.bankid.relyingparty;
+
+import com.bankid.codefront.bankid.relyingparty.metrics.RpApiMetrics;
+import com.bankid.codefront.bankid.relyingparty.resilience.Bulkheads;
+import com.bankid.codefront.bankid.relyingparty.resilience.CircuitBreakers;
+import com.bankid.codefront.bankid.relyingparty.resilience.CollectHedging;
+import com.bankid.codefront.bankid.relyingparty.resilience.ConcurrencyLimiters;
+import com.bankid.codefront.bankid.relyingparty.resilience.RetryPolicy;
+import com.bankid.codefront.bankid.relyingparty.signature.DigitalSignature;
+import com.bankid.codefront.bankid.relyingparty.signature.SignatureParseException;
+import com.bankid.codefront.config.BankIDRelyingPartyConfig;
+import com.bankid.codefront.models.Base64String;
+import com.bankid.codefront.models.bankid.relyingparty.CollectResponse;
+import com.bankid.codefront.models.bankid.relyingparty.StartSignatureRequest;
+import com.bankid.codefront.models.bankid.relyingparty.StartTransactionResponse;
+import com.bankid.codefront.rpstub.Fault;
+import com.bankid.codefront.rpstub.RpStubEndpoint;
+import com.bankid.codefront.rpstub.RpStubServer;
+import com.bankid.codefront.rpstub.Scenario;
+import com.bankid.codefront.service.TimingWheel;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.util.Base64;
+
+/**
+ * Test the RP api end to end over mTLS against the local RP stub.
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@SuppressWarnings("checkstyle:magicnumber")
+public class RpApiStubTest {
+
+    private static final String CLIENT_IP = "127.0.0.1";
+
+    private RpStubServer stub;
+    private BankIDRelyingPartyConfig settings;
+    private RpApiMetrics metrics;
+    private RpApi rpApi;
+
+    /**
+     * Starts the stub and points the RP api at it.
+     */
+    @BeforeAll
+    public void setup() throws IOException {
+        this.stub = new RpStubServer(0);
+        this.stub.start();
+
+        this.settings = new BankIDRelyingPartyConfig();
+        this.settings.setUrl(this.stub.getUrl());
+        this.settings.setClientCertStorePath("certificates/test/FPTestcert5_20240610.p12");
+        this.settings.setClientCertStorePassword("qwerty123");
+        this.settings.setTrustStorePath("certificates/stub/truststore.p12");
+        this.settings.setTrustStorePassword("qwerty123");
+        // Every collect steps the scenario
+        this.settings.getCollectCache().setEnabled(false);
+
+        this.metrics = Mockito.mock(RpApiMetrics.class);
+        ConcurrencyLimiters concurrencyLimiters = new ConcurrencyLimiters(this.settings, this.metrics);
+        this.rpApi = new RpApi(
+            this.settings,
+            this.metrics,
+            new RpJsonCodec(),
+            new RetryPolicy(this.settings, this.metrics),
+            new CircuitBreakers(this.settings, this.metrics, Clock.systemUTC()),
+            new Bulkheads(this.settings, this.metrics, concurrencyLimiters),
+            concurrencyLimiters,
+            new CollectHedging(this.settings, this.metrics),
+            new CollectCache(this.settings, this.metrics, Mockito.mock(TimingWheel.class)));
+    }
+
+    /**
+     * Stops the stub.
+     */
+    @AfterAll
+    public void stop() {
+        this.stub.close();
+    }
+
+    /**
+     * An authentication progresses through the scenario and completes with a parsable signature.
+     */
+    @Test
+    public void authenticate() throws SignatureParseException {
+        this.stub.addScriptedScenario(Scenario.parse("pending:outstandingTransaction,pending:userSign,complete"));
+
+        StartTransactionResponse response = this.rpApi.startAuthentication(CLIENT_IP);
+        Assertions.assertNotNull(response);
+        Assertions.assertNotNull(response.getQrStartSecret());
+
+        Assertions.assertEquals("outstandingTransaction", this.rpApi.collect(response.getOrderRef()).getHintCode());
+        Assertions.assertEquals("userSign", this.rpApi.collect(response.getOrderRef()).getHintCode());
+
+        CollectResponse complete = this.rpApi.collect(response.getOrderRef());
+        Assertions.assertEquals("complete", complete.getStatus());
+        Assertions.assertEquals("Tolvan Tolvansson", complete.getCompletionData().getUser().getName());
+        Assertions.assertEquals(CLIENT_IP, complete.getCompletionData().getDevice().getIpAddress());
+
+        DigitalSignature signature = new DigitalSignature(
+            new Base64String(complete.getCompletionData().getSignature()));
+        Assertions.assertEquals("Identification", signature.getSignatureUsage());
+    }
+
+    /**
+     * A signature carries the user visible data into the signature XML, and a cancelled order is gone.
+     */
+    @Test
+    public void signAndCancel() throws SignatureParseException {
+        this.stub.addScriptedScenario(Scenario.parse("complete"));
+        String visibleData = Base64.getEncoder().encodeToString("signera".getBytes(StandardCharsets.UTF_8));
+
+        StartTransactionResponse response = this.rpApi.startSignature(
+            new StartSignatureRequest(CLIENT_IP, new Base64String(visibleData)));
+        CollectResponse complete = this.rpApi.collect(response.getOrderRef());
+
+        DigitalSignature signature = new DigitalSignature(
+            new Base64String(complete.getCompletionData().getSignature()));
+        Assertions.assertEquals("Signing", signature.getSignatureUsage());
+        Assertions.assertEquals(visibleData, signature.getUserVisibleData());
+
+        Assertions.assertTrue(this.rpApi.cancel(response.getOrderRef()));
+        Assertions.assertFalse(this.rpApi.cancel(response.getOrderRef()));
+    }
+
+    /**
+     * Collect is retried when the RP is in maintenance.
+     */
+    @Test
+    public void retryCollectOnMaintenance() {
+        StartTransactionResponse response = this.rpApi.startAuthentication(CLIENT_IP);
+        long collects = this.stub.getRequestCount(RpStubEndpoint.COLLECT);
+
+        this.stub.setFault(RpStubEndpoint.COLLECT, Fault.error(1.0, 503, "maintenance", "Maintenance"));
+        try {
+            Assertions.assertNull(this.rpApi.collect(response.getOrderRef()));
+        } finally {
+            this.stub.setFault(RpStubEndpoint.COLLECT, null);
+        }
+
+        Assertions.assertEquals(
+            collects + this.settings.getRetry().getMaxAttempts(),
+            this.stub.getRequestCount(RpStubEndpoint.COLLECT));
+        Mockito.verify(this.metrics, Mockito.times(this.settings.getRetry().getMaxAttempts()))
+            .recordRequest(Mockito.eq(RpEndpoint.COLLECT), Mockito.eq(503), Mockito.anyLong());
+    }
+}
@@ -34,20 +34,39 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 package com.bankid.codefront.bankid.relyingparty;
 
 import com.bankid.codefront.bankid.relyingparty.metrics.RpApiMetrics;
+import com.bankid.codefront.bankid.relyingparty.resilience.Bulkheads;
+import com.bankid.codefront.bankid.relyingparty.resilience.CircuitBreakers;
+import com.bankid.codefront.bankid.relyingparty.resilience.CollectHedging;
+import com.bankid.codefront.bankid.relyingparty.resilience.ConcurrencyLimiters;
+import com.bankid.codefront.bankid.relyingparty.resilience.RetryPolicy;
+import com.bankid.codefront.bankid.relyingparty.resilience.RpApiRejectedException;
+import com.bankid.codefront.config.RpBulkheadConfig;
+import com.bankid.codefront.config.RpCircuitBreakerConfig;
 import com.bankid.codefront.config.BankIDRelyingPartyConfig;
+import com.bankid.codefront.config.RpConcurrencyLimitConfig;
 import com.bankid.codefront.models.Base64String;
 import com.bankid.codefront.models.bankid.relyingparty.CollectResponse;
 import com.bankid.codefront.models.bankid.relyingparty.StartSignatureRequest;
 import com.bankid.codefront.models.bankid.relyingparty.StartTransactionResponse;
+import com.bankid.codefront.service.TimingWheel;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.when;
@@ -56,6 +75,7 @@ import static org.mockito.Mockito.when;
  * Test RP api.
  */
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@SuppressWarnings("checkstyle:magicnumber")
 public class RpApiTest {
 
     private static final String CLIENT_IP = "127.0.0.1";
@@ -81,19 +101,31 @@ public class RpApiTest {
 
                 // Set trust store
         when(this.settings.getTrustStorePath()).thenReturn(
-                "certificates/truststore.jks");
+                "certificates/test/truststore.p12");
         when(this.settings.getTrustStorePassword()).thenReturn("qwerty123");
         when(this.settings.getTrustStoreType()).thenReturn("JKS");
 
         // Set client certificates
         when(this.settings.getClientCertStorePath()).thenReturn(
-                "certificates/FPTestcert5_20240610.p12");
+                "certificates/test/FPTestcert5_20240610.p12");
         when(this.settings.getClientCertStorePassword()).thenReturn("qwerty123");
         when(this.settings.getClientCertStoreType()).thenReturn("PKCS12");
 
+        // Set timeouts
+        when(this.settings.getConnectTimeout()).thenReturn(5000);
+        when(this.settings.getReadTimeout()).thenReturn(5000);
+
+        ConcurrencyLimiters concurrencyLimiters = new ConcurrencyLimiters(this.settings, this.metrics);
         this.rpApi = new RpApi(
                 this.settings,
-                this.metrics);
+                this.metrics,
+                new RpJsonCodec(),
+                new RetryPolicy(this.settings, this.metrics),
+                new CircuitBreakers(this.settings, this.metrics, Clock.systemUTC()),
+                new Bulkheads(this.settings, this.metrics, concurrencyLimiters),
+                concurrencyLimiters,
+                new CollectHedging(this.settings, this.metrics),
+                new CollectCache(this.settings, this.metrics, Mockito.mock(TimingWheel.class)));
     }
 
     /**
@@ -170,4 +202,289 @@ public class RpApiTest {
         boolean cancelResponse = this.rpApi.cancel(response.getOrderRef());
         Assertions.assertTrue(cancelResponse);
     }
+
+    /**
+     * Collect asynchronously and parse the response.
+     */
+    @Test
+    public void collectAsync() {
+        RpApi api = this.createRpApi(CompletableFuture.completedFuture(
+            mockResponse(200, "{\"orderRef\":\"orderRef123\",\"status\":\"pending\","
+                + "\"hintCode\":\"outstandingTransaction\"}")));
+
+        CompletableFuture<CollectResponse> future = api.collectAsync("orderRef123");
+
+        CollectResponse collectResponse = future.join();
+        Assertions.assertNotNull(collectResponse);
+        Assertions.assertEquals("orderRef123", collectResponse.getOrderRef());
+        Assertions.assertEquals("pending", collectResponse.getStatus());
+        Assertions.assertEquals("outstandingTransaction", collectResponse.getHintCode());
+    }
+
+    /**
+     * Start asynchronously and parse the response.
+     */
+    @Test
+    public void startSignatureAsync() {
+        RpApi api = this.createRpApi(CompletableFuture.completedFuture(
+            mockResponse(200, "{\"orderRef\":\"orderRef123\",\"autoStartToken\":\"autoStart\","
+                + "\"qrStartToken\":\"qrToken\",\"qrStartSecret\":\"qrSecret\"}")));
+
+        StartSignatureRequest request = new StartSignatureRequest(CLIENT_IP, new Base64String(this.visibleData));
+        StartTransactionResponse response = api.startSignatureAsync(request).join();
+
+        Assertions.assertNotNull(response);
+        Assertions.assertEquals("orderRef123", response.getOrderRef());
+        Assertions.assertEquals("autoStart", response.getAutoStartToken());
+        Assertions.assertEquals("qrToken", response.getQrStartToken());
+        Assertions.assertEquals("qrSecret", response.getQrStartSecret());
+    }
+
+    /**
+     * An unexpected http status completes the future with null.
+     */
+    @Test
+    public void collectAsyncHttpError() {
+        RpApi api = this.createRpApi(CompletableFuture.completedFuture(
+            mockResponse(400, "{\"errorCode\":\"invalidParameters\"}")));
+
+        Assertions.assertNull(api.collectAsync("orderRef123").join());
+    }
+
+    /**
+     * An IO error completes the future with null or false instead of failing it.
+     */
+    @Test
+    public void asyncIoError() {
+        RpApi api = this.createRpApi(CompletableFuture.failedFuture(new IOException("connection reset")));
+
+        Assertions.assertNull(api.collectAsync("orderRef123").join());
+        Assertions.assertFalse(api.cancelAsync("orderRef123").join());
+        Assertions.assertNull(api.collect("orderRef123"));
+    }
+
+    /**
+     * A collect failing with a temporary error is retried, a start is not.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void retryCollectButNotStart() {
+        HttpResponse<byte[]> maintenance = mockResponse(503, "{\"errorCode\":\"maintenance\"}");
+        HttpResponse<byte[]> pending = mockResponse(200, "{\"orderRef\":\"orderRef123\",\"status\":\"pending\"}");
+
+        HttpClient httpClient = Mockito.mock(HttpClient.class);
+        when(httpClient.sendAsync(Mockito.any(HttpRequest.class), Mockito.any(HttpResponse.BodyHandler.class)))
+            .thenReturn(CompletableFuture.completedFuture(maintenance))
+            .thenReturn(CompletableFuture.completedFuture(pending))
+            .thenReturn(CompletableFuture.completedFuture(maintenance));
+        ConcurrencyLimiters concurrencyLimiters = new ConcurrencyLimiters(this.settings, this.metrics);
+        RpApi api = new RpApi(
+            this.settings,
+            this.metrics,
+            new RpJsonCodec(),
+            new RetryPolicy(this.settings, this.metrics),
+            new CircuitBreakers(this.settings, this.metrics, Clock.systemUTC()),
+            new Bulkheads(this.settings, this.metrics, concurrencyLimiters),
+            concurrencyLimiters,
+            new CollectHedging(this.settings, this.metrics),
+            new CollectCache(this.settings, this.metrics, Mockito.mock(TimingWheel.class)),
+            httpClient);
+
+        CollectResponse collectResponse = api.collectAsync("orderRef123").join();
+        Assertions.assertNotNull(collectResponse);
+        Assertions.assertEquals("pending", collectResponse.getStatus());
+
+        StartSignatureRequest request = new StartSignatureRequest(CLIENT_IP, new Base64String(this.visibleData));
+        Assertions.assertNull(api.startSignatureAsync(request).join());
+
+        Mockito.verify(httpClient, Mockito.times(3))
+            .sendAsync(Mockito.any(HttpRequest.class), Mockito.any(HttpResponse.BodyHandler.class));
+    }
+
+    /**
+     * Cancel asynchronously.
+     */
+    @Test
+    public void cancelAsync() {
+        RpApi api = this.createRpApi(CompletableFuture.completedFuture(mockResponse(200, "{}")));
+
+        Assertions.assertTrue(api.cancelAsync("orderRef123").join());
+    }
+
+    /**
+     * Warm-up opens one connection per request with HTTP/1.1 but only one with HTTP/2.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void warmUp() {
+        BankIDRelyingPartyConfig warmUpSettings = Mockito.mock(BankIDRelyingPartyConfig.class);
+        when(warmUpSettings.getUrl()).thenReturn("https://localhost/rp/v6.0");
+        when(warmUpSettings.getReadTimeout()).thenReturn(5000);
+
+        HttpResponse<byte[]> notAllowed = mockResponse(405, "");
+        HttpClient httpClient = Mockito.mock(HttpClient.class);
+        when(httpClient.sendAsync(Mockito.any(HttpRequest.class), Mockito.any(HttpResponse.BodyHandler.class)))
+            .thenReturn(CompletableFuture.completedFuture(notAllowed))
+            .thenReturn(CompletableFuture.failedFuture(new IOException("connection refused")))
+            .thenReturn(CompletableFuture.completedFuture(notAllowed));
+
+        when(warmUpSettings.getHttpVersion()).thenReturn(HttpClient.Version.HTTP_1_1);
+        ConcurrencyLimiters concurrencyLimiters = new ConcurrencyLimiters(warmUpSettings, this.metrics);
+        RpApi api = new RpApi(
+            warmUpSettings,
+            this.metrics,
+            new RpJsonCodec(),
+            new RetryPolicy(warmUpSettings, this.metrics),
+            new CircuitBreakers(warmUpSettings, this.metrics, Clock.systemUTC()),
+            new Bulkheads(warmUpSettings, this.metrics, concurrencyLimiters),
+            concurrencyLimiters,
+            new CollectHedging(warmUpSettings, this.metrics),
+            new CollectCache(warmUpSettings, this.metrics, Mockito.mock(TimingWheel.class)),
+            httpClient);
+        Assertions.assertEquals(2, api.warmUpAsync(3).join());
+        Mockito.verify(httpClient, Mockito.times(3))
+            .sendAsync(Mockito.any(HttpRequest.class), Mockito.any(HttpResponse.BodyHandler.class));
+
+        when(warmUpSettings.getHttpVersion()).thenReturn(HttpClient.Version.HTTP_2);
+        Assertions.assertEquals(1, api.warmUpAsync(3).join());
+        Mockito.verify(httpClient, Mockito.times(4))
+            .sendAsync(Mockito.any(HttpRequest.class), Mockito.any(HttpResponse.BodyHandler.class));
+    }
+
+    /**
+     * An open circuit breaker rejects calls without sending them.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void openCircuitBreakerRejects() {
+        RpCircuitBreakerConfig breakerSettings = new RpCircuitBreakerConfig();
+        breakerSettings.setWindowSize(2);
+        breakerSettings.setMinimumCalls(2);
+        BankIDRelyingPartyConfig breakerRpSettings = Mockito.mock(BankIDRelyingPartyConfig.class);
+        when(breakerRpSettings.getUrl()).thenReturn("https://localhost/rp/v6.0");
+        when(breakerRpSettings.getReadTimeout()).thenReturn(5000);
+        when(breakerRpSettings.getCircuitBreaker()).thenReturn(breakerSettings);
+
+        HttpResponse<byte[]> internalError = mockResponse(500, "{\"errorCode\":\"internalError\"}");
+        HttpClient httpClient = Mockito.mock(HttpClient.class);
+        when(httpClient.sendAsync(Mockito.any(HttpRequest.class), Mockito.any(HttpResponse.BodyHandler.class)))
+            .thenReturn(CompletableFuture.completedFuture(internalError));
+
+        ConcurrencyLimiters concurrencyLimiters = new ConcurrencyLimiters(breakerRpSettings, this.metrics);
+        RpApi api = new RpApi(
+            breakerRpSettings,
+            this.metrics,
+            new RpJsonCodec(),
+            new RetryPolicy(breakerRpSettings, this.metrics),
+            new CircuitBreakers(breakerRpSettings, this.metrics, Clock.systemUTC()),
+            new Bulkheads(breakerRpSettings, this.metrics, concurrencyLimiters),
+            concurrencyLimiters,
+            new CollectHedging(breakerRpSettings, this.metrics),
+            new CollectCache(breakerRpSettings, this.metrics, Mockito.mock(TimingWheel.class)),
+            httpClient);
+
+        StartSignatureRequest request = new StartSignatureRequest(CLIENT_IP, new Base64String(this.visibleData));
+        Assertions.assertNull(api.startSignature(request));
+        Assertions.assertNull(api.startSignature(request));
+
+        RpApiRejectedException exception = Assertions.assertThrows(
+            RpApiRejectedException.class,
+            () -> api.startSignature(request));
+        Assertions.assertEquals(RpEndpoint.SIGN, exception.getEndpoint());
+        Assertions.assertEquals(RpApiRejectedException.Reason.CIRCUIT_OPEN, exception.getReason());
+        Mockito.verify(httpClient, Mockito.times(2))
+            .sendAsync(Mockito.any(HttpRequest.class), Mockito.any(HttpResponse.BodyHandler.class));
+
+        // Other endpoints have their own breaker
+        Assertions.assertFalse(api.cancel("orderRef123"));
+    }
+
+    /**
+     * Collects over their concurrency limit wait in the collect bulkhead instead of being rejected,
+     * and do not hold back starting orders, which have their own limit.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void saturatedCollectsWaitAndDoNotRejectStart() throws IOException {
+        RpConcurrencyLimitConfig limitSettings = new RpConcurrencyLimitConfig();
+        limitSettings.setInitialLimit(2);
+        limitSettings.setMinLimit(1);
+        BankIDRelyingPartyConfig limitRpSettings = Mockito.mock(BankIDRelyingPartyConfig.class);
+        when(limitRpSettings.getUrl()).thenReturn("https://localhost/rp/v6.0");
+        when(limitRpSettings.getReadTimeout()).thenReturn(5000);
+        when(limitRpSettings.getConcurrencyLimit()).thenReturn(limitSettings);
+        when(limitRpSettings.getCollectBulkhead()).thenReturn(new RpBulkheadConfig(100, 10));
+
+        HttpResponse<byte[]> started = mockResponse(200, "{\"orderRef\":\"orderRef123\","
+            + "\"autoStartToken\":\"autoStart\",\"qrStartToken\":\"qrToken\",\"qrStartSecret\":\"qrSecret\"}");
+        List<CompletableFuture<HttpResponse<byte[]>>> collects = new ArrayList<>();
+        HttpClient httpClient = Mockito.mock(HttpClient.class);
+        when(httpClient.sendAsync(Mockito.any(HttpRequest.class), Mockito.any(HttpResponse.BodyHandler.class)))
+            .thenAnswer(invocation -> {
+                if (!invocation.<HttpRequest>getArgument(0).uri().getPath().endsWith("/collect")) {
+                    return CompletableFuture.completedFuture(started);
+                }
+                CompletableFuture<HttpResponse<byte[]>> collect = new CompletableFuture<>();
+                collects.add(collect);
+                return collect;
+            });
+
+        ConcurrencyLimiters concurrencyLimiters = new ConcurrencyLimiters(limitRpSettings, this.metrics);
+        RpApi api = new RpApi(
+            limitRpSettings,
+            this.metrics,
+            new RpJsonCodec(),
+            new RetryPolicy(limitRpSettings, this.metrics),
+            new CircuitBreakers(limitRpSettings, this.metrics, Clock.systemUTC()),
+            new Bulkheads(limitRpSettings, this.metrics, concurrencyLimiters),
+            concurrencyLimiters,
+            new CollectHedging(limitRpSettings, this.metrics),
+            new CollectCache(limitRpSettings, this.metrics, Mockito.mock(TimingWheel.class)),
+            httpClient);
+
+        api.collectAsync("orderRef1");
+        api.collectAsync("orderRef2");
+        CompletableFuture<CollectResponse> waiting = api.collectAsync("orderRef3");
+        Assertions.assertFalse(waiting.isDone());
+        Assertions.assertEquals(2, collects.size());
+
+        StartTransactionResponse response = api.startAuthentication(CLIENT_IP);
+        Assertions.assertNotNull(response);
+        Assertions.assertEquals("orderRef123", response.getOrderRef());
+
+        // The waiting collect is sent when a running collect completes
+        collects.get(0).complete(mockResponse(200, "{\"orderRef\":\"orderRef1\",\"status\":\"pending\","
+            + "\"hintCode\":\"outstandingTransaction\"}"));
+        Assertions.assertEquals(3, collects.size());
+        Assertions.assertFalse(waiting.isDone());
+    }
+
+    @SuppressWarnings("unchecked")
+    private RpApi createRpApi(CompletableFuture<HttpResponse<byte[]>> result) {
+        HttpClient httpClient = Mockito.mock(HttpClient.class);
+        when(httpClient.sendAsync(Mockito.any(HttpRequest.class), Mockito.any(HttpResponse.BodyHandler.class)))
+            .thenReturn(result);
+
+        ConcurrencyLimiters concurrencyLimiters = new ConcurrencyLimiters(this.settings, this.metrics);
+        return new RpApi(
+            this.settings,
+            this.metrics,
+            new RpJsonCodec(),
+            new RetryPolicy(this.settings, this.metrics),
+            new CircuitBreakers(this.settings, this.metrics, Clock.systemUTC()),
+            new Bulkheads(this.settings, this.metrics, concurrencyLimiters),
+            concurrencyLimiters,
+            new CollectHedging(this.settings, this.metrics),
+            new CollectCache(this.settings, this.metrics, Mockito.mock(TimingWheel.class)),
+            httpClient);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static HttpResponse<byte[]> mockResponse(int statusCode, String body) {
+        HttpResponse<byte[]> response = Mockito.mock(HttpResponse.class);
+        when(response.statusCode()).thenReturn(statusCode);
+        Mockito.lenient().when(response.body()).thenReturn(body.getBytes(StandardCharsets.UTF_8));
+
+        return response;
+    }
 }
@@ -0,0 +1,103 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.bankid.relyingparty;
+
+import com.bankid.codefront.models.bankid.relyingparty.CollectRequest;
+import com.bankid.codefront.models.bankid.relyingparty.CollectResponse;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares a collect round trip through a new mapper and String bodies, as RpApi used to do,
+ * with the shared RpJsonCodec and byte bodies.
+ * Run with: mvn -Pbenchmark -Dbenchmark=RpJsonCodecBenchmark test
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@SuppressWarnings("checkstyle:magicnumber")
+public class RpJsonCodecBenchmark {
+
+    private static final String ORDER_REF = "131daac9-16c6-4618-beb0-365768f37288";
+    private static final byte[] COLLECT_RESPONSE = ("{\"orderRef\":\"" + ORDER_REF + "\","
+        + "\"status\":\"pending\",\"hintCode\":\"outstandingTransaction\"}").getBytes(StandardCharsets.UTF_8);
+
+    private final RpJsonCodec codec = new RpJsonCodec();
+
+    /**
+     * Collect round trip with a new mapper per call and String bodies.
+     * @return the parsed response.
+     * @throws IOException if the json could not be handled.
+     */
+    @Benchmark
+    public CollectResponse newMapperAndString() throws IOException {
+        ObjectMapper mapper = JsonMapper.builder()
+            .enable(MapperFeature.ACCEPT_CASE_INSENSITIVE_ENUMS)
+            .build();
+        String request = mapper.writeValueAsString(new CollectRequest(ORDER_REF));
+        byte[] requestBody = request.getBytes(StandardCharsets.UTF_8);
+        String response = new String(COLLECT_RESPONSE, StandardCharsets.UTF_8);
+
+        return requestBody.length > 0 ? mapper.readValue(response, CollectResponse.class) : null;
+    }
+
+    /**
+     * Collect round trip with the shared codec and byte bodies.
+     * @return the parsed response.
+     * @throws IOException if the json could not be handled.
+     */
+    @Benchmark
+    public CollectResponse sharedCodecAndBytes() throws IOException {
+        byte[] requestBody = this.codec.write(new CollectRequest(ORDER_REF));
+
+        return requestBody.length > 0 ? this.codec.readCollectResponse(COLLECT_RESPONSE) : null;
+    }
+}
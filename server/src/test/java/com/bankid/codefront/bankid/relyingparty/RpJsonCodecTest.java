@@ -0,0 +1,148 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.bankid.relyingparty;
+
+import com.bankid.codefront.models.Base64String;
+import com.bankid.codefront.models.bankid.relyingparty.CollectRequest;
+import com.bankid.codefront.models.bankid.relyingparty.CollectResponse;
+import com.bankid.codefront.models.bankid.relyingparty.RiskLevel;
+import com.bankid.codefront.models.bankid.relyingparty.StartSignatureRequest;
+import com.bankid.codefront.models.bankid.relyingparty.StartTransactionResponse;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Test the RP json codec.
+ */
+public class RpJsonCodecTest {
+
+    private final RpJsonCodec codec = new RpJsonCodec();
+
+    /**
+     * Serialize requests to bytes.
+     */
+    @Test
+    public void writeRequests() throws IOException {
+        Assertions.assertEquals(
+            "{\"orderRef\":\"131daac9-16c6-4618-beb0-365768f37288\"}",
+            new String(
+                this.codec.write(new CollectRequest("131daac9-16c6-4618-beb0-365768f37288")),
+                StandardCharsets.UTF_8));
+
+        StartSignatureRequest request = new StartSignatureRequest("127.0.0.1", new Base64String("dGVzdA=="));
+        Assertions.assertEquals(
+            "{\"endUserIp\":\"127.0.0.1\",\"userVisibleData\":\"dGVzdA==\",\"returnRisk\":true}",
+            new String(this.codec.write(request), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Parse a start transaction response from bytes.
+     */
+    @Test
+    public void readStartTransactionResponse() throws IOException {
+        String json = """
+            {
+                "orderRef": "131daac9-16c6-4618-beb0-365768f37288",
+                "autoStartToken": "7c40b5c9-fa74-49cf-b98c-bfe651f9a7c6",
+                "qrStartToken": "67df3917-fa0d-44e5-b327-edcc928297f8",
+                "qrStartSecret": "d28db9a7-4cde-429e-a983-359be676944c",
+                "unknownField": true
+            }
+        """;
+
+        StartTransactionResponse response =
+            this.codec.readStartTransactionResponse(json.getBytes(StandardCharsets.UTF_8));
+
+        Assertions.assertEquals("131daac9-16c6-4618-beb0-365768f37288", response.getOrderRef());
+        Assertions.assertEquals("7c40b5c9-fa74-49cf-b98c-bfe651f9a7c6", response.getAutoStartToken());
+        Assertions.assertEquals("67df3917-fa0d-44e5-b327-edcc928297f8", response.getQrStartToken());
+        Assertions.assertEquals("d28db9a7-4cde-429e-a983-359be676944c", response.getQrStartSecret());
+    }
+
+    /**
+     * Parse a collect response with case-insensitive enums from bytes.
+     */
+    @Test
+    public void readCollectResponse() throws IOException {
+        String json = """
+            {
+                "orderRef": "131daac9-16c6-4618-beb0-365768f37288",
+                "status": "complete",
+                "completionData": {
+                    "risk": "low"
+                }
+            }
+        """;
+
+        CollectResponse response = this.codec.readCollectResponse(json.getBytes(StandardCharsets.UTF_8));
+
+        Assertions.assertEquals("131daac9-16c6-4618-beb0-365768f37288", response.getOrderRef());
+        Assertions.assertEquals("complete", response.getStatus());
+        Assertions.assertEquals(RiskLevel.LOW, response.getCompletionData().getRisk());
+    }
+
+    /**
+     * A serialized collect response reads back to the same response.
+     */
+    @Test
+    public void writeCollectResponse() throws IOException {
+        String json = """
+            {
+                "orderRef": "131daac9-16c6-4618-beb0-365768f37288",
+                "status": "complete",
+                "completionData": {
+                    "user": {
+                        "personalNumber": "190000000000",
+                        "name": "Karl Karlsson"
+                    },
+                    "signature": "PHNpZ25hdHVyZT48L3NpZ25hdHVyZT4=",
+                    "risk": "low"
+                }
+            }
+        """;
+        CollectResponse response = this.codec.readCollectResponse(json.getBytes(StandardCharsets.UTF_8));
+
+        CollectResponse copy = this.codec.readCollectResponse(this.codec.write(response));
+
+        Assertions.assertEquals(response.getOrderRef(), copy.getOrderRef());
+        Assertions.assertEquals(response.getStatus(), copy.getStatus());
+        Assertions.assertEquals("Karl Karlsson", copy.getCompletionData().getUser().getName());
+        Assertions.assertEquals("190000000000", copy.getCompletionData().getUser().getPersonalNumber());
+        Assertions.assertEquals(response.getCompletionData().getSignature(), copy.getCompletionData().getSignature());
+        Assertions.assertEquals(RiskLevel.LOW, copy.getCompletionData().getRisk());
+    }
+}
@@ -0,0 +1,115 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.bankid.relyingparty.metrics;
+
+import com.bankid.codefront.bankid.relyingparty.RpEndpoint;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test the RP api metrics.
+ */
+@SuppressWarnings("checkstyle:magicnumber")
+public class RpApiMetricsTest {
+    private static final String PREFIX = com.bankid.codefront.config.Metrics.BASE_METRICS_PREFIX + "bankid.rp.";
+
+    private SimpleMeterRegistry registry;
+
+    /**
+     * Adds a registry to read the metrics from.
+     */
+    @BeforeEach
+    public void addRegistry() {
+        this.registry = new SimpleMeterRegistry();
+        Metrics.globalRegistry.add(this.registry);
+    }
+
+    /**
+     * Removes the registry.
+     */
+    @AfterEach
+    public void removeRegistry() {
+        Metrics.globalRegistry.remove(this.registry);
+        this.registry.close();
+    }
+
+    /**
+     * Requests are recorded by endpoint, outcome and status class in timers registered up front.
+     */
+    @Test
+    public void recordRequest() {
+        RpApiMetrics metrics = new RpApiMetrics();
+        Timer collectNotFound = this.registry.get(PREFIX + "request")
+            .tags("endpoint", "collect", "outcome", "failure", "status", "4xx")
+            .timer();
+        Assertions.assertEquals(0, collectNotFound.count());
+
+        metrics.recordRequest(RpEndpoint.AUTH, 200, TimeUnit.MILLISECONDS.toNanos(120));
+        metrics.recordRequest(RpEndpoint.COLLECT, 400, TimeUnit.MILLISECONDS.toNanos(30));
+        metrics.recordRequest(RpEndpoint.COLLECT, 0, TimeUnit.MILLISECONDS.toNanos(5000));
+
+        Timer authOk = this.registry.get(PREFIX + "request")
+            .tags("endpoint", "auth", "outcome", "success", "status", "2xx")
+            .timer();
+        Assertions.assertEquals(1, authOk.count());
+        Assertions.assertEquals(120, authOk.totalTime(TimeUnit.MILLISECONDS), 0.001);
+        Assertions.assertEquals(1, collectNotFound.count());
+        Assertions.assertEquals(1, this.registry.get(PREFIX + "request")
+            .tags("endpoint", "collect", "outcome", "error", "status", "none")
+            .timer()
+            .count());
+    }
+
+    /**
+     * Successful and failed connection checks are recorded in their own meters.
+     */
+    @Test
+    public void connectionCheck() {
+        RpApiMetrics metrics = new RpApiMetrics();
+        double failedBefore = this.registry.get(PREFIX + "connCheck.failed").counter().count();
+
+        metrics.successConnectionCheck(TimeUnit.MILLISECONDS.toNanos(10));
+
+        Assertions.assertEquals(1, this.registry.get(PREFIX + "connCheck.success").counter().count());
+        Assertions.assertEquals(1, this.registry.get(PREFIX + "connCheck.timer.success").timer().count());
+        Assertions.assertEquals(failedBefore, this.registry.get(PREFIX + "connCheck.failed").counter().count());
+    }
+}
@@ -0,0 +1,241 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.bankid.relyingparty.resilience;
+
+import com.bankid.codefront.bankid.relyingparty.RpEndpoint;
+import com.bankid.codefront.bankid.relyingparty.metrics.RpApiMetrics;
+import com.bankid.codefront.config.BankIDRelyingPartyConfig;
+import com.bankid.codefront.config.RpBulkheadConfig;
+import com.bankid.codefront.config.RpConcurrencyLimitConfig;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test the bulkheads.
+ */
+@SuppressWarnings("checkstyle:magicnumber")
+public class BulkheadTest {
+
+    /**
+     * Calls over the limit wait in the queue and are rejected when the queue is full.
+     */
+    @Test
+    public void limitQueueAndReject() {
+        Bulkhead bulkhead = new Bulkhead(2, 1);
+        CompletableFuture<String> first = new CompletableFuture<>();
+        CompletableFuture<String> second = new CompletableFuture<>();
+        CompletableFuture<String> third = new CompletableFuture<>();
+
+        CompletableFuture<String> firstResult =
+            bulkhead.submit(() -> first, IllegalStateException::new, IllegalStateException::new);
+        CompletableFuture<String> secondResult =
+            bulkhead.submit(() -> second, IllegalStateException::new, IllegalStateException::new);
+        CompletableFuture<String> thirdResult =
+            bulkhead.submit(() -> third, IllegalStateException::new, IllegalStateException::new);
+        CompletableFuture<String> rejected = bulkhead.submit(
+            () -> CompletableFuture.completedFuture("never"),
+            IllegalStateException::new,
+            IllegalStateException::new);
+
+        Assertions.assertEquals(2, bulkhead.getInFlight());
+        Assertions.assertEquals(1, bulkhead.getQueued());
+        CompletionException exception = Assertions.assertThrows(CompletionException.class, rejected::join);
+        Assertions.assertInstanceOf(IllegalStateException.class, exception.getCause());
+
+        // The waiting call takes the slot of the first completed call
+        first.complete("first");
+        Assertions.assertEquals("first", firstResult.join());
+        Assertions.assertEquals(2, bulkhead.getInFlight());
+        Assertions.assertEquals(0, bulkhead.getQueued());
+
+        second.completeExceptionally(new IllegalArgumentException("failed"));
+        third.complete("third");
+        Assertions.assertThrows(CompletionException.class, secondResult::join);
+        Assertions.assertEquals("third", thirdResult.join());
+        Assertions.assertEquals(0, bulkhead.getInFlight());
+    }
+
+    /**
+     * A call that throws when it is started releases its slot.
+     */
+    @Test
+    public void releaseOnException() {
+        Bulkhead bulkhead = new Bulkhead(1, 0);
+
+        CompletableFuture<String> result = bulkhead.submit(
+            () -> {
+                throw new IllegalStateException("failed");
+            },
+            IllegalArgumentException::new,
+            IllegalArgumentException::new);
+
+        Assertions.assertThrows(CompletionException.class, result::join);
+        Assertions.assertEquals(0, bulkhead.getInFlight());
+    }
+
+    /**
+     * Waiting calls that complete at once are started in a loop, not recursively on the releasing thread.
+     */
+    @Test
+    public void drainIteratively() {
+        int waitingCalls = 10000;
+        Bulkhead bulkhead = new Bulkhead(1, waitingCalls);
+        CompletableFuture<String> first = new CompletableFuture<>();
+        bulkhead.submit(() -> first, IllegalStateException::new, IllegalStateException::new);
+
+        AtomicInteger maxDepth = new AtomicInteger();
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        for (int i = 0; i < waitingCalls; i++) {
+            boolean fail = i % 2 == 0;
+            results.add(bulkhead.submit(
+                () -> {
+                    maxDepth.accumulateAndGet(Thread.currentThread().getStackTrace().length, Math::max);
+                    if (fail) {
+                        throw new IllegalArgumentException("failed");
+                    }
+                    return CompletableFuture.completedFuture("done");
+                },
+                IllegalStateException::new,
+                IllegalStateException::new));
+        }
+        int releaseDepth = Thread.currentThread().getStackTrace().length;
+
+        first.complete("first");
+
+        Assertions.assertTrue(results.stream().allMatch(CompletableFuture::isDone));
+        Assertions.assertTrue(maxDepth.get() < releaseDepth + 50, "Depth " + maxDepth.get());
+        Assertions.assertEquals(0, bulkhead.getInFlight());
+        Assertions.assertEquals(0, bulkhead.getQueued());
+    }
+
+    /**
+     * A call that waits longer than the max wait fails and is never started.
+     */
+    @Test
+    public void failAfterMaxWait() {
+        Bulkhead bulkhead = new Bulkhead(1, 1, 20);
+        CompletableFuture<String> first = new CompletableFuture<>();
+        AtomicInteger started = new AtomicInteger();
+        bulkhead.submit(() -> first, IllegalStateException::new, IllegalStateException::new);
+
+        CompletableFuture<String> waiting = bulkhead.submit(
+            () -> {
+                started.incrementAndGet();
+                return CompletableFuture.completedFuture("never");
+            },
+            IllegalStateException::new,
+            IllegalArgumentException::new);
+
+        CompletionException exception = Assertions.assertThrows(CompletionException.class, waiting::join);
+        Assertions.assertInstanceOf(IllegalArgumentException.class, exception.getCause());
+        Assertions.assertEquals(0, bulkhead.getQueued());
+
+        first.complete("first");
+        Assertions.assertEquals(0, started.get());
+        Assertions.assertEquals(0, bulkhead.getInFlight());
+    }
+
+    /**
+     * Calls over the adaptive limit wait in the queue like calls over max concurrent, and are started when the
+     * limit has a free slot.
+     */
+    @Test
+    public void queueOverAdaptiveLimit() {
+        RpConcurrencyLimitConfig limitSettings = new RpConcurrencyLimitConfig();
+        limitSettings.setInitialLimit(1);
+        limitSettings.setMinLimit(1);
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(limitSettings);
+        Bulkhead bulkhead = new Bulkhead(10, 1, 0, limiter);
+        CompletableFuture<String> first = new CompletableFuture<>();
+        CompletableFuture<String> second = new CompletableFuture<>();
+
+        bulkhead.submit(() -> first, IllegalStateException::new, IllegalStateException::new);
+        CompletableFuture<String> secondResult =
+            bulkhead.submit(() -> second, IllegalStateException::new, IllegalStateException::new);
+        CompletableFuture<String> rejected = bulkhead.submit(
+            () -> CompletableFuture.completedFuture("never"),
+            IllegalStateException::new,
+            IllegalStateException::new);
+
+        Assertions.assertEquals(1, bulkhead.getInFlight());
+        Assertions.assertEquals(1, bulkhead.getQueued());
+        Assertions.assertEquals(1, limiter.getInFlight());
+        Assertions.assertThrows(CompletionException.class, rejected::join);
+
+        first.complete("first");
+        Assertions.assertEquals(1, bulkhead.getInFlight());
+        Assertions.assertEquals(0, bulkhead.getQueued());
+        Assertions.assertEquals(1, limiter.getInFlight());
+
+        second.complete("second");
+        Assertions.assertEquals("second", secondResult.join());
+        Assertions.assertEquals(0, bulkhead.getInFlight());
+        Assertions.assertEquals(0, limiter.getInFlight());
+    }
+
+    /**
+     * Start, collect and cancel calls have separate bulkheads, auth and sign share one.
+     */
+    @Test
+    public void separateBulkheads() {
+        BankIDRelyingPartyConfig settings = new BankIDRelyingPartyConfig();
+        settings.setStartBulkhead(new RpBulkheadConfig(1, 0));
+        settings.setCollectBulkhead(new RpBulkheadConfig(1, 0));
+        settings.setCancelBulkhead(new RpBulkheadConfig(1, 0));
+        RpApiMetrics metrics = Mockito.mock(RpApiMetrics.class);
+        Bulkheads bulkheads = new Bulkheads(settings, metrics, new ConcurrencyLimiters(settings, metrics));
+
+        CompletableFuture<String> collect = bulkheads.execute(RpEndpoint.COLLECT, CompletableFuture::new);
+        CompletableFuture<String> auth = bulkheads.execute(RpEndpoint.AUTH, CompletableFuture::new);
+        CompletableFuture<String> sign = bulkheads.execute(RpEndpoint.SIGN, CompletableFuture::new);
+        CompletableFuture<String> cancel = bulkheads.execute(RpEndpoint.CANCEL, CompletableFuture::new);
+
+        Assertions.assertFalse(collect.isDone());
+        Assertions.assertFalse(auth.isDone());
+        Assertions.assertFalse(cancel.isDone());
+
+        CompletionException exception = Assertions.assertThrows(CompletionException.class, sign::join);
+        RpApiRejectedException rejected = (RpApiRejectedException) exception.getCause();
+        Assertions.assertEquals(RpEndpoint.SIGN, rejected.getEndpoint());
+        Assertions.assertEquals(RpApiRejectedException.Reason.BULKHEAD_FULL, rejected.getReason());
+        Mockito.verify(metrics).bulkheadRejected(RpEndpoint.SIGN);
+    }
+}
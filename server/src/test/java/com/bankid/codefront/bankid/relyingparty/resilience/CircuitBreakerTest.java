@@ -0,0 +1,179 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.bankid.relyingparty.resilience;
+
+import com.bankid.codefront.bankid.relyingparty.RpEndpoint;
+import com.bankid.codefront.bankid.relyingparty.metrics.RpApiMetrics;
+import com.bankid.codefront.config.BankIDRelyingPartyConfig;
+import com.bankid.codefront.config.RpCircuitBreakerConfig;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+
+import java.time.Clock;
+
+import static org.mockito.Mockito.when;
+
+/**
+ * Test the circuit breaker.
+ */
+@SuppressWarnings("checkstyle:magicnumber")
+public class CircuitBreakerTest {
+    private Clock clock;
+    private RpCircuitBreakerConfig settings;
+
+    /**
+     * Common set-up code.
+     */
+    @BeforeEach
+    public void setup() {
+        this.clock = Mockito.mock(Clock.class);
+        when(this.clock.millis()).thenReturn(0L);
+
+        this.settings = new RpCircuitBreakerConfig();
+        this.settings.setWindowSize(10);
+        this.settings.setMinimumCalls(4);
+        this.settings.setFailureRateThreshold(50);
+        this.settings.setSlowCallDuration(1000);
+        this.settings.setSlowCallRateThreshold(75);
+        this.settings.setWaitDurationInOpenState(5000);
+        this.settings.setPermittedCallsInHalfOpenState(2);
+    }
+
+    /**
+     * The breaker opens when the failure rate reaches the threshold, but not before the minimum number of calls.
+     */
+    @Test
+    public void opensOnFailureRate() {
+        CircuitBreaker breaker = new CircuitBreaker(this.settings, this.clock);
+
+        this.call(breaker, 10, true);
+        this.call(breaker, 10, true);
+        this.call(breaker, 10, false);
+        Assertions.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        this.call(breaker, 10, false);
+        Assertions.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        Assertions.assertFalse(breaker.tryAcquirePermission());
+    }
+
+    /**
+     * The breaker opens when the slow call rate reaches the threshold.
+     */
+    @Test
+    public void opensOnSlowCallRate() {
+        CircuitBreaker breaker = new CircuitBreaker(this.settings, this.clock);
+
+        for (int i = 0; i < 10; i++) {
+            this.call(breaker, 10, false);
+        }
+        for (int i = 0; i < 7; i++) {
+            this.call(breaker, 2000, false);
+        }
+        Assertions.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        // 8 of the last 10 calls slow
+        this.call(breaker, 2000, false);
+        Assertions.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    /**
+     * After the wait duration a limited number of trial calls decide if the breaker closes or opens again.
+     */
+    @Test
+    public void halfOpen() {
+        CircuitBreaker breaker = new CircuitBreaker(this.settings, this.clock);
+        for (int i = 0; i < 4; i++) {
+            this.call(breaker, 10, true);
+        }
+        Assertions.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        when(this.clock.millis()).thenReturn(5000L);
+        Assertions.assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        Assertions.assertTrue(breaker.tryAcquirePermission());
+        Assertions.assertTrue(breaker.tryAcquirePermission());
+        Assertions.assertFalse(breaker.tryAcquirePermission());
+
+        // A failed trial opens the breaker again
+        breaker.onResult(10, false);
+        breaker.onResult(10, true);
+        Assertions.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        when(this.clock.millis()).thenReturn(10000L);
+        this.call(breaker, 10, false);
+        this.call(breaker, 10, false);
+        Assertions.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        Assertions.assertTrue(breaker.tryAcquirePermission());
+    }
+
+    /**
+     * The health indicator is down while any breaker is open, and disabled breakers never reject.
+     */
+    @Test
+    public void healthIndicator() {
+        BankIDRelyingPartyConfig rpSettings = new BankIDRelyingPartyConfig();
+        rpSettings.setCircuitBreaker(this.settings);
+        CircuitBreakers breakers = new CircuitBreakers(rpSettings, Mockito.mock(RpApiMetrics.class), this.clock);
+        CircuitBreakerHealthIndicator healthIndicator = new CircuitBreakerHealthIndicator(breakers);
+
+        Assertions.assertEquals(Status.UP, healthIndicator.health().getStatus());
+
+        for (int i = 0; i < 4; i++) {
+            Assertions.assertTrue(breakers.tryAcquirePermission(RpEndpoint.COLLECT));
+            breakers.onResult(RpEndpoint.COLLECT, 10, true);
+        }
+        Assertions.assertFalse(breakers.tryAcquirePermission(RpEndpoint.COLLECT));
+        Assertions.assertTrue(breakers.tryAcquirePermission(RpEndpoint.AUTH));
+
+        Health health = healthIndicator.health();
+        Assertions.assertEquals(Status.DOWN, health.getStatus());
+        Assertions.assertEquals(CircuitBreaker.State.OPEN, health.getDetails().get("collect"));
+        Assertions.assertEquals(CircuitBreaker.State.CLOSED, health.getDetails().get("auth"));
+
+        this.settings.setEnabled(false);
+        CircuitBreakers disabled = new CircuitBreakers(rpSettings, Mockito.mock(RpApiMetrics.class), this.clock);
+        for (int i = 0; i < 10; i++) {
+            Assertions.assertTrue(disabled.tryAcquirePermission(RpEndpoint.COLLECT));
+            disabled.onResult(RpEndpoint.COLLECT, 10, true);
+        }
+    }
+
+    private void call(CircuitBreaker breaker, long duration, boolean failed) {
+        Assertions.assertTrue(breaker.tryAcquirePermission());
+        breaker.onResult(duration, failed);
+    }
+}
@@ -0,0 +1,162 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.bankid.relyingparty.resilience;
+
+import com.bankid.codefront.bankid.relyingparty.metrics.RpApiMetrics;
+import com.bankid.codefront.config.BankIDRelyingPartyConfig;
+import com.bankid.codefront.config.RpHedgingConfig;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test hedging of collect calls.
+ */
+@SuppressWarnings("checkstyle:magicnumber")
+public class CollectHedgingTest {
+
+    /**
+     * Without latency samples, or when disabled, no second call is made.
+     */
+    @Test
+    public void noHedgeWithoutSamples() throws Exception {
+        RpApiMetrics metrics = Mockito.mock(RpApiMetrics.class);
+        CollectHedging hedging = createHedging(true, 0.05, metrics);
+        Assertions.assertEquals(-1, hedging.getHedgeDelay());
+
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<String> slow = new CompletableFuture<>();
+        CompletableFuture<String> result = hedging.execute(
+            () -> {
+                calls.incrementAndGet();
+                return slow;
+            },
+            value -> true);
+
+        TimeUnit.MILLISECONDS.sleep(50);
+        Assertions.assertEquals(1, calls.get());
+        slow.complete("ok");
+        Assertions.assertEquals("ok", result.join());
+
+        CollectHedging disabled = createHedging(false, 0.05, metrics);
+        prime(disabled);
+        Assertions.assertEquals(-1, disabled.getHedgeDelay());
+    }
+
+    /**
+     * A slow call is hedged and the hedge wins.
+     */
+    @Test
+    public void hedgeWins() {
+        RpApiMetrics metrics = Mockito.mock(RpApiMetrics.class);
+        CollectHedging hedging = createHedging(true, 0.05, metrics);
+        prime(hedging);
+        Assertions.assertEquals(10, hedging.getHedgeDelay());
+
+        CompletableFuture<String> slow = new CompletableFuture<>();
+        List<CompletableFuture<String>> calls = new ArrayList<>(
+            List.of(slow, CompletableFuture.completedFuture("hedge")));
+        CompletableFuture<String> result = hedging.execute(() -> calls.remove(0), value -> true);
+
+        Assertions.assertEquals("hedge", result.join());
+        Mockito.verify(metrics).collectHedgeFired();
+        Mockito.verify(metrics, Mockito.timeout(1000)).collectHedgeWon();
+    }
+
+    /**
+     * A failed first call waits for the hedge, and the last failure is returned when both fail.
+     */
+    @Test
+    public void bothFail() {
+        RpApiMetrics metrics = Mockito.mock(RpApiMetrics.class);
+        CollectHedging hedging = createHedging(true, 0.05, metrics);
+        prime(hedging);
+
+        CompletableFuture<String> first = new CompletableFuture<>();
+        CompletableFuture<String> second = new CompletableFuture<>();
+        List<CompletableFuture<String>> calls = new ArrayList<>(List.of(first, second));
+        CompletableFuture<String> result = hedging.execute(() -> calls.remove(0), value -> !value.equals("failed"));
+
+        Mockito.verify(metrics, Mockito.timeout(1000)).collectHedgeFired();
+        first.complete("failed");
+        Assertions.assertFalse(result.isDone());
+
+        second.completeExceptionally(new IllegalStateException("failed"));
+        Assertions.assertThrows(CompletionException.class, result::join);
+        Mockito.verify(metrics, Mockito.never()).collectHedgeWon();
+    }
+
+    /**
+     * The number of hedges is capped by the hedge rate.
+     */
+    @Test
+    public void hedgeRateCap() {
+        RpApiMetrics metrics = Mockito.mock(RpApiMetrics.class);
+        CollectHedging hedging = createHedging(true, 0.0, metrics);
+        prime(hedging);
+
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        for (int i = 0; i < 15; i++) {
+            results.add(hedging.execute(CompletableFuture::new, value -> true));
+        }
+
+        // Ten hedges can be saved up, none are earned with a zero rate
+        Mockito.verify(metrics, Mockito.timeout(1000).times(10)).collectHedgeFired();
+        Assertions.assertTrue(results.stream().noneMatch(CompletableFuture::isDone));
+    }
+
+    private static void prime(CollectHedging hedging) {
+        for (int i = 0; i < 20; i++) {
+            hedging.execute(() -> CompletableFuture.completedFuture("ok"), value -> true).join();
+        }
+    }
+
+    private static CollectHedging createHedging(boolean enabled, double maxHedgeRate, RpApiMetrics metrics) {
+        RpHedgingConfig hedgingSettings = new RpHedgingConfig();
+        hedgingSettings.setEnabled(enabled);
+        hedgingSettings.setMinDelay(10);
+        hedgingSettings.setMaxHedgeRate(maxHedgeRate);
+
+        BankIDRelyingPartyConfig settings = new BankIDRelyingPartyConfig();
+        settings.setCollectHedging(hedgingSettings);
+        return new CollectHedging(settings, metrics);
+    }
+}
@@ -0,0 +1,152 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.bankid.relyingparty.resilience;
+
+import com.bankid.codefront.config.RpConcurrencyLimitConfig;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test the adaptive concurrency limiter.
+ */
+@SuppressWarnings("checkstyle:magicnumber")
+public class ConcurrencyLimiterTest {
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(500);
+
+    /**
+     * Calls over the limit are rejected until a slot is given back.
+     */
+    @Test
+    public void rejectOverLimit() {
+        ConcurrencyLimiter limiter = createLimiter(true);
+
+        for (int i = 0; i < 10; i++) {
+            Assertions.assertTrue(limiter.tryAcquire());
+        }
+        Assertions.assertFalse(limiter.tryAcquire());
+        Assertions.assertEquals(10, limiter.getInFlight());
+
+        limiter.release();
+        Assertions.assertTrue(limiter.tryAcquire());
+    }
+
+    /**
+     * The limit grows while the latency is stable and the limit is used.
+     */
+    @Test
+    public void growWhileLatencyIsStable() {
+        ConcurrencyLimiter limiter = createLimiter(true);
+
+        this.runAtLimit(limiter, FAST, 50);
+
+        Assertions.assertTrue(limiter.getLimit() > 10, "limit " + limiter.getLimit());
+        Assertions.assertTrue(limiter.getLimit() <= 100);
+    }
+
+    /**
+     * The limit does not grow while most of it is unused.
+     */
+    @Test
+    public void doNotGrowWhenUnused() {
+        ConcurrencyLimiter limiter = createLimiter(true);
+
+        for (int i = 0; i < 50; i++) {
+            Assertions.assertTrue(limiter.tryAcquire());
+            limiter.onSample(FAST, false);
+            limiter.release();
+        }
+
+        Assertions.assertEquals(10, limiter.getLimit());
+    }
+
+    /**
+     * The limit shrinks when the latency goes up, and on dropped calls, but never below the min limit.
+     */
+    @Test
+    public void shrinkWhenLatencyIncreases() {
+        ConcurrencyLimiter limiter = createLimiter(true);
+        this.runAtLimit(limiter, FAST, 50);
+        int limitAtNormalLatency = limiter.getLimit();
+
+        this.runAtLimit(limiter, SLOW, 3);
+        Assertions.assertTrue(
+            limiter.getLimit() < limitAtNormalLatency,
+            limiter.getLimit() + " < " + limitAtNormalLatency);
+
+        this.runAtLimit(limiter, SLOW, 100);
+        Assertions.assertTrue(limiter.getLimit() >= 5);
+
+        ConcurrencyLimiter dropping = createLimiter(true);
+        Assertions.assertTrue(dropping.tryAcquire());
+        dropping.onSample(FAST, true);
+        Assertions.assertEquals(9, dropping.getLimit());
+    }
+
+    /**
+     * A disabled limiter never rejects.
+     */
+    @Test
+    public void disabled() {
+        ConcurrencyLimiter limiter = createLimiter(false);
+
+        for (int i = 0; i < 100; i++) {
+            Assertions.assertTrue(limiter.tryAcquire());
+        }
+    }
+
+    private void runAtLimit(ConcurrencyLimiter limiter, long rtt, int rounds) {
+        for (int round = 0; round < rounds; round++) {
+            int calls = 0;
+            while (limiter.tryAcquire()) {
+                calls++;
+            }
+            for (int i = 0; i < calls; i++) {
+                limiter.onSample(rtt, false);
+                limiter.release();
+            }
+        }
+    }
+
+    private static ConcurrencyLimiter createLimiter(boolean enabled) {
+        RpConcurrencyLimitConfig limitSettings = new RpConcurrencyLimitConfig();
+        limitSettings.setEnabled(enabled);
+        limitSettings.setInitialLimit(10);
+        limitSettings.setMinLimit(5);
+        limitSettings.setMaxLimit(100);
+        return new ConcurrencyLimiter(limitSettings);
+    }
+}
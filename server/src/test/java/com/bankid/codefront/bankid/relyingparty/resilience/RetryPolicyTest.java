@@ -0,0 +1,182 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.bankid.relyingparty.resilience;
+
+import com.bankid.codefront.bankid.relyingparty.RpEndpoint;
+import com.bankid.codefront.bankid.relyingparty.metrics.RpApiMetrics;
+import com.bankid.codefront.config.BankIDRelyingPartyConfig;
+import com.bankid.codefront.config.RpRetryConfig;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test the retry policy and the retry budget.
+ */
+@SuppressWarnings("checkstyle:magicnumber")
+public class RetryPolicyTest {
+
+    /**
+     * IO errors on idempotent endpoints are retried until the call succeeds.
+     */
+    @Test
+    public void retryIdempotentUntilSuccess() {
+        RpApiMetrics metrics = Mockito.mock(RpApiMetrics.class);
+        RetryPolicy policy = new RetryPolicy(settings(3, 1.0, 10), metrics);
+
+        AtomicInteger calls = new AtomicInteger();
+        String result = policy.execute(
+            RpEndpoint.COLLECT,
+            () -> calls.incrementAndGet() < 3
+                ? CompletableFuture.failedFuture(new IOException("connection reset"))
+                : CompletableFuture.completedFuture("ok"),
+            value -> false).join();
+
+        Assertions.assertEquals("ok", result);
+        Assertions.assertEquals(3, calls.get());
+        Mockito.verify(metrics, Mockito.times(2)).retryAttempt(RpEndpoint.COLLECT);
+    }
+
+    /**
+     * Calls that start orders are never retried.
+     */
+    @Test
+    public void neverRetryStart() {
+        RetryPolicy policy = new RetryPolicy(settings(3, 1.0, 10), Mockito.mock(RpApiMetrics.class));
+
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<String> future = policy.execute(
+            RpEndpoint.AUTH,
+            () -> {
+                calls.incrementAndGet();
+                return CompletableFuture.failedFuture(new IOException("connection reset"));
+            },
+            value -> false);
+
+        Assertions.assertThrows(CompletionException.class, future::join);
+        Assertions.assertEquals(1, calls.get());
+    }
+
+    /**
+     * Results that are not retryable and errors that are not IO errors are returned directly.
+     */
+    @Test
+    public void doNotRetryPermanentFailures() {
+        RetryPolicy policy = new RetryPolicy(settings(3, 1.0, 10), Mockito.mock(RpApiMetrics.class));
+
+        AtomicInteger calls = new AtomicInteger();
+        Assertions.assertEquals(400, policy.execute(
+            RpEndpoint.COLLECT,
+            () -> {
+                calls.incrementAndGet();
+                return CompletableFuture.completedFuture(400);
+            },
+            status -> status >= 500).join());
+
+        Assertions.assertThrows(CompletionException.class, () -> policy.execute(
+            RpEndpoint.CANCEL,
+            () -> {
+                calls.incrementAndGet();
+                return CompletableFuture.failedFuture(new IllegalStateException("bug"));
+            },
+            value -> false).join());
+
+        Assertions.assertEquals(2, calls.get());
+    }
+
+    /**
+     * When the budget is exhausted failed calls are no longer retried.
+     */
+    @Test
+    public void budgetLimitsRetries() {
+        RpApiMetrics metrics = Mockito.mock(RpApiMetrics.class);
+        RetryPolicy policy = new RetryPolicy(settings(2, 0.1, 1), metrics);
+
+        AtomicInteger calls = new AtomicInteger();
+        for (int i = 0; i < 5; i++) {
+            policy.execute(
+                RpEndpoint.COLLECT,
+                () -> {
+                    calls.incrementAndGet();
+                    return CompletableFuture.completedFuture(503);
+                },
+                status -> status >= 500).join();
+        }
+
+        // One saved up retry, then 0.1 retries earned per call is not enough for another one
+        Assertions.assertEquals(6, calls.get());
+        Mockito.verify(metrics, Mockito.times(1)).retryAttempt(RpEndpoint.COLLECT);
+        Mockito.verify(metrics, Mockito.times(4)).retryBudgetExhausted(RpEndpoint.COLLECT);
+    }
+
+    /**
+     * The budget earns retries from calls and never saves up more than the max.
+     */
+    @Test
+    public void retryBudget() {
+        RetryBudget budget = new RetryBudget(0.5, 1);
+
+        Assertions.assertTrue(budget.tryAcquire());
+        Assertions.assertFalse(budget.tryAcquire());
+
+        budget.onCall();
+        Assertions.assertFalse(budget.tryAcquire());
+        budget.onCall();
+        Assertions.assertTrue(budget.tryAcquire());
+
+        for (int i = 0; i < 10; i++) {
+            budget.onCall();
+        }
+        Assertions.assertTrue(budget.tryAcquire());
+        Assertions.assertFalse(budget.tryAcquire());
+    }
+
+    private static BankIDRelyingPartyConfig settings(int maxAttempts, double budgetRatio, int budgetMaxTokens) {
+        RpRetryConfig retry = new RpRetryConfig();
+        retry.setMaxAttempts(maxAttempts);
+        retry.setInitialBackoff(1);
+        retry.setMaxBackoff(2);
+        retry.setBudgetRatio(budgetRatio);
+        retry.setBudgetMaxTokens(budgetMaxTokens);
+
+        BankIDRelyingPartyConfig settings = new BankIDRelyingPartyConfig();
+        settings.setRetry(retry);
+        return settings;
+    }
+}
@@ -42,6 +42,7 @@ public class CheckResponse {
     private String hintCode;
     private Status status;
     private String qrCode;
+    private Long nextPollMillis;
 
     /**
      * Returns the hint code.
@@ -90,4 +91,20 @@ public class CheckResponse {
     public void setQrCode(String qrCode) {
         this.qrCode = qrCode;
     }
+
+    /**
+     * Returns the time until the next check.
+     * @return the time in milliseconds.
+     */
+    public Long getNextPollMillis() {
+        return this.nextPollMillis;
+    }
+
+    /**
+     * Sets the time until the next check.
+     * @param nextPollMillis the time in milliseconds.
+     */
+    public void setNextPollMillis(Long nextPollMillis) {
+        this.nextPollMillis = nextPollMillis;
+    }
 }
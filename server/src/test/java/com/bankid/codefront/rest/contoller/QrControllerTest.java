@@ -0,0 +1,264 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.rest.contoller;
+
+import com.bankid.codefront.config.BankIDRelyingPartyConfig;
+import com.bankid.codefront.models.service.BankIDTransaction;
+import com.bankid.codefront.models.service.QrTransaction;
+import com.bankid.codefront.rest.controller.QrController;
+import com.bankid.codefront.rest.model.QrResponse;
+import com.bankid.codefront.rest.model.SessionValue;
+import com.bankid.codefront.service.BankIDService;
+import com.bankid.codefront.service.QrImageRenderer;
+import com.bankid.codefront.service.QrTransactionRegistry;
+import com.bankid.codefront.service.SessionTransactionStore;
+import com.bankid.codefront.service.metrics.QrImageMetrics;
+import jakarta.servlet.http.Cookie;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.session.web.http.DefaultCookieSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Test of QrController.
+ */
+@SuppressWarnings("checkstyle:linelength")
+public class QrControllerTest {
+    private static final String QR_DATA =
+        "bankid.67df3917-fa0d-44e5-b327-edcc928297f8.0.dc69358e712458a66a7525beef148ae8526b1c71610eff2c16cdffb4cdac9bf8";
+
+    private BankIDService bankIDService;
+    private QrImageMetrics metrics;
+    private QrTransactionRegistry qrTransactionRegistry;
+    private BankIDTransaction transaction;
+    private SessionValue sessionValue;
+    private MockHttpServletRequest request;
+    private QrController controller;
+
+    /**
+     * Creates the controller with a transaction in session. The session scoped value and the session attribute
+     * are separate objects, to tell a read of the session from a use of the session scoped value.
+     */
+    @BeforeEach
+    public void setup() {
+        this.bankIDService = Mockito.mock(BankIDService.class);
+        this.metrics = Mockito.mock(QrImageMetrics.class);
+        this.qrTransactionRegistry = new QrTransactionRegistry(new BankIDRelyingPartyConfig());
+        this.transaction = new BankIDTransaction(
+            "orderRef", "qrStartToken", "qrStartSecret", "autoStartToken", Instant.now());
+        this.sessionValue = Mockito.spy(new SessionValue());
+        this.sessionValue.setBankIDTransaction(this.transaction);
+        this.request = requestWithTransaction(this.transaction);
+        this.controller = new QrController(
+            this.bankIDService,
+            new QrImageRenderer(new BankIDRelyingPartyConfig(), this.metrics),
+            this.qrTransactionRegistry,
+            this.metrics,
+            new DefaultCookieSerializer(),
+            this.sessionValue);
+    }
+
+    /**
+     * The image is served with an entity tag, and not modified when the client has it.
+     */
+    @Test
+    public void image() {
+        Mockito.when(this.bankIDService.currentQrCode(Mockito.any(BankIDTransaction.class))).thenReturn(QR_DATA);
+
+        ResponseEntity<byte[]> response = this.controller.qrPng(this.request, null, null);
+        Assertions.assertEquals(HttpStatus.OK, response.getStatusCode());
+        Assertions.assertEquals(MediaType.IMAGE_PNG, response.getHeaders().getContentType());
+        Assertions.assertEquals("no-cache, private", response.getHeaders().getCacheControl());
+        String etag = response.getHeaders().getETag();
+        Assertions.assertNotNull(etag);
+        Mockito.verify(this.metrics).served(Mockito.any(), Mockito.eq(response.getBody().length));
+
+        response = this.controller.qrPng(this.request, null, etag);
+        Assertions.assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        Assertions.assertEquals(etag, response.getHeaders().getETag());
+        Mockito.verify(this.metrics).notModified();
+
+        // Another format has another entity tag
+        response = this.controller.qrSvg(this.request, null, etag);
+        Assertions.assertEquals(HttpStatus.OK, response.getStatusCode());
+        Assertions.assertEquals("image/svg+xml", response.getHeaders().getFirst(HttpHeaders.CONTENT_TYPE));
+    }
+
+    /**
+     * No image when the transaction does not show a QR code.
+     */
+    @Test
+    public void noQrCode() {
+        Mockito.when(this.bankIDService.currentQrCode(Mockito.any(BankIDTransaction.class))).thenReturn(null);
+
+        Assertions.assertEquals(HttpStatus.NO_CONTENT, this.controller.qrSvg(this.request, null, null).getStatusCode());
+    }
+
+    /**
+     * No image without a transaction in session.
+     */
+    @Test
+    public void noTransaction() {
+        this.sessionValue.setBankIDTransaction(null);
+
+        Assertions.assertEquals(HttpStatus.BAD_REQUEST, this.controller.qrSvg(this.request, null, null).getStatusCode());
+        Mockito.verifyNoInteractions(this.bankIDService);
+    }
+
+    /**
+     * A transaction recorded on this node is answered to its session cookie without loading the session.
+     */
+    @Test
+    public void localTransaction() {
+        this.qrTransactionRegistry.register(this.transaction, "sessionId");
+        Mockito.clearInvocations(this.sessionValue);
+        Mockito.when(this.bankIDService.currentQrCode(Mockito.any(QrTransaction.class))).thenReturn(QR_DATA);
+
+        // The request has the session cookie but no session, reading the session would fail the lookup
+        MockHttpServletRequest cookieOnly = new MockHttpServletRequest();
+        cookieOnly.setCookies(sessionCookie("sessionId"));
+        ResponseEntity<QrResponse> response = this.controller.qr(cookieOnly, this.transaction.getTransactionId());
+        Assertions.assertEquals(HttpStatus.OK, response.getStatusCode());
+        Assertions.assertEquals(QR_DATA, response.getBody().getQrCode());
+        Assertions.assertEquals(HttpStatus.OK,
+            this.controller.qrSvg(cookieOnly, this.transaction.getTransactionId(), null).getStatusCode());
+
+        Mockito.verifyNoInteractions(this.sessionValue);
+        Mockito.verify(this.bankIDService, Mockito.never()).currentQrCode(Mockito.any(BankIDTransaction.class));
+        Mockito.verify(this.metrics, Mockito.times(2)).localLookup();
+    }
+
+    /**
+     * A transaction not recorded on this node is read from the session once, and recorded with the session id.
+     */
+    @Test
+    public void sessionFallback() {
+        Mockito.when(this.bankIDService.currentQrCode(Mockito.any(BankIDTransaction.class))).thenReturn(QR_DATA);
+        Mockito.when(this.bankIDService.currentQrCode(Mockito.any(QrTransaction.class))).thenReturn(QR_DATA);
+
+        ResponseEntity<QrResponse> response = this.controller.qr(this.request, this.transaction.getTransactionId());
+        Assertions.assertEquals(HttpStatus.OK, response.getStatusCode());
+        Assertions.assertEquals(QR_DATA, response.getBody().getQrCode());
+        Mockito.verify(this.metrics).sessionLookup();
+        QrTransaction recorded = this.qrTransactionRegistry.get(this.transaction.getTransactionId());
+        Assertions.assertNotNull(recorded);
+        Assertions.assertEquals(this.request.getSession().getId(), recorded.getOwner());
+
+        this.controller.qr(this.request, this.transaction.getTransactionId());
+        Mockito.verify(this.metrics).localLookup();
+        Mockito.verify(this.bankIDService).currentQrCode(Mockito.any(BankIDTransaction.class));
+    }
+
+    /**
+     * A transaction id that is neither recorded nor in the session is rejected.
+     */
+    @Test
+    public void unknownTransaction() {
+        Assertions.assertEquals(HttpStatus.BAD_REQUEST, this.controller.qr(this.request, "unknown").getStatusCode());
+        Mockito.verifyNoInteractions(this.bankIDService);
+        Assertions.assertEquals(0, this.qrTransactionRegistry.size());
+    }
+
+    /**
+     * A transaction recorded on this node is not answered to another session, which is answered from its own session.
+     */
+    @Test
+    public void otherSession() {
+        this.qrTransactionRegistry.register(this.transaction, this.request.getSession().getId());
+        BankIDTransaction other = new BankIDTransaction(
+            "otherOrderRef", "qrStartToken", "qrStartSecret", "autoStartToken", Instant.now());
+        this.sessionValue.setBankIDTransaction(other);
+
+        Assertions.assertEquals(HttpStatus.BAD_REQUEST,
+            this.controller.qr(requestWithTransaction(other), this.transaction.getTransactionId()).getStatusCode());
+        Assertions.assertEquals(HttpStatus.BAD_REQUEST,
+            this.controller.qr(new MockHttpServletRequest(), this.transaction.getTransactionId()).getStatusCode());
+
+        Mockito.verifyNoInteractions(this.bankIDService);
+        Mockito.verify(this.metrics, Mockito.never()).localLookup();
+    }
+
+    /**
+     * A transaction recorded with a session id that has changed is read from the session again, and recorded with
+     * the new id.
+     */
+    @Test
+    public void changedSessionId() {
+        this.qrTransactionRegistry.register(this.transaction, "previousSessionId");
+        Mockito.when(this.bankIDService.currentQrCode(Mockito.any(BankIDTransaction.class))).thenReturn(QR_DATA);
+
+        Assertions.assertEquals(HttpStatus.OK,
+            this.controller.qr(this.request, this.transaction.getTransactionId()).getStatusCode());
+        Mockito.verify(this.metrics).sessionLookup();
+        Assertions.assertEquals(this.request.getSession().getId(),
+            this.qrTransactionRegistry.get(this.transaction.getTransactionId()).getOwner());
+    }
+
+    /**
+     * Creates a request whose session holds a transaction.
+     * @param transaction the transaction.
+     * @return the request.
+     */
+    private static MockHttpServletRequest requestWithTransaction(BankIDTransaction transaction) {
+        SessionValue value = new SessionValue();
+        value.setBankIDTransaction(transaction);
+        MockHttpSession session = new MockHttpSession();
+        session.setAttribute(SessionTransactionStore.SESSION_VALUE_ATTRIBUTE, value);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setSession(session);
+        request.setCookies(sessionCookie(session.getId()));
+        return request;
+    }
+
+    /**
+     * Creates the session cookie naming a session.
+     * @param sessionId the session id.
+     * @return the cookie.
+     */
+    private static Cookie sessionCookie(String sessionId) {
+        String value = Base64.getEncoder().encodeToString(sessionId.getBytes(StandardCharsets.UTF_8));
+        return new Cookie("SESSION", value);
+    }
+}
@@ -37,6 +37,7 @@ package com.bankid.codefront.rest.contoller;
 import com.bankid.codefront.TestUtils;
 import com.bankid.codefront.models.service.Status;
 import com.bankid.codefront.rest.model.AuthenticationRequest;
+import com.bankid.codefront.rest.model.CheckRequest;
 import com.bankid.codefront.rest.model.SignRequest;
 import com.bankid.codefront.rest.model.UserVisibleDataFormat;
 import org.junit.jupiter.api.Test;
@@ -98,6 +99,37 @@ public class TransactionControllerTest  extends RestBaseControllerTest {
         assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
     }
 
+    /**
+     * Wait for a change without a transaction in session.
+     */
+    @Test
+    public void checkWaitWithoutTransaction() {
+        // Get CSRF-token
+        HttpHeaders headers = getCsrfHeaders();
+
+        ResponseEntity<String> response = this.getRestTemplate().exchange(
+            "/api/check/wait",
+            HttpMethod.POST,
+            new HttpEntity<>(new CheckRequest(), headers),
+            String.class);
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+    }
+
+    /**
+     * Stream events without a transaction in session.
+     */
+    @Test
+    public void eventsWithoutTransaction() {
+        ResponseEntity<String> response = this.getRestTemplate().exchange(
+            "/api/events",
+            HttpMethod.GET,
+            new HttpEntity<>(new HttpHeaders()),
+            String.class);
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+    }
+
     /**
      * Test authentication, start, check and cancel transaction.
      * Disabled by default. Only for manual testing.
@@ -136,6 +168,8 @@ public class TransactionControllerTest  extends RestBaseControllerTest {
         assertNotNull(collectResponse.getBody());
         assertEquals(Status.PENDING, collectResponse.getBody().getStatus());
         assertNotNull(collectResponse.getBody().getQrCode());
+        assertEquals(1000L, collectResponse.getBody().getNextPollMillis());
+        assertEquals("1", collectResponse.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
 
         // Cancel transaction
         ResponseEntity<String> deleteResponse = this.getRestTemplate().exchange(
@@ -0,0 +1,220 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.rest.contoller;
+
+import com.bankid.codefront.rest.model.AuthenticationRequest;
+import com.bankid.codefront.rest.model.StartResponse;
+import com.bankid.codefront.rpstub.RpStubEndpoint;
+import com.bankid.codefront.rpstub.RpStubServer;
+import com.bankid.codefront.rpstub.Scenario;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test that the final state of a transaction followed by a stream reaches the session, against the local RP stub.
+ */
+@ActiveProfiles("rpstub")
+@SuppressWarnings("checkstyle:magicnumber")
+public class TransactionSessionTest extends RestBaseControllerTest {
+    private static RpStubServer stub;
+
+    /**
+     * Starts the RP stub and points the relying party settings at it.
+     * @param registry the property registry.
+     */
+    @DynamicPropertySource
+    static void rpStub(DynamicPropertyRegistry registry) {
+        try {
+            stub = new RpStubServer(0);
+            stub.setScenario(Scenario.parse("pending:outstandingTransaction,complete"));
+            stub.start();
+        } catch (IOException exc) {
+            throw new UncheckedIOException(exc);
+        }
+        registry.add("app.bankid.relying-party.url", stub::getUrl);
+    }
+
+    /**
+     * Stops the RP stub.
+     */
+    @AfterAll
+    static void stopStub() {
+        stub.close();
+    }
+
+    /**
+     * A start after a flow that completed on the event stream does not cancel the completed order.
+     * @throws Exception on failure.
+     */
+    @Test
+    public void startAfterStreamedCompletion() throws Exception {
+        Cookies cookies = new Cookies();
+        String csrfToken = cookies.start();
+
+        cookies.authenticate(csrfToken);
+        HttpHeaders headers = cookies.headers();
+        headers.setAccept(List.of(MediaType.TEXT_EVENT_STREAM));
+        ResponseEntity<String> events = this.getRestTemplate().exchange(
+            "/api/events", HttpMethod.GET, new HttpEntity<>(headers), String.class);
+        assertEquals(HttpStatus.OK, events.getStatusCode());
+        assertNotNull(events.getBody());
+        assertTrue(events.getBody().contains("\"status\":\"COMPLETE\""), events.getBody());
+
+        // The session is written when the stream has ended, after the response
+        Thread.sleep(500);
+        long cancels = stub.getRequestCount(RpStubEndpoint.CANCEL);
+
+        cookies.authenticate(csrfToken);
+        assertEquals(cancels, stub.getRequestCount(RpStubEndpoint.CANCEL));
+    }
+
+    /**
+     * A start after a flow that completed on the long-poll does not cancel the completed order.
+     * @throws Exception on failure.
+     */
+    @Test
+    public void startAfterLongPollCompletion() throws Exception {
+        Cookies cookies = new Cookies();
+        String csrfToken = cookies.start();
+
+        cookies.authenticate(csrfToken);
+        String body = "";
+        long deadline = System.currentTimeMillis() + 20_000;
+        while (!body.contains("\"status\":\"COMPLETE\"") && System.currentTimeMillis() < deadline) {
+            HttpHeaders headers = cookies.headers();
+            headers.add("X-CSRF-TOKEN", csrfToken);
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            ResponseEntity<String> response = this.getRestTemplate().exchange(
+                "/api/check/wait", HttpMethod.POST, new HttpEntity<>(body.isEmpty() ? "{}" : body, headers),
+                String.class);
+            assertEquals(HttpStatus.OK, response.getStatusCode());
+            assertNotNull(response.getBody());
+            body = response.getBody();
+        }
+        assertTrue(body.contains("\"status\":\"COMPLETE\""), body);
+
+        // The session is written when the request has completed, after the response
+        Thread.sleep(500);
+        long cancels = stub.getRequestCount(RpStubEndpoint.CANCEL);
+
+        cookies.authenticate(csrfToken);
+        assertEquals(cancels, stub.getRequestCount(RpStubEndpoint.CANCEL));
+    }
+
+    /**
+     * The cookies of a browser.
+     */
+    private final class Cookies {
+        private final Map<String, String> values = new LinkedHashMap<>();
+
+        /**
+         * Loads the start page.
+         * @return the CSRF token.
+         */
+        private String start() {
+            ResponseEntity<StartResponse> response = getRestTemplate().exchange(
+                "/api/start", HttpMethod.GET, new HttpEntity<>(this.headers()), StartResponse.class);
+            assertEquals(HttpStatus.OK, response.getStatusCode());
+            assertNotNull(response.getBody());
+            this.update(response);
+            return response.getBody().getCsrfToken();
+        }
+
+        /**
+         * Starts an authentication.
+         * @param csrfToken the CSRF token.
+         */
+        private void authenticate(String csrfToken) {
+            HttpHeaders headers = this.headers();
+            headers.add("X-CSRF-TOKEN", csrfToken);
+            ResponseEntity<String> response = getRestTemplate().exchange(
+                "/api/authentication",
+                HttpMethod.POST,
+                new HttpEntity<>(new AuthenticationRequest(), headers),
+                String.class);
+            assertEquals(HttpStatus.OK, response.getStatusCode(), response.getBody());
+            this.update(response);
+        }
+
+        /**
+         * Returns headers with the cookies.
+         * @return the headers.
+         */
+        private HttpHeaders headers() {
+            HttpHeaders headers = new HttpHeaders();
+            if (!this.values.isEmpty()) {
+                headers.add(HttpHeaders.COOKIE, this.values.entrySet().stream()
+                    .map(entry -> entry.getKey() + "=" + entry.getValue())
+                    .collect(Collectors.joining("; ")));
+            }
+            return headers;
+        }
+
+        /**
+         * Keeps the cookies set by a response.
+         * @param response the response.
+         */
+        private void update(ResponseEntity<?> response) {
+            List<String> setCookies = response.getHeaders().get(HttpHeaders.SET_COOKIE);
+            if (setCookies == null) {
+                return;
+            }
+            for (String setCookie : setCookies) {
+                String pair = setCookie.split(";", 2)[0];
+                int separator = pair.indexOf('=');
+                this.values.put(pair.substring(0, separator), pair.substring(separator + 1));
+            }
+        }
+    }
+}
@@ -0,0 +1,340 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.rest.websocket;
+
+import com.bankid.codefront.CodeFrontApplication;
+import com.bankid.codefront.config.WebSocketConfig;
+import com.bankid.codefront.rpstub.RpStubServer;
+import com.bankid.codefront.rpstub.Scenario;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load test of a complete authentication through the REST api and through the transaction WebSocket,
+ * against the server running with the local RP stub.
+ *
+ * <p>The REST flow gets a session and CSRF token, starts and then checks once a second as the client does.
+ * The WebSocket flows start and observe on one socket, either kept per client or opened per transaction.
+ * Throughput is transactions (or connections) per second. After each iteration the process CPU time
+ * per transaction is printed, which includes the clients running in the same JVM.
+ * Run with: mvn -Pbenchmark -Dbenchmark=TransactionFlowBenchmark test
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 20)
+@Threads(32)
+@Fork(1)
+@SuppressWarnings("checkstyle:magicnumber")
+public class TransactionFlowBenchmark {
+    private static final String START = "{\"id\":\"start\",\"type\":\"AUTHENTICATION\"}";
+    private static final long REPLY_TIMEOUT_SECONDS = 30;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+    private final StandardWebSocketClient webSocketClient = new StandardWebSocketClient();
+    private final AtomicLong transactions = new AtomicLong();
+
+    private RpStubServer stub;
+    private ConfigurableApplicationContext context;
+    private String baseUrl;
+    private String webSocketUrl;
+    private long iterationCpuNanos;
+
+    /**
+     * Starts the RP stub and the server.
+     * @throws IOException if the stub could not start.
+     */
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        this.stub = new RpStubServer(0);
+        this.stub.setScenario(Scenario.parse("pending:outstandingTransaction,pending:userSign,complete"));
+        this.stub.start();
+
+        this.context = new SpringApplicationBuilder(CodeFrontApplication.class)
+            .profiles("dev", "rpstub", "tlsdisabled")
+            .run(
+                "--server.port=0",
+                "--management.server.port=0",
+                "--app.bankid.relying-party.url=" + this.stub.getUrl(),
+                // Compare the flows, not how fast the adaptive limit opens up for the initial burst.
+                "--app.bankid.relying-party.concurrency-limit.enabled=false",
+                "--logging.level.root=warn",
+                "--logging.level.com.bankid.codefront=error");
+
+        String port = this.context.getEnvironment().getProperty("local.server.port");
+        this.baseUrl = "http://localhost:" + port;
+        this.webSocketUrl = "ws://localhost:" + port + WebSocketConfig.TRANSACTION_PATH;
+    }
+
+    /**
+     * Stops the server and the RP stub.
+     */
+    @TearDown(Level.Trial)
+    public void stop() {
+        this.context.close();
+        this.stub.close();
+    }
+
+    /**
+     * Starts measuring CPU time.
+     */
+    @Setup(Level.Iteration)
+    public void startIteration() {
+        this.transactions.set(0);
+        this.iterationCpuNanos = processCpuNanos();
+    }
+
+    /**
+     * Prints the CPU time per transaction.
+     */
+    @TearDown(Level.Iteration)
+    public void stopIteration() {
+        long count = Math.max(1, this.transactions.get());
+        long cpuNanos = processCpuNanos() - this.iterationCpuNanos;
+        System.out.printf("%n  cpu per transaction: %d us (%d transactions)%n",
+            TimeUnit.NANOSECONDS.toMicros(cpuNanos / count), this.transactions.get());
+    }
+
+    /**
+     * Authenticates through the REST api, checking once a second.
+     * @return the final check response.
+     * @throws Exception on failure.
+     */
+    @Benchmark
+    public JsonNode rest() throws Exception {
+        Map<String, String> cookies = new HashMap<>();
+
+        JsonNode start = this.http("GET", "/api/start", null, null, cookies);
+        String csrf = start.get("csrfToken").asText();
+        this.http("POST", "/api/authentication", "{}", csrf, cookies);
+
+        while (true) {
+            JsonNode check = this.http("POST", "/api/check", "{}", csrf, cookies);
+            if (!"PENDING".equals(check.get("status").asText())) {
+                this.transactions.incrementAndGet();
+                return check;
+            }
+            Thread.sleep(1000);
+        }
+    }
+
+    /**
+     * Authenticates over a WebSocket kept open by the client.
+     * @param socket the client socket.
+     * @return the final check reply.
+     * @throws Exception on failure.
+     */
+    @Benchmark
+    public JsonNode webSocket(ClientSocket socket) throws Exception {
+        JsonNode result = this.authenticate(socket);
+        this.transactions.incrementAndGet();
+        return result;
+    }
+
+    /**
+     * Connects, authenticates and closes a WebSocket per transaction.
+     * @return the final check reply.
+     * @throws Exception on failure.
+     */
+    @Benchmark
+    public JsonNode webSocketConnectionPerTransaction() throws Exception {
+        ClientSocket socket = new ClientSocket();
+        socket.connect(this);
+        try {
+            JsonNode result = this.authenticate(socket);
+            this.transactions.incrementAndGet();
+            return result;
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * Starts and observes an authentication on a socket until it is complete.
+     * @param socket the socket.
+     * @return the final check reply.
+     * @throws Exception on failure.
+     */
+    private JsonNode authenticate(ClientSocket socket) throws Exception {
+        socket.session.sendMessage(new TextMessage(START));
+        JsonNode started = socket.reply();
+        String transactionId = started.get("transactionId").asText();
+
+        socket.session.sendMessage(new TextMessage(
+            "{\"id\":\"observe\",\"type\":\"OBSERVE\",\"transactionId\":\"" + transactionId + "\"}"));
+        while (true) {
+            JsonNode reply = socket.reply();
+            if (!"PENDING".equals(reply.get("check").get("status").asText())) {
+                return reply;
+            }
+        }
+    }
+
+    /**
+     * Sends a request to the REST api and keeps the cookies of the response.
+     * @param method  the http method.
+     * @param path    the path.
+     * @param body    the json body, or null.
+     * @param csrf    the CSRF token, or null.
+     * @param cookies the cookies of the client.
+     * @return the json response.
+     * @throws Exception on failure.
+     */
+    private JsonNode http(String method, String path, String body, String csrf, Map<String, String> cookies)
+        throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(this.baseUrl + path))
+            .method(method, body == null
+                ? HttpRequest.BodyPublishers.noBody()
+                : HttpRequest.BodyPublishers.ofString(body))
+            .header("Content-Type", "application/json");
+        if (csrf != null) {
+            request.header("X-CSRF-TOKEN", csrf);
+        }
+        if (!cookies.isEmpty()) {
+            request.header("Cookie", String.join("; ", cookies.values()));
+        }
+
+        HttpResponse<String> response = this.httpClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException(path + " answered " + response.statusCode());
+        }
+        for (String cookie : response.headers().allValues("Set-Cookie")) {
+            String nameAndValue = cookie.split(";", 2)[0];
+            cookies.put(nameAndValue.split("=", 2)[0], nameAndValue);
+        }
+        return this.objectMapper.readTree(response.body());
+    }
+
+    /**
+     * Returns the CPU time used by the process.
+     * @return the CPU time in nanoseconds.
+     */
+    private static long processCpuNanos() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean())
+            .getProcessCpuTime();
+    }
+
+    /**
+     * A WebSocket client.
+     */
+    @State(Scope.Thread)
+    public static class ClientSocket {
+        private static final WebSocketHttpHeaders HEADERS = new WebSocketHttpHeaders();
+
+        static {
+            HEADERS.add("User-Agent", "TransactionFlowBenchmark");
+        }
+
+        private final BlockingQueue<String> replies = new LinkedBlockingQueue<>();
+        private WebSocketSession session;
+        private TransactionFlowBenchmark benchmark;
+
+        /**
+         * Connects to the server.
+         * @param benchmark the benchmark with the server.
+         * @throws Exception on failure.
+         */
+        @Setup(Level.Trial)
+        public void connect(TransactionFlowBenchmark benchmark) throws Exception {
+            this.benchmark = benchmark;
+            this.session = benchmark.webSocketClient.execute(new TextWebSocketHandler() {
+                @Override
+                protected void handleTextMessage(WebSocketSession session, TextMessage message) {
+                    ClientSocket.this.replies.add(message.getPayload());
+                }
+            }, HEADERS, URI.create(benchmark.webSocketUrl)).get(REPLY_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }
+
+        /**
+         * Closes the connection.
+         * @throws IOException on failure.
+         */
+        @TearDown(Level.Trial)
+        public void close() throws IOException {
+            this.session.close();
+        }
+
+        /**
+         * Waits for the next reply.
+         * @return the reply.
+         * @throws Exception on failure or an error reply.
+         */
+        private JsonNode reply() throws Exception {
+            String payload = this.replies.poll(REPLY_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            if (payload == null) {
+                throw new IllegalStateException("No reply");
+            }
+            JsonNode reply = this.benchmark.objectMapper.readTree(payload);
+            if ("ERROR".equals(reply.get("type").asText())) {
+                throw new IllegalStateException("Error reply " + payload);
+            }
+            return reply;
+        }
+    }
+}
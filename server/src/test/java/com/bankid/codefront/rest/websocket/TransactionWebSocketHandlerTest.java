@@ -0,0 +1,217 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.rest.websocket;
+
+import com.bankid.codefront.bankid.relyingparty.RpEndpoint;
+import com.bankid.codefront.bankid.relyingparty.resilience.RpApiRejectedException;
+import com.bankid.codefront.models.service.BankIDTransaction;
+import com.bankid.codefront.models.service.CollectResult;
+import com.bankid.codefront.rest.controller.metrics.TransactionControllerMetrics;
+import com.bankid.codefront.service.BankIDService;
+import com.bankid.codefront.service.TransactionEventService;
+import com.bankid.codefront.service.TransactionObserver;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Test the transaction WebSocket handler.
+ */
+@SuppressWarnings("checkstyle:magicnumber")
+public class TransactionWebSocketHandlerTest {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private BankIDService bankIDService;
+    private TransactionEventService transactionEventService;
+    private TransactionControllerMetrics metrics;
+    private TransactionWebSocketHandler handler;
+    private WebSocketSession session;
+    private BankIDTransaction transaction;
+
+    /**
+     * Creates the handler and an open socket.
+     */
+    @BeforeEach
+    public void setup() {
+        this.bankIDService = Mockito.mock(BankIDService.class);
+        this.transactionEventService = Mockito.mock(TransactionEventService.class);
+        this.metrics = Mockito.mock(TransactionControllerMetrics.class);
+        this.handler = new TransactionWebSocketHandler(
+            this.bankIDService, this.transactionEventService, this.metrics, this.objectMapper, Clock.systemUTC());
+
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put(ClientHandshakeInterceptor.CLIENT_IP, "127.0.0.1");
+        attributes.put(ClientHandshakeInterceptor.DEVICE_ID, "device");
+        this.session = Mockito.mock(WebSocketSession.class);
+        Mockito.when(this.session.getId()).thenReturn("socket");
+        Mockito.when(this.session.getAttributes()).thenReturn(attributes);
+        Mockito.when(this.session.isOpen()).thenReturn(true);
+        this.handler.afterConnectionEstablished(this.session);
+
+        this.transaction = new BankIDTransaction("orderRef", "qrStartToken", "qrStartSecret", "autoStartToken",
+            Instant.now());
+    }
+
+    /**
+     * A transaction is started, observed until complete, and removed from the socket.
+     * The ticks of the event service are driven by the test through the registered observer.
+     * @throws Exception on failure.
+     */
+    @Test
+    public void startAndObserve() throws Exception {
+        Mockito.when(this.bankIDService.authentication(
+            Mockito.eq("127.0.0.1"), Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(),
+            Mockito.eq("device"))).thenReturn(this.transaction);
+        ArgumentCaptor<TransactionObserver> observer = ArgumentCaptor.forClass(TransactionObserver.class);
+        Runnable stopObserving = Mockito.mock(Runnable.class);
+        Mockito.when(this.transactionEventService.observe(Mockito.any(), observer.capture()))
+            .thenReturn(stopObserving);
+
+        this.receive("{\"id\":\"1\",\"type\":\"AUTHENTICATION\",\"request\":{\"userVisibleData\":\"hej\"}}");
+        JsonNode started = this.replies(1).get(0);
+        Assertions.assertEquals("STARTED", started.get("type").asText());
+        Assertions.assertEquals("1", started.get("id").asText());
+        Assertions.assertEquals("autoStartToken", started.get("autoStartToken").asText());
+        String transactionId = started.get("transactionId").asText();
+
+        this.receive("{\"id\":\"2\",\"type\":\"OBSERVE\",\"transactionId\":\"" + transactionId + "\"}");
+        Mockito.verify(this.transactionEventService).observe(Mockito.eq(this.transaction), Mockito.any());
+        observer.getValue().onChange(new CollectResult(this.transaction, "pending", "userSign"));
+        observer.getValue().onChange(new CollectResult(this.transaction, "complete", null));
+
+        Mockito.verify(this.metrics).finalizedTransaction(Mockito.anyLong());
+        List<JsonNode> replies = this.replies(3);
+        Assertions.assertEquals("CHECK", replies.get(1).get("type").asText());
+        Assertions.assertEquals("userSign", replies.get(1).get("check").get("hintCode").asText());
+        Assertions.assertEquals("COMPLETE", replies.get(2).get("check").get("status").asText());
+
+        // A complete transaction is no longer cancelled when the socket closes.
+        this.handler.afterConnectionClosed(this.session, CloseStatus.NORMAL);
+        Mockito.verify(this.bankIDService, Mockito.never()).cancelTransaction(Mockito.any());
+        Assertions.assertEquals(0, this.handler.getConnectionCount());
+    }
+
+    /**
+     * Pending transactions are cancelled on request and when the socket closes.
+     * @throws Exception on failure.
+     */
+    @Test
+    public void cancel() throws Exception {
+        BankIDTransaction other = new BankIDTransaction("otherOrderRef", "qrStartToken", "qrStartSecret",
+            "autoStartToken", Instant.now());
+        Mockito.when(this.bankIDService.signing(
+            Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any()))
+            .thenReturn(this.transaction, other);
+
+        this.receive("{\"id\":\"1\",\"type\":\"SIGN\",\"request\":{\"userVisibleData\":\"signera\"}}");
+        this.receive("{\"id\":\"2\",\"type\":\"SIGN\",\"request\":{\"userVisibleData\":\"signera\"}}");
+        this.receive("{\"id\":\"3\",\"type\":\"CANCEL\",\"transactionId\":\"" + this.transaction.getTransactionId()
+            + "\"}");
+
+        List<JsonNode> replies = this.replies(3);
+        Assertions.assertEquals("CANCELLED", replies.get(2).get("type").asText());
+        Mockito.verify(this.bankIDService).cancelTransaction("orderRef");
+
+        this.handler.afterConnectionClosed(this.session, CloseStatus.GOING_AWAY);
+        Mockito.verify(this.bankIDService).cancelTransaction("otherOrderRef");
+    }
+
+    /**
+     * Invalid messages and rejected calls are answered with an error.
+     * @throws Exception on failure.
+     */
+    @Test
+    public void errors() throws Exception {
+        Mockito.when(this.bankIDService.authentication(
+            Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any()))
+            .thenThrow(new RpApiRejectedException(RpEndpoint.AUTH, RpApiRejectedException.Reason.BULKHEAD_FULL));
+
+        this.receive("not json");
+        this.receive("{\"id\":\"1\",\"type\":\"SIGN\"}");
+        this.receive("{\"id\":\"2\",\"type\":\"OBSERVE\",\"transactionId\":\"unknown\"}");
+        this.receive("{\"id\":\"3\",\"type\":\"AUTHENTICATION\"}");
+
+        List<JsonNode> replies = this.replies(4);
+        replies.forEach(reply -> Assertions.assertEquals("ERROR", reply.get("type").asText()));
+        Assertions.assertEquals("Invalid input", replies.get(0).get("error").asText());
+        Assertions.assertEquals("1", replies.get(1).get("id").asText());
+        Assertions.assertEquals("unknown", replies.get(2).get("transactionId").asText());
+        Assertions.assertEquals("RP_BUSY", replies.get(3).get("error").asText());
+        Mockito.verify(this.metrics).failedStartSign(Mockito.anyLong());
+        Mockito.verify(this.metrics).failedStartAuthentication(Mockito.anyLong());
+    }
+
+    /**
+     * Sends a message from the client.
+     * @param payload the message.
+     * @throws Exception on failure.
+     */
+    private void receive(String payload) throws Exception {
+        this.handler.handleTextMessage(this.session, new TextMessage(payload));
+    }
+
+    /**
+     * Returns the replies sent to the client.
+     * @param count the expected number of replies.
+     * @return the replies.
+     * @throws Exception on failure.
+     */
+    private List<JsonNode> replies(int count) throws Exception {
+        ArgumentCaptor<TextMessage> captor = ArgumentCaptor.forClass(TextMessage.class);
+        Mockito.verify(this.session, Mockito.times(count)).sendMessage(captor.capture());
+
+        return captor.getAllValues().stream()
+            .map(message -> {
+                try {
+                    return this.objectMapper.readTree(message.getPayload());
+                } catch (Exception exc) {
+                    throw new IllegalStateException(exc);
+                }
+            })
+            .toList();
+    }
+}
@@ -37,6 +37,7 @@ import com.bankid.codefront.bankid.relyingparty.RpApi;
 import com.bankid.codefront.bankid.relyingparty.signature.SignatureParseException;
 import com.bankid.codefront.config.AppConfig;
 import com.bankid.codefront.config.BankIDRelyingPartyConfig;
+import com.bankid.codefront.config.RpQrCodeConfig;
 import com.bankid.codefront.models.bankid.relyingparty.BankIDRequirements;
 import com.bankid.codefront.models.bankid.relyingparty.CollectResponse;
 import com.bankid.codefront.models.bankid.relyingparty.CompletionData;
@@ -46,20 +47,25 @@ import com.bankid.codefront.models.bankid.relyingparty.StartTransactionResponse;
 import com.bankid.codefront.models.bankid.relyingparty.UserData;
 import com.bankid.codefront.models.service.BankIDTransaction;
 import com.bankid.codefront.models.service.CollectResult;
+import com.bankid.codefront.models.service.QrTransaction;
 import com.bankid.codefront.models.service.Status;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.time.Clock;
 import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.mockito.Mockito.when;
 
 /**
@@ -90,12 +96,30 @@ public class BankIDServiceTest {
     private AppConfig appConfig;
     @Mock
     private AuditService auditService;
+
+    @Mock
+    private CollectScheduler collectScheduler;
+    @Mock
+    private CollectLease collectLease;
+    @Spy
+    private QrCodeGenerator qrCodeGenerator = new QrCodeGenerator(new RpQrCodeConfig(), Mockito.mock(TimingWheel.class));
+    @Mock
+    private QrTransactionRegistry qrTransactionRegistry;
     @Mock
     private Clock clock;
 
     @InjectMocks
     private BankIDService bankIDService;
 
+    /**
+     * This node holds the collect lease unless a test says otherwise.
+     */
+    @BeforeEach
+    public void setup() {
+        Mockito.lenient().when(this.collectLease.tryAcquire(Mockito.anyString())).thenReturn(true);
+        Mockito.lenient().when(this.collectLease.tryAcquireAudit(Mockito.anyString())).thenReturn(true);
+    }
+
     /**
      * Test authentication.
      */
@@ -113,6 +137,7 @@ public class BankIDServiceTest {
 
         assertEquals("orderInfo123", response.getOrderRef());
         assertEquals("autoStart", response.getAutoStartToken());
+        Mockito.verify(this.qrTransactionRegistry, Mockito.never()).register(Mockito.any(), Mockito.any());
     }
 
     /**
@@ -315,6 +340,49 @@ public class BankIDServiceTest {
         assertEquals("signeringstext", response.getCompletionResult().getSignedText());
     }
 
+    /**
+     * A completed transaction is parsed once, later checks answer from the transaction.
+     */
+    @Test
+    public void collectCompleteMemoized() throws SignatureParseException {
+        when(this.collectScheduler.isEnabled()).thenReturn(true);
+
+        UserData userData = new UserData();
+        userData.setName("Test Name");
+        userData.setPersonalNumber("123456789012");
+        CompletionData completionData = new CompletionData();
+        completionData.setUser(userData);
+        completionData.setSignature(this.signature);
+        completionData.setOcspResponse(this.ocspResponse);
+
+        CollectResponse collectResponse = new CollectResponse();
+        collectResponse.setOrderRef("orderInfo123");
+        collectResponse.setStatus("complete");
+        collectResponse.setCompletionData(completionData);
+        when(this.rpApi.collect(Mockito.anyString())).thenReturn(collectResponse);
+
+        BankIDTransaction transaction = new BankIDTransaction(
+            "orderInfo123",
+            "67df3917-fa0d-44e5-b327-edcc928297f8",
+            "d28db9a7-4cde-429e-a983-359be676944c",
+            "autoStartToken",
+            Instant.now()
+        );
+
+        CollectResult response = this.bankIDService.collect(transaction);
+        assertNotNull(transaction.getCompletionResult());
+
+        // A signature that can not be parsed shows that the second check does not parse again
+        completionData.setSignature("invalid");
+        CollectResult memoized = this.bankIDService.collect(new BankIDTransaction(response.getTransaction()));
+
+        assertEquals(Status.COMPLETE, memoized.getStatus());
+        assertSame(response.getCompletionResult(), memoized.getCompletionResult());
+        assertEquals("signeringstext", memoized.getCompletionResult().getSignedText());
+        Mockito.verify(this.collectScheduler, Mockito.times(1)).getLatest("orderInfo123");
+        Mockito.verify(this.rpApi, Mockito.times(1)).collect(Mockito.anyString());
+    }
+
     /**
      * Signature without visible data.
      *
@@ -382,4 +450,260 @@ public class BankIDServiceTest {
         assertNull(response.getCompletionResult());
     }
 
+    /**
+     * A failed transaction is collected once, later checks answer from the transaction.
+     */
+    @Test
+    public void collectFailedMemoized() throws SignatureParseException {
+        when(this.collectScheduler.isEnabled()).thenReturn(true);
+
+        CollectResponse collectResponse = new CollectResponse();
+        collectResponse.setOrderRef("orderInfo123");
+        collectResponse.setStatus("failed");
+        collectResponse.setHintCode("userCancel");
+        when(this.rpApi.collect(Mockito.anyString())).thenReturn(collectResponse);
+
+        BankIDTransaction transaction = new BankIDTransaction(
+            "orderInfo123",
+            "67df3917-fa0d-44e5-b327-edcc928297f8",
+            "d28db9a7-4cde-429e-a983-359be676944c",
+            "autoStartToken",
+            Instant.now()
+        );
+
+        CollectResult response = this.bankIDService.collect(transaction);
+        response = this.bankIDService.collect(response.getTransaction());
+
+        assertEquals(Status.FAILED, response.getStatus());
+        assertEquals("userCancel", response.getHintCode());
+        assertNull(response.getCompletionResult());
+        Mockito.verify(this.collectScheduler, Mockito.times(1)).getLatest("orderInfo123");
+        Mockito.verify(this.rpApi, Mockito.times(1)).collect(Mockito.anyString());
+    }
+
+
+    /**
+     * With the collect scheduler, an order is collected once and then read from the scheduler.
+     */
+    @Test
+    public void collectScheduled() throws SignatureParseException {
+        when(this.clock.instant()).thenReturn(Instant.ofEpochSecond(FAKE_TIME));
+        when(this.collectScheduler.isEnabled()).thenReturn(true);
+
+        CollectResponse outstanding = new CollectResponse();
+        outstanding.setOrderRef("orderInfo123");
+        outstanding.setStatus("pending");
+        outstanding.setHintCode("outstandingTransaction");
+        when(this.rpApi.collect("orderInfo123")).thenReturn(outstanding);
+
+        BankIDTransaction transaction = new BankIDTransaction(
+            "orderInfo123",
+            "67df3917-fa0d-44e5-b327-edcc928297f8",
+            "d28db9a7-4cde-429e-a983-359be676944c",
+            "autoStartToken",
+            Instant.ofEpochSecond(FAKE_TIME)
+        );
+
+        // Not owned by the scheduler yet, collect now and hand over
+        CollectResult response = this.bankIDService.collect(transaction);
+        assertEquals("outstandingTransaction", response.getHintCode());
+        Mockito.verify(this.collectScheduler).track("orderInfo123", outstanding);
+
+        // The scheduler has collected a newer state
+        CollectResponse cancelled = new CollectResponse();
+        cancelled.setOrderRef("orderInfo123");
+        cancelled.setStatus("failed");
+        cancelled.setHintCode("userCancel");
+        when(this.collectScheduler.getLatest("orderInfo123")).thenReturn(cancelled);
+
+        response = this.bankIDService.collect(response.getTransaction());
+        assertEquals(Status.FAILED, response.getStatus());
+        assertEquals(Status.FAILED, response.getTransaction().getStatus());
+        assertEquals("userCancel", response.getHintCode());
+        Mockito.verify(this.rpApi, Mockito.times(1)).collect(Mockito.anyString());
+    }
+
+    /**
+     * Without the collect lease the first collect still calls RP, later collects reuse the response
+     * published by the node holding the lease.
+     */
+    @Test
+    public void collectWithoutLease() throws SignatureParseException {
+        when(this.clock.instant()).thenReturn(Instant.ofEpochSecond(FAKE_TIME));
+        when(this.collectLease.tryAcquire("orderInfo123")).thenReturn(false);
+
+        CollectResponse outstanding = new CollectResponse();
+        outstanding.setOrderRef("orderInfo123");
+        outstanding.setStatus("pending");
+        outstanding.setHintCode("outstandingTransaction");
+        when(this.rpApi.collect("orderInfo123")).thenReturn(outstanding);
+
+        BankIDTransaction transaction = new BankIDTransaction(
+            "orderInfo123",
+            "67df3917-fa0d-44e5-b327-edcc928297f8",
+            "d28db9a7-4cde-429e-a983-359be676944c",
+            "autoStartToken",
+            Instant.ofEpochSecond(FAKE_TIME)
+        );
+
+        // Nothing published yet, collect and publish
+        CollectResult response = this.bankIDService.collect(transaction);
+        assertEquals("outstandingTransaction", response.getHintCode());
+        Mockito.verify(this.collectLease).publish("orderInfo123", outstanding);
+
+        // Nothing new published, keep the last response
+        when(this.clock.instant()).thenReturn(Instant.ofEpochSecond(FAKE_TIME + 2));
+        response = this.bankIDService.collect(response.getTransaction());
+        assertEquals("outstandingTransaction", response.getHintCode());
+
+        // Another node has published a newer state
+        CollectResponse cancelled = new CollectResponse();
+        cancelled.setOrderRef("orderInfo123");
+        cancelled.setStatus("failed");
+        cancelled.setHintCode("userCancel");
+        when(this.collectLease.getPublished("orderInfo123")).thenReturn(cancelled);
+
+        response = this.bankIDService.collect(response.getTransaction());
+        assertEquals(Status.FAILED, response.getStatus());
+        assertEquals("userCancel", response.getHintCode());
+        Mockito.verify(this.rpApi, Mockito.times(1)).collect(Mockito.anyString());
+    }
+
+    /**
+     * With prefetch, the first collect is fired at start and the first check answers from the scheduler.
+     */
+    @Test
+    public void authenticationPrefetchFirstCollect() throws SignatureParseException {
+        StartTransactionResponse startTransactionResponse = new StartTransactionResponse();
+        startTransactionResponse.setAutoStartToken("autoStart");
+        startTransactionResponse.setOrderRef("orderInfo123");
+        startTransactionResponse.setQrStartToken("67df3917-fa0d-44e5-b327-edcc928297f8");
+        startTransactionResponse.setQrStartSecret("d28db9a7-4cde-429e-a983-359be676944c");
+        when(this.rpApi.startAuthentication(Mockito.any(StartAuthenticationRequest.class))).thenReturn(
+            startTransactionResponse);
+        when(this.bankIDRelyingPartyConfig.getAuthenticationRequirements()).thenReturn(new BankIDRequirements());
+        when(this.bankIDRelyingPartyConfig.isPrefetchFirstCollect()).thenReturn(true);
+        when(this.appConfig.getDomain()).thenReturn("localhost");
+        when(this.collectScheduler.isEnabled()).thenReturn(true);
+        when(this.clock.instant()).thenReturn(Instant.ofEpochSecond(FAKE_TIME));
+
+        CollectResponse outstanding = new CollectResponse();
+        outstanding.setOrderRef("orderInfo123");
+        outstanding.setStatus("pending");
+        outstanding.setHintCode("outstandingTransaction");
+        CompletableFuture<CollectResponse> prefetch = new CompletableFuture<>();
+        when(this.rpApi.collectAsync("orderInfo123")).thenReturn(prefetch);
+
+        BankIDTransaction transaction =
+            this.bankIDService.authentication(CLIENT_IP, null, null, null, null, "curl", "id-123");
+        assertEquals("orderInfo123", transaction.getOrderRef());
+
+        // Start does not wait for the prefetch
+        Mockito.verify(this.collectScheduler, Mockito.never()).track(Mockito.anyString(), Mockito.any());
+
+        prefetch.complete(outstanding);
+        Mockito.verify(this.collectLease).publish("orderInfo123", outstanding);
+        Mockito.verify(this.collectScheduler).track("orderInfo123", outstanding);
+
+        when(this.collectScheduler.getLatest("orderInfo123")).thenReturn(outstanding);
+        CollectResult response = this.bankIDService.collect(transaction);
+        assertEquals("outstandingTransaction", response.getHintCode());
+        Mockito.verify(this.rpApi, Mockito.never()).collect(Mockito.anyString());
+    }
+
+    /**
+     * A failed prefetch leaves the first collect to the first check.
+     */
+    @Test
+    public void signingPrefetchFailed() {
+        StartTransactionResponse startTransactionResponse = new StartTransactionResponse();
+        startTransactionResponse.setAutoStartToken("autoStart");
+        startTransactionResponse.setOrderRef("orderInfo123");
+        when(this.rpApi.startSignature(Mockito.any(StartSignatureRequest.class))).thenReturn(
+            startTransactionResponse);
+        when(this.bankIDRelyingPartyConfig.getSigningRequirements()).thenReturn(new BankIDRequirements());
+        when(this.bankIDRelyingPartyConfig.isPrefetchFirstCollect()).thenReturn(true);
+        when(this.appConfig.getDomain()).thenReturn("localhost");
+        when(this.rpApi.collectAsync("orderInfo123")).thenReturn(CompletableFuture.completedFuture(null));
+
+        BankIDTransaction transaction =
+            this.bankIDService.signing(CLIENT_IP, "text", null, null, null, "curl", "id-123");
+
+        assertEquals("orderInfo123", transaction.getOrderRef());
+        Mockito.verify(this.collectLease, Mockito.never()).publish(Mockito.anyString(), Mockito.any());
+        Mockito.verify(this.collectScheduler, Mockito.never()).track(Mockito.anyString(), Mockito.any());
+    }
+
+    /**
+     * The current QR code is read from the latest state without collecting.
+     */
+    @Test
+    public void currentQrCode() {
+        when(this.clock.instant()).thenReturn(Instant.ofEpochSecond(FAKE_TIME + 1));
+        when(this.collectScheduler.isEnabled()).thenReturn(true);
+
+        BankIDTransaction transaction = new BankIDTransaction(
+            "orderInfo123",
+            "67df3917-fa0d-44e5-b327-edcc928297f8",
+            "d28db9a7-4cde-429e-a983-359be676944c",
+            "autoStartToken",
+            Instant.ofEpochSecond(FAKE_TIME)
+        );
+
+        // Not collected yet
+        assertEquals(
+            "bankid.67df3917-fa0d-44e5-b327-edcc928297f8.1.949d559bf23403952a94d103e67743126381eda00f0b3cbddbf7c96b1adcbce2",
+            this.bankIDService.currentQrCode(transaction));
+
+        // Scanned
+        CollectResponse userSign = new CollectResponse();
+        userSign.setOrderRef("orderInfo123");
+        userSign.setStatus("pending");
+        userSign.setHintCode("userSign");
+        when(this.collectScheduler.getLatest("orderInfo123")).thenReturn(userSign);
+        assertNull(this.bankIDService.currentQrCode(transaction));
+
+        Mockito.verify(this.rpApi, Mockito.never()).collect(Mockito.anyString());
+    }
+
+    /**
+     * The current QR code of a transaction recorded on this node, dropped once it is scanned.
+     */
+    @Test
+    public void currentQrCodeRecorded() {
+        when(this.clock.instant()).thenReturn(Instant.ofEpochSecond(FAKE_TIME + 2));
+        when(this.collectScheduler.isEnabled()).thenReturn(true);
+
+        QrTransaction transaction = new QrTransaction(new BankIDTransaction(
+            "orderInfo123",
+            "67df3917-fa0d-44e5-b327-edcc928297f8",
+            "d28db9a7-4cde-429e-a983-359be676944c",
+            "autoStartToken",
+            Instant.ofEpochSecond(FAKE_TIME)
+        ), "sessionId");
+
+        assertEquals(
+            "bankid.67df3917-fa0d-44e5-b327-edcc928297f8.2.a9e5ec59cb4eee4ef4117150abc58fad7a85439a6a96ccbecc3668b41795b3f3",
+            this.bankIDService.currentQrCode(transaction));
+        Mockito.verify(this.qrTransactionRegistry, Mockito.never()).remove(Mockito.anyString());
+
+        CollectResponse userSign = new CollectResponse();
+        userSign.setOrderRef("orderInfo123");
+        userSign.setStatus("pending");
+        userSign.setHintCode("userSign");
+        when(this.collectScheduler.getLatest("orderInfo123")).thenReturn(userSign);
+        assertNull(this.bankIDService.currentQrCode(transaction));
+        Mockito.verify(this.qrTransactionRegistry).remove(transaction.getTransactionId());
+    }
+
+    /**
+     * Cancel stops the background collect of the order.
+     */
+    @Test
+    public void cancelStopsScheduledCollect() {
+        when(this.rpApi.cancel("orderInfo123")).thenReturn(true);
+
+        assertEquals(true, this.bankIDService.cancelTransaction("orderInfo123"));
+        Mockito.verify(this.collectScheduler).stop("orderInfo123");
+    }
 }
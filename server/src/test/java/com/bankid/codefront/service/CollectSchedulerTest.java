@@ -0,0 +1,210 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.service;
+
+import com.bankid.codefront.bankid.relyingparty.RpApi;
+import com.bankid.codefront.config.BankIDRelyingPartyConfig;
+import com.bankid.codefront.config.RpTimingWheelConfig;
+import com.bankid.codefront.models.bankid.relyingparty.CollectResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Test the background collect of pending orders.
+ */
+@SuppressWarnings("checkstyle:magicnumber")
+public class CollectSchedulerTest {
+    private static final String ORDER_REF = "orderRef";
+
+    private RpApi rpApi;
+    private AuditService auditService;
+    private CollectLease collectLease;
+    private TimingWheel timingWheel;
+    private CollectScheduler scheduler;
+
+    /**
+     * Creates a scheduler with a short interval.
+     */
+    @BeforeEach
+    public void setup() {
+        BankIDRelyingPartyConfig settings = new BankIDRelyingPartyConfig();
+        settings.getCollectScheduler().setInterval(20);
+        settings.getCollectScheduler().setRetention(200);
+
+        this.rpApi = Mockito.mock(RpApi.class);
+        this.auditService = Mockito.mock(AuditService.class);
+        this.collectLease = Mockito.mock(CollectLease.class);
+        Mockito.when(this.collectLease.tryAcquire(ORDER_REF)).thenReturn(true);
+        Mockito.when(this.collectLease.tryAcquireAudit(ORDER_REF)).thenReturn(true);
+        RpTimingWheelConfig timingWheelConfig = new RpTimingWheelConfig();
+        timingWheelConfig.setTickDuration(5);
+        this.timingWheel = new TimingWheel(timingWheelConfig);
+        this.scheduler = new CollectScheduler(
+            this.rpApi, settings, this.auditService, this.collectLease, this.timingWheel);
+    }
+
+    /**
+     * Stops the scheduler.
+     */
+    @AfterEach
+    public void shutdown() {
+        this.scheduler.shutdown();
+        this.timingWheel.stop();
+    }
+
+    /**
+     * A pending order is collected until it completes, the completion is audited once,
+     * and the final state is kept for the retention time.
+     */
+    @Test
+    public void collectUntilComplete() {
+        CollectResponse complete = response("complete", null);
+        Mockito.when(this.rpApi.collectAsync(ORDER_REF)).thenReturn(
+            CompletableFuture.completedFuture(response("pending", "userSign")),
+            CompletableFuture.completedFuture(null),
+            CompletableFuture.completedFuture(complete));
+
+        this.scheduler.track(ORDER_REF, response("pending", "outstandingTransaction"));
+        Assertions.assertEquals("outstandingTransaction", this.scheduler.getLatest(ORDER_REF).getHintCode());
+
+        Mockito.verify(this.auditService, Mockito.timeout(1000)).logCollectResponse(complete);
+        Assertions.assertSame(complete, this.scheduler.getLatest(ORDER_REF));
+        Mockito.verify(this.rpApi, Mockito.times(3)).collectAsync(ORDER_REF);
+
+        // Evicted after the retention time
+        Mockito.verify(this.rpApi, Mockito.after(400).times(3)).collectAsync(ORDER_REF);
+        Assertions.assertNull(this.scheduler.getLatest(ORDER_REF));
+        Assertions.assertEquals(0, this.scheduler.getOrderCount());
+    }
+
+    /**
+     * Without the lease the order is not collected, the response published by the node holding the lease is used
+     * and not audited again.
+     */
+    @Test
+    public void collectWithoutLease() {
+        CollectResponse complete = response("complete", null);
+        Mockito.when(this.collectLease.tryAcquire(ORDER_REF)).thenReturn(false);
+        Mockito.when(this.collectLease.getPublished(ORDER_REF)).thenReturn(null, complete);
+
+        this.scheduler.track(ORDER_REF, response("pending", "outstandingTransaction"));
+
+        Mockito.verify(this.collectLease, Mockito.timeout(1000).times(2)).getPublished(ORDER_REF);
+        Mockito.verify(this.rpApi, Mockito.after(100).never()).collectAsync(ORDER_REF);
+        Mockito.verify(this.auditService, Mockito.never()).logCollectResponse(Mockito.any());
+        Mockito.verify(this.collectLease, Mockito.never()).publish(Mockito.anyString(), Mockito.any());
+    }
+
+    /**
+     * Two nodes that both collect the complete state from RP audit it once, the node that claims the audit.
+     */
+    @Test
+    public void auditCompleteOnceAcrossNodes() {
+        BankIDRelyingPartyConfig settings = new BankIDRelyingPartyConfig();
+        settings.getCollectScheduler().setInterval(20);
+        settings.getCollectScheduler().setRetention(200);
+        // A lease window of 1 ms lets both nodes collect from RP, like when the windows of the nodes alternate
+        settings.getCollectLease().setWindow(1);
+        CollectLease sharedLease = new LocalCollectLease(settings);
+        CollectResponse complete = response("complete", null);
+        Mockito.when(this.rpApi.collectAsync(ORDER_REF)).thenReturn(CompletableFuture.completedFuture(complete));
+
+        CollectScheduler first = new CollectScheduler(
+            this.rpApi, settings, this.auditService, sharedLease, this.timingWheel);
+        CollectScheduler second = new CollectScheduler(
+            this.rpApi, settings, this.auditService, sharedLease, this.timingWheel);
+        try {
+            first.track(ORDER_REF, response("pending", "outstandingTransaction"));
+            second.track(ORDER_REF, response("pending", "outstandingTransaction"));
+
+            Mockito.verify(this.rpApi, Mockito.timeout(1000).times(2)).collectAsync(ORDER_REF);
+            Assertions.assertSame(complete, first.getLatest(ORDER_REF));
+            Assertions.assertSame(complete, second.getLatest(ORDER_REF));
+            Mockito.verify(this.auditService, Mockito.times(1)).logCollectResponse(complete);
+        } finally {
+            first.shutdown();
+            second.shutdown();
+        }
+    }
+
+    /**
+     * A stopped order is no longer collected.
+     */
+    @Test
+    public void stop() {
+        Mockito.when(this.rpApi.collectAsync(ORDER_REF)).thenReturn(
+            CompletableFuture.completedFuture(response("pending", "outstandingTransaction")));
+
+        this.scheduler.track(ORDER_REF, response("pending", "outstandingTransaction"));
+        Mockito.verify(this.rpApi, Mockito.timeout(1000).atLeast(2)).collectAsync(ORDER_REF);
+        this.scheduler.stop(ORDER_REF);
+        Mockito.clearInvocations(this.rpApi);
+
+        Mockito.verify(this.rpApi, Mockito.after(200).atMost(1)).collectAsync(ORDER_REF);
+        Assertions.assertNull(this.scheduler.getLatest(ORDER_REF));
+    }
+
+    /**
+     * Tracking an order that is already owned keeps the running collect loop.
+     */
+    @Test
+    public void trackTwice() {
+        CollectResponse failed = response("failed", "userCancel");
+
+        this.scheduler.track(ORDER_REF, failed);
+        this.scheduler.track(ORDER_REF, response("pending", "outstandingTransaction"));
+
+        Assertions.assertSame(failed, this.scheduler.getLatest(ORDER_REF));
+        Mockito.verifyNoInteractions(this.rpApi);
+    }
+
+    /**
+     * Creates a collect response.
+     * @param status   the status.
+     * @param hintCode the hintCode.
+     * @return the response.
+     */
+    private static CollectResponse response(String status, String hintCode) {
+        CollectResponse response = new CollectResponse();
+        response.setOrderRef(ORDER_REF);
+        response.setStatus(status);
+        response.setHintCode(hintCode);
+        return response;
+    }
+}
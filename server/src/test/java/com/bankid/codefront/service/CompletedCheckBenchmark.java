@@ -0,0 +1,179 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.service;
+
+import com.bankid.codefront.bankid.relyingparty.CollectCache;
+import com.bankid.codefront.bankid.relyingparty.RpApi;
+import com.bankid.codefront.bankid.relyingparty.RpJsonCodec;
+import com.bankid.codefront.bankid.relyingparty.metrics.RpApiMetrics;
+import com.bankid.codefront.bankid.relyingparty.resilience.Bulkheads;
+import com.bankid.codefront.bankid.relyingparty.resilience.CircuitBreakers;
+import com.bankid.codefront.bankid.relyingparty.resilience.CollectHedging;
+import com.bankid.codefront.bankid.relyingparty.resilience.ConcurrencyLimiters;
+import com.bankid.codefront.bankid.relyingparty.resilience.RetryPolicy;
+import com.bankid.codefront.bankid.relyingparty.signature.SignatureParseException;
+import com.bankid.codefront.config.AppConfig;
+import com.bankid.codefront.config.BankIDRelyingPartyConfig;
+import com.bankid.codefront.models.Base64String;
+import com.bankid.codefront.models.bankid.relyingparty.CollectResponse;
+import com.bankid.codefront.models.bankid.relyingparty.StartSignatureRequest;
+import com.bankid.codefront.models.bankid.relyingparty.StartTransactionResponse;
+import com.bankid.codefront.models.service.BankIDTransaction;
+import com.bankid.codefront.models.service.CollectResult;
+import com.bankid.codefront.models.service.Status;
+import com.bankid.codefront.rpstub.RpStubServer;
+import com.bankid.codefront.rpstub.Scenario;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares checks of a completed transaction that parse the signature every time, as BankIDService used to do,
+ * with checks answered from the completion result kept on the transaction. The completed order, including its
+ * signature XML, comes from the local RP stub.
+ * Run with: mvn -Pbenchmark -Dbenchmark=CompletedCheckBenchmark test
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@SuppressWarnings("checkstyle:magicnumber")
+public class CompletedCheckBenchmark {
+
+    private BankIDService bankIDService;
+    private BankIDTransaction completed;
+    private BankIDTransaction memoized;
+
+    /**
+     * Completes a signature order at the RP stub and creates the completed transactions.
+     * @throws IOException if the stub could not start.
+     * @throws SignatureParseException if the signature could not be parsed.
+     */
+    @Setup(Level.Trial)
+    public void setup() throws IOException, SignatureParseException {
+        BankIDRelyingPartyConfig settings = new BankIDRelyingPartyConfig();
+        CollectResponse collectResponse;
+        StartTransactionResponse startResponse;
+        try (RpStubServer stub = new RpStubServer(0)) {
+            stub.setScenario(Scenario.parse("complete"));
+            stub.start();
+
+            settings.setUrl(stub.getUrl());
+            settings.setClientCertStorePath("certificates/test/FPTestcert5_20240610.p12");
+            settings.setClientCertStorePassword("qwerty123");
+            settings.setTrustStorePath("certificates/stub/truststore.p12");
+            settings.setTrustStorePassword("qwerty123");
+
+            RpApiMetrics metrics = Mockito.mock(RpApiMetrics.class);
+            ConcurrencyLimiters concurrencyLimiters = new ConcurrencyLimiters(settings, metrics);
+            RpApi rpApi = new RpApi(
+                settings,
+                metrics,
+                new RpJsonCodec(),
+                new RetryPolicy(settings, metrics),
+                new CircuitBreakers(settings, metrics, Clock.systemUTC()),
+                new Bulkheads(settings, metrics, concurrencyLimiters),
+                concurrencyLimiters,
+                new CollectHedging(settings, metrics),
+                new CollectCache(settings, metrics, Mockito.mock(TimingWheel.class)));
+
+            String text = Base64.getEncoder().encodeToString(
+                "Signera överföring av 1 000 kr till konto 1234-5678".getBytes(StandardCharsets.UTF_8));
+            startResponse = rpApi.startSignature(new StartSignatureRequest("127.0.0.1", new Base64String(text)));
+            collectResponse = rpApi.collect(startResponse.getOrderRef());
+        }
+
+        this.bankIDService = new BankIDService(
+            Mockito.mock(RpApi.class),
+            settings,
+            Mockito.mock(AppConfig.class),
+            Mockito.mock(AuditService.class),
+            Mockito.mock(CollectScheduler.class),
+            Mockito.mock(CollectLease.class),
+            new QrCodeGenerator(settings, Mockito.mock(TimingWheel.class)),
+            new QrTransactionRegistry(settings),
+            Clock.systemUTC());
+
+        this.completed = new BankIDTransaction(
+            startResponse.getOrderRef(),
+            startResponse.getQrStartToken(),
+            startResponse.getQrStartSecret(),
+            startResponse.getAutoStartToken(),
+            Instant.now());
+        this.completed.setLastCollectResponse(collectResponse);
+        this.completed.setLastCollect(Instant.now());
+        this.completed.setStatus(Status.fromString(collectResponse.getStatus()));
+
+        this.memoized = new BankIDTransaction(this.completed);
+        this.bankIDService.collect(this.memoized);
+    }
+
+    /**
+     * Check of a completed transaction that has no completion result yet, so the signature is parsed.
+     * @return the collect result.
+     * @throws SignatureParseException if the signature could not be parsed.
+     */
+    @Benchmark
+    public CollectResult parseEveryCheck() throws SignatureParseException {
+        return this.bankIDService.collect(new BankIDTransaction(this.completed));
+    }
+
+    /**
+     * Check of a completed transaction answered from its completion result.
+     * @return the collect result.
+     * @throws SignatureParseException if the signature could not be parsed.
+     */
+    @Benchmark
+    public CollectResult memoizedCheck() throws SignatureParseException {
+        return this.bankIDService.collect(new BankIDTransaction(this.memoized));
+    }
+}
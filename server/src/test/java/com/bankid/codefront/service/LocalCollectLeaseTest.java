@@ -0,0 +1,157 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.service;
+
+import com.bankid.codefront.config.BankIDRelyingPartyConfig;
+import com.bankid.codefront.models.bankid.relyingparty.CollectResponse;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the node local collect lease.
+ */
+@SuppressWarnings("checkstyle:magicnumber")
+public class LocalCollectLeaseTest {
+
+    /**
+     * The lease is held for one window and the published response is shared.
+     */
+    @Test
+    public void leaseWindow() throws InterruptedException {
+        BankIDRelyingPartyConfig settings = new BankIDRelyingPartyConfig();
+        settings.getCollectLease().setWindow(100);
+        LocalCollectLease lease = new LocalCollectLease(settings);
+
+        Assertions.assertTrue(lease.tryAcquire("orderRef"));
+        Assertions.assertFalse(lease.tryAcquire("orderRef"));
+        Assertions.assertTrue(lease.tryAcquire("otherOrderRef"));
+
+        CollectResponse response = new CollectResponse();
+        lease.publish("orderRef", response);
+        Assertions.assertSame(response, lease.getPublished("orderRef"));
+        Assertions.assertNull(lease.getPublished("otherOrderRef"));
+
+        Thread.sleep(150);
+        Assertions.assertTrue(lease.tryAcquire("orderRef"));
+        Assertions.assertSame(response, lease.getPublished("orderRef"));
+    }
+
+    /**
+     * A final result is not shared, and withdraws the published pending state.
+     */
+    @Test
+    public void finalResultIsNotShared() {
+        LocalCollectLease lease = new LocalCollectLease(new BankIDRelyingPartyConfig());
+
+        CollectResponse pending = new CollectResponse();
+        pending.setStatus("pending");
+        lease.publish("orderRef", pending);
+        Assertions.assertSame(pending, lease.getPublished("orderRef"));
+
+        CollectResponse complete = new CollectResponse();
+        complete.setStatus("complete");
+        lease.publish("orderRef", complete);
+        Assertions.assertNull(lease.getPublished("orderRef"));
+    }
+
+    /**
+     * Expired entries are kept until there are many, then purged in one go.
+     */
+    @Test
+    public void purgePastThreshold() throws InterruptedException {
+        BankIDRelyingPartyConfig settings = new BankIDRelyingPartyConfig();
+        settings.getCollectLease().setWindow(10);
+        settings.getCollectLease().setResultTtl(10);
+        LocalCollectLease lease = new LocalCollectLease(settings);
+
+        for (int i = 0; i < 500; i++) {
+            Assertions.assertTrue(lease.tryAcquire("orderRef" + i));
+        }
+        for (int i = 1; i < 500; i++) {
+            lease.publish("orderRef" + i, new CollectResponse());
+        }
+        Thread.sleep(50);
+
+        // The lease of an expired order is taken again without a purge.
+        Assertions.assertTrue(lease.tryAcquire("orderRef0"));
+        Assertions.assertTrue(lease.tryAcquire("otherOrderRef"));
+        Assertions.assertEquals(1000, lease.size());
+
+        Assertions.assertTrue(lease.tryAcquire("thirdOrderRef"));
+        Assertions.assertTrue(lease.size() <= 3, "size " + lease.size());
+    }
+
+    /**
+     * The cancel of an order is claimed once, apart from its collect lease.
+     */
+    @Test
+    public void cancelOnce() {
+        LocalCollectLease lease = new LocalCollectLease(new BankIDRelyingPartyConfig());
+
+        Assertions.assertTrue(lease.tryAcquire("orderRef"));
+        Assertions.assertTrue(lease.tryAcquireCancel("orderRef"));
+        Assertions.assertFalse(lease.tryAcquireCancel("orderRef"));
+        Assertions.assertTrue(lease.tryAcquireCancel("otherOrderRef"));
+    }
+
+    /**
+     * The audit of a complete order is claimed once, apart from its collect lease and cancel.
+     */
+    @Test
+    public void auditOnce() {
+        LocalCollectLease lease = new LocalCollectLease(new BankIDRelyingPartyConfig());
+
+        Assertions.assertTrue(lease.tryAcquire("orderRef"));
+        Assertions.assertTrue(lease.tryAcquireCancel("orderRef"));
+        Assertions.assertTrue(lease.tryAcquireAudit("orderRef"));
+        Assertions.assertFalse(lease.tryAcquireAudit("orderRef"));
+        Assertions.assertTrue(lease.tryAcquireAudit("otherOrderRef"));
+    }
+
+    /**
+     * A disabled lease is always acquired and nothing is shared.
+     */
+    @Test
+    public void disabled() {
+        BankIDRelyingPartyConfig settings = new BankIDRelyingPartyConfig();
+        settings.getCollectLease().setEnabled(false);
+        LocalCollectLease lease = new LocalCollectLease(settings);
+
+        Assertions.assertTrue(lease.tryAcquire("orderRef"));
+        Assertions.assertTrue(lease.tryAcquire("orderRef"));
+
+        lease.publish("orderRef", new CollectResponse());
+        Assertions.assertNull(lease.getPublished("orderRef"));
+    }
+}
@@ -0,0 +1,187 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.service;
+
+import com.bankid.codefront.bankid.relyingparty.RpApi;
+import com.bankid.codefront.bankid.relyingparty.metrics.RpApiMetrics;
+import com.bankid.codefront.config.BankIDRelyingPartyConfig;
+import com.bankid.codefront.models.service.BankIDTransaction;
+import com.bankid.codefront.models.service.Status;
+import com.bankid.codefront.rest.model.SessionValue;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.session.MapSession;
+import org.springframework.session.events.SessionExpiredEvent;
+
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test cancelling the pending orders of expired sessions.
+ */
+@SuppressWarnings("checkstyle:magicnumber")
+public class OrphanedOrderReaperTest {
+    private RpApi rpApi;
+    private RpApiMetrics metrics;
+    private CollectScheduler collectScheduler;
+    private CollectLease collectLease;
+    private TimingWheel timingWheel;
+    private OrphanedOrderReaper reaper;
+
+    /**
+     * Creates a reaper that cancels two orders per 1500 ms, with timers that are run by the test.
+     */
+    @BeforeEach
+    public void setup() {
+        BankIDRelyingPartyConfig settings = new BankIDRelyingPartyConfig();
+        settings.getOrderReaper().setEnabled(true);
+        settings.getOrderReaper().setBatchSize(2);
+        settings.getOrderReaper().setInterval(1500);
+        settings.getOrderReaper().setMaxQueue(4);
+
+        this.timingWheel = Mockito.mock(TimingWheel.class);
+        this.rpApi = Mockito.mock(RpApi.class);
+        Mockito.when(this.rpApi.cancelAsync(Mockito.anyString())).thenReturn(CompletableFuture.completedFuture(true));
+        this.metrics = Mockito.mock(RpApiMetrics.class);
+        this.collectScheduler = Mockito.mock(CollectScheduler.class);
+        this.collectLease = Mockito.mock(CollectLease.class);
+        Mockito.when(this.collectLease.tryAcquireCancel(Mockito.anyString())).thenReturn(true);
+        this.reaper = new OrphanedOrderReaper(
+            this.rpApi, this.metrics, this.collectScheduler, this.collectLease, this.timingWheel, settings);
+    }
+
+    /**
+     * Pending orders are cancelled in batches, and orders that do not fit in the queue are dropped.
+     */
+    @Test
+    public void cancelInBatches() {
+        for (int i = 0; i < 5; i++) {
+            this.reaper.onSessionDestroyed(expired(transaction("order" + i, Status.PENDING)));
+        }
+        Mockito.verify(this.metrics).orphanedOrderDropped();
+        Assertions.assertEquals(4, this.reaper.getQueued());
+
+        // The first batch is sent at once, the next after the interval
+        this.runTimer(0);
+        Mockito.verify(this.rpApi, Mockito.times(2)).cancelAsync(Mockito.anyString());
+        Mockito.verify(this.rpApi).cancelAsync("order0");
+        Mockito.verify(this.collectScheduler).stop("order0");
+
+        this.runTimer(1500);
+        Mockito.verify(this.rpApi, Mockito.times(4)).cancelAsync(Mockito.anyString());
+        Mockito.verify(this.rpApi).cancelAsync("order3");
+        Mockito.verify(this.metrics, Mockito.times(4)).orphanedOrderCancelled();
+        Assertions.assertEquals(0, this.reaper.getQueued());
+
+        // Draining starts again with the next order
+        Mockito.verifyNoMoreInteractions(this.timingWheel);
+        this.reaper.onSessionDestroyed(expired(transaction("order5", Status.PENDING)));
+        this.runTimer(0);
+        Mockito.verify(this.rpApi).cancelAsync("order5");
+    }
+
+    /**
+     * Final orders and sessions without an order are left alone.
+     */
+    @Test
+    public void ignoreFinalOrders() {
+        this.reaper.onSessionDestroyed(expired(transaction("failed", Status.FAILED)));
+        this.reaper.onSessionDestroyed(expired(transaction("complete", Status.COMPLETE)));
+        this.reaper.onSessionDestroyed(new SessionExpiredEvent(this, new MapSession()));
+
+        Mockito.verifyNoInteractions(this.timingWheel, this.collectLease);
+        Mockito.verify(this.rpApi, Mockito.never()).cancelAsync(Mockito.anyString());
+        Assertions.assertEquals(0, this.reaper.getQueued());
+    }
+
+    /**
+     * An order claimed by another node is not cancelled again.
+     */
+    @Test
+    public void cancelOnceInCluster() {
+        Mockito.when(this.collectLease.tryAcquireCancel("order0")).thenReturn(false);
+
+        this.reaper.onSessionDestroyed(expired(transaction("order0", Status.PENDING)));
+
+        Mockito.verify(this.collectScheduler).stop("order0");
+        Mockito.verifyNoInteractions(this.timingWheel);
+        Mockito.verify(this.rpApi, Mockito.never()).cancelAsync(Mockito.anyString());
+        Assertions.assertEquals(0, this.reaper.getQueued());
+    }
+
+    /**
+     * Advances the timing wheel to the one timer scheduled since the last run, and runs it on the test thread.
+     * Fails if no timer or more than one timer was scheduled, or if it was scheduled with another delay.
+     * @param delay the expected delay in milliseconds.
+     */
+    private void runTimer(long delay) {
+        ArgumentCaptor<Runnable> task = ArgumentCaptor.forClass(Runnable.class);
+        ArgumentCaptor<Long> scheduledDelay = ArgumentCaptor.forClass(Long.class);
+        Mockito.verify(this.timingWheel)
+            .schedule(task.capture(), scheduledDelay.capture(), Mockito.eq(TimeUnit.MILLISECONDS));
+        Assertions.assertEquals(delay, scheduledDelay.getValue());
+        Mockito.clearInvocations(this.timingWheel);
+        task.getValue().run();
+    }
+
+    /**
+     * Creates a transaction.
+     * @param orderRef the order reference.
+     * @param status   the status.
+     * @return the transaction.
+     */
+    private static BankIDTransaction transaction(String orderRef, Status status) {
+        BankIDTransaction transaction = new BankIDTransaction(orderRef, "qrStartToken", "qrStartSecret",
+            "autoStartToken", Instant.now());
+        transaction.setStatus(status);
+        return transaction;
+    }
+
+    /**
+     * Creates the event of an expired session with a transaction.
+     * @param transaction the transaction.
+     * @return the event.
+     */
+    private SessionExpiredEvent expired(BankIDTransaction transaction) {
+        SessionValue sessionValue = new SessionValue();
+        sessionValue.setBankIDTransaction(transaction);
+        MapSession session = new MapSession();
+        session.setAttribute(SessionTransactionStore.SESSION_VALUE_ATTRIBUTE, sessionValue);
+        return new SessionExpiredEvent(this, session);
+    }
+}
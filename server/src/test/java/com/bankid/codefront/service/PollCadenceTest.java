@@ -0,0 +1,106 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.service;
+
+import com.bankid.codefront.bankid.relyingparty.RpEndpoint;
+import com.bankid.codefront.bankid.relyingparty.resilience.ConcurrencyLimiter;
+import com.bankid.codefront.bankid.relyingparty.resilience.ConcurrencyLimiters;
+import com.bankid.codefront.config.BankIDRelyingPartyConfig;
+import com.bankid.codefront.models.service.CollectResult;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+/**
+ * Test when the client is asked to check a transaction next.
+ */
+@SuppressWarnings("checkstyle:magicnumber")
+public class PollCadenceTest {
+    private final ConcurrencyLimiter concurrencyLimiter = Mockito.mock(ConcurrencyLimiter.class);
+    private final PollCadence pollCadence = new PollCadence(
+        new BankIDRelyingPartyConfig(),
+        collectLimiter(this.concurrencyLimiter));
+
+    /**
+     * A shown QR code is checked every second, other pending states at the collect interval,
+     * and final states not at all.
+     */
+    @Test
+    public void byState() {
+        Mockito.when(this.concurrencyLimiter.getLimit()).thenReturn(20);
+        Mockito.when(this.concurrencyLimiter.getInFlight()).thenReturn(2);
+
+        Assertions.assertEquals(1000, this.pollCadence.nextPollMillis(result("pending", "outstandingTransaction")));
+        Assertions.assertEquals(2000, this.pollCadence.nextPollMillis(result("pending", "userSign")));
+        Assertions.assertEquals(2000, this.pollCadence.nextPollMillis(result("pending", "started")));
+        Assertions.assertEquals(0, this.pollCadence.nextPollMillis(result("complete", null)));
+        Assertions.assertEquals(0, this.pollCadence.nextPollMillis(result("failed", "userCancel")));
+    }
+
+    /**
+     * Under load, pending states without a QR code are checked less often, up to the max interval.
+     */
+    @Test
+    public void underLoad() {
+        Mockito.when(this.concurrencyLimiter.getLimit()).thenReturn(20);
+
+        Mockito.when(this.concurrencyLimiter.getInFlight()).thenReturn(16);
+        Assertions.assertEquals(2000, this.pollCadence.nextPollMillis(result("pending", "userSign")));
+
+        Mockito.when(this.concurrencyLimiter.getInFlight()).thenReturn(18);
+        Assertions.assertEquals(6000, this.pollCadence.nextPollMillis(result("pending", "userSign")));
+
+        Mockito.when(this.concurrencyLimiter.getInFlight()).thenReturn(25);
+        Assertions.assertEquals(10000, this.pollCadence.nextPollMillis(result("pending", "userSign")));
+
+        // The QR code still has to change every second
+        Assertions.assertEquals(1000, this.pollCadence.nextPollMillis(result("pending", "outstandingTransaction")));
+    }
+
+    /**
+     * Creates a collect result.
+     * @param status   the status.
+     * @param hintCode the hint code.
+     * @return the result.
+     */
+    private static CollectResult result(String status, String hintCode) {
+        return new CollectResult(null, status, hintCode);
+    }
+
+    private static ConcurrencyLimiters collectLimiter(ConcurrencyLimiter limiter) {
+        ConcurrencyLimiters limiters = Mockito.mock(ConcurrencyLimiters.class);
+        Mockito.when(limiters.get(RpEndpoint.COLLECT)).thenReturn(limiter);
+        return limiters;
+    }
+}
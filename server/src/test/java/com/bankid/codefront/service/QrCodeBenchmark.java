@@ -0,0 +1,121 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.service;
+
+import com.bankid.codefront.config.RpQrCodeConfig;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares QR data generated with a new HMAC and String.format per check, as BankIDService used to do,
+ * with the QrCodeGenerator: a check in a new second that computes the QR data with the kept HMAC,
+ * and a repeated check within a computed second.
+ * Run with: mvn -Pbenchmark -Dbenchmark=QrCodeBenchmark test
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@SuppressWarnings("checkstyle:magicnumber")
+public class QrCodeBenchmark {
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final String TOKEN = "67df3917-fa0d-44e5-b327-edcc928297f8";
+    private static final String SECRET = "d28db9a7-4cde-429e-a983-359be676944c";
+
+    private final QrCodeGenerator computing = new QrCodeGenerator(precompute(0), Mockito.mock(TimingWheel.class));
+    private final QrCodeGenerator precomputed =
+        new QrCodeGenerator(new RpQrCodeConfig(), Mockito.mock(TimingWheel.class));
+    private long qrTime;
+
+    /**
+     * Creates QR code settings.
+     * @param seconds the number of seconds computed ahead.
+     * @return the settings.
+     */
+    private static RpQrCodeConfig precompute(int seconds) {
+        RpQrCodeConfig config = new RpQrCodeConfig();
+        config.setPrecompute(seconds);
+        return config;
+    }
+
+    /**
+     * QR data with a new HMAC and String.format, as BankIDService used to do.
+     * @return the QR data.
+     * @throws GeneralSecurityException if the HMAC could not be created.
+     */
+    @Benchmark
+    public String legacy() throws GeneralSecurityException {
+        String time = Long.toString(this.qrTime++);
+        Mac mac = Mac.getInstance(ALGORITHM);
+        mac.init(new SecretKeySpec(SECRET.getBytes(StandardCharsets.US_ASCII), ALGORITHM));
+        mac.update(time.getBytes(StandardCharsets.US_ASCII));
+        String qrAuthCode = String.format("%064x", new BigInteger(1, mac.doFinal()));
+        return String.join(".", "bankid", TOKEN, time, qrAuthCode);
+    }
+
+    /**
+     * QR data of a new second with the kept HMAC and table hex encoding.
+     * @return the QR data.
+     */
+    @Benchmark
+    public String keptMac() {
+        return this.computing.generate(TOKEN, SECRET, this.qrTime++);
+    }
+
+    /**
+     * Repeated check within the computed seconds.
+     * @return the QR data.
+     */
+    @Benchmark
+    public String precomputedLookup() {
+        return this.precomputed.generate(TOKEN, SECRET, 3);
+    }
+}
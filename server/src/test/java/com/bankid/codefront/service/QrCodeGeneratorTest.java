@@ -0,0 +1,172 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.service;
+
+import com.bankid.codefront.config.RpQrCodeConfig;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test the generator of QR code data.
+ */
+@SuppressWarnings({"checkstyle:magicnumber", "checkstyle:linelength"})
+public class QrCodeGeneratorTest {
+    private static final String TOKEN = "67df3917-fa0d-44e5-b327-edcc928297f8";
+    private static final String SECRET = "d28db9a7-4cde-429e-a983-359be676944c";
+
+    /**
+     * The QR data matches the examples of the RP guideline, computed ahead or not.
+     */
+    @Test
+    public void guidelineExamples() {
+        for (int precompute : new int[] {0, 1, 5}) {
+            RpQrCodeConfig config = new RpQrCodeConfig();
+            config.setPrecompute(precompute);
+            QrCodeGenerator generator = new QrCodeGenerator(config, Mockito.mock(TimingWheel.class));
+
+            Assertions.assertEquals(
+                "bankid.67df3917-fa0d-44e5-b327-edcc928297f8.0.dc69358e712458a66a7525beef148ae8526b1c71610eff2c16cdffb4cdac9bf8",
+                generator.generate(TOKEN, SECRET, 0));
+            Assertions.assertEquals(
+                "bankid.67df3917-fa0d-44e5-b327-edcc928297f8.1.949d559bf23403952a94d103e67743126381eda00f0b3cbddbf7c96b1adcbce2",
+                generator.generate(TOKEN, SECRET, 1));
+            Assertions.assertEquals(
+                "bankid.67df3917-fa0d-44e5-b327-edcc928297f8.2.a9e5ec59cb4eee4ef4117150abc58fad7a85439a6a96ccbecc3668b41795b3f3",
+                generator.generate(TOKEN, SECRET, 2));
+        }
+    }
+
+    /**
+     * Repeated calls within the computed seconds return the computed data, later seconds are computed again.
+     */
+    @Test
+    public void precompute() {
+        RpQrCodeConfig config = new RpQrCodeConfig();
+        config.setPrecompute(2);
+        QrCodeGenerator generator = new QrCodeGenerator(config, Mockito.mock(TimingWheel.class));
+
+        String first = generator.generate(TOKEN, SECRET, 10);
+        Assertions.assertSame(first, generator.generate(TOKEN, SECRET, 10));
+        String ahead = generator.generate(TOKEN, SECRET, 12);
+        Assertions.assertSame(ahead, generator.generate(TOKEN, SECRET, 12));
+        Assertions.assertTrue(ahead.startsWith("bankid." + TOKEN + ".12."));
+
+        String later = generator.generate(TOKEN, SECRET, 13);
+        Assertions.assertTrue(later.startsWith("bankid." + TOKEN + ".13."));
+        Assertions.assertEquals(first, generator.generate(TOKEN, SECRET, 10));
+        Assertions.assertNotSame(first, generator.generate(TOKEN, SECRET, 10));
+    }
+
+    /**
+     * A full generator still generates the QR data of new orders, without keeping their state.
+     */
+    @Test
+    public void full() {
+        RpQrCodeConfig config = new RpQrCodeConfig();
+        config.setMaxSize(1);
+        QrCodeGenerator generator = new QrCodeGenerator(config, Mockito.mock(TimingWheel.class));
+
+        generator.generate("other", SECRET, 0);
+        Assertions.assertEquals(1, generator.size());
+
+        Assertions.assertEquals(
+            "bankid.67df3917-fa0d-44e5-b327-edcc928297f8.0.dc69358e712458a66a7525beef148ae8526b1c71610eff2c16cdffb4cdac9bf8",
+            generator.generate(TOKEN, SECRET, 0));
+        Assertions.assertEquals(1, generator.size());
+
+        generator.remove("other");
+        generator.generate(TOKEN, SECRET, 0);
+        Assertions.assertEquals(1, generator.size());
+    }
+
+    /**
+     * The state of an order is dropped by its timer once idle for the idle ttl, and the timer is rescheduled
+     * while the order is still used.
+     */
+    @Test
+    public void evictIdle() {
+        RpQrCodeConfig config = new RpQrCodeConfig();
+        config.setIdleTtl(60000);
+        TimingWheel timingWheel = Mockito.mock(TimingWheel.class);
+        QrCodeGenerator generator = new QrCodeGenerator(config, timingWheel);
+
+        generator.generate(TOKEN, SECRET, 0);
+        generator.generate(TOKEN, SECRET, 1);
+        Runnable timer = this.scheduled(timingWheel, 60000);
+
+        // Used within the idle ttl, checked again when the rest of it has passed
+        timer.run();
+        Assertions.assertEquals(1, generator.size());
+        ArgumentCaptor<Long> delay = ArgumentCaptor.forClass(Long.class);
+        Mockito.verify(timingWheel).schedule(Mockito.any(), delay.capture(), Mockito.eq(TimeUnit.MILLISECONDS));
+        Assertions.assertTrue(delay.getValue() > 0 && delay.getValue() <= 60000, "delay " + delay.getValue());
+
+        RpQrCodeConfig idleConfig = new RpQrCodeConfig();
+        idleConfig.setIdleTtl(0);
+        TimingWheel idleTimingWheel = Mockito.mock(TimingWheel.class);
+        QrCodeGenerator idleGenerator = new QrCodeGenerator(idleConfig, idleTimingWheel);
+
+        idleGenerator.generate(TOKEN, SECRET, 0);
+        Assertions.assertEquals(1, idleGenerator.size());
+        this.scheduled(idleTimingWheel, 0).run();
+        Assertions.assertEquals(0, idleGenerator.size());
+        Mockito.verifyNoInteractions(idleTimingWheel);
+    }
+
+    /**
+     * Returns the one timer scheduled on the timing wheel, and forgets it.
+     * @param timingWheel the mocked timing wheel.
+     * @param delay       the expected delay in milliseconds.
+     * @return the timer.
+     */
+    private Runnable scheduled(TimingWheel timingWheel, long delay) {
+        ArgumentCaptor<Runnable> task = ArgumentCaptor.forClass(Runnable.class);
+        Mockito.verify(timingWheel).schedule(task.capture(), Mockito.eq(delay), Mockito.eq(TimeUnit.MILLISECONDS));
+        Mockito.clearInvocations(timingWheel);
+        return task.getValue();
+    }
+
+    /**
+     * Hex encoding of all byte values.
+     */
+    @Test
+    public void toHex() {
+        Assertions.assertEquals("", QrCodeGenerator.toHex(new byte[0]));
+        Assertions.assertEquals("00017f80ff", QrCodeGenerator.toHex(new byte[] {0, 1, 127, -128, -1}));
+    }
+}
@@ -0,0 +1,137 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.service;
+
+import com.bankid.codefront.config.BankIDRelyingPartyConfig;
+import com.bankid.codefront.models.service.QrImage;
+import com.bankid.codefront.models.service.QrImageFormat;
+import com.bankid.codefront.service.metrics.QrImageMetrics;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.RGBLuminanceSource;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.qrcode.QRCodeReader;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Test rendering of QR images.
+ */
+@SuppressWarnings({"checkstyle:magicnumber", "checkstyle:linelength"})
+public class QrImageRendererTest {
+    private static final String QR_DATA =
+        "bankid.67df3917-fa0d-44e5-b327-edcc928297f8.0.dc69358e712458a66a7525beef148ae8526b1c71610eff2c16cdffb4cdac9bf8";
+
+    private BankIDRelyingPartyConfig settings;
+    private QrImageMetrics metrics;
+
+    /**
+     * Creates the settings.
+     */
+    @BeforeEach
+    public void setup() {
+        this.settings = new BankIDRelyingPartyConfig();
+        this.metrics = Mockito.mock(QrImageMetrics.class);
+    }
+
+    /**
+     * The PNG image decodes to the QR data.
+     */
+    @Test
+    public void png() throws Exception {
+        QrImage image = new QrImageRenderer(this.settings, this.metrics).render(QR_DATA, QrImageFormat.PNG);
+
+        Assertions.assertEquals(QrImageFormat.PNG, image.getFormat());
+        BufferedImage png = ImageIO.read(new ByteArrayInputStream(image.getContent()));
+        // 41 modules for version 6 and a margin of 3 modules, 4 pixels each
+        Assertions.assertEquals((41 + 6) * 4, png.getWidth());
+
+        int[] pixels = png.getRGB(0, 0, png.getWidth(), png.getHeight(), null, 0, png.getWidth());
+        BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(
+            new RGBLuminanceSource(png.getWidth(), png.getHeight(), pixels)));
+        Assertions.assertEquals(QR_DATA, new QRCodeReader().decode(bitmap).getText());
+        Mockito.verify(this.metrics).rendered(Mockito.eq(QrImageFormat.PNG), Mockito.anyLong());
+    }
+
+    /**
+     * The SVG image is scaled by its viewBox and draws the dark modules as one path.
+     */
+    @Test
+    public void svg() {
+        QrImage image = new QrImageRenderer(this.settings, this.metrics).render(QR_DATA, QrImageFormat.SVG);
+
+        String svg = new String(image.getContent(), StandardCharsets.UTF_8);
+        Assertions.assertTrue(svg.startsWith("<svg xmlns=\"http://www.w3.org/2000/svg\" viewBox=\"0 0 47 47\""));
+        Assertions.assertTrue(svg.endsWith("\"/></svg>"));
+        // The top left finder pattern starts after the margin with a run of 7 modules
+        Assertions.assertTrue(svg.contains("<path d=\"M3 3h7v1h-7z"));
+        Assertions.assertEquals("\"svg-0.dc69358e712458a6\"", image.getEtag());
+    }
+
+    /**
+     * An image is rendered once and then taken from the cache, until the cache is full.
+     */
+    @Test
+    public void cache() {
+        this.settings.getQrCode().setImageCacheSize(1);
+        QrImageRenderer renderer = new QrImageRenderer(this.settings, this.metrics);
+
+        QrImage first = renderer.render(QR_DATA, QrImageFormat.SVG);
+        Assertions.assertSame(first, renderer.render(QR_DATA, QrImageFormat.SVG));
+        Mockito.verify(this.metrics).cacheHit();
+
+        // Full, rendered without being cached
+        QrImage png = renderer.render(QR_DATA, QrImageFormat.PNG);
+        Assertions.assertNotSame(png, renderer.render(QR_DATA, QrImageFormat.PNG));
+        Assertions.assertEquals(1, renderer.size());
+        Mockito.verify(this.metrics, Mockito.times(3)).cacheMiss();
+    }
+
+    /**
+     * The entity tag differs between seconds and formats.
+     */
+    @Test
+    public void etag() {
+        Assertions.assertEquals("\"png-0.dc69358e712458a6\"", QrImageRenderer.etag(QR_DATA, QrImageFormat.PNG));
+        Assertions.assertEquals("\"svg-12.949d559bf2340395\"", QrImageRenderer.etag(
+            "bankid.67df3917-fa0d-44e5-b327-edcc928297f8.12.949d559bf23403952a94d103e67743126381eda00f0b3cbddbf7c96b1adcbce2",
+            QrImageFormat.SVG));
+    }
+}
@@ -0,0 +1,121 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.service;
+
+import com.bankid.codefront.config.RpQrCodeConfig;
+import com.bankid.codefront.models.service.BankIDTransaction;
+import com.bankid.codefront.models.service.QrTransaction;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+/**
+ * Test the node local record of transactions showing a QR code.
+ */
+@SuppressWarnings("checkstyle:magicnumber")
+public class QrTransactionRegistryTest {
+
+    /**
+     * A registered transaction is found until removed.
+     */
+    @Test
+    public void registerAndRemove() {
+        QrTransactionRegistry registry = new QrTransactionRegistry(new RpQrCodeConfig());
+        BankIDTransaction transaction = transaction();
+
+        registry.register(transaction, "sessionId");
+        QrTransaction found = registry.get(transaction.getTransactionId());
+        Assertions.assertNotNull(found);
+        Assertions.assertEquals(transaction.getOrderRef(), found.getOrderRef());
+        Assertions.assertEquals(transaction.getQrStartToken(), found.getQrStartToken());
+        Assertions.assertEquals(transaction.getQrStartSecret(), found.getQrStartSecret());
+        Assertions.assertEquals(transaction.getStartTime(), found.getStartTime());
+        Assertions.assertEquals("sessionId", found.getOwner());
+
+        registry.remove(transaction.getTransactionId());
+        Assertions.assertNull(registry.get(transaction.getTransactionId()));
+        Assertions.assertEquals(0, registry.size());
+    }
+
+    /**
+     * An expired transaction is not found.
+     */
+    @Test
+    public void expired() throws InterruptedException {
+        RpQrCodeConfig config = new RpQrCodeConfig();
+        config.setTransactionTtl(1);
+        QrTransactionRegistry registry = new QrTransactionRegistry(config);
+        BankIDTransaction transaction = transaction();
+
+        registry.register(transaction, "sessionId");
+        Thread.sleep(10);
+        Assertions.assertNull(registry.get(transaction.getTransactionId()));
+        Assertions.assertEquals(0, registry.size());
+    }
+
+    /**
+     * A full registry drops expired transactions, and does not record new ones if still full.
+     */
+    @Test
+    public void full() throws InterruptedException {
+        RpQrCodeConfig config = new RpQrCodeConfig();
+        config.setTransactionMaxSize(2);
+        QrTransactionRegistry registry = new QrTransactionRegistry(config);
+
+        registry.register(transaction(), "sessionId");
+        registry.register(transaction(), "sessionId");
+        BankIDTransaction third = transaction();
+        registry.register(third, "sessionId");
+        Assertions.assertEquals(2, registry.size());
+        Assertions.assertNull(registry.get(third.getTransactionId()));
+
+        config.setTransactionTtl(1);
+        QrTransactionRegistry expiring = new QrTransactionRegistry(config);
+        expiring.register(transaction(), "sessionId");
+        expiring.register(transaction(), "sessionId");
+        Thread.sleep(10);
+        expiring.register(third, "sessionId");
+        Assertions.assertEquals(1, expiring.size());
+        Assertions.assertNotNull(expiring.get(third.getTransactionId()));
+    }
+
+    /**
+     * Creates a transaction.
+     * @return the transaction.
+     */
+    private static BankIDTransaction transaction() {
+        return new BankIDTransaction("orderRef", "qrStartToken", "qrStartSecret", "autoStartToken", Instant.now());
+    }
+}
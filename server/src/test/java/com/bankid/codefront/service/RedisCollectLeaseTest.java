@@ -0,0 +1,154 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.service;
+
+import com.bankid.codefront.bankid.relyingparty.RpJsonCodec;
+import com.bankid.codefront.config.BankIDRelyingPartyConfig;
+import com.bankid.codefront.models.bankid.relyingparty.CollectResponse;
+import com.bankid.codefront.models.bankid.relyingparty.CompletionData;
+import com.bankid.codefront.models.bankid.relyingparty.UserData;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+/**
+ * Test what the redis collect lease shares with the other nodes.
+ */
+public class RedisCollectLeaseTest {
+    private static final String RESULT_KEY = "codefront:collect:result:orderRef";
+
+    private final StringRedisTemplate redisTemplate = Mockito.mock(StringRedisTemplate.class);
+    @SuppressWarnings("unchecked")
+    private final ValueOperations<String, String> valueOperations = Mockito.mock(ValueOperations.class);
+    private final RpJsonCodec codec = new RpJsonCodec();
+    private final RedisCollectLease lease;
+
+    /**
+     * Creates the lease with a mocked redis.
+     */
+    public RedisCollectLeaseTest() {
+        Mockito.when(this.redisTemplate.opsForValue()).thenReturn(this.valueOperations);
+        this.lease = new RedisCollectLease(this.redisTemplate, this.codec, new BankIDRelyingPartyConfig());
+    }
+
+    /**
+     * Only the status and hint code of a pending order are written to redis.
+     */
+    @Test
+    public void publishPendingState() throws IOException {
+        CollectResponse collectResponse = response("pending", "userSign");
+        collectResponse.setCompletionData(completionData());
+
+        this.lease.publish("orderRef", collectResponse);
+
+        ArgumentCaptor<String> json = ArgumentCaptor.forClass(String.class);
+        Mockito.verify(this.valueOperations)
+            .set(Mockito.eq(RESULT_KEY), json.capture(), Mockito.any(Duration.class));
+        Assertions.assertFalse(json.getValue().contains("190001010101"), json.getValue());
+
+        CollectResponse published = this.codec.readCollectResponse(json.getValue().getBytes(StandardCharsets.UTF_8));
+        Assertions.assertEquals("orderRef", published.getOrderRef());
+        Assertions.assertEquals("pending", published.getStatus());
+        Assertions.assertEquals("userSign", published.getHintCode());
+        Assertions.assertNull(published.getCompletionData());
+    }
+
+    /**
+     * A final result is never written to redis, the published pending state is withdrawn.
+     */
+    @Test
+    public void withdrawOnFinalResult() {
+        CollectResponse complete = response("complete", null);
+        complete.setCompletionData(completionData());
+
+        this.lease.publish("orderRef", complete);
+        this.lease.publish("orderRef", response("failed", "userCancel"));
+
+        Mockito.verify(this.redisTemplate, Mockito.times(2)).delete(RESULT_KEY);
+        Mockito.verify(this.valueOperations, Mockito.never())
+            .set(Mockito.anyString(), Mockito.anyString(), Mockito.any(Duration.class));
+    }
+
+    /**
+     * The cancel of an orphaned order is claimed with a key set if absent, so only one node sends it.
+     */
+    @Test
+    public void cancelOnce() {
+        Mockito.when(this.valueOperations.setIfAbsent(
+                Mockito.eq("codefront:collect:cancel:orderRef"), Mockito.anyString(), Mockito.any(Duration.class)))
+            .thenReturn(true)
+            .thenReturn(false);
+
+        Assertions.assertTrue(this.lease.tryAcquireCancel("orderRef"));
+        Assertions.assertFalse(this.lease.tryAcquireCancel("orderRef"));
+    }
+
+    /**
+     * The audit of a complete order is claimed with its own key, so only one node audits it.
+     */
+    @Test
+    public void auditOnce() {
+        Mockito.when(this.valueOperations.setIfAbsent(
+                Mockito.eq("codefront:collect:audit:orderRef"), Mockito.anyString(), Mockito.any(Duration.class)))
+            .thenReturn(true)
+            .thenReturn(false);
+
+        Assertions.assertTrue(this.lease.tryAcquireAudit("orderRef"));
+        Assertions.assertFalse(this.lease.tryAcquireAudit("orderRef"));
+    }
+
+    private static CollectResponse response(String status, String hintCode) {
+        CollectResponse collectResponse = new CollectResponse();
+        collectResponse.setOrderRef("orderRef");
+        collectResponse.setStatus(status);
+        collectResponse.setHintCode(hintCode);
+        return collectResponse;
+    }
+
+    private static CompletionData completionData() {
+        UserData userData = new UserData();
+        userData.setName("Test Name");
+        userData.setPersonalNumber("190001010101");
+        CompletionData completionData = new CompletionData();
+        completionData.setUser(userData);
+        return completionData;
+    }
+}
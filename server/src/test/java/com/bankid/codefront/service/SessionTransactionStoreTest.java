@@ -0,0 +1,121 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.service;
+
+import com.bankid.codefront.config.BankIDRelyingPartyConfig;
+import com.bankid.codefront.models.service.BankIDTransaction;
+import com.bankid.codefront.models.service.Status;
+import com.bankid.codefront.rest.model.SessionValue;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.session.MapSession;
+import org.springframework.session.MapSessionRepository;
+
+import java.time.Instant;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Test writing the final state of a followed transaction to the session.
+ */
+public class SessionTransactionStoreTest {
+    private MapSessionRepository repository;
+    private QrTransactionRegistry qrTransactionRegistry;
+    private SessionTransactionStore store;
+    private BankIDTransaction transaction;
+    private String sessionId;
+
+    /**
+     * Creates a session with a pending transaction.
+     */
+    @BeforeEach
+    public void setup() {
+        this.repository = new MapSessionRepository(new ConcurrentHashMap<>());
+        this.qrTransactionRegistry = new QrTransactionRegistry(new BankIDRelyingPartyConfig());
+        this.store = new SessionTransactionStore(this.repository, this.qrTransactionRegistry);
+        this.transaction = new BankIDTransaction("orderRef", "qrStartToken", "qrStartSecret", "autoStartToken",
+            Instant.now());
+        this.qrTransactionRegistry.register(this.transaction, "sessionId");
+
+        SessionValue sessionValue = new SessionValue();
+        sessionValue.setBankIDTransaction(this.transaction);
+        MapSession session = this.repository.createSession();
+        session.setAttribute(SessionTransactionStore.SESSION_VALUE_ATTRIBUTE, sessionValue);
+        this.repository.save(session);
+        this.sessionId = session.getId();
+    }
+
+    /**
+     * The final state of the session transaction is written to the session, and its QR code is no longer served.
+     */
+    @Test
+    public void saveFinal() {
+        BankIDTransaction complete = new BankIDTransaction(this.transaction);
+        complete.setStatus(Status.COMPLETE);
+
+        Assertions.assertTrue(this.store.saveFinal(this.sessionId, complete));
+        Assertions.assertEquals(Status.COMPLETE, this.sessionTransaction().getStatus());
+        Assertions.assertNull(this.qrTransactionRegistry.get(this.transaction.getTransactionId()));
+    }
+
+    /**
+     * Pending states, other transactions and missing sessions are not written.
+     */
+    @Test
+    public void ignoreOthers() {
+        Assertions.assertFalse(this.store.saveFinal(this.sessionId, new BankIDTransaction(this.transaction)));
+        Assertions.assertNotNull(this.qrTransactionRegistry.get(this.transaction.getTransactionId()));
+
+        BankIDTransaction other = new BankIDTransaction("otherOrderRef", "qrStartToken", "qrStartSecret",
+            "autoStartToken", Instant.now());
+        other.setStatus(Status.FAILED);
+        Assertions.assertFalse(this.store.saveFinal(this.sessionId, other));
+
+        BankIDTransaction complete = new BankIDTransaction(this.transaction);
+        complete.setStatus(Status.COMPLETE);
+        Assertions.assertFalse(this.store.saveFinal("unknown", complete));
+
+        Assertions.assertEquals(Status.PENDING, this.sessionTransaction().getStatus());
+    }
+
+    /**
+     * Returns the transaction in the stored session.
+     * @return the transaction.
+     */
+    private BankIDTransaction sessionTransaction() {
+        SessionValue sessionValue = this.repository.findById(this.sessionId)
+            .getAttribute(SessionTransactionStore.SESSION_VALUE_ATTRIBUTE);
+        return sessionValue.getBankIDTransaction();
+    }
+}
@@ -0,0 +1,164 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.service;
+
+import com.bankid.codefront.config.RpTimingWheelConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares 1M timers in the timing wheel with a ScheduledThreadPoolExecutor: scheduling and cancelling them,
+ * as when pending orders are collected and then complete, and letting them all fire within half a second.
+ * Run with: mvn -Pbenchmark -Dbenchmark=TimingWheelBenchmark test
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+@SuppressWarnings("checkstyle:magicnumber")
+public class TimingWheelBenchmark {
+    private static final int TIMERS = 1_000_000;
+
+    private final long[] cancelDelays = new long[TIMERS];
+    private final long[] fireDelays = new long[TIMERS];
+    private TimingWheel timingWheel;
+    private ScheduledThreadPoolExecutor executor;
+
+    /**
+     * Creates the delays, collect ticks and expiries up to a minute for cancel and up to half a second for fire.
+     */
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(42);
+        for (int i = 0; i < TIMERS; i++) {
+            this.cancelDelays[i] = 1000 + random.nextInt(59_000);
+            this.fireDelays[i] = random.nextInt(500);
+        }
+    }
+
+    /**
+     * Creates the schedulers for each iteration, with the default settings of the timing wheel.
+     */
+    @Setup(Level.Iteration)
+    public void start() {
+        this.timingWheel = new TimingWheel(new RpTimingWheelConfig());
+        this.executor = new ScheduledThreadPoolExecutor(4);
+        this.executor.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Stops the schedulers.
+     */
+    @TearDown(Level.Iteration)
+    public void stop() {
+        this.timingWheel.stop();
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * Schedules 1M timers in the timing wheel and cancels them.
+     * @return the number of pending timers.
+     */
+    @Benchmark
+    public int wheelScheduleAndCancel() {
+        TimingWheel.Timeout[] timeouts = new TimingWheel.Timeout[TIMERS];
+        for (int i = 0; i < TIMERS; i++) {
+            timeouts[i] = this.timingWheel.schedule(() -> { }, this.cancelDelays[i], TimeUnit.MILLISECONDS);
+        }
+        for (TimingWheel.Timeout timeout : timeouts) {
+            timeout.cancel();
+        }
+        return this.timingWheel.getPendingCount();
+    }
+
+    /**
+     * Schedules 1M timers in a ScheduledThreadPoolExecutor and cancels them.
+     * @return the number of queued timers.
+     */
+    @Benchmark
+    public int executorScheduleAndCancel() {
+        ScheduledFuture<?>[] futures = new ScheduledFuture<?>[TIMERS];
+        for (int i = 0; i < TIMERS; i++) {
+            futures[i] = this.executor.schedule(() -> { }, this.cancelDelays[i], TimeUnit.MILLISECONDS);
+        }
+        for (ScheduledFuture<?> future : futures) {
+            future.cancel(false);
+        }
+        return this.executor.getQueue().size();
+    }
+
+    /**
+     * Schedules 1M timers in the timing wheel and waits for all to fire.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    @Benchmark
+    public void wheelFire() throws InterruptedException {
+        CountDownLatch fired = new CountDownLatch(TIMERS);
+        for (int i = 0; i < TIMERS; i++) {
+            this.timingWheel.schedule(fired::countDown, this.fireDelays[i], TimeUnit.MILLISECONDS);
+        }
+        fired.await();
+    }
+
+    /**
+     * Schedules 1M timers in a ScheduledThreadPoolExecutor and waits for all to fire.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    @Benchmark
+    public void executorFire() throws InterruptedException {
+        CountDownLatch fired = new CountDownLatch(TIMERS);
+        for (int i = 0; i < TIMERS; i++) {
+            this.executor.schedule(fired::countDown, this.fireDelays[i], TimeUnit.MILLISECONDS);
+        }
+        fired.await();
+    }
+}
@@ -0,0 +1,160 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.service;
+
+import com.bankid.codefront.config.RpTimingWheelConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test the hashed timing wheel.
+ */
+@SuppressWarnings("checkstyle:magicnumber")
+public class TimingWheelTest {
+    private TimingWheel timingWheel;
+
+    /**
+     * Creates a small wheel with short ticks, so timers wrap around it.
+     */
+    @BeforeEach
+    public void setup() {
+        RpTimingWheelConfig config = new RpTimingWheelConfig();
+        config.setTickDuration(10);
+        config.setTicksPerWheel(8);
+        config.setWorkerThreads(2);
+        config.setMaxQueue(4);
+        this.timingWheel = new TimingWheel(config);
+    }
+
+    /**
+     * Stops the wheel.
+     */
+    @AfterEach
+    public void stop() {
+        this.timingWheel.stop();
+    }
+
+    /**
+     * Timers fire after their delay, also when it is longer than one round of the wheel.
+     */
+    @Test
+    public void fireAfterDelay() throws InterruptedException {
+        long[] firedNanos = new long[3];
+        long[] delays = {0, 30, 250};
+        CountDownLatch fired = new CountDownLatch(delays.length);
+        long start = System.nanoTime();
+
+        for (int i = 0; i < delays.length; i++) {
+            int index = i;
+            this.timingWheel.schedule(() -> {
+                firedNanos[index] = System.nanoTime();
+                fired.countDown();
+            }, delays[i], TimeUnit.MILLISECONDS);
+        }
+
+        Assertions.assertTrue(fired.await(2, TimeUnit.SECONDS));
+        for (int i = 0; i < delays.length; i++) {
+            Assertions.assertTrue(
+                TimeUnit.NANOSECONDS.toMillis(firedNanos[i] - start) >= delays[i],
+                "Timer " + i + " fired before its delay");
+        }
+        Assertions.assertEquals(0, this.timingWheel.getPendingCount());
+    }
+
+    /**
+     * A cancelled timer does not fire.
+     */
+    @Test
+    public void cancel() throws InterruptedException {
+        AtomicInteger runs = new AtomicInteger();
+        TimingWheel.Timeout timeout = this.timingWheel.schedule(runs::incrementAndGet, 50, TimeUnit.MILLISECONDS);
+        Assertions.assertEquals(1, this.timingWheel.getPendingCount());
+
+        Assertions.assertTrue(timeout.cancel());
+        Assertions.assertFalse(timeout.cancel());
+        Assertions.assertTrue(timeout.isCancelled());
+        Assertions.assertEquals(0, this.timingWheel.getPendingCount());
+
+        Thread.sleep(150);
+        Assertions.assertEquals(0, runs.get());
+        Assertions.assertFalse(timeout.isExpired());
+    }
+
+    /**
+     * When more timers expire than the workers and their queue can take, the rest run on later ticks.
+     */
+    @Test
+    public void fullWorkerQueue() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(20);
+
+        for (int i = 0; i < 20; i++) {
+            this.timingWheel.schedule(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                done.countDown();
+            }, 10, TimeUnit.MILLISECONDS);
+        }
+
+        // Two run, four wait in the worker queue and the rest wait in the wheel
+        Thread.sleep(100);
+        Assertions.assertEquals(18, this.timingWheel.getPendingCount());
+        release.countDown();
+
+        Assertions.assertTrue(done.await(2, TimeUnit.SECONDS));
+    }
+
+    /**
+     * A stopped wheel does not take new timers.
+     */
+    @Test
+    public void stopped() {
+        this.timingWheel.stop();
+
+        Assertions.assertTrue(this.timingWheel.isStopped());
+        Assertions.assertThrows(
+            RejectedExecutionException.class,
+            () -> this.timingWheel.schedule(() -> { }, 1, TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,231 @@
+/*
+BSD 3-Clause License
+
+Copyright (c) 2022, Finansiell ID-Teknik BID AB
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+3. Neither the name of the copyright holder nor the names of its
+   contributors may be used to endorse or promote products derived from
+   this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.bankid.codefront.service;
+
+import com.bankid.codefront.models.service.BankIDTransaction;
+import com.bankid.codefront.models.service.CollectResult;
+import com.bankid.codefront.models.service.Status;
+import com.bankid.codefront.rest.model.CheckRequest;
+import com.bankid.codefront.rest.model.CheckResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Test the Server-Sent Events stream of transaction progress.
+ */
+@SuppressWarnings({"checkstyle:magicnumber", "unchecked"})
+public class TransactionEventServiceTest {
+    private BankIDService bankIDService;
+    private TransactionEventService service;
+    private BankIDTransaction transaction;
+
+    /**
+     * Creates the service.
+     */
+    @BeforeEach
+    public void setup() {
+        this.bankIDService = Mockito.mock(BankIDService.class);
+        this.service = new TransactionEventService(this.bankIDService);
+        this.transaction = new BankIDTransaction("orderRef", "qrStartToken", "qrStartSecret", "autoStartToken",
+            Instant.now());
+    }
+
+    /**
+     * Stops the service.
+     */
+    @AfterEach
+    public void shutdown() {
+        this.service.shutdown();
+    }
+
+    /**
+     * Only changes are sent, and the stream completes with the final state.
+     * @throws Exception on failure.
+     */
+    @Test
+    public void sendChangesUntilComplete() throws Exception {
+        Mockito.when(this.bankIDService.collect(Mockito.any())).thenReturn(
+            result("pending", "outstandingTransaction", "qr.0"),
+            result("pending", "outstandingTransaction", "qr.0"),
+            result("complete", null, null));
+        Consumer<CollectResult> onFinal = Mockito.mock(Consumer.class);
+        RecordingEmitter emitter = new RecordingEmitter();
+
+        this.service.stream(emitter, this.transaction, onFinal);
+
+        Assertions.assertTrue(emitter.completed.await(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(2, emitter.events.size());
+        Assertions.assertEquals(Status.PENDING, emitter.events.get(0).getStatus());
+        Assertions.assertEquals("qr.0", emitter.events.get(0).getQrCode());
+        Assertions.assertEquals(this.transaction.getTransactionId(), emitter.events.get(1).getTransactionId());
+        Assertions.assertEquals(Status.COMPLETE, emitter.events.get(1).getStatus());
+        Mockito.verify(onFinal).accept(Mockito.argThat(result -> result.getStatus() == Status.COMPLETE));
+
+        // The stream ending again does not hand over the result again.
+        emitter.complete();
+        Mockito.verify(onFinal).accept(Mockito.any());
+
+        // The session transaction is not touched by the stream.
+        Mockito.verify(this.bankIDService, Mockito.never()).collect(this.transaction);
+    }
+
+    /**
+     * A stream is stopped when the client is gone.
+     * @throws Exception on failure.
+     */
+    @Test
+    public void stopWhenClientIsGone() throws Exception {
+        Mockito.when(this.bankIDService.collect(Mockito.any())).thenReturn(
+            result("pending", "outstandingTransaction", "qr.0"));
+        RecordingEmitter emitter = new RecordingEmitter();
+        emitter.gone = true;
+
+        this.service.stream(emitter, this.transaction, Mockito.mock(Consumer.class));
+
+        Mockito.verify(this.bankIDService, Mockito.timeout(1000)).collect(Mockito.any());
+        Mockito.verify(this.bankIDService, Mockito.after(1500).times(1)).collect(Mockito.any());
+    }
+
+    /**
+     * A long-poll is answered when the state differs from the last seen state.
+     * @throws Exception on failure.
+     */
+    @Test
+    public void awaitChange() throws Exception {
+        Mockito.when(this.bankIDService.collect(Mockito.any())).thenReturn(
+            result("pending", "outstandingTransaction", "bankid.token.3.code"),
+            result("pending", "outstandingTransaction", "bankid.token.3.code"),
+            result("pending", "userSign", null));
+
+        CheckRequest lastSeen = new CheckRequest();
+        lastSeen.setStatus(Status.PENDING);
+        lastSeen.setHintCode("outstandingTransaction");
+        lastSeen.setQrTime(3L);
+
+        CollectResult changed = this.service.awaitChange(this.transaction, lastSeen, 5000).get(5, TimeUnit.SECONDS);
+
+        Assertions.assertEquals("userSign", changed.getHintCode());
+        Mockito.verify(this.bankIDService, Mockito.times(3)).collect(Mockito.any());
+    }
+
+    /**
+     * A long-poll without change is answered with the latest state after the timeout.
+     * @throws Exception on failure.
+     */
+    @Test
+    public void awaitChangeTimeout() throws Exception {
+        Mockito.when(this.bankIDService.collect(Mockito.any())).thenReturn(
+            result("pending", "userSign", null));
+
+        CheckRequest lastSeen = new CheckRequest();
+        lastSeen.setStatus(Status.PENDING);
+        lastSeen.setHintCode("userSign");
+
+        long start = System.nanoTime();
+        CollectResult latest = this.service.awaitChange(this.transaction, lastSeen, 600).get(5, TimeUnit.SECONDS);
+
+        Assertions.assertEquals("userSign", latest.getHintCode());
+        Assertions.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(600));
+    }
+
+    /**
+     * Create a collect result.
+     * @param status   the status.
+     * @param hintCode the hint code.
+     * @param qrCode   the qr code.
+     * @return the collect result.
+     */
+    private CollectResult result(String status, String hintCode, String qrCode) {
+        CollectResult collectResult = new CollectResult(this.transaction, status, hintCode);
+        collectResult.setQrCode(qrCode);
+        return collectResult;
+    }
+
+    /**
+     * Emitter recording the sent events.
+     */
+    private static final class RecordingEmitter extends SseEmitter {
+        private final List<CheckResponse> events = new CopyOnWriteArrayList<>();
+        private final CountDownLatch completed = new CountDownLatch(1);
+        private volatile boolean gone;
+        private volatile Runnable completionCallback;
+
+        /**
+         * Records the completion callback.
+         * @param callback the callback.
+         */
+        @Override
+        public void onCompletion(Runnable callback) {
+            this.completionCallback = callback;
+        }
+
+        /**
+         * Records an event.
+         * @param builder the event.
+         * @throws IOException if the client is gone.
+         */
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            if (this.gone) {
+                throw new IOException("Broken pipe");
+            }
+            builder.build().stream()
+                .filter(data -> data.getData() instanceof CheckResponse)
+                .forEach(data -> this.events.add((CheckResponse) data.getData()));
+        }
+
+        /**
+         * Records the completion.
+         */
+        @Override
+        public void complete() {
+            if (this.completionCallback != null) {
+                this.completionCallback.run();
+            }
+            this.completed.countDown();
+        }
+    }
+}